@@ -0,0 +1,75 @@
+package edu.uw.zookeeper.data;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups and updates of a leaf at a given depth,
+ * in a trie with a given number of children per level.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleLabelTrieBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int depth;
+
+    @Param({"1", "64"})
+    public int width;
+
+    protected SimpleLabelTrie<ZNodeNode> trie;
+    protected ZNodePath parentPath;
+    protected ZNodePath leafPath;
+    protected ZNodeLabel leafLabel;
+    protected ZNodeNode parent;
+
+    @Setup
+    public void setUp() {
+        trie = SimpleLabelTrie.forRoot(ZNodeNode.root());
+        ZNodeNode node = trie.root();
+        for (int i=0; i<depth; ++i) {
+            ZNodeNode next = null;
+            for (int j=0; j<width; ++j) {
+                ZNodeNode child = ZNodeNode.child(ZNodeLabel.fromString(String.format("%d-%d", i, j)), node, ZNodeNode.ZNodeState.defaults());
+                node.put(child.parent().name(), child);
+                next = child;
+            }
+            node = next;
+        }
+        parent = node;
+        parentPath = parent.path();
+        leafLabel = ZNodeLabel.fromString("leaf");
+        leafPath = parentPath.join(leafLabel);
+    }
+
+    @Benchmark
+    public ZNodeNode get() {
+        return trie.get(parentPath);
+    }
+
+    @Benchmark
+    public ZNodeNode longestPrefix() {
+        return trie.longestPrefix(leafPath);
+    }
+
+    @Benchmark
+    public ZNodeNode putRemove() {
+        trie.put(leafPath, ZNodeNode.child(leafLabel, parent, ZNodeNode.ZNodeState.defaults()));
+        return trie.remove(leafPath);
+    }
+}
@@ -0,0 +1,108 @@
+package edu.uw.zookeeper.data;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.zookeeper.KeeperException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import edu.uw.zookeeper.common.Processors;
+import edu.uw.zookeeper.protocol.ProtocolRequestMessage;
+import edu.uw.zookeeper.protocol.SessionOperation;
+import edu.uw.zookeeper.protocol.SessionRequest;
+import edu.uw.zookeeper.protocol.proto.OpCode;
+import edu.uw.zookeeper.protocol.proto.Records;
+import edu.uw.zookeeper.protocol.server.AssignZxidProcessor;
+import edu.uw.zookeeper.protocol.server.ZxidIncrementer;
+import edu.uw.zookeeper.server.ByOpcodeTxnRequestProcessor;
+import edu.uw.zookeeper.server.ToTxnRequestProcessor;
+
+/**
+ * Applies requests to a data tree the way the server does,
+ * without sessions, logging, or watches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZNodeOperatorsBenchmark {
+
+    @Param({"16", "4096"})
+    public int dataLength;
+
+    @Param({"HEAP", "DIRECT"})
+    public ZNodeNode.DataStorage storage;
+
+    protected ToTxnRequestProcessor txns;
+    protected ByOpcodeTxnRequestProcessor operators;
+    protected SessionOperation.Request<?> getData;
+    protected SessionOperation.Request<?> getChildren;
+    protected SessionOperation.Request<?> setData;
+    protected SessionOperation.Request<?> create;
+    protected SessionOperation.Request<?> delete;
+
+    @Setup
+    public void setUp() throws KeeperException {
+        SimpleLabelTrie<ZNodeNode> trie = SimpleLabelTrie.forRoot(ZNodeNode.root());
+        txns = ToTxnRequestProcessor.create(AssignZxidProcessor.newInstance(ZxidIncrementer.fromZero()));
+        operators = ByOpcodeTxnRequestProcessor.create(
+                ImmutableMap.copyOf(ZNodeNode.Operators.of(trie, storage,
+                        Maps.<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException>>newEnumMap(OpCode.class))));
+
+        byte[] data = new byte[dataLength];
+        ZNodePath parent = ZNodePath.fromString("/benchmark");
+        ZNodePath node = parent.join(ZNodeLabel.fromString("node"));
+        ZNodePath child = parent.join(ZNodeLabel.fromString("child"));
+        apply(request(Operations.Requests.create().setPath(parent).build()));
+        apply(request(Operations.Requests.create().setPath(node).setData(data).build()));
+
+        getData = request(Operations.Requests.getData().setPath(node).build());
+        getChildren = request(Operations.Requests.getChildren().setPath(parent).build());
+        setData = request(Operations.Requests.setData().setPath(node).setData(data).build());
+        create = request(Operations.Requests.create().setPath(child).setData(data).build());
+        delete = request(Operations.Requests.delete().setPath(child).build());
+    }
+
+    @Benchmark
+    public Records.Response getData() throws KeeperException {
+        return apply(getData);
+    }
+
+    @Benchmark
+    public Records.Response getChildren() throws KeeperException {
+        return apply(getChildren);
+    }
+
+    @Benchmark
+    public Records.Response setData() throws KeeperException {
+        return apply(setData);
+    }
+
+    @Benchmark
+    public Records.Response createDelete() throws KeeperException {
+        apply(create);
+        return apply(delete);
+    }
+
+    protected Records.Response apply(SessionOperation.Request<?> request) throws KeeperException {
+        return operators.apply(txns.apply(request));
+    }
+
+    protected static SessionOperation.Request<?> request(Records.Request record) {
+        return SessionRequest.of(1L, ProtocolRequestMessage.of(1, record));
+    }
+}
@@ -0,0 +1,92 @@
+package edu.uw.zookeeper.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Optional;
+
+import edu.uw.zookeeper.net.Decoder;
+import edu.uw.zookeeper.net.Encoder;
+import edu.uw.zookeeper.protocol.proto.IGetDataRequest;
+
+/**
+ * Frames and unframes a batch of small requests in one buffer,
+ * as a connection would for pipelined requests.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameBenchmark {
+
+    @Param({"1", "16"})
+    public int batch;
+
+    protected Encoder<Encodable, ?> encoder;
+    protected Decoder<Optional<ProtocolRequestMessage<?>>, ?> decoder;
+    protected ProtocolRequestMessage<IGetDataRequest> request;
+    protected ByteBuf output;
+    protected ByteBuf input;
+
+    @Setup
+    public void setUp() throws IOException {
+        encoder = Frame.FramedEncoder.create(EncodableEncoder.getInstance());
+        decoder = Frame.FramedDecoder.create(
+                Frame.FrameDecoder.getDefault(),
+                new Decoder<ProtocolRequestMessage<?>, ProtocolRequestMessage<?>>() {
+                    @SuppressWarnings({ "unchecked", "rawtypes" })
+                    @Override
+                    public Class<? extends ProtocolRequestMessage<?>> decodeType() {
+                        return (Class) ProtocolRequestMessage.class;
+                    }
+
+                    @Override
+                    public ProtocolRequestMessage<?> decode(ByteBuf input)
+                            throws IOException {
+                        return ProtocolRequestMessage.decode(input);
+                    }
+                });
+        request = ProtocolRequestMessage.of(1, new IGetDataRequest("/benchmark/frame", false));
+        output = Unpooled.buffer();
+        input = Unpooled.buffer();
+        for (int i=0; i<batch; ++i) {
+            encoder.encode(request, input);
+        }
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        output.clear();
+        for (int i=0; i<batch; ++i) {
+            encoder.encode(request, output);
+        }
+        return output.readableBytes();
+    }
+
+    @Benchmark
+    public int decode() throws IOException {
+        input.readerIndex(0);
+        int xids = 0;
+        for (int i=0; i<batch; ++i) {
+            xids += decoder.decode(input).get().xid();
+        }
+        return xids;
+    }
+}
@@ -0,0 +1,102 @@
+package edu.uw.zookeeper.protocol.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.zookeeper.data.Stat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uw.zookeeper.data.ZNodeNode;
+import edu.uw.zookeeper.protocol.EncodableEncoder;
+import edu.uw.zookeeper.protocol.Frame;
+import edu.uw.zookeeper.protocol.Message;
+import edu.uw.zookeeper.protocol.ProtocolRequestMessage;
+import edu.uw.zookeeper.protocol.ProtocolResponseMessage;
+import edu.uw.zookeeper.protocol.ProtocolState;
+import edu.uw.zookeeper.protocol.proto.IGetDataRequest;
+import edu.uw.zookeeper.protocol.proto.IGetDataResponse;
+
+/**
+ * Server side of a connected session:
+ * decoding framed requests, and encoding getData responses
+ * either by copying or by sharing the payload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerProtocolCodecBenchmark {
+
+    @Param({"0", "64", "8192"})
+    public int dataLength;
+
+    @Param({"HEAP", "DIRECT"})
+    public ZNodeNode.DataStorage storage;
+
+    protected ServerProtocolCodec codec;
+    protected ByteBuf request;
+    protected ProtocolResponseMessage<IGetDataResponse> response;
+    protected ByteBuf output;
+
+    @Setup
+    public void setUp() throws IOException {
+        codec = ServerProtocolCodec.newInstance(ProtocolState.CONNECTED);
+        request = Unpooled.buffer();
+        Frame.FramedEncoder.create(EncodableEncoder.getInstance()).encode(
+                ProtocolRequestMessage.of(1, new IGetDataRequest("/benchmark/codec", false)), request);
+        byte[] data = new byte[dataLength];
+        response = ProtocolResponseMessage.of(1, 1L, new IGetDataResponse(storage.apply(data), new Stat()));
+        output = PooledByteBufAllocator.DEFAULT.buffer();
+    }
+
+    @TearDown
+    public void tearDown() {
+        output.release();
+    }
+
+    @Benchmark
+    public Message.Client decode() throws IOException {
+        request.readerIndex(0);
+        return codec.decode(request).get();
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        output.clear();
+        codec.encode(response, output);
+        return output.readableBytes();
+    }
+
+    /**
+     * Falls back to encode() for messages that aren't shared.
+     */
+    @Benchmark
+    public int encodeShared() throws IOException {
+        ByteBuf shared = codec.encodeShared(response);
+        if (shared == null) {
+            return encode();
+        }
+        try {
+            return shared.readableBytes();
+        } finally {
+            shared.release();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package edu.uw.zookeeper.server;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Service;
+
+import edu.uw.zookeeper.SimpleServerAndClient;
+import edu.uw.zookeeper.client.ConnectionClientExecutorService;
+import edu.uw.zookeeper.common.ServiceMonitor;
+import edu.uw.zookeeper.data.Operations;
+import edu.uw.zookeeper.data.ZNodeLabel;
+import edu.uw.zookeeper.data.ZNodePath;
+import edu.uw.zookeeper.protocol.Message;
+import edu.uw.zookeeper.protocol.Operation;
+import edu.uw.zookeeper.protocol.proto.Records;
+
+/**
+ * End-to-end requests from one client session to a server
+ * over the intra-VM transport, 
+ * either one at a time or with a window of outstanding requests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleServerBenchmark {
+
+    @Param({"1", "32"})
+    public int window;
+
+    @Param({"16", "4096"})
+    public int dataLength;
+
+    protected ServiceMonitor monitor;
+    protected ConnectionClientExecutorService<Operation.Request, Message.ServerResponse<?>> client;
+    protected Records.Request getData;
+    protected Records.Request setData;
+    protected List<ListenableFuture<Message.ServerResponse<?>>> pending;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SimpleServerAndClient server = SimpleServerAndClient.defaults().setDefaults();
+        monitor = server.getRuntimeModule().getServiceMonitor();
+        for (Service service: server.build()) {
+            monitor.add(service);
+        }
+        monitor.startAsync().awaitRunning();
+        client = server.getClientBuilder().getConnectionClientExecutor();
+
+        byte[] data = new byte[dataLength];
+        ZNodePath path = ZNodePath.root().join(ZNodeLabel.fromString("benchmark"));
+        Operations.unlessError(client.submit(
+                Operations.Requests.create().setPath(path).setData(data).build()).get().record());
+        getData = Operations.Requests.getData().setPath(path).build();
+        setData = Operations.Requests.setData().setPath(path).setData(data).build();
+        pending = Lists.newArrayListWithCapacity(window);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        monitor.stopAsync().awaitTerminated();
+    }
+
+    @Benchmark
+    public void getData() throws InterruptedException, ExecutionException {
+        submit(getData);
+    }
+
+    @Benchmark
+    public void setData() throws InterruptedException, ExecutionException {
+        submit(setData);
+    }
+
+    /**
+     * Each invocation completes window requests.
+     */
+    protected void submit(Records.Request request) throws InterruptedException, ExecutionException {
+        for (int i=0; i<window; ++i) {
+            pending.add(client.submit(request));
+        }
+        for (ListenableFuture<Message.ServerResponse<?>> future: pending) {
+            future.get();
+        }
+        pending.clear();
+    }
+}
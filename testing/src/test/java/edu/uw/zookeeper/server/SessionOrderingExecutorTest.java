@@ -0,0 +1,179 @@
+package edu.uw.zookeeper.server;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import edu.uw.zookeeper.common.Actors;
+import edu.uw.zookeeper.common.Processor;
+import edu.uw.zookeeper.common.TaskExecutor;
+import edu.uw.zookeeper.data.Operations;
+import edu.uw.zookeeper.data.ZNodePath;
+import edu.uw.zookeeper.protocol.Message;
+import edu.uw.zookeeper.protocol.ProtocolRequestMessage;
+import edu.uw.zookeeper.protocol.ProtocolResponseMessage;
+import edu.uw.zookeeper.protocol.SessionOperation;
+import edu.uw.zookeeper.protocol.SessionRequest;
+import edu.uw.zookeeper.protocol.proto.IExistsResponse;
+import edu.uw.zookeeper.protocol.proto.ISetDataResponse;
+import edu.uw.zookeeper.protocol.proto.Records;
+
+@RunWith(JUnit4.class)
+public class SessionOrderingExecutorTest {
+
+    @Test(timeout=30000)
+    public void testPooledReads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            testPipeline(executor, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout=30000)
+    public void testDirectReads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            testPipeline(executor, MoreExecutors.directExecutor());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        final List<SettableFuture<Message.ServerResponse<?>>> dispatched = Lists.newArrayList();
+        SessionOrderingExecutor ordering = SessionOrderingExecutor.create(
+                new TaskExecutor<SessionOperation.Request<?>, Message.ServerResponse<?>>() {
+                    @Override
+                    public ListenableFuture<Message.ServerResponse<?>> submit(
+                            SessionOperation.Request<?> request) {
+                        SettableFuture<Message.ServerResponse<?>> future = SettableFuture.create();
+                        dispatched.add(future);
+                        return future;
+                    }
+                });
+        List<ListenableFuture<Message.ServerResponse<?>>> futures = Lists.newArrayList();
+        // two writes are dispatched, and the read waits for them
+        futures.add(ordering.submit(request(1, false)));
+        futures.add(ordering.submit(request(2, false)));
+        futures.add(ordering.submit(request(3, true)));
+        assertEquals(2, dispatched.size());
+
+        // the second write completes, but waits on the first
+        dispatched.get(1).set(response(2, 0L, false));
+        assertFalse(futures.get(1).isDone());
+
+        ordering.stop();
+        for (ListenableFuture<Message.ServerResponse<?>> future: futures) {
+            assertTrue(future.isCancelled());
+        }
+        dispatched.get(0).set(response(1, 0L, false));
+        assertEquals(2, dispatched.size());
+        assertTrue(ordering.submit(request(4, true)).isCancelled());
+        assertEquals(2, dispatched.size());
+    }
+
+    /**
+     * Each response has the number of writes applied when its request was,
+     * which is the number of writes submitted before it,
+     * and responses complete in submission order.
+     */
+    protected void testPipeline(Executor executor, Executor readExecutor) throws Exception {
+        final AtomicInteger writes = new AtomicInteger(0);
+        SimpleServer server = SimpleServer.newInstance(
+                new ReentrantReadWriteLock(),
+                new Processor<SessionOperation.Request<?>, Message.ServerResponse<?>>() {
+                    @Override
+                    public Message.ServerResponse<?> apply(SessionOperation.Request<?> input) throws Exception {
+                        if (input.record().opcode().isReadOnly()) {
+                            int applied = writes.get();
+                            // so that reads complete out of order
+                            Thread.sleep(input.xid() % 3);
+                            // no write runs concurrently
+                            return response(input.xid(), (writes.get() == applied) ? applied : -1L, true);
+                        } else {
+                            return response(input.xid(), writes.getAndIncrement(), false);
+                        }
+                    }
+                },
+                executor,
+                readExecutor);
+        try {
+            SessionOrderingExecutor ordering = SessionOrderingExecutor.create(
+                    server, Actors.ActorExecutor.newInstance(executor));
+            final List<Integer> completed = Collections.synchronizedList(Lists.<Integer>newArrayList());
+            List<ListenableFuture<Message.ServerResponse<?>>> futures = Lists.newArrayList();
+            List<Long> expected = Lists.newArrayList();
+            Random random = new Random(1L);
+            long submitted = 0L;
+            for (int i=0; i<200; ++i) {
+                // runs of reads between writes
+                boolean readOnly = (random.nextInt(4) != 0);
+                final int xid = i + 1;
+                ListenableFuture<Message.ServerResponse<?>> future = ordering.submit(request(xid, readOnly));
+                future.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        completed.add(Integer.valueOf(xid));
+                    }
+                }, MoreExecutors.directExecutor());
+                futures.add(future);
+                expected.add(Long.valueOf(submitted));
+                if (! readOnly) {
+                    submitted++;
+                }
+            }
+            List<Message.ServerResponse<?>> responses = Futures.allAsList(futures).get(10, TimeUnit.SECONDS);
+            for (int i=0; i<responses.size(); ++i) {
+                assertEquals(i + 1, responses.get(i).xid());
+                assertEquals(expected.get(i).longValue(), responses.get(i).zxid());
+            }
+            for (int i=0; i<completed.size(); ++i) {
+                assertEquals(i + 1, completed.get(i).intValue());
+            }
+            assertEquals(responses.size(), completed.size());
+        } finally {
+            server.stop();
+        }
+    }
+
+    protected static SessionOperation.Request<?> request(int xid, boolean readOnly) {
+        Records.Request record;
+        if (readOnly) {
+            record = Operations.Requests.exists().setPath(ZNodePath.root()).build();
+        } else {
+            record = Operations.Requests.setData().setPath(ZNodePath.root()).build();
+        }
+        return SessionRequest.of(1L, ProtocolRequestMessage.of(xid, record));
+    }
+
+    protected static Message.ServerResponse<?> response(int xid, long zxid, boolean readOnly) {
+        Records.Response record;
+        if (readOnly) {
+            record = Records.newInstance(IExistsResponse.class);
+        } else {
+            record = Records.newInstance(ISetDataResponse.class);
+        }
+        return ProtocolResponseMessage.of(xid, zxid, record);
+    }
+}
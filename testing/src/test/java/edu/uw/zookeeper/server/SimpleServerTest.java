@@ -0,0 +1,204 @@
+package edu.uw.zookeeper.server;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import edu.uw.zookeeper.common.Processor;
+import edu.uw.zookeeper.common.PromiseTask;
+import edu.uw.zookeeper.common.TimeValue;
+import edu.uw.zookeeper.data.Operations;
+import edu.uw.zookeeper.data.TxnOperation;
+import edu.uw.zookeeper.data.ZNodePath;
+import edu.uw.zookeeper.protocol.Message;
+import edu.uw.zookeeper.protocol.ProtocolRequestMessage;
+import edu.uw.zookeeper.protocol.ProtocolResponseMessage;
+import edu.uw.zookeeper.protocol.SessionOperation;
+import edu.uw.zookeeper.protocol.SessionRequest;
+import edu.uw.zookeeper.protocol.proto.ISetDataResponse;
+import edu.uw.zookeeper.protocol.proto.Records;
+import edu.uw.zookeeper.protocol.server.ServerMetrics;
+
+@RunWith(JUnit4.class)
+public class SimpleServerTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBatch() throws Exception {
+        Queue<Runnable> scheduled = Queues.newArrayDeque();
+        Writes writes = new Writes(3);
+        SimpleServer server = SimpleServer.newInstance(
+                writes.lock, writes, queueing(scheduled), MoreExecutors.directExecutor(),
+                Optional.<TxnLog>absent(), ServerMetrics.create(), 4, TimeValue.milliseconds(10000L));
+        try {
+            List<ListenableFuture<Message.ServerResponse<?>>> futures = submit(server, 6);
+            assertTrue(writes.applied.isEmpty());
+            run(scheduled);
+
+            // applied in order, and the failed write doesn't fail its neighbours
+            assertEquals(ImmutableList.of(1, 2, 3, 4, 5, 6), writes.applied);
+            assertEquals(ImmutableList.of(4, 6), writes.batches);
+            for (int i=0; i<futures.size(); ++i) {
+                int xid = i + 1;
+                if (xid == writes.failing) {
+                    assertFailed(futures.get(i));
+                } else {
+                    assertEquals(xid, futures.get(i).get().xid());
+                }
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testBatchSync() throws Exception {
+        final List<SettableFuture<Long>> syncs = Lists.newArrayList();
+        TxnLog log = new TxnLog(
+                folder.getRoot(),
+                MoreExecutors.directExecutor(),
+                Queues.<PromiseTask<TxnOperation.Request<?>, Long>>newConcurrentLinkedQueue(),
+                LogManager.getLogger(SimpleServerTest.class)) {
+            @Override
+            public ListenableFuture<Long> sync() {
+                SettableFuture<Long> sync = SettableFuture.create();
+                syncs.add(sync);
+                return sync;
+            }
+        };
+        Queue<Runnable> scheduled = Queues.newArrayDeque();
+        Writes writes = new Writes(2);
+        SimpleServer server = SimpleServer.newInstance(
+                writes.lock, writes, queueing(scheduled), MoreExecutors.directExecutor(),
+                Optional.of(log), ServerMetrics.create(), 4, TimeValue.milliseconds(10000L));
+        try {
+            List<ListenableFuture<Message.ServerResponse<?>>> futures = submit(server, 6);
+            run(scheduled);
+            assertEquals(ImmutableList.of(4, 6), writes.batches);
+
+            // one sync for each batch
+            assertEquals(2, syncs.size());
+            assertFailed(futures.get(1));
+            for (int i=0; i<futures.size(); ++i) {
+                if (i != 1) {
+                    assertFalse(futures.get(i).isDone());
+                }
+            }
+
+            syncs.get(0).set(Long.valueOf(4L));
+            for (int i=0; i<futures.size(); ++i) {
+                assertEquals(i < 4, futures.get(i).isDone());
+            }
+            assertEquals(1, futures.get(0).get().xid());
+
+            syncs.get(1).setException(new IOException());
+            for (int i=4; i<futures.size(); ++i) {
+                assertFailed(futures.get(i));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    protected static List<ListenableFuture<Message.ServerResponse<?>>> submit(SimpleServer server, int count) {
+        List<ListenableFuture<Message.ServerResponse<?>>> futures = Lists.newArrayListWithCapacity(count);
+        for (int xid=1; xid<=count; ++xid) {
+            futures.add(server.submit(SessionRequest.of(1L, ProtocolRequestMessage.of(
+                    xid, Operations.Requests.setData().setPath(ZNodePath.root()).build()))));
+        }
+        return futures;
+    }
+
+    protected static void assertFailed(ListenableFuture<?> future) throws InterruptedException {
+        assertTrue(future.isDone());
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {}
+    }
+
+    protected static Executor queueing(final Queue<Runnable> queue) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queue.add(command);
+            }
+        };
+    }
+
+    protected static void run(Queue<Runnable> queue) {
+        Runnable next;
+        while ((next = queue.poll()) != null) {
+            next.run();
+        }
+    }
+
+    /**
+     * Records the order that writes are applied in,
+     * and how many have been applied by the end of each batch.
+     */
+    protected static final class Writes implements Processor<SessionOperation.Request<?>, Message.ServerResponse<?>> {
+
+        public final int failing;
+        public final List<Integer> applied;
+        public final List<Integer> batches;
+        public final ReentrantReadWriteLock lock;
+
+        public Writes(int failing) {
+            this.failing = failing;
+            this.applied = Collections.synchronizedList(Lists.<Integer>newArrayList());
+            this.batches = Lists.newArrayList();
+            this.lock = new ReentrantReadWriteLock() {
+                private static final long serialVersionUID = 1L;
+
+                private final WriteLock writeLock = new WriteLock(this) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    public void unlock() {
+                        batches.add(Integer.valueOf(applied.size()));
+                        super.unlock();
+                    }
+                };
+
+                @Override
+                public ReentrantReadWriteLock.WriteLock writeLock() {
+                    return writeLock;
+                }
+            };
+        }
+
+        @Override
+        public Message.ServerResponse<?> apply(SessionOperation.Request<?> input) throws Exception {
+            assertTrue(lock.isWriteLockedByCurrentThread());
+            applied.add(Integer.valueOf(input.xid()));
+            if (input.xid() == failing) {
+                throw new IllegalStateException();
+            }
+            return ProtocolResponseMessage.of(input.xid(), input.xid(), Records.newInstance(ISetDataResponse.class));
+        }
+    }
+}
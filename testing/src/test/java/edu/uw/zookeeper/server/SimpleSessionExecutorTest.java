@@ -0,0 +1,185 @@
+package edu.uw.zookeeper.server;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.zookeeper.Watcher;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import edu.uw.zookeeper.common.Actor;
+import edu.uw.zookeeper.common.Automaton;
+import edu.uw.zookeeper.common.TaskExecutor;
+import edu.uw.zookeeper.data.Operations;
+import edu.uw.zookeeper.data.ZNodePath;
+import edu.uw.zookeeper.protocol.Message;
+import edu.uw.zookeeper.protocol.Operation;
+import edu.uw.zookeeper.protocol.ProtocolRequestMessage;
+import edu.uw.zookeeper.protocol.ProtocolResponseMessage;
+import edu.uw.zookeeper.protocol.ProtocolState;
+import edu.uw.zookeeper.protocol.Session;
+import edu.uw.zookeeper.protocol.SessionListener;
+import edu.uw.zookeeper.protocol.SessionOperation;
+import edu.uw.zookeeper.protocol.SessionRequest;
+import edu.uw.zookeeper.protocol.proto.IDisconnectResponse;
+import edu.uw.zookeeper.protocol.proto.IWatcherEvent;
+import edu.uw.zookeeper.protocol.proto.OpCodeXid;
+import edu.uw.zookeeper.protocol.proto.Records;
+
+@RunWith(JUnit4.class)
+public class SimpleSessionExecutorTest {
+
+    @Test
+    public void testNotificationExecutor() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            Queue<Runnable> shared = Queues.newArrayDeque();
+            SimpleSessionExecutor session = SimpleSessionExecutor.factory(
+                    scheduler,
+                    queueing(shared),
+                    Suppliers.ofInstance(new TaskExecutor<SessionOperation.Request<?>, Message.ServerResponse<?>>() {
+                        @Override
+                        public ListenableFuture<Message.ServerResponse<?>> submit(
+                                SessionOperation.Request<?> request) {
+                            return Futures.immediateFailedFuture(new UnsupportedOperationException());
+                        }
+                    })).get(Session.create(1L, Session.Parameters.create(10000L)));
+
+            // not delivered by the thread that posts it, which may hold the write lock
+            Listener listener = new Listener();
+            session.subscribe(listener);
+            session.handleNotification(notification("/1"));
+            assertTrue(listener.notifications.isEmpty());
+            run(shared);
+            assertEquals(ImmutableList.of("/1"), listener.notifications);
+
+            // delivered from the connection's event loop while connected
+            Queue<Runnable> loop = Queues.newArrayDeque();
+            Connected connected = new Connected(loop);
+            session.subscribe(connected);
+            session.handleNotification(notification("/2"));
+            assertTrue(shared.isEmpty());
+            assertEquals(ImmutableList.of("/1"), listener.notifications);
+            run(loop);
+            assertEquals(ImmutableList.of("/1", "/2"), listener.notifications);
+            assertEquals(ImmutableList.of("/2"), connected.notifications);
+
+            assertTrue(session.unsubscribe(connected));
+            session.handleNotification(notification("/3"));
+            assertTrue(loop.isEmpty());
+            run(shared);
+            assertEquals(ImmutableList.of("/1", "/2", "/3"), listener.notifications);
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final List<SessionOperation.Request<?>> submitted = Lists.newArrayList();
+            final List<SettableFuture<Message.ServerResponse<?>>> futures = Lists.newArrayList();
+            SimpleSessionExecutor session = SimpleSessionExecutor.factory(
+                    scheduler,
+                    MoreExecutors.directExecutor(),
+                    Suppliers.ofInstance(new TaskExecutor<SessionOperation.Request<?>, Message.ServerResponse<?>>() {
+                        @Override
+                        public ListenableFuture<Message.ServerResponse<?>> submit(
+                                SessionOperation.Request<?> request) {
+                            SettableFuture<Message.ServerResponse<?>> future = SettableFuture.create();
+                            submitted.add(request);
+                            futures.add(future);
+                            return future;
+                        }
+                    })).get(Session.create(1L, Session.Parameters.create(10000L)));
+
+            ListenableFuture<Message.ServerResponse<?>> close = session.submit(
+                    ProtocolRequestMessage.of(1, Operations.Requests.disconnect().build()));
+            assertEquals(1, submitted.size());
+            futures.get(0).set(ProtocolResponseMessage.of(1, 1L, Records.newInstance(IDisconnectResponse.class)));
+            assertTrue(close.isDone());
+            assertEquals(ProtocolState.DISCONNECTED, session.state());
+
+            // nothing more is executed for a closed session
+            assertEquals(Actor.State.TERMINATED, session.ordering.state());
+            assertEquals(Actor.State.TERMINATED, session.notifications.state());
+            assertTrue(session.ordering.submit(
+                    SessionRequest.of(1L, ProtocolRequestMessage.of(2, Operations.Requests.exists().setPath(ZNodePath.root()).build()))).isCancelled());
+            assertEquals(1, submitted.size());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    protected static Operation.ProtocolResponse<IWatcherEvent> notification(String path) {
+        return ProtocolResponseMessage.of(
+                OpCodeXid.NOTIFICATION.xid(),
+                OpCodeXid.NOTIFICATION_ZXID,
+                new IWatcherEvent(
+                        Watcher.Event.EventType.NodeDataChanged.getIntValue(),
+                        Watcher.Event.KeeperState.SyncConnected.getIntValue(),
+                        path));
+    }
+
+    protected static Executor queueing(final Queue<Runnable> queue) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queue.add(command);
+            }
+        };
+    }
+
+    protected static void run(Queue<Runnable> queue) {
+        Runnable next;
+        while ((next = queue.poll()) != null) {
+            next.run();
+        }
+    }
+
+    protected static class Listener implements SessionListener {
+
+        public final List<String> notifications = Lists.newArrayList();
+
+        @Override
+        public void handleAutomatonTransition(
+                Automaton.Transition<ProtocolState> transition) {
+        }
+
+        @Override
+        public void handleNotification(
+                Operation.ProtocolResponse<IWatcherEvent> notification) {
+            notifications.add(notification.record().getPath());
+        }
+    }
+
+    protected static final class Connected extends Listener implements Executor {
+
+        private final Executor executor;
+
+        public Connected(Queue<Runnable> queue) {
+            this.executor = queueing(queue);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            executor.execute(command);
+        }
+    }
+}
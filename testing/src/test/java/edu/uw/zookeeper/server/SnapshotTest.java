@@ -0,0 +1,353 @@
+package edu.uw.zookeeper.server;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.zookeeper.KeeperException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import edu.uw.zookeeper.common.Processor;
+import edu.uw.zookeeper.common.Processors;
+import edu.uw.zookeeper.data.Acls;
+import edu.uw.zookeeper.data.CreateMode;
+import edu.uw.zookeeper.data.NameTrie;
+import edu.uw.zookeeper.data.Operations;
+import edu.uw.zookeeper.data.SimpleLabelTrie;
+import edu.uw.zookeeper.data.TxnOperation;
+import edu.uw.zookeeper.data.TxnRequest;
+import edu.uw.zookeeper.data.ZNodeLabel;
+import edu.uw.zookeeper.data.ZNodeName;
+import edu.uw.zookeeper.data.ZNodeNode;
+import edu.uw.zookeeper.data.ZNodePath;
+import edu.uw.zookeeper.protocol.Operation;
+import edu.uw.zookeeper.protocol.ProtocolRequestMessage;
+import edu.uw.zookeeper.protocol.SessionRequest;
+import edu.uw.zookeeper.protocol.proto.IDisconnectResponse;
+import edu.uw.zookeeper.protocol.proto.OpCode;
+import edu.uw.zookeeper.protocol.proto.Records;
+
+@RunWith(JUnit4.class)
+public class SnapshotTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test(timeout=30000)
+    public void testRestore() throws Exception {
+        File directory = folder.getRoot();
+        TxnLog log = TxnLog.forDirectory(directory, MoreExecutors.directExecutor());
+        InterleavingLock lock = new InterleavingLock();
+        NameTrie<ZNodeNode> trie = SimpleLabelTrie.forRoot(ZNodeNode.root());
+        Queue<Runnable> scheduled = Queues.newArrayDeque();
+        EphemeralProcessor ephemerals = EphemeralProcessor.create(
+                SnapshotProcessor.create(
+                        PARENTS * (CHILDREN + 2), 0, log, trie, lock, queueing(scheduled), 
+                        operators(trie)));
+        Writer writer = new Writer(TxnLogProcessor.create(log, ephemerals), lock, new Random(1L));
+        for (int i=0; i<PARENTS; ++i) {
+            writer.apply(Operations.Requests.create().setPath(ZNodePath.fromString("/" + i)).build(), 0L);
+            for (int j=0; j<CHILDREN; ++j) {
+                writer.apply(Operations.Requests.create().setPath(ZNodePath.fromString("/" + i + "/" + j)).build(), 0L);
+            }
+            // owned by a session that isn't closed
+            writer.apply(Operations.Requests.create().setPath(ZNodePath.fromString("/" + i + "/e"))
+                    .setMode(CreateMode.EPHEMERAL).build(), SESSIONS + 1L);
+        }
+        while (scheduled.isEmpty()) {
+            writer.run();
+        }
+
+        // writes run between the slices of the walk
+        lock.setInterleaved(writer);
+        scheduled.remove().run();
+        lock.setInterleaved(null);
+        assertTrue(scheduled.isEmpty());
+        assertTrue(writer.interleaved > 0);
+        for (int i=0; i<100; ++i) {
+            writer.run();
+        }
+        log.sync().get();
+        log.stop();
+
+        Snapshot.Restored restored = Snapshot.restoreLatest(directory, MoreExecutors.directExecutor()).get();
+        assertTrue(restored.zxid() >= PARENTS * (CHILDREN + 2));
+        assertTrue(restored.ephemerals().containsKey(Long.valueOf(SESSIONS + 1L)));
+        assertTrue(restored.zxid() < writer.zxid);
+        // rolled at the snapshot
+        assertEquals(restored.zxid(), TxnLog.zxidOf(TxnLog.files(directory).get(1)));
+
+        NameTrie<ZNodeNode> replayed = SimpleLabelTrie.forRoot(restored.root());
+        EphemeralProcessor replaying = EphemeralProcessor.create(operators(replayed));
+        for (Map.Entry<Long, String> e: restored.ephemerals().entries()) {
+            replaying.put(e.getKey(), e.getValue());
+        }
+        // sessions are still open, so ephemerals aren't closed at the end of the run
+        log = TxnLog.forDirectory(directory, MoreExecutors.directExecutor());
+        try {
+            assertEquals(writer.lastZxid, log.replay(restored.zxid(), replaying, 
+                    new Processor<Long, Void>() {
+                        @Override
+                        public Void apply(Long input) {
+                            return null;
+                        }
+                    }));
+        } finally {
+            log.stop();
+        }
+        assertEquals(ephemerals.sessions(), replaying.sessions());
+        assertEquals(images(trie), images(replayed));
+    }
+
+    @Test
+    public void testPurge() throws Exception {
+        File directory = folder.getRoot();
+        // logs rolled at each snapshot
+        for (long zxid: new long[] { 1L, 10L, 20L, 30L }) {
+            assertTrue(new File(directory, TxnLog.fileName(zxid)).createNewFile());
+        }
+        for (long zxid: new long[] { 10L, 20L, 30L }) {
+            assertTrue(new File(directory, Snapshot.fileName(zxid)).createNewFile());
+        }
+        // not yet renamed
+        assertTrue(new File(directory, Snapshot.fileName(40L) + Snapshot.TMP_SUFFIX).createNewFile());
+
+        Snapshot.purge(directory, 3);
+        assertEquals(ImmutableList.of(10L, 20L, 30L), snapshots(directory));
+        assertEquals(ImmutableList.of(1L, 10L, 20L, 30L), logs(directory));
+
+        // the oldest snapshot kept needs the logs rolled at it and after
+        Snapshot.purge(directory, 2);
+        assertEquals(ImmutableList.of(20L, 30L), snapshots(directory));
+        assertEquals(ImmutableList.of(20L, 30L), logs(directory));
+
+        Snapshot.purge(directory, 1);
+        assertEquals(ImmutableList.of(30L), snapshots(directory));
+        assertEquals(ImmutableList.of(30L), logs(directory));
+        assertTrue(new File(directory, Snapshot.fileName(40L) + Snapshot.TMP_SUFFIX).exists());
+    }
+
+    protected static final int PARENTS = 32;
+    protected static final int CHILDREN = 64;
+    protected static final int SESSIONS = 4;
+
+    protected static Processors.UncheckedProcessor<TxnOperation.Request<?>, Records.Response> operators(NameTrie<ZNodeNode> trie) {
+        ZNodeNode.Counts counts = ZNodeNode.Counts.of(trie);
+        Map<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException>> operators = 
+                ZNodeNode.Operators.of(trie, ZNodeNode.DataStorage.HEAP, counts, 
+                        Maps.<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException>>newEnumMap(OpCode.class));
+        operators.put(OpCode.MULTI, 
+                ZNodeNode.MultiOperator.of(trie, counts, ByOpcodeTxnRequestProcessor.create(ImmutableMap.copyOf(operators))));
+        operators.put(OpCode.CLOSE_SESSION, 
+                new Processors.CheckedProcessor<TxnOperation.Request<?>, IDisconnectResponse, KeeperException>() {
+                    @Override
+                    public IDisconnectResponse apply(
+                            TxnOperation.Request<?> request)
+                            throws KeeperException {
+                        return Records.newInstance(IDisconnectResponse.class);
+                    }
+        });
+        return RequestErrorProcessor.<TxnOperation.Request<?>>create(
+                ByOpcodeTxnRequestProcessor.create(ImmutableMap.copyOf(operators)));
+    }
+
+    /**
+     * @return a description of each znode by path
+     */
+    protected static Map<String, List<Object>> images(NameTrie<ZNodeNode> trie) {
+        Map<String, List<Object>> images = Maps.newHashMap();
+        for (ZNodeNode node: trie) {
+            ZNodeNode.ZNodeState state = node.state();
+            List<Object> image = Lists.newArrayList();
+            image.add(Long.valueOf(state.getCzxid()));
+            image.add(Long.valueOf(state.getCtime()));
+            image.add(Long.valueOf(state.getMzxid()));
+            image.add(Long.valueOf(state.getMtime()));
+            image.add(Long.valueOf(state.getPzxid()));
+            image.add(Integer.valueOf(state.getVersion()));
+            image.add(Integer.valueOf(state.getCversion()));
+            image.add(Integer.valueOf(state.getAversion()));
+            image.add(Long.valueOf(state.getEphemeralOwner()));
+            image.add(Arrays.toString(state.getData().getData()));
+            image.add(Acls.Acl.asRecordList(state.getAcl()));
+            List<String> children = Lists.newArrayList();
+            for (ZNodeName child: node.keySet()) {
+                children.add(child.toString());
+            }
+            image.add(Sets.newTreeSet(children));
+            images.put(node.path().toString(), image);
+        }
+        return images;
+    }
+
+    protected static Executor queueing(final Queue<Runnable> queue) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queue.add(command);
+            }
+        };
+    }
+
+    /**
+     * Applies random writes under the write lock in zxid order.
+     */
+    protected static final class Writer implements Runnable {
+
+        private final Processors.UncheckedProcessor<TxnOperation.Request<?>, Records.Response> processor;
+        private final ReentrantReadWriteLock lock;
+        private final Random random;
+        public long zxid;
+        public long lastZxid;
+        public int interleaved;
+
+        public Writer(
+                Processors.UncheckedProcessor<TxnOperation.Request<?>, Records.Response> processor,
+                ReentrantReadWriteLock lock,
+                Random random) {
+            this.processor = processor;
+            this.lock = lock;
+            this.random = random;
+            this.zxid = 0L;
+            this.lastZxid = 0L;
+            this.interleaved = 0;
+        }
+
+        @Override
+        public void run() {
+            if (lock.getReadHoldCount() == 0 && ((InterleavingLock) lock).isInterleaved()) {
+                ++interleaved;
+            }
+            long session = 1L + random.nextInt(SESSIONS);
+            Records.Request request;
+            switch (random.nextInt(8)) {
+            case 0:
+                request = Operations.Requests.disconnect().build();
+                break;
+            case 1:
+            {
+                // some of these fail and are rolled back
+                Operations.Requests.Multi multi = Operations.Requests.multi();
+                for (int i=0; i<3; ++i) {
+                    multi.add(randomRequest());
+                }
+                request = multi.build();
+                break;
+            }
+            default:
+                request = randomRequest().build();
+                break;
+            }
+            apply(request, session);
+        }
+
+        public Records.Response apply(Records.Request request, long session) {
+            lock.writeLock().lock();
+            try {
+                ++zxid;
+                Records.Response response = processor.apply(TxnRequest.of(
+                        zxid, zxid, SessionRequest.of(session, ProtocolRequestMessage.of((int) zxid, request))));
+                if (! (response instanceof Operation.Error)) {
+                    lastZxid = zxid;
+                }
+                return response;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        protected Operations.Builder<? extends Records.Request> randomRequest() {
+            ZNodePath path = ZNodePath.fromString("/" + random.nextInt(PARENTS)).join(
+                    ZNodeLabel.fromString(String.valueOf(random.nextInt(CHILDREN + CHILDREN / 2))));
+            byte[] data = new byte[random.nextInt(16)];
+            random.nextBytes(data);
+            switch (random.nextInt(3)) {
+            case 0:
+                return Operations.Requests.create().setPath(path).setData(data)
+                        .setMode(random.nextBoolean() ? CreateMode.EPHEMERAL : CreateMode.PERSISTENT);
+            case 1:
+                return Operations.Requests.delete().setPath(path);
+            default:
+                return Operations.Requests.setData().setPath(path).setData(data);
+            }
+        }
+    }
+
+    /**
+     * Runs some writes each time before the read lock is acquired.
+     */
+    protected static final class InterleavingLock extends ReentrantReadWriteLock {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ReadLock readLock;
+        private volatile Runnable interleaved;
+
+        public InterleavingLock() {
+            this.interleaved = null;
+            this.readLock = new ReadLock(this) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public void lock() {
+                    Runnable writes = interleaved;
+                    if (writes != null) {
+                        for (int i=0; i<64; ++i) {
+                            writes.run();
+                        }
+                    }
+                    super.lock();
+                }
+            };
+        }
+
+        public boolean isInterleaved() {
+            return (interleaved != null);
+        }
+
+        public void setInterleaved(Runnable interleaved) {
+            this.interleaved = interleaved;
+        }
+
+        @Override
+        public ReentrantReadWriteLock.ReadLock readLock() {
+            return readLock;
+        }
+    }
+
+    protected static List<Long> snapshots(File directory) {
+        List<Long> zxids = Lists.newArrayList();
+        for (File file: Snapshot.files(directory)) {
+            zxids.add(Long.valueOf(Snapshot.zxidOf(file)));
+        }
+        return zxids;
+    }
+
+    protected static List<Long> logs(File directory) {
+        List<Long> zxids = Lists.newArrayList();
+        for (File file: TxnLog.files(directory)) {
+            zxids.add(Long.valueOf(TxnLog.zxidOf(file)));
+        }
+        return zxids;
+    }
+}
@@ -0,0 +1,294 @@
+package edu.uw.zookeeper.server;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import edu.uw.zookeeper.common.Processor;
+import edu.uw.zookeeper.data.Operations;
+import edu.uw.zookeeper.data.TxnOperation;
+import edu.uw.zookeeper.data.TxnRequest;
+import edu.uw.zookeeper.data.ZNodePath;
+import edu.uw.zookeeper.protocol.ProtocolRequestMessage;
+import edu.uw.zookeeper.protocol.SessionRequest;
+import edu.uw.zookeeper.protocol.server.ZxidEpochIncrementer;
+
+@RunWith(JUnit4.class)
+public class TxnLogTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplay() throws Exception {
+        File directory = folder.getRoot();
+        TxnLog log = TxnLog.forDirectory(directory, MoreExecutors.directExecutor());
+        Replayed replayed = Replayed.of(log);
+        assertEquals(0L, replayed.lastZxid);
+        assertTrue(replayed.txns.isEmpty());
+        assertTrue(replayed.runs.isEmpty());
+        append(log, zxid(1, 1), zxid(1, 2), zxid(1, 3));
+        assertEquals(Long.valueOf(zxid(1, 3)), log.sync().get());
+        log.stop();
+
+        // the next run replays the first and appends to a file of its own
+        log = TxnLog.forDirectory(directory, MoreExecutors.directExecutor());
+        replayed = Replayed.of(log);
+        assertEquals(zxid(1, 3), replayed.lastZxid);
+        assertEquals(ImmutableList.of(zxid(1, 3)), replayed.runs);
+        append(log, zxid(2, 1), zxid(2, 2));
+        assertEquals(Long.valueOf(zxid(2, 2)), log.sync().get());
+        log.stop();
+        assertEquals(2, TxnLog.files(directory).size());
+        assertEquals(zxid(2, 1), TxnLog.zxidOf(TxnLog.files(directory).get(1)));
+
+        log = TxnLog.forDirectory(directory, MoreExecutors.directExecutor());
+        replayed = Replayed.of(log);
+        assertEquals(zxid(2, 2), replayed.lastZxid);
+        assertEquals(zxid(2, 2), log.lastZxid());
+        assertEquals(ImmutableList.of(zxid(1, 3), zxid(2, 2)), replayed.runs);
+        List<TxnOperation.Request<?>> expected = ImmutableList.<TxnOperation.Request<?>>of(
+                txn(zxid(1, 1)), txn(zxid(1, 2)), txn(zxid(1, 3)), txn(zxid(2, 1)), txn(zxid(2, 2)));
+        assertEquals(expected.size(), replayed.txns.size());
+        for (int i=0; i<expected.size(); ++i) {
+            TxnOperation.Request<?> actual = replayed.txns.get(i);
+            assertEquals(expected.get(i).zxid(), actual.zxid());
+            assertEquals(expected.get(i).getTime(), actual.getTime());
+            assertEquals(expected.get(i).getSessionId(), actual.getSessionId());
+            assertEquals(expected.get(i).xid(), actual.xid());
+            assertEquals(expected.get(i).record(), actual.record());
+        }
+        log.stop();
+
+        // replaying on top of a snapshot skips the files it covers
+        log = TxnLog.forDirectory(directory, MoreExecutors.directExecutor());
+        replayed = Replayed.of(log, zxid(2, 1));
+        assertEquals(ImmutableList.of(zxid(2, 2)), replayed.zxids());
+        assertEquals(ImmutableList.of(zxid(2, 2)), replayed.runs);
+        log.stop();
+    }
+
+    @Test
+    public void testRoll() throws Exception {
+        File directory = folder.getRoot();
+        TxnLog log = TxnLog.forDirectory(directory, MoreExecutors.directExecutor());
+        append(log, zxid(1, 1));
+        // already named by this zxid
+        log.roll(zxid(1, 1));
+        append(log, zxid(1, 2), zxid(1, 3));
+        log.sync().get();
+        assertEquals(1, TxnLog.files(directory).size());
+
+        // zxids that aren't logged may come between the snapshot and the next transaction
+        log.roll(zxid(1, 3));
+        append(log, zxid(1, 5), zxid(1, 6));
+        log.sync().get();
+        log.stop();
+        List<File> files = TxnLog.files(directory);
+        assertEquals(2, files.size());
+        assertEquals(zxid(1, 3), TxnLog.zxidOf(files.get(1)));
+
+        // one run
+        log = TxnLog.forDirectory(directory, MoreExecutors.directExecutor());
+        Replayed replayed = Replayed.of(log);
+        assertEquals(ImmutableList.of(zxid(1, 1), zxid(1, 2), zxid(1, 3), zxid(1, 5), zxid(1, 6)), replayed.zxids());
+        assertEquals(ImmutableList.of(zxid(1, 6)), replayed.runs);
+        log.stop();
+
+        // the file before the snapshot isn't needed on top of it
+        assertTrue(files.get(0).delete());
+        log = TxnLog.forDirectory(directory, MoreExecutors.directExecutor());
+        replayed = Replayed.of(log, zxid(1, 3));
+        assertEquals(ImmutableList.of(zxid(1, 5), zxid(1, 6)), replayed.zxids());
+        assertEquals(ImmutableList.of(zxid(1, 6)), replayed.runs);
+        log.stop();
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        File file = write(folder.getRoot(), 1L, 2L, 3L);
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.setLength(output.length() - 3);
+        } finally {
+            output.close();
+        }
+        assertEquals(ImmutableList.of(1L, 2L), replay(folder.getRoot()));
+    }
+
+    @Test
+    public void testChecksum() throws Exception {
+        File file = write(folder.getRoot(), 1L, 2L, 3L);
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.seek(output.length() - 1);
+            int last = output.read();
+            output.seek(output.length() - 1);
+            output.write(last ^ 0xff);
+        } finally {
+            output.close();
+        }
+        assertEquals(ImmutableList.of(1L, 2L), replay(folder.getRoot()));
+    }
+
+    @Test
+    public void testLength() throws Exception {
+        File file = write(folder.getRoot(), 1L, 2L);
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            // a torn header that would otherwise be allocated
+            output.seek(output.length());
+            output.writeInt(Integer.MAX_VALUE);
+            output.writeLong(0L);
+            output.write(new byte[64]);
+        } finally {
+            output.close();
+        }
+        assertEquals(ImmutableList.of(1L, 2L), replay(folder.getRoot()));
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        Queue<Runnable> scheduled = Queues.newArrayDeque();
+        TxnLog log = TxnLog.forDirectory(folder.getRoot(), queueing(scheduled));
+        List<ListenableFuture<Long>> appended = append(log, 1L, 2L, 3L);
+        // nothing is written until the log runs
+        assertFalse(scheduled.isEmpty());
+        for (ListenableFuture<Long> future: appended) {
+            assertFalse(future.isDone());
+        }
+        assertTrue(TxnLog.files(folder.getRoot()).isEmpty());
+
+        // stopping writes what is in the mailbox
+        log.stop();
+        for (int i=0; i<appended.size(); ++i) {
+            assertEquals(Long.valueOf(i + 1), appended.get(i).get());
+        }
+        assertTrue(append(log, 4L).get(0).isCancelled());
+        while (! scheduled.isEmpty()) {
+            scheduled.poll().run();
+        }
+        assertEquals(ImmutableList.of(1L, 2L, 3L), replay(folder.getRoot()));
+    }
+
+    protected static long zxid(long epoch, long counter) {
+        return ZxidEpochIncrementer.zxidOf(epoch, counter);
+    }
+
+    protected static TxnOperation.Request<?> txn(long zxid) {
+        int counter = (int) ZxidEpochIncrementer.counterOf(zxid);
+        return TxnRequest.of(
+                zxid + 10L,
+                zxid,
+                SessionRequest.of(
+                        counter % 3L,
+                        ProtocolRequestMessage.of(
+                                counter,
+                                Operations.Requests.create()
+                                    .setPath(ZNodePath.fromString("/" + counter))
+                                    .setData(new byte[counter]).build())));
+    }
+
+    protected static List<ListenableFuture<Long>> append(TxnLog log, long...zxids) {
+        List<ListenableFuture<Long>> futures = Lists.newArrayListWithCapacity(zxids.length);
+        for (long zxid: zxids) {
+            futures.add(log.append(txn(zxid)));
+        }
+        return futures;
+    }
+
+    /**
+     * @return the log file of one run that appended these
+     */
+    protected static File write(File directory, long...zxids) throws Exception {
+        TxnLog log = TxnLog.forDirectory(directory, MoreExecutors.directExecutor());
+        List<File> files = TxnLog.files(directory);
+        append(log, zxids);
+        log.sync().get();
+        log.stop();
+        List<File> written = Lists.newArrayList(TxnLog.files(directory));
+        written.removeAll(files);
+        assertEquals(1, written.size());
+        return written.get(0);
+    }
+
+    protected static List<Long> replay(File directory) throws Exception {
+        TxnLog log = TxnLog.forDirectory(directory, MoreExecutors.directExecutor());
+        try {
+            return Replayed.of(log).zxids();
+        } finally {
+            log.stop();
+        }
+    }
+
+    protected static Executor queueing(final Queue<Runnable> queue) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queue.add(command);
+            }
+        };
+    }
+
+    protected static final class Replayed {
+
+        public static Replayed of(TxnLog log) throws Exception {
+            return of(log, log.lastZxid());
+        }
+
+        public static Replayed of(TxnLog log, long fromZxid) throws Exception {
+            final List<TxnOperation.Request<?>> txns = Lists.newArrayList();
+            final List<Long> runs = Lists.newArrayList();
+            long lastZxid = log.replay(fromZxid,
+                    new Processor<TxnOperation.Request<?>, Void>() {
+                        @Override
+                        public Void apply(TxnOperation.Request<?> input) {
+                            txns.add(input);
+                            return null;
+                        }
+                    },
+                    new Processor<Long, Void>() {
+                        @Override
+                        public Void apply(Long input) {
+                            runs.add(input);
+                            return null;
+                        }
+                    });
+            return new Replayed(lastZxid, txns, runs);
+        }
+
+        public final long lastZxid;
+        public final List<TxnOperation.Request<?>> txns;
+        public final List<Long> runs;
+
+        public Replayed(long lastZxid, List<TxnOperation.Request<?>> txns, List<Long> runs) {
+            this.lastZxid = lastZxid;
+            this.txns = txns;
+            this.runs = runs;
+        }
+
+        public List<Long> zxids() {
+            List<Long> zxids = Lists.newArrayListWithCapacity(txns.size());
+            for (TxnOperation.Request<?> txn: txns) {
+                zxids.add(Long.valueOf(txn.zxid()));
+            }
+            return zxids;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package edu.uw.zookeeper.server;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.zookeeper.Watcher;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.base.Function;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+
+import edu.uw.zookeeper.protocol.NotificationListener;
+import edu.uw.zookeeper.protocol.Operation;
+import edu.uw.zookeeper.protocol.proto.IWatcherEvent;
+
+@RunWith(JUnit4.class)
+public class WatchesTest {
+
+    @Test
+    public void testLongHashSet() {
+        Watches.LongHashSet set = new Watches.LongHashSet();
+        Set<Long> expected = Sets.newHashSet();
+        Random random = new Random(1L);
+        for (int i=0; i<100000; ++i) {
+            // few enough values that clusters form and values are added again,
+            // including zero, which isn't stored in the table
+            long value = (random.nextInt(200) - 100) * 0x100000001L;
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(value), set.add(value));
+            } else {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+            assertEquals(expected.size(), set.size());
+            assertEquals(expected.isEmpty(), set.isEmpty());
+        }
+        Set<Long> actual = Sets.newHashSet();
+        Watches.LongHashSet.Iterator itr = set.iterator();
+        while (itr.hasNext()) {
+            assertTrue(actual.add(itr.next()));
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testRandom() {
+        final SetMultimap<Long, String> notified = HashMultimap.create();
+        Watches watches = Watches.create(
+                new Function<Long, NotificationListener<Operation.ProtocolResponse<IWatcherEvent>>>() {
+                    @Override
+                    public NotificationListener<Operation.ProtocolResponse<IWatcherEvent>> apply(final Long session) {
+                        return new NotificationListener<Operation.ProtocolResponse<IWatcherEvent>>() {
+                            @Override
+                            public void handleNotification(Operation.ProtocolResponse<IWatcherEvent> notification) {
+                                assertTrue(notified.put(session, notification.record().getPath()));
+                            }
+                        };
+                    }
+                }, 4);
+        SetMultimap<String, Long> expected = HashMultimap.create();
+        Random random = new Random(1L);
+        for (int i=0; i<10000; ++i) {
+            Long session = Long.valueOf(random.nextInt(20));
+            String path = "/" + random.nextInt(50);
+            switch (random.nextInt(4)) {
+            case 0:
+                expected.put(path, session);
+                watches.put(session, path);
+                break;
+            case 1:
+                assertEquals(expected.remove(path, session), watches.remove(session, path));
+                break;
+            case 2:
+            {
+                Set<String> paths = ImmutableSet.copyOf(
+                        Multimaps.invertFrom(expected, HashMultimap.<Long, String>create()).get(session));
+                for (String p: paths) {
+                    expected.remove(p, session);
+                }
+                assertEquals(paths, watches.remove(session));
+                break;
+            }
+            default:
+            {
+                Set<Long> sessions = expected.removeAll(path);
+                notified.clear();
+                watches.post(new IWatcherEvent(
+                        Watcher.Event.EventType.NodeDataChanged.getIntValue(),
+                        Watcher.Event.KeeperState.SyncConnected.getIntValue(),
+                        path));
+                assertEquals(sessions, notified.keySet());
+                for (String notifiedPath: notified.values()) {
+                    assertEquals(path, notifiedPath);
+                }
+                break;
+            }
+            }
+            assertEquals(expected.size(), watches.watchCount());
+        }
+        assertEquals(expected, watches.byPath());
+        assertEquals(Multimaps.invertFrom(expected, HashMultimap.<Long, String>create()), watches.bySession());
+        assertEquals(expected.keySet().size(), watches.pathCount());
+        assertEquals(watches.bySession().keySet().size(), watches.sessionCount());
+    }
+}
@@ -2,27 +2,44 @@ package edu.uw.zookeeper.server;
 
 import static org.junit.Assert.*;
 
+import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.zookeeper.KeeperException;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import edu.uw.zookeeper.ZNodeTrieExecutor;
 import edu.uw.zookeeper.client.SessionClientExecutor;
+import edu.uw.zookeeper.data.CreateMode;
 import edu.uw.zookeeper.data.LockableZNodeCache;
+import edu.uw.zookeeper.data.NameTrie;
+import edu.uw.zookeeper.data.Operations;
+import edu.uw.zookeeper.data.SimpleLabelTrie;
+import edu.uw.zookeeper.data.TxnOperation;
+import edu.uw.zookeeper.data.TxnRequest;
 import edu.uw.zookeeper.data.ZNodeCache;
+import edu.uw.zookeeper.data.ZNodeNode;
+import edu.uw.zookeeper.data.ZNodePath;
 import edu.uw.zookeeper.client.SubmitGenerator;
 import edu.uw.zookeeper.common.Generator;
 import edu.uw.zookeeper.common.CountingGenerator;
 import edu.uw.zookeeper.client.random.RandomRequestGenerator;
 import edu.uw.zookeeper.common.Pair;
+import edu.uw.zookeeper.common.Processors;
 import edu.uw.zookeeper.protocol.Message;
 import edu.uw.zookeeper.protocol.Operation;
+import edu.uw.zookeeper.protocol.ProtocolRequestMessage;
+import edu.uw.zookeeper.protocol.SessionRequest;
+import edu.uw.zookeeper.protocol.proto.OpCode;
 import edu.uw.zookeeper.protocol.proto.Records;
 
 @RunWith(JUnit4.class)
@@ -44,4 +61,51 @@ public class ZNodeTrieTest {
              assertFalse(operation.second().get(1000, TimeUnit.MILLISECONDS).record() instanceof Operation.Error);
         }
     }
+    
+    @Test
+    public void testCounts() {
+        NameTrie<ZNodeNode> trie = SimpleLabelTrie.forRoot(ZNodeNode.root());
+        ZNodeNode.Counts counts = ZNodeNode.Counts.of(trie);
+        Map<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException>> operators = 
+                ZNodeNode.Operators.of(trie, ZNodeNode.DataStorage.HEAP, counts, 
+                        Maps.<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException>>newEnumMap(OpCode.class));
+        operators.put(OpCode.MULTI, 
+                ZNodeNode.MultiOperator.of(trie, counts, ByOpcodeTxnRequestProcessor.create(ImmutableMap.copyOf(operators))));
+        RequestErrorProcessor<TxnOperation.Request<?>> processor = 
+                RequestErrorProcessor.create(ByOpcodeTxnRequestProcessor.create(ImmutableMap.copyOf(operators)));
+        Random random = new Random(1L);
+        for (int i=0; i<1000; ++i) {
+            Records.Request request;
+            if (random.nextInt(4) == 0) {
+                // some of these fail and are rolled back
+                Operations.Requests.Multi multi = Operations.Requests.multi();
+                for (int j=0; j<3; ++j) {
+                    multi.add(randomRequest(random));
+                }
+                request = multi.build();
+            } else {
+                request = randomRequest(random).build();
+            }
+            processor.apply(TxnRequest.of(
+                    0L, i, SessionRequest.of(1L, ProtocolRequestMessage.of(i, request))));
+            ZNodeNode.Counts expected = ZNodeNode.Counts.of(trie);
+            assertEquals(expected.znodes(), counts.znodes());
+            assertEquals(expected.ephemerals(), counts.ephemerals());
+            assertEquals(expected.dataSize(), counts.dataSize());
+        }
+    }
+    
+    protected static Operations.Builder<? extends Records.Request> randomRequest(Random random) {
+        ZNodePath path = ZNodePath.fromString("/" + random.nextInt(10));
+        byte[] data = new byte[random.nextInt(100)];
+        switch (random.nextInt(3)) {
+        case 0:
+            return Operations.Requests.create().setPath(path).setData(data)
+                    .setMode(random.nextBoolean() ? CreateMode.EPHEMERAL : CreateMode.PERSISTENT);
+        case 1:
+            return Operations.Requests.delete().setPath(path);
+        default:
+            return Operations.Requests.setData().setPath(path).setData(data);
+        }
+    }
 }
@@ -0,0 +1,233 @@
+package edu.uw.zookeeper.client;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import com.google.common.base.Function;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Monitor;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.typesafe.config.ConfigValueType;
+
+import edu.uw.zookeeper.common.Configurable;
+import edu.uw.zookeeper.common.Configuration;
+import edu.uw.zookeeper.common.Promise;
+import edu.uw.zookeeper.common.SettableFuturePromise;
+import edu.uw.zookeeper.protocol.Operation;
+import edu.uw.zookeeper.protocol.SessionListener;
+
+/**
+ * Limits outstanding requests to a window that is tuned from observed
+ * response times, similar to TCP congestion control.
+ *
+ * The window starts small and doubles every round trip until it
+ * reaches a threshold, and then grows by one every round trip.
+ * When response times grow past a multiple of the smallest observed
+ * response time, or a request fails, the window and threshold are halved,
+ * at most once per round trip.
+ *
+ * Keeping the window full lets the connection write many requests per flush,
+ * and backing off keeps requests from queueing at the server.
+ */
+public class AdaptiveOutstandingClient<I extends Operation.Request, O extends Operation.ProtocolResponse<?>, T extends SessionListener> implements ClientExecutor<I,O,T> {
+
+    public static <I extends Operation.Request, O extends Operation.ProtocolResponse<?>, T extends SessionListener> ClientExecutor<? super I, O, T> create(
+            Configuration configuration,
+            ClientExecutor<? super I, O, T> client) {
+        if (ConfigurableAdaptive.get(configuration).booleanValue()) {
+            return create(LimitOutstandingClient.ConfigurableLimit.get(configuration).intValue(), client);
+        } else {
+            return LimitOutstandingClient.create(configuration, client);
+        }
+    }
+
+    /**
+     * @param limit maximum window, or {@link LimitOutstandingClient#NO_LIMIT}
+     */
+    public static <I extends Operation.Request, O extends Operation.ProtocolResponse<?>, T extends SessionListener> AdaptiveOutstandingClient<I,O,T> create(
+            int limit,
+            ClientExecutor<? super I, O, T> client) {
+        return create(limit, Ticker.systemTicker(), client);
+    }
+
+    /**
+     * @param limit maximum window, or {@link LimitOutstandingClient#NO_LIMIT}
+     * @param ticker measures response times
+     */
+    public static <I extends Operation.Request, O extends Operation.ProtocolResponse<?>, T extends SessionListener> AdaptiveOutstandingClient<I,O,T> create(
+            int limit,
+            Ticker ticker,
+            ClientExecutor<? super I, O, T> client) {
+        if (limit == LimitOutstandingClient.NO_LIMIT) {
+            limit = Integer.MAX_VALUE;
+        } else if (limit < 0) {
+            throw new IllegalStateException(String.valueOf(limit));
+        }
+        return new AdaptiveOutstandingClient<I,O,T>(limit, checkNotNull(ticker), client);
+    }
+
+    @Configurable(arg="adaptiveOutstanding", value="false", type=ConfigValueType.BOOLEAN)
+    public static class ConfigurableAdaptive implements Function<Configuration, Boolean> {
+
+        public static Boolean get(Configuration configuration) {
+            return new ConfigurableAdaptive().apply(configuration);
+        }
+
+        @Override
+        public Boolean apply(Configuration configuration) {
+            Configurable configurable = getClass().getAnnotation(Configurable.class);
+            return configuration.withConfigurable(configurable)
+                        .getConfigOrEmpty(configurable.path())
+                            .getBoolean(configurable.arg());
+        }
+    }
+
+    public static final int INITIAL_WINDOW = 16;
+    // response times above this multiple of the minimum signal queueing
+    public static final double DELAY_TOLERANCE = 2.0;
+
+    private final Monitor monitor = new Monitor();
+    private final Monitor.Guard notThrottled = new Monitor.Guard(monitor) {
+        public boolean isSatisfied() {
+          return outstanding < (int) window;
+        }
+      };
+    private final int limit;
+    private final Ticker ticker;
+    private final ClientExecutor<? super I, O, T> delegate;
+    private final Executor executor;
+    // guarded by monitor
+    private volatile int outstanding;
+    private volatile double window;
+    private double threshold;
+    private long minRtt;
+    private long smoothedRtt;
+    private long lastDecrease;
+
+    protected AdaptiveOutstandingClient(
+            int limit,
+            Ticker ticker,
+            ClientExecutor<? super I, O, T> delegate) {
+        this.limit = limit;
+        this.ticker = ticker;
+        this.delegate = delegate;
+        this.executor = MoreExecutors.directExecutor();
+        this.outstanding = 0;
+        this.window = Math.min(INITIAL_WINDOW, limit);
+        this.threshold = limit;
+        this.minRtt = Long.MAX_VALUE;
+        this.smoothedRtt = 0L;
+        this.lastDecrease = ticker.read();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getWindow() {
+        return (int) window;
+    }
+
+    public int getOutstanding() {
+        return outstanding;
+    }
+
+    @Override
+    public ListenableFuture<O> submit(I request) {
+        return submit(request, SettableFuturePromise.<O>create());
+    }
+
+    @Override
+    public ListenableFuture<O> submit(I request, Promise<O> promise) {
+        try {
+            monitor.enterWhen(notThrottled);
+        } catch (InterruptedException e) {
+            promise.setException(e);
+            return promise;
+        }
+
+        try {
+            ListenableFuture<O> future = delegate.submit(request, promise);
+            outstanding += 1;
+            future.addListener(new Listener(future, ticker.read()), executor);
+            return future;
+        } finally {
+            monitor.leave();
+        }
+    }
+
+    @Override
+    public void subscribe(T handler) {
+        delegate.subscribe(handler);
+    }
+
+    @Override
+    public boolean unsubscribe(T handler) {
+        return delegate.unsubscribe(handler);
+    }
+
+    // called with the monitor held
+    private void update(long rtt, boolean failed) {
+        if (rtt < minRtt) {
+            minRtt = rtt;
+        } else {
+            // forget the minimum slowly, in case the path changes
+            minRtt += (rtt - minRtt) >> 10;
+        }
+        smoothedRtt = (smoothedRtt == 0L) ? rtt : smoothedRtt + ((rtt - smoothedRtt) >> 3);
+
+        long now = ticker.read();
+        if (failed || (rtt > minRtt * DELAY_TOLERANCE)) {
+            if (now - lastDecrease > smoothedRtt) {
+                lastDecrease = now;
+                threshold = Math.max(window / 2.0, 1.0);
+                window = threshold;
+            }
+        } else if (window < threshold) {
+            window = Math.min(window + 1.0, limit);
+        } else {
+            window = Math.min(window + 1.0 / window, limit);
+        }
+    }
+
+    private class Listener implements Runnable {
+
+        private final ListenableFuture<O> future;
+        private final long started;
+
+        public Listener(ListenableFuture<O> future, long started) {
+            this.future = future;
+            this.started = started;
+        }
+
+        @Override
+        public void run() {
+            long rtt = ticker.read() - started;
+            boolean failed;
+            if (future.isCancelled()) {
+                failed = false;
+            } else {
+                try {
+                    Uninterruptibles.getUninterruptibly(future);
+                    failed = false;
+                } catch (ExecutionException e) {
+                    failed = true;
+                }
+            }
+            monitor.enter();
+            try {
+                assert (outstanding > 0);
+                outstanding -= 1;
+                if (! future.isCancelled()) {
+                    update(rtt, failed);
+                }
+            } finally {
+                monitor.leave();
+            }
+        }
+    }
+}
@@ -51,6 +51,7 @@ import edu.uw.zookeeper.protocol.client.AbstractConnectionClientExecutor;
 import edu.uw.zookeeper.protocol.client.ClientConnectionFactoryBuilder;
 import edu.uw.zookeeper.protocol.client.ConnectionClientExecutor;
 import edu.uw.zookeeper.protocol.client.OperationClientExecutor;
+import edu.uw.zookeeper.protocol.client.PingingClient;
 import edu.uw.zookeeper.protocol.proto.IWatcherEvent;
 
 public class ConnectionClientExecutorService<I extends Operation.Request, V extends Message.ServerResponse<?>> extends AbstractIdleService 
@@ -331,12 +332,15 @@ public class ConnectionClientExecutorService<I extends Operation.Request, V exte
         protected Optional<ServerInetAddressView> server;
         protected Optional<? extends ListenableFuture<? extends ConnectionClientExecutor<I,V,SessionListener,?>>> future;
         protected Promise<ConnectionClientExecutor<I,V,SessionListener,?>> promise;
+        // when the current connection attempt started
+        protected long connecting;
         
         public Client(ScheduledExecutorService scheduler) {
             this.scheduler = scheduler;
             this.server = Optional.absent();
             this.future = Optional.absent();
             this.promise = newPromise();
+            this.connecting = 0L;
         }
         
         protected Promise<ConnectionClientExecutor<I,V,SessionListener,?>> newPromise() {
@@ -382,6 +386,7 @@ public class ConnectionClientExecutorService<I extends Operation.Request, V exte
                                     backoff();
                                     Session session = response.toSession();
                                     logger.info("Reconnecting session {} to {}", session, server);
+                                    connecting = System.nanoTime();
                                     future = Optional.of(factory.get(server.get()).get(session));
                                 }
                             }
@@ -394,6 +399,7 @@ public class ConnectionClientExecutorService<I extends Operation.Request, V exte
                     if (!future.isPresent()) {
                         if (server.isPresent()) {
                             logger.info("Connecting new session to {}", server.get());
+                            connecting = System.nanoTime();
                             future = Optional.of(factory.get(server.get()).get());
                         } else {
                             cancel(false);
@@ -416,8 +422,12 @@ public class ConnectionClientExecutorService<I extends Operation.Request, V exte
                                     throw new ExecutionException(e);
                                 }
                                 if (session instanceof ConnectMessage.Response.Valid) {
+                                    factory.handleLatency(server.get(), System.nanoTime() - connecting);
                                     if (set(connection)) {
                                         connection.connection().subscribe(this);
+                                        if (connection.connection() instanceof PingingClient<?,?,?,?>) {
+                                            ((PingingClient<?,?,?,?>) connection.connection()).subscribeRoundTrips(new RoundTrips(server.get()));
+                                        }
                                     }
                                     return;
                                 } else {
@@ -432,6 +442,7 @@ public class ConnectionClientExecutorService<I extends Operation.Request, V exte
                             }
                         } catch (ExecutionException e) {
                             logger.warn("Error connecting to {}", server, e.getCause());
+                            factory.handleFailure(server.get());
                             if (factory.view().size() > 1) {
                                 Optional<ServerInetAddressView> prevServer = server;
                                 do {
@@ -466,6 +477,7 @@ public class ConnectionClientExecutorService<I extends Operation.Request, V exte
                 }
                 if (isRunning()) {
                     logger.warn("Connection closed to {}", server.get());
+                    factory.handleFailure(server.get());
                     if (factory.view().size() > 1) {
                         Optional<ServerInetAddressView> prevServer = server;
                         do {
@@ -499,4 +511,22 @@ public class ConnectionClientExecutorService<I extends Operation.Request, V exte
             return promise;
         }
     }
+    
+    /**
+     * Passes the ping round trips of one connection on to the selector
+     * as latencies of the server it is connected to.
+     */
+    protected class RoundTrips implements PingingClient.RoundTripListener {
+        
+        protected final ServerInetAddressView server;
+        
+        public RoundTrips(ServerInetAddressView server) {
+            this.server = server;
+        }
+
+        @Override
+        public void handleRoundTrip(long millis) {
+            factory.handleLatency(server, TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
 }
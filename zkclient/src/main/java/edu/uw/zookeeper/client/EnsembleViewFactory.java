@@ -2,11 +2,14 @@ package edu.uw.zookeeper.client;
 
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
 import com.google.common.base.Function;
+import com.google.common.base.Ticker;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 
@@ -29,7 +32,7 @@ public class EnsembleViewFactory<T> implements DefaultsFactory<ServerInetAddress
             EnsembleView<ServerInetAddressView> view, 
             TimeValue timeOut,
             ScheduledExecutorService executor) {
-        return random(
+        return latency(
                 view,  
                 ServerViewFactories.<C>newInstance(connections, timeOut, executor));
     }
@@ -43,6 +46,15 @@ public class EnsembleViewFactory<T> implements DefaultsFactory<ServerInetAddress
                 factory);
     }
     
+    public static <T> EnsembleViewFactory<T> latency(
+            EnsembleView<ServerInetAddressView> view,
+            ParameterizedFactory<ServerInetAddressView, T> factory) {
+        return newInstance(
+                view, 
+                LatencySelector.<ServerInetAddressView>newInstance(),
+                factory);
+    }
+    
     public static <T> EnsembleViewFactory<T> newInstance(
             EnsembleView<ServerInetAddressView> view,
             Function<ServerInetAddressView[], ServerInetAddressView> selector,
@@ -71,6 +83,130 @@ public class EnsembleViewFactory<T> implements DefaultsFactory<ServerInetAddress
         }
     }
 
+    /**
+     * Observations of servers that a selector may use.
+     */
+    public static interface Feedback<T> {
+        void handleLatency(T server, long nanos);
+        
+        void handleFailure(T server);
+    }
+    
+    /**
+     * Picks the better of two random servers, using a moving average
+     * of observed latencies and recent failures.
+     * 
+     * Comparing two random choices rather than all servers
+     * still spreads load across similar servers.
+     * Servers without observations are preferred, so that they are tried,
+     * and failures are forgotten over time, so that a server
+     * that has recovered is eventually tried again.
+     */
+    public static class LatencySelector<T> implements Function<T[], T>, Feedback<T> {
+        
+        public static <T> LatencySelector<T> newInstance() {
+            return newInstance(Ticker.systemTicker(), new Random());
+        }
+        
+        public static <T> LatencySelector<T> newInstance(Ticker ticker, Random random) {
+            return new LatencySelector<T>(ticker, random);
+        }
+        
+        // weight of the newest observation
+        public static final double ALPHA = 0.3;
+        // cost of a failure, in nanoseconds
+        public static final double FAILURE_PENALTY = TimeUnit.SECONDS.toNanos(1L);
+        public static final long FAILURE_HALF_LIFE = TimeUnit.SECONDS.toNanos(30L);
+        
+        protected final Ticker ticker;
+        protected final Random random;
+        protected final ConcurrentMap<T, Statistics> statistics;
+        
+        public LatencySelector(Ticker ticker, Random random) {
+            this.ticker = ticker;
+            this.random = random;
+            this.statistics = Maps.newConcurrentMap();
+        }
+        
+        @Override
+        @Nullable
+        public T apply(T[] input) {
+            switch (input.length) {
+            case 0:
+                return null;
+            case 1:
+                return input[0];
+            default:
+            {
+                int i = random.nextInt(input.length);
+                int j = random.nextInt(input.length - 1);
+                if (j >= i) {
+                    ++j;
+                }
+                long now = ticker.read();
+                return (cost(input[i], now) <= cost(input[j], now)) ? input[i] : input[j];
+            }
+            }
+        }
+
+        @Override
+        public void handleLatency(T server, long nanos) {
+            statisticsOf(server).handleLatency(nanos, ticker.read());
+        }
+
+        @Override
+        public void handleFailure(T server) {
+            statisticsOf(server).handleFailure(ticker.read());
+        }
+        
+        protected double cost(T server, long now) {
+            Statistics value = statistics.get(server);
+            return (value == null) ? 0.0 : value.cost(now);
+        }
+        
+        protected Statistics statisticsOf(T server) {
+            Statistics value = statistics.get(server);
+            if (value == null) {
+                value = new Statistics();
+                Statistics existing = statistics.putIfAbsent(server, value);
+                if (existing != null) {
+                    value = existing;
+                }
+            }
+            return value;
+        }
+        
+        protected static final class Statistics {
+            
+            // nanoseconds, or NaN if unknown
+            private double latency = Double.NaN;
+            private double failures = 0.0;
+            private long updated = 0L;
+            
+            public synchronized void handleLatency(long nanos, long now) {
+                latency = Double.isNaN(latency) ? nanos : (latency + ALPHA * (nanos - latency));
+                failures = decayed(now) * (1.0 - ALPHA);
+                updated = now;
+            }
+            
+            public synchronized void handleFailure(long now) {
+                failures = decayed(now) * (1.0 - ALPHA) + ALPHA;
+                updated = now;
+            }
+            
+            public synchronized double cost(long now) {
+                return (Double.isNaN(latency) ? 0.0 : latency) + decayed(now) * FAILURE_PENALTY;
+            }
+            
+            private double decayed(long now) {
+                if (failures == 0.0) {
+                    return 0.0;
+                }
+                return failures * Math.pow(0.5, (double) (now - updated) / FAILURE_HALF_LIFE);
+            }
+        }
+    }
+
     public static class InstanceFactory<V,T> implements ParameterizedFactory<V,T> {
 
         public static <V,T> InstanceFactory<V, T> newInstance(
@@ -148,6 +284,26 @@ public class EnsembleViewFactory<T> implements DefaultsFactory<ServerInetAddress
     public ServerInetAddressView select() {
         return selector.apply(Iterables.toArray(view, ServerInetAddressView.class));
     }
+    
+    /**
+     * Passed on to the selector if it takes feedback.
+     */
+    @SuppressWarnings("unchecked")
+    public void handleLatency(ServerInetAddressView server, long nanos) {
+        if (selector instanceof Feedback) {
+            ((Feedback<ServerInetAddressView>) selector).handleLatency(server, nanos);
+        }
+    }
+
+    /**
+     * Passed on to the selector if it takes feedback.
+     */
+    @SuppressWarnings("unchecked")
+    public void handleFailure(ServerInetAddressView server) {
+        if (selector instanceof Feedback) {
+            ((Feedback<ServerInetAddressView>) selector).handleFailure(server);
+        }
+    }
 
     @Override
     public T get() {
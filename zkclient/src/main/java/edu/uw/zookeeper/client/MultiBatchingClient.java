@@ -0,0 +1,310 @@
+package edu.uw.zookeeper.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.typesafe.config.ConfigValueType;
+
+import edu.uw.zookeeper.common.Configurable;
+import edu.uw.zookeeper.common.Configuration;
+import edu.uw.zookeeper.common.Promise;
+import edu.uw.zookeeper.common.SettableFuturePromise;
+import edu.uw.zookeeper.protocol.Message;
+import edu.uw.zookeeper.protocol.ProtocolResponseMessage;
+import edu.uw.zookeeper.protocol.SessionListener;
+import edu.uw.zookeeper.protocol.proto.IErrorResponse;
+import edu.uw.zookeeper.protocol.proto.IMultiRequest;
+import edu.uw.zookeeper.protocol.proto.IMultiResponse;
+import edu.uw.zookeeper.protocol.proto.Records;
+
+/**
+ * Packs consecutive CREATE, DELETE and SET_DATA requests into MULTI requests.
+ *
+ * At most one batch is outstanding at a time, and requests submitted
+ * meanwhile are queued in order, so batches grow with load.
+ * Each request completes with its own result from the MULTI response.
+ *
+ * Because a MULTI is atomic, when one operation fails no operation
+ * in the batch is applied. Then every operation in the batch is resubmitted
+ * individually, in order and before any queued request, so that a request
+ * never fails because of an unrelated request, and each request completes
+ * after the requests submitted before it.
+ *
+ * Requests are submitted to the delegate while holding a lock,
+ * so outstanding requests should be limited in front of this client,
+ * not behind it.
+ */
+public class MultiBatchingClient<T extends SessionListener> implements ClientExecutor<Records.Request, Message.ServerResponse<?>, T> {
+
+    public static <T extends SessionListener> ClientExecutor<? super Records.Request, Message.ServerResponse<?>, T> create(
+            Configuration configuration,
+            ClientExecutor<? super Records.Request, Message.ServerResponse<?>, T> client) {
+        int limit = ConfigurableBatch.get(configuration).intValue();
+        if (limit <= 1) {
+            return client;
+        } else {
+            return create(limit, client);
+        }
+    }
+
+    public static <T extends SessionListener> MultiBatchingClient<T> create(
+            int limit,
+            ClientExecutor<? super Records.Request, Message.ServerResponse<?>, T> client) {
+        checkArgument(limit > 0);
+        return new MultiBatchingClient<T>(limit, client);
+    }
+
+    /**
+     * Maximum operations per MULTI, or zero to not batch.
+     */
+    @Configurable(arg="multiBatch", value="0", type=ConfigValueType.NUMBER)
+    public static class ConfigurableBatch implements Function<Configuration, Integer> {
+
+        public static Integer get(Configuration configuration) {
+            return new ConfigurableBatch().apply(configuration);
+        }
+
+        @Override
+        public Integer apply(Configuration configuration) {
+            Configurable configurable = getClass().getAnnotation(Configurable.class);
+            return configuration.withConfigurable(configurable)
+                        .getConfigOrEmpty(configurable.path())
+                            .getInt(configurable.arg());
+        }
+    }
+
+    // well below the default server limit of 1 MiB per request
+    public static final int MAX_BATCH_BYTES = 1 << 19;
+
+    public static boolean isBatchable(Records.Request request) {
+        switch (request.opcode()) {
+        case CREATE:
+        case CREATE2:
+        case DELETE:
+        case SET_DATA:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    protected static int sizeOf(Records.Request request) {
+        int size = ((Records.PathGetter) request).getPath().length();
+        if (request instanceof Records.DataGetter) {
+            byte[] data = ((Records.DataGetter) request).getData();
+            if (data != null) {
+                size += data.length;
+            }
+        }
+        return size;
+    }
+
+    private final int limit;
+    private final ClientExecutor<? super Records.Request, Message.ServerResponse<?>, T> delegate;
+    // guarded by this
+    private final Queue<Queued> queued;
+    private boolean outstanding;
+    private boolean flushing;
+
+    protected MultiBatchingClient(
+            int limit,
+            ClientExecutor<? super Records.Request, Message.ServerResponse<?>, T> delegate) {
+        this.limit = limit;
+        this.delegate = delegate;
+        this.queued = Queues.newArrayDeque();
+        this.outstanding = false;
+        this.flushing = false;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public ListenableFuture<Message.ServerResponse<?>> submit(Records.Request request) {
+        return submit(request, SettableFuturePromise.<Message.ServerResponse<?>>create());
+    }
+
+    @Override
+    public ListenableFuture<Message.ServerResponse<?>> submit(
+            Records.Request request, Promise<Message.ServerResponse<?>> promise) {
+        synchronized (this) {
+            queued.add(new Queued(request, promise));
+            if (! outstanding) {
+                flush();
+            }
+        }
+        return promise;
+    }
+
+    @Override
+    public void subscribe(T handler) {
+        delegate.subscribe(handler);
+    }
+
+    @Override
+    public boolean unsubscribe(T handler) {
+        return delegate.unsubscribe(handler);
+    }
+
+    /**
+     * Submits queued requests in order, until a batch is outstanding.
+     * 
+     * A batch may complete while it is submitted, and then the flush
+     * already in progress continues, rather than a nested one.
+     */
+    protected synchronized void flush() {
+        if (flushing) {
+            return;
+        }
+        flushing = true;
+        try {
+            doFlush();
+        } finally {
+            flushing = false;
+        }
+    }
+    
+    private void doFlush() {
+        Queued next;
+        while (! outstanding && ((next = queued.poll()) != null)) {
+            if (! isBatchable(next.request)) {
+                next.submit();
+                continue;
+            }
+            List<Queued> batch = Lists.newArrayList();
+            batch.add(next);
+            int bytes = sizeOf(next.request);
+            while ((batch.size() < limit)
+                    && ((next = queued.peek()) != null)
+                    && isBatchable(next.request)
+                    && (bytes + sizeOf(next.request) <= MAX_BATCH_BYTES)) {
+                batch.add(queued.poll());
+                bytes += sizeOf(next.request);
+            }
+            outstanding = true;
+            if (batch.size() == 1) {
+                // nothing to roll back, so don't bother with a MULTI
+                next = batch.get(0);
+                next.submit();
+                next.promise.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        complete(ImmutableList.<Queued>of());
+                    }
+                }, MoreExecutors.directExecutor());
+            } else {
+                new Batch(batch).submit();
+            }
+        }
+    }
+
+    protected synchronized void complete(List<Queued> retries) {
+        for (Queued operation: retries) {
+            operation.submit();
+        }
+        outstanding = false;
+        flush();
+    }
+
+    protected final class Queued {
+
+        private final Records.Request request;
+        private final Promise<Message.ServerResponse<?>> promise;
+
+        public Queued(
+                Records.Request request,
+                Promise<Message.ServerResponse<?>> promise) {
+            this.request = request;
+            this.promise = promise;
+        }
+
+        public void submit() {
+            if (! promise.isDone()) {
+                delegate.submit(request, promise);
+            }
+        }
+    }
+
+    protected final class Batch implements Runnable {
+
+        private final List<Queued> operations;
+        private ListenableFuture<Message.ServerResponse<?>> future;
+
+        public Batch(List<Queued> operations) {
+            this.operations = operations;
+            this.future = null;
+        }
+
+        public void submit() {
+            ImmutableList.Builder<Records.MultiOpRequest> requests = ImmutableList.builder();
+            for (Queued operation: operations) {
+                requests.add((Records.MultiOpRequest) operation.request);
+            }
+            future = delegate.submit(new IMultiRequest(requests.build()));
+            future.addListener(this, MoreExecutors.directExecutor());
+        }
+
+        @Override
+        public void run() {
+            Message.ServerResponse<?> response;
+            try {
+                response = future.get();
+            } catch (ExecutionException e) {
+                for (Queued operation: operations) {
+                    operation.promise.setException(e.getCause());
+                }
+                complete(ImmutableList.<Queued>of());
+                return;
+            } catch (CancellationException e) {
+                for (Queued operation: operations) {
+                    operation.promise.cancel(false);
+                }
+                complete(ImmutableList.<Queued>of());
+                return;
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+
+            Records.Response record = response.record();
+            if (! isApplied(record)) {
+                // the operation that failed fails again on its own,
+                // after the operations before it are applied
+                complete(operations);
+                return;
+            }
+            IMultiResponse results = (IMultiResponse) record;
+            for (int i=0; i<operations.size(); ++i) {
+                operations.get(i).promise.set(
+                        ProtocolResponseMessage.of(response.xid(), response.zxid(), results.get(i)));
+            }
+            complete(ImmutableList.<Queued>of());
+        }
+
+        /**
+         * @return false if no operation was applied
+         */
+        private boolean isApplied(Records.Response record) {
+            if (! (record instanceof IMultiResponse) 
+                    || (((IMultiResponse) record).size() != operations.size())) {
+                return false;
+            }
+            for (Records.MultiOpResponse result: (IMultiResponse) record) {
+                if (result instanceof IErrorResponse) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
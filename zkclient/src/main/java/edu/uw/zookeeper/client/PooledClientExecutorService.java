@@ -0,0 +1,226 @@
+package edu.uw.zookeeper.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Service;
+import com.typesafe.config.ConfigValueType;
+
+import edu.uw.zookeeper.common.Configurable;
+import edu.uw.zookeeper.common.Configuration;
+import edu.uw.zookeeper.common.Factory;
+import edu.uw.zookeeper.common.Promise;
+import edu.uw.zookeeper.common.SettableFuturePromise;
+import edu.uw.zookeeper.protocol.Message;
+import edu.uw.zookeeper.protocol.Operation;
+import edu.uw.zookeeper.protocol.SessionListener;
+import edu.uw.zookeeper.protocol.proto.Records;
+
+/**
+ * Spreads requests over a pool of sessions, each with its own connection.
+ *
+ * Each member reconnects on its own, and requests are routed around
+ * members that have stopped.
+ * Requests are only ordered with respect to other requests routed to
+ * the same session, so requests routed by path are ordered per path,
+ * and a request that depends on a request for another path should wait
+ * for its response. Ephemeral znodes and watches belong to
+ * whichever session the request was routed to.
+ */
+public class PooledClientExecutorService<I extends Operation.Request, V extends Message.ServerResponse<?>> extends AbstractIdleService
+        implements ClientExecutor<I,V,SessionListener> {
+
+    public static <I extends Operation.Request, V extends Message.ServerResponse<?>> PooledClientExecutorService<I,V> fromConfiguration(
+            Configuration configuration,
+            Factory<? extends ConnectionClientExecutorService<I,V>> factory) {
+        return newInstance(
+                SessionsConfiguration.get(configuration),
+                RoutingConfiguration.get(configuration),
+                factory);
+    }
+
+    public static <I extends Operation.Request, V extends Message.ServerResponse<?>> PooledClientExecutorService<I,V> newInstance(
+            int sessions,
+            Routing routing,
+            Factory<? extends ConnectionClientExecutorService<I,V>> factory) {
+        checkArgument(sessions > 0);
+        ImmutableList.Builder<ConnectionClientExecutorService<I,V>> members = ImmutableList.builder();
+        for (int i=0; i<sessions; ++i) {
+            members.add(factory.get());
+        }
+        return new PooledClientExecutorService<I,V>(members.build(), routing);
+    }
+
+    public static enum Routing {
+        /**
+         * Requests with a path go to a session chosen by the path,
+         * and other requests are spread round-robin.
+         */
+        PATH,
+        ROUND_ROBIN;
+    }
+
+    @Configurable(path="client", arg="sessions", value="1", type=ConfigValueType.NUMBER)
+    public static abstract class SessionsConfiguration {
+
+        public static Configurable getConfigurable() {
+            return SessionsConfiguration.class.getAnnotation(Configurable.class);
+        }
+
+        public static int get(Configuration configuration) {
+            Configurable configurable = getConfigurable();
+            return configuration.withConfigurable(configurable)
+                    .getConfigOrEmpty(configurable.path())
+                        .getInt(configurable.arg());
+        }
+
+        protected SessionsConfiguration() {}
+    }
+
+    @Configurable(path="client", arg="routing", value="path", help="path|round_robin")
+    public static abstract class RoutingConfiguration {
+
+        public static Configurable getConfigurable() {
+            return RoutingConfiguration.class.getAnnotation(Configurable.class);
+        }
+
+        public static Routing get(Configuration configuration) {
+            Configurable configurable = getConfigurable();
+            String value = configuration.withConfigurable(configurable)
+                    .getConfigOrEmpty(configurable.path())
+                        .getString(configurable.arg());
+            return Routing.valueOf(value.toUpperCase(Locale.ENGLISH));
+        }
+
+        protected RoutingConfiguration() {}
+    }
+
+    protected final List<ConnectionClientExecutorService<I,V>> members;
+    protected final Routing routing;
+    protected final AtomicInteger next;
+
+    protected PooledClientExecutorService(
+            List<ConnectionClientExecutorService<I,V>> members,
+            Routing routing) {
+        checkArgument(! members.isEmpty());
+        this.members = members;
+        this.routing = routing;
+        this.next = new AtomicInteger(0);
+    }
+
+    public List<ConnectionClientExecutorService<I,V>> members() {
+        return members;
+    }
+
+    public Routing routing() {
+        return routing;
+    }
+
+    @Override
+    public ListenableFuture<V> submit(I request) {
+        return submit(request, SettableFuturePromise.<V>create());
+    }
+
+    @Override
+    public ListenableFuture<V> submit(I request, Promise<V> promise) {
+        ConnectionClientExecutorService<I,V> member;
+        try {
+            member = select(request);
+        } catch (Exception e) {
+            promise.setException(e);
+            return promise;
+        }
+        return member.submit(request, promise);
+    }
+
+    @Override
+    public void subscribe(SessionListener listener) {
+        for (ConnectionClientExecutorService<I,V> member: members) {
+            member.subscribe(listener);
+        }
+    }
+
+    @Override
+    public boolean unsubscribe(SessionListener listener) {
+        boolean unsubscribed = false;
+        for (ConnectionClientExecutorService<I,V> member: members) {
+            unsubscribed = member.unsubscribe(listener) || unsubscribed;
+        }
+        return unsubscribed;
+    }
+
+    /**
+     * @throws IllegalStateException if no member is running
+     */
+    protected ConnectionClientExecutorService<I,V> select(I request) {
+        int size = members.size();
+        int index = -1;
+        if (routing == Routing.PATH) {
+            Records.Request record = null;
+            if (request instanceof Records.Request) {
+                record = (Records.Request) request;
+            } else if (request instanceof Operation.ProtocolRequest<?>) {
+                record = ((Operation.ProtocolRequest<?>) request).record();
+            }
+            if (record instanceof Records.PathGetter) {
+                int hash = ((Records.PathGetter) record).getPath().hashCode();
+                hash ^= (hash >>> 16);
+                index = (hash & Integer.MAX_VALUE) % size;
+            }
+        }
+        if (index < 0) {
+            index = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+        }
+        // route around members that have stopped
+        for (int i=0; i<size; ++i) {
+            ConnectionClientExecutorService<I,V> member = members.get((index + i) % size);
+            if (member.state() == Service.State.RUNNING) {
+                return member;
+            }
+        }
+        throw new IllegalStateException(String.valueOf(state()));
+    }
+
+    @Override
+    protected Executor executor() {
+        return MoreExecutors.directExecutor();
+    }
+
+    @Override
+    protected void startUp() throws Exception {
+        for (ConnectionClientExecutorService<I,V> member: members) {
+            member.startAsync();
+        }
+        try {
+            for (ConnectionClientExecutorService<I,V> member: members) {
+                member.awaitRunning();
+            }
+        } catch (Exception e) {
+            // don't leak the connections of members that did start
+            shutDown();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void shutDown() throws Exception {
+        for (ConnectionClientExecutorService<I,V> member: members) {
+            member.stopAsync();
+        }
+        for (ConnectionClientExecutorService<I,V> member: members) {
+            try {
+                member.awaitTerminated();
+            } catch (IllegalStateException e) {
+                // failed members are already stopped
+            }
+        }
+    }
+}
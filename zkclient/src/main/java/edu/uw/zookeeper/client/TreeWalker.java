@@ -427,7 +427,6 @@ public class TreeWalker<V> extends AbstractActor<ZNodePath> implements Listenabl
 
     protected synchronized void handleRequest(SubmittedRequest<Records.Request,?> request) {
         assert (request.isDone());
-        pending.remove(request);
         if (!isDone() && (state() != State.TERMINATED)) {
             try {
                 Optional<V> value = builder.getResult().apply(Optional.of(request));
@@ -442,7 +441,12 @@ public class TreeWalker<V> extends AbstractActor<ZNodePath> implements Listenabl
             } catch (Exception e) {
                 future.setException(e);
             }
+            // children may complete while they are sent,
+            // so this request is pending until all of them are sent
+            pending.remove(request);
             run();
+        } else {
+            pending.remove(request);
         }
     }
 
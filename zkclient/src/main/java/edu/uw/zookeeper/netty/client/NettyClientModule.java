@@ -13,13 +13,18 @@ import edu.uw.zookeeper.net.Connection;
 import edu.uw.zookeeper.net.NetClientModule;
 import edu.uw.zookeeper.netty.ChannelClientConnectionFactory;
 import edu.uw.zookeeper.netty.ChannelCodecConnection;
+import edu.uw.zookeeper.netty.NettyTransport;
 
 public class NettyClientModule implements NetClientModule {
 
     public static NettyClientModule newInstance(
             RuntimeModule runtime) {
         Factory<Bootstrap> bootstrapFactory = 
-                NioClientBootstrapFactory.newInstance(runtime.getThreadFactory(), runtime.getServiceMonitor());
+                NioClientBootstrapFactory.newInstance(
+                        NettyTransport.TransportConfiguration.get(runtime.getConfiguration()),
+                        NettyTransport.WorkerThreadsConfiguration.get(runtime.getConfiguration()),
+                        runtime.getThreadFactory(), 
+                        runtime.getServiceMonitor());
         return newInstance(bootstrapFactory);
     }
     
@@ -4,14 +4,14 @@ import java.util.concurrent.ThreadFactory;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.Channel;
 import edu.uw.zookeeper.common.Factory;
 import edu.uw.zookeeper.common.ParameterizedFactory;
 import edu.uw.zookeeper.common.Reference;
 import edu.uw.zookeeper.common.ServiceMonitor;
 import edu.uw.zookeeper.netty.DaemonThreadFactory;
 import edu.uw.zookeeper.netty.EventLoopGroupService;
-import edu.uw.zookeeper.netty.NioEventLoopGroupFactory;
+import edu.uw.zookeeper.netty.NettyTransport;
 import edu.uw.zookeeper.netty.SimpleBootstrapFactory;
 
 public class NioClientBootstrapFactory implements Factory<Bootstrap> {
@@ -19,25 +19,54 @@ public class NioClientBootstrapFactory implements Factory<Bootstrap> {
     public static NioClientBootstrapFactory newInstance(
             Factory<ThreadFactory> threadFactory,
             ServiceMonitor serviceMonitor) {
+        return newInstance(NettyTransport.NIO, threadFactory, serviceMonitor);
+    }
+
+    public static NioClientBootstrapFactory newInstance(
+            NettyTransport transport,
+            Factory<ThreadFactory> threadFactory,
+            ServiceMonitor serviceMonitor) {
+        return newInstance(transport, 0, threadFactory, serviceMonitor);
+    }
+
+    /**
+     * @param nthreads threads that handle connections, or zero for the Netty default
+     */
+    public static NioClientBootstrapFactory newInstance(
+            NettyTransport transport,
+            int nthreads,
+            Factory<ThreadFactory> threadFactory,
+            ServiceMonitor serviceMonitor) {
         ThreadFactory threads = DaemonThreadFactory.getInstance().get(threadFactory.get());
         Reference<? extends EventLoopGroup> groupFactory = EventLoopGroupService.factory(
-                NioEventLoopGroupFactory.DEFAULT,
+                transport.eventLoopGroupFactory(nthreads),
                 serviceMonitor).get(threads);
-        return newInstance(groupFactory);
+        return newInstance(transport.channelType(), groupFactory);
     }
 
     public static NioClientBootstrapFactory newInstance(
             Factory<? extends EventLoopGroup> groupFactory) {
-        return new NioClientBootstrapFactory(groupFactory);
+        return newInstance(NettyTransport.NIO.channelType(), groupFactory);
+    }
+
+    /**
+     * @param channelType must be compatible with the event loops of groupFactory
+     */
+    public static NioClientBootstrapFactory newInstance(
+            Class<? extends Channel> channelType,
+            Factory<? extends EventLoopGroup> groupFactory) {
+        return new NioClientBootstrapFactory(channelType, groupFactory);
     }
     
     protected final Factory<? extends EventLoopGroup> groupFactory;
     protected final ParameterizedFactory<Factory<? extends EventLoopGroup>, Bootstrap> bootstrapFactory;
     
-    protected NioClientBootstrapFactory(Factory<? extends EventLoopGroup> groupFactory) {
+    protected NioClientBootstrapFactory(
+            Class<? extends Channel> channelType,
+            Factory<? extends EventLoopGroup> groupFactory) {
         this.groupFactory = groupFactory;
         this.bootstrapFactory = SimpleBootstrapFactory.newInstance(
-                NioSocketChannel.class,
+                channelType,
                 ClientTcpChannelOptionsFactory.getInstance());
     }
 
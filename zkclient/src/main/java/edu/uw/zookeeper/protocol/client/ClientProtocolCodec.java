@@ -3,8 +3,6 @@ package edu.uw.zookeeper.protocol.client;
 import io.netty.buffer.ByteBuf;
 
 import java.io.IOException;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.logging.log4j.LogManager;
 
@@ -14,7 +12,7 @@ import com.google.common.base.Optional;
 
 import edu.uw.zookeeper.common.Automaton;
 import edu.uw.zookeeper.common.Automatons;
-import edu.uw.zookeeper.common.Pair;
+import edu.uw.zookeeper.common.LongConcurrentHashMap;
 import edu.uw.zookeeper.common.Reference;
 import edu.uw.zookeeper.common.Stateful;
 import edu.uw.zookeeper.common.Automatons.AutomatonListener;
@@ -61,47 +59,45 @@ public class ClientProtocolCodec
         return new ClientProtocolCodec(automaton, encoder, decoder, pending.get());
     }
     
-    protected static class Pending implements Function<Integer, OpCode>, Reference<Queue<Pair<Integer, OpCode>>> {
+    /**
+     * Pending requests indexed by xid, so that responses may arrive in any order.
+     */
+    protected static class Pending implements Function<Integer, OpCode>, Reference<LongConcurrentHashMap<OpCode>> {
         public static Pending newInstance() {
-            return new Pending(new ConcurrentLinkedQueue<Pair<Integer, OpCode>>());
+            return new Pending(LongConcurrentHashMap.<OpCode>create(0, 1));
         }
         
-        // must be thread-safe
-        private final Queue<Pair<Integer, OpCode>> queue;
+        private final LongConcurrentHashMap<OpCode> xids;
         
-        public Pending(Queue<Pair<Integer, OpCode>> queue) {
-            this.queue = queue;
+        public Pending(LongConcurrentHashMap<OpCode> xids) {
+            this.xids = xids;
         }
 
         @Override
         public OpCode apply(Integer xid) {
-            Pair<Integer, OpCode> next = queue.peek();
-            if (next == null) {
-                throw new IllegalStateException(String.format("Unexpected xid (%d), no pending requests", xid));
-            }
-            if (xid.equals(next.first())) {
-                return next.second();
-            } else {
-                throw new IllegalArgumentException(String.format("Unexpected xid (%d), expecting %s", xid, next));
+            OpCode opcode = xids.get(xid.longValue());
+            if (opcode == null) {
+                throw new IllegalStateException(String.format("Unexpected xid (%d), no pending request", xid));
             }
+            return opcode;
         }
 
         @Override
-        public Queue<Pair<Integer, OpCode>> get() {
-            return queue;
+        public LongConcurrentHashMap<OpCode> get() {
+            return xids;
         }
     }
 
     protected final Automatons.EventfulAutomaton<ProtocolState, Object> automaton;
     protected final Encoder<? super Message.ClientSession, ?> encoder;
     protected final Decoder<Optional<Message.ServerSession>, ?> decoder;
-    protected final Queue<Pair<Integer, OpCode>> pending;
+    protected final LongConcurrentHashMap<OpCode> pending;
     
     protected ClientProtocolCodec(
             Automatons.EventfulAutomaton<ProtocolState, Object> automaton,
             Encoder<? super Message.ClientSession, ?> encoder,
             Decoder<Optional<Message.ServerSession>, ?> decoder,
-            Queue<Pair<Integer, OpCode>> pending) {
+            LongConcurrentHashMap<OpCode> pending) {
         this.automaton = automaton;
         this.encoder = encoder;
         this.decoder = decoder;
@@ -141,8 +137,7 @@ public class ClientProtocolCodec
             if (! OpCodeXid.has(xid)) {
                 assert (input instanceof Operation.ProtocolRequest);
                 OpCode opcode = ((Operation.ProtocolRequest<?>) input).record().opcode();
-                Pair<Integer, OpCode> pair = Pair.create(xid, opcode);
-                pending.add(pair);
+                pending.put(xid, opcode);
             }
         }
     }
@@ -157,11 +152,10 @@ public class ClientProtocolCodec
         if (out.isPresent()) {
             automaton.apply(out.get());
             Message.ServerSession reply = out.get();
-            // the peek and poll need to be atomic
-            Pair<Integer, OpCode> next = pending.peek();
-            if ((next != null) && (reply instanceof Operation.RequestId)) {
-                if (next.first().equals(((Operation.RequestId) reply).xid())) {
-                    pending.poll();
+            if (reply instanceof Operation.RequestId) {
+                int xid = ((Operation.RequestId) reply).xid();
+                if (! OpCodeXid.has(xid)) {
+                    pending.remove(xid);
                 }
             }
         }
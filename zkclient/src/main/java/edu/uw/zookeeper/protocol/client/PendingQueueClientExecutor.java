@@ -18,6 +18,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 
 import edu.uw.zookeeper.common.Actors;
 import edu.uw.zookeeper.common.Automaton;
+import edu.uw.zookeeper.common.LongConcurrentHashMap;
 import edu.uw.zookeeper.common.Promise;
 import edu.uw.zookeeper.common.PromiseTask;
 import edu.uw.zookeeper.common.TimeValue;
@@ -163,6 +164,9 @@ public abstract class PendingQueueClientExecutor<
 
         protected final FutureCallback<? super T> callback;
         protected final C connection;
+        // tasks in the mailbox with a request xid, so that
+        // a response is matched without scanning the mailbox
+        protected final LongConcurrentHashMap<T> xids;
         
         protected Pending(
                 C connection,
@@ -172,6 +176,7 @@ public abstract class PendingQueueClientExecutor<
             super(connection, mailbox, logger);
             this.callback = callback;
             this.connection = connection;
+            this.xids = LongConcurrentHashMap.create(0, 1);
         }
 
         @Override
@@ -181,6 +186,9 @@ public abstract class PendingQueueClientExecutor<
             if (! mailbox.offer(message)) {
                 return false;
             }
+            if (! OpCodeXid.has(message.xid())) {
+                xids.put(message.xid(), message);
+            }
             try {
                 if (! message.isDone()) {
                     // mark pings as done on send because ZooKeeper doesn't care about their ordering
@@ -213,16 +221,22 @@ public abstract class PendingQueueClientExecutor<
             if (message instanceof Message.ServerResponse<?>) {
                 int xid = ((Message.ServerResponse<?>) message).xid();
                 if (! ((xid == OpCodeXid.PING.xid()) || (xid == OpCodeXid.NOTIFICATION.xid()))) {
-                    Iterator<T> tasks = mailbox.iterator();
                     T task = null;
-                    while (tasks.hasNext()) {
-                        T next = tasks.next();
-                        if ((next.xid() == xid) && !next.isDone()) {
-                            task = next;
-                            break;
+                    if (OpCodeXid.has(xid)) {
+                        Iterator<T> tasks = mailbox.iterator();
+                        while (tasks.hasNext()) {
+                            T next = tasks.next();
+                            if ((next.xid() == xid) && !next.isDone()) {
+                                task = next;
+                                break;
+                            }
                         }
+                    } else {
+                        task = xids.remove(xid);
                     }
                     if (task != null) {
+                        // responses may complete tasks out of order,
+                        // but callbacks are still applied in order
                         task.set((Message.ServerResponse<?>) message);
                     } else if (state() != State.TERMINATED) {
                         // This could happen if someone submitted a message without
@@ -262,6 +276,7 @@ public abstract class PendingQueueClientExecutor<
         protected synchronized boolean apply(T input) {
             if (input.isDone()) {
                 if (mailbox.remove(input)) {
+                    xids.remove(input.xid(), input);
                     callback.onSuccess(input);
                     return true;
                 }
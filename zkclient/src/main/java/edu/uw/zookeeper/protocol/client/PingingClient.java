@@ -6,6 +6,9 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import net.engio.mbassy.common.IConcurrentSet;
+import net.engio.mbassy.common.StrongConcurrentSet;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -60,6 +63,13 @@ public class PingingClient<I extends Operation.Request, O, V extends ProtocolCod
         return new PingingClient<I,O,V,T>(pingParameters, executor, connection);
     }
     
+    /**
+     * Notified of each ping round trip as its response is read.
+     */
+    public static interface RoundTripListener {
+        void handleRoundTrip(long millis);
+    }
+    
     private final ClientPingTask<I,O,T> pingTask;
 
     protected PingingClient(
@@ -72,6 +82,21 @@ public class PingingClient<I extends Operation.Request, O, V extends ProtocolCod
         new PingTaskListener();
     }
 
+    /**
+     * @return milliseconds between the last ping and its response, or -1 if unknown
+     */
+    public long pingRoundTrip() {
+        return pingTask.roundTrip();
+    }
+
+    public void subscribeRoundTrips(RoundTripListener listener) {
+        pingTask.roundTrips.add(listener);
+    }
+
+    public boolean unsubscribeRoundTrips(RoundTripListener listener) {
+        return pingTask.roundTrips.remove(listener);
+    }
+
     @Override
     public <I1 extends I> ListenableFuture<I1> write(I1 input) {
         pingTask.send(input);
@@ -119,7 +144,9 @@ public class PingingClient<I extends Operation.Request, O, V extends ProtocolCod
             return task;
         }
         
+        private final IConcurrentSet<RoundTripListener> roundTrips = new StrongConcurrentSet<RoundTripListener>();
         private long lastPing = 0L;
+        private long roundTrip = -1L;
 
         @SuppressWarnings("unchecked")
         protected ClientPingTask(
@@ -138,6 +165,10 @@ public class PingingClient<I extends Operation.Request, O, V extends ProtocolCod
             return lastPing;
         }
         
+        public synchronized long roundTrip() {
+            return roundTrip;
+        }
+        
         @Override
         public void handleConnectionRead(O message) {
             if (message instanceof ConnectMessage.Response) {
@@ -150,19 +181,28 @@ public class PingingClient<I extends Operation.Request, O, V extends ProtocolCod
                 } else {
                     stop();
                 }
-            } else {
-                if (logger.isTraceEnabled()) {
-                    if (message instanceof Operation.ProtocolResponse<?>) {
-                        if (((Operation.ProtocolResponse<?>) message).record().opcode() == OpCode.PING) {
-                            synchronized (this) {
-                                // of course, this pong could be for an earlier ping,
-                                // so this time difference is not very accurate...
-                                long pong = parameters.getNow();
-                                assert (pong > lastPing);
-                                logger.trace(
-                                        LoggingMarker.PING_MARKER.get(), String.format("PONG %s: %s",
-                                        (lastPing > 0L) ? (pong - lastPing) : "null", this));
-                            }
+            } else if (message instanceof Operation.ProtocolResponse<?>) {
+                if (((Operation.ProtocolResponse<?>) message).record().opcode() == OpCode.PING) {
+                    long sample = -1L;
+                    synchronized (this) {
+                        // of course, this pong could be for an earlier ping,
+                        // so this time difference is not very accurate...
+                        long pong = parameters.getNow();
+                        assert (pong >= lastPing);
+                        if (lastPing > 0L) {
+                            roundTrip = pong - lastPing;
+                            sample = roundTrip;
+                        }
+                        if (logger.isTraceEnabled()) {
+                            logger.trace(
+                                    LoggingMarker.PING_MARKER.get(), String.format("PONG %s: %s",
+                                    (lastPing > 0L) ? (pong - lastPing) : "null", this));
+                        }
+                    }
+                    if (sample >= 0L) {
+                        // the sample from this response, not one read later
+                        for (RoundTripListener listener: roundTrips) {
+                            listener.handleRoundTrip(sample);
                         }
                     }
                 }
@@ -236,7 +276,7 @@ public class PingingClient<I extends Operation.Request, O, V extends ProtocolCod
         
         @Override   
         protected synchronized MoreObjects.ToStringHelper toStringHelper() {
-            return super.toStringHelper().add("lastPing", lastPing);
+            return super.toStringHelper().add("lastPing", lastPing).add("roundTrip", roundTrip);
         }
     }
 }
@@ -0,0 +1,152 @@
+package edu.uw.zookeeper.client;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.zookeeper.KeeperException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+
+import edu.uw.zookeeper.client.MultiBatchingClientTest.FakeClient;
+import edu.uw.zookeeper.client.MultiBatchingClientTest.Submitted;
+import edu.uw.zookeeper.protocol.Message;
+import edu.uw.zookeeper.protocol.SessionListener;
+import edu.uw.zookeeper.protocol.proto.ISetDataRequest;
+import edu.uw.zookeeper.protocol.proto.Records;
+
+@RunWith(JUnit4.class)
+public class AdaptiveOutstandingClientTest {
+
+    public static final long RTT = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    @Test
+    public void testSlowStart() {
+        Fixture fixture = new Fixture(40);
+        assertEquals(AdaptiveOutstandingClient.INITIAL_WINDOW, fixture.client.getWindow());
+
+        // doubles every round trip
+        fixture.round(16, RTT);
+        assertEquals(32, fixture.client.getWindow());
+        assertEquals(0, fixture.client.getOutstanding());
+
+        // up to the limit
+        fixture.round(32, RTT);
+        assertEquals(40, fixture.client.getWindow());
+        fixture.round(40, RTT);
+        assertEquals(40, fixture.client.getWindow());
+    }
+
+    @Test
+    public void testAdditiveIncrease() {
+        Fixture fixture = new Fixture(1000);
+        fixture.round(16, RTT);
+        assertEquals(32, fixture.client.getWindow());
+        fixture.fail(RTT);
+        assertEquals(16, fixture.client.getWindow());
+
+        // past the threshold, grows by one every round trip
+        fixture.round(16, RTT);
+        assertEquals(16, fixture.client.getWindow());
+        fixture.round(16, RTT);
+        assertEquals(17, fixture.client.getWindow());
+        fixture.round(17, RTT);
+        assertEquals(18, fixture.client.getWindow());
+    }
+
+    @Test
+    public void testDecrease() {
+        Fixture fixture = new Fixture(1000);
+        fixture.round(16, RTT);
+        assertEquals(32, fixture.client.getWindow());
+
+        // delayed responses halve the window once per round trip
+        fixture.submit(2);
+        fixture.ticker.nanos += 3 * RTT;
+        fixture.respond();
+        assertEquals(16, fixture.client.getWindow());
+        fixture.respond();
+        assertEquals(16, fixture.client.getWindow());
+
+        // and so do failures
+        fixture.submit(2);
+        fixture.ticker.nanos += 2 * RTT;
+        fixture.failed();
+        assertEquals(8, fixture.client.getWindow());
+        fixture.failed();
+        assertEquals(8, fixture.client.getWindow());
+
+        // but not below one
+        for (int i=0; i<8; ++i) {
+            fixture.fail(2 * RTT);
+        }
+        assertEquals(1, fixture.client.getWindow());
+        fixture.round(1, RTT);
+        assertEquals(2, fixture.client.getWindow());
+    }
+
+    protected static final class ManualTicker extends Ticker {
+
+        public long nanos = 0L;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+    }
+
+    protected static final class Fixture {
+
+        public final ManualTicker ticker;
+        public final FakeClient delegate;
+        public final AdaptiveOutstandingClient<Records.Request, Message.ServerResponse<?>, SessionListener> client;
+
+        public Fixture(int limit) {
+            this.ticker = new ManualTicker();
+            this.delegate = new FakeClient();
+            this.client = AdaptiveOutstandingClient.create(limit, ticker, delegate);
+        }
+
+        public void submit(int count) {
+            for (int i=0; i<count; ++i) {
+                client.submit(new ISetDataRequest("/" + i, new byte[0], -1));
+            }
+        }
+
+        /**
+         * Submits count requests and then responds to all of them after rtt.
+         */
+        public void round(int count, long rtt) {
+            assertTrue(count <= client.getWindow() - client.getOutstanding());
+            submit(count);
+            ticker.nanos += rtt;
+            List<Submitted> submitted = Lists.newArrayList(delegate.submitted);
+            delegate.submitted.clear();
+            for (Submitted task: submitted) {
+                task.respond();
+            }
+        }
+
+        /**
+         * Submits a request that fails after rtt.
+         */
+        public void fail(long rtt) {
+            submit(1);
+            ticker.nanos += rtt;
+            failed();
+        }
+
+        public void respond() {
+            delegate.respond();
+        }
+
+        public void failed() {
+            delegate.submitted.remove().promise.setException(new KeeperException.ConnectionLossException());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package edu.uw.zookeeper.client;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.base.Ticker;
+
+@RunWith(JUnit4.class)
+public class LatencySelectorTest {
+
+    public static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1L);
+    public static final String[] SERVERS = { "a", "b" };
+
+    @Test
+    public void testUnknown() {
+        EnsembleViewFactory.LatencySelector<String> selector = EnsembleViewFactory.LatencySelector.newInstance(new ManualTicker(), new Random(1L));
+        selector.handleLatency("a", MILLIS);
+        // so that it is tried
+        for (int i=0; i<16; ++i) {
+            assertEquals("b", selector.apply(SERVERS));
+        }
+    }
+
+    @Test
+    public void testFaster() {
+        EnsembleViewFactory.LatencySelector<String> selector = EnsembleViewFactory.LatencySelector.newInstance(new ManualTicker(), new Random(1L));
+        selector.handleLatency("a", MILLIS);
+        selector.handleLatency("b", 5 * MILLIS);
+        for (int i=0; i<16; ++i) {
+            assertEquals("a", selector.apply(SERVERS));
+        }
+
+        // a moving average
+        for (int i=0; i<16; ++i) {
+            selector.handleLatency("a", 10 * MILLIS);
+        }
+        for (int i=0; i<16; ++i) {
+            assertEquals("b", selector.apply(SERVERS));
+        }
+    }
+
+    @Test
+    public void testFailure() {
+        ManualTicker ticker = new ManualTicker();
+        EnsembleViewFactory.LatencySelector<String> selector = EnsembleViewFactory.LatencySelector.newInstance(ticker, new Random(1L));
+        selector.handleLatency("a", MILLIS);
+        selector.handleLatency("b", 2 * MILLIS);
+        selector.handleFailure("a");
+        double penalty = EnsembleViewFactory.LatencySelector.ALPHA * EnsembleViewFactory.LatencySelector.FAILURE_PENALTY;
+        assertEquals(MILLIS + penalty, selector.cost("a", ticker.nanos), 1.0);
+        assertEquals("b", selector.apply(SERVERS));
+
+        // halved every half life
+        ticker.nanos += EnsembleViewFactory.LatencySelector.FAILURE_HALF_LIFE;
+        assertEquals(MILLIS + penalty / 2.0, selector.cost("a", ticker.nanos), 1.0);
+        assertEquals("b", selector.apply(SERVERS));
+
+        // until it is negligible
+        ticker.nanos += 10 * EnsembleViewFactory.LatencySelector.FAILURE_HALF_LIFE;
+        for (int i=0; i<16; ++i) {
+            assertEquals("a", selector.apply(SERVERS));
+        }
+
+        // and a success also reduces the penalty
+        selector.handleFailure("c");
+        selector.handleLatency("c", MILLIS);
+        assertEquals(MILLIS + penalty * (1.0 - EnsembleViewFactory.LatencySelector.ALPHA), selector.cost("c", ticker.nanos), 1.0);
+    }
+
+    protected static final class ManualTicker extends Ticker {
+
+        public long nanos = 0L;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+    }
+}
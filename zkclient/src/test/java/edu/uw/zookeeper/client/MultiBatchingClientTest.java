@@ -0,0 +1,269 @@
+package edu.uw.zookeeper.client;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.zookeeper.KeeperException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import edu.uw.zookeeper.common.Promise;
+import edu.uw.zookeeper.common.SettableFuturePromise;
+import edu.uw.zookeeper.protocol.Message;
+import edu.uw.zookeeper.protocol.ProtocolResponseMessage;
+import edu.uw.zookeeper.protocol.SessionListener;
+import edu.uw.zookeeper.protocol.proto.IErrorResponse;
+import edu.uw.zookeeper.protocol.proto.IGetDataRequest;
+import edu.uw.zookeeper.protocol.proto.IMultiRequest;
+import edu.uw.zookeeper.protocol.proto.IMultiResponse;
+import edu.uw.zookeeper.protocol.proto.ISetDataRequest;
+import edu.uw.zookeeper.protocol.proto.ISetDataResponse;
+import edu.uw.zookeeper.protocol.proto.Records;
+
+@RunWith(JUnit4.class)
+public class MultiBatchingClientTest {
+
+    public static final String FAILING = "/failing";
+
+    @Test
+    public void testBatch() throws Exception {
+        FakeClient delegate = new FakeClient();
+        MultiBatchingClient<SessionListener> client = MultiBatchingClient.create(4, delegate);
+        // the first request is submitted by itself
+        ListenableFuture<Message.ServerResponse<?>> first = client.submit(setData("/0"));
+        List<ListenableFuture<Message.ServerResponse<?>>> futures = Lists.newArrayList();
+        for (int i=1; i<4; ++i) {
+            futures.add(client.submit(setData("/" + i)));
+        }
+        assertEquals(1, delegate.submitted.size());
+        delegate.respond();
+        assertTrue(first.get().record() instanceof ISetDataResponse);
+
+        // then the requests queued meanwhile are batched
+        assertEquals(1, delegate.submitted.size());
+        assertTrue(delegate.submitted.peek().request instanceof IMultiRequest);
+        assertEquals(3, ((IMultiRequest) delegate.submitted.peek().request).size());
+        delegate.respond();
+        for (ListenableFuture<Message.ServerResponse<?>> future: futures) {
+            assertTrue(future.get().record() instanceof ISetDataResponse);
+        }
+        assertTrue(delegate.submitted.isEmpty());
+    }
+
+    @Test
+    public void testOperationFailure() throws Exception {
+        FakeClient delegate = new FakeClient();
+        MultiBatchingClient<SessionListener> client = MultiBatchingClient.create(4, delegate);
+        client.submit(setData("/0"));
+        List<ListenableFuture<Message.ServerResponse<?>>> futures = ImmutableList.of(
+                client.submit(setData("/1")),
+                client.submit(setData(FAILING)),
+                client.submit(setData("/3")));
+        ListenableFuture<Message.ServerResponse<?>> queued = client.submit(new IGetDataRequest("/4", false));
+        delegate.respond();
+
+        // OK before the failing operation, RUNTIMEINCONSISTENCY after it
+        IMultiResponse results = (IMultiResponse) delegate.respond().record();
+        assertEquals(KeeperException.Code.OK, ((IErrorResponse) results.get(0)).error());
+        assertEquals(KeeperException.Code.NONODE, ((IErrorResponse) results.get(1)).error());
+        assertEquals(KeeperException.Code.RUNTIMEINCONSISTENCY, ((IErrorResponse) results.get(2)).error());
+
+        // every operation is resubmitted by itself and in order,
+        // and none completes before the ones before it
+        for (ListenableFuture<Message.ServerResponse<?>> future: futures) {
+            assertFalse(future.isDone());
+        }
+        assertEquals(4, delegate.submitted.size());
+        for (int i=0; i<futures.size(); ++i) {
+            assertFalse(futures.get(i).isDone());
+            delegate.respond();
+            assertTrue(futures.get(i).isDone());
+        }
+        assertTrue(futures.get(0).get().record() instanceof ISetDataResponse);
+        assertEquals(KeeperException.Code.NONODE, ((IErrorResponse) futures.get(1).get().record()).error());
+        assertTrue(futures.get(2).get().record() instanceof ISetDataResponse);
+
+        assertSame(delegate.submitted.peek().promise, queued);
+        delegate.respond();
+        assertTrue(delegate.submitted.isEmpty());
+    }
+
+    @Test
+    public void testMultiFailure() throws Exception {
+        FakeClient delegate = new FakeClient();
+        MultiBatchingClient<SessionListener> client = MultiBatchingClient.create(4, delegate);
+        client.submit(setData("/0"));
+        List<ListenableFuture<Message.ServerResponse<?>>> futures = ImmutableList.of(
+                client.submit(setData("/1")),
+                client.submit(setData("/2")));
+        delegate.respond();
+        ListenableFuture<Message.ServerResponse<?>> queued = client.submit(setData("/3"));
+
+        // the MULTI itself fails, so each operation fails
+        Exception failure = new KeeperException.ConnectionLossException();
+        delegate.submitted.remove().promise.setException(failure);
+        for (ListenableFuture<Message.ServerResponse<?>> future: futures) {
+            try {
+                future.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+
+        // and later requests are still submitted
+        assertEquals(1, delegate.submitted.size());
+        delegate.respond();
+        assertTrue(queued.get().record() instanceof ISetDataResponse);
+
+        // the MULTI is answered with an error for the MULTI,
+        // so each operation is resubmitted by itself
+        client.submit(setData("/0"));
+        futures = ImmutableList.of(
+                client.submit(setData("/1")),
+                client.submit(setData("/2")));
+        delegate.respond();
+        Submitted multi = delegate.submitted.remove();
+        multi.promise.set(ProtocolResponseMessage.of(0, 0L, new IErrorResponse(KeeperException.Code.SESSIONEXPIRED)));
+        assertEquals(futures.size(), delegate.submitted.size());
+        for (ListenableFuture<Message.ServerResponse<?>> future: futures) {
+            assertFalse(future.isDone());
+            delegate.respond();
+            assertTrue(future.get().record() instanceof ISetDataResponse);
+        }
+    }
+
+    @Test
+    public void testSynchronous() throws Exception {
+        FakeClient delegate = new FakeClient();
+        MultiBatchingClient<SessionListener> client = MultiBatchingClient.create(4, delegate);
+        client.submit(setData("/0"));
+        List<ListenableFuture<Message.ServerResponse<?>>> futures = Lists.newArrayList();
+        for (int i=1; i<1000; ++i) {
+            futures.add(client.submit(setData((i % 10 == 0) ? FAILING : ("/" + i))));
+        }
+
+        // completing each batch while it is submitted
+        // continues the flush that submitted it
+        delegate.synchronous = true;
+        delegate.respond();
+        assertTrue(delegate.submitted.isEmpty());
+        for (int i=0; i<futures.size(); ++i) {
+            Records.Response response = futures.get(i).get().record();
+            if ((i+1) % 10 == 0) {
+                assertEquals(KeeperException.Code.NONODE, ((IErrorResponse) response).error());
+            } else {
+                assertTrue(response instanceof ISetDataResponse);
+            }
+        }
+
+        futures.clear();
+        for (int i=0; i<100; ++i) {
+            futures.add(client.submit(setData("/" + i)));
+        }
+        for (ListenableFuture<Message.ServerResponse<?>> future: futures) {
+            assertTrue(future.get().record() instanceof ISetDataResponse);
+        }
+    }
+
+    protected static ISetDataRequest setData(String path) {
+        return new ISetDataRequest(path, new byte[0], -1);
+    }
+
+    protected static Records.Response respond(Records.Request request) {
+        if (request instanceof IMultiRequest) {
+            IMultiRequest multi = (IMultiRequest) request;
+            int failed = -1;
+            for (int i=0; i<multi.size(); ++i) {
+                if (FAILING.equals(((Records.PathGetter) multi.get(i)).getPath())) {
+                    failed = i;
+                    break;
+                }
+            }
+            List<Records.MultiOpResponse> results = Lists.newArrayListWithCapacity(multi.size());
+            for (int i=0; i<multi.size(); ++i) {
+                if (failed < 0) {
+                    results.add((Records.MultiOpResponse) respond(multi.get(i)));
+                } else if (i < failed) {
+                    results.add(new IErrorResponse(KeeperException.Code.OK));
+                } else if (i == failed) {
+                    results.add(new IErrorResponse(KeeperException.Code.NONODE));
+                } else {
+                    results.add(new IErrorResponse(KeeperException.Code.RUNTIMEINCONSISTENCY));
+                }
+            }
+            return new IMultiResponse(results);
+        } else if (FAILING.equals(((Records.PathGetter) request).getPath())) {
+            return new IErrorResponse(KeeperException.Code.NONODE);
+        } else {
+            return new ISetDataResponse();
+        }
+    }
+
+    protected static final class Submitted {
+
+        public final Records.Request request;
+        public final Promise<Message.ServerResponse<?>> promise;
+
+        public Submitted(
+                Records.Request request,
+                Promise<Message.ServerResponse<?>> promise) {
+            this.request = request;
+            this.promise = promise;
+        }
+
+        public Message.ServerResponse<?> respond() {
+            Message.ServerResponse<?> response = ProtocolResponseMessage.of(0, 0L, MultiBatchingClientTest.respond(request));
+            promise.set(response);
+            return response;
+        }
+    }
+
+    /**
+     * Holds requests until they are responded to, unless synchronous.
+     */
+    protected static final class FakeClient implements ClientExecutor<Records.Request, Message.ServerResponse<?>, SessionListener> {
+
+        public final Queue<Submitted> submitted = Queues.newArrayDeque();
+        public boolean synchronous = false;
+
+        public Message.ServerResponse<?> respond() {
+            return submitted.remove().respond();
+        }
+
+        @Override
+        public ListenableFuture<Message.ServerResponse<?>> submit(Records.Request request) {
+            return submit(request, SettableFuturePromise.<Message.ServerResponse<?>>create());
+        }
+
+        @Override
+        public ListenableFuture<Message.ServerResponse<?>> submit(
+                Records.Request request, Promise<Message.ServerResponse<?>> promise) {
+            Submitted task = new Submitted(request, promise);
+            if (synchronous) {
+                task.respond();
+            } else {
+                submitted.add(task);
+            }
+            return promise;
+        }
+
+        @Override
+        public void subscribe(SessionListener listener) {
+        }
+
+        @Override
+        public boolean unsubscribe(SessionListener listener) {
+            return false;
+        }
+    }
+}
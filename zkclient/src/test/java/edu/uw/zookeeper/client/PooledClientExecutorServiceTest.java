@@ -0,0 +1,180 @@
+package edu.uw.zookeeper.client;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Service;
+
+import edu.uw.zookeeper.common.Factory;
+import edu.uw.zookeeper.common.Promise;
+import edu.uw.zookeeper.protocol.Message;
+import edu.uw.zookeeper.protocol.proto.IGetDataRequest;
+import edu.uw.zookeeper.protocol.proto.IPingRequest;
+import edu.uw.zookeeper.protocol.proto.Records;
+
+@RunWith(JUnit4.class)
+public class PooledClientExecutorServiceTest {
+
+    @Test
+    public void testPath() {
+        Pool pool = new Pool(4, PooledClientExecutorService.Routing.PATH);
+        pool.service.startAsync().awaitRunning();
+        List<Integer> first = Lists.newArrayList();
+        for (int i=0; i<32; ++i) {
+            pool.service.submit(getData("/" + i));
+            first.add(pool.last());
+        }
+        // the same path always goes to the same member
+        for (int i=0; i<32; ++i) {
+            pool.service.submit(getData("/" + i));
+            assertEquals(first.get(i), pool.last());
+        }
+        // and paths are spread over the members
+        for (Member member: pool.members) {
+            assertFalse(member.submitted.isEmpty());
+        }
+
+        // requests without a path are spread round-robin
+        List<Integer> routed = Lists.newArrayList();
+        for (int i=0; i<4; ++i) {
+            pool.service.submit(Records.newInstance(IPingRequest.class));
+            routed.add(pool.last());
+        }
+        assertEquals(ImmutableList.of(0, 1, 2, 3), routed);
+        pool.service.stopAsync().awaitTerminated();
+    }
+
+    @Test
+    public void testRoundRobin() {
+        Pool pool = new Pool(3, PooledClientExecutorService.Routing.ROUND_ROBIN);
+        pool.service.startAsync().awaitRunning();
+        List<Integer> routed = Lists.newArrayList();
+        for (int i=0; i<6; ++i) {
+            pool.service.submit(getData("/"));
+            routed.add(pool.last());
+        }
+        assertEquals(ImmutableList.of(0, 1, 2, 0, 1, 2), routed);
+        pool.service.stopAsync().awaitTerminated();
+    }
+
+    @Test
+    public void testStopped() throws Exception {
+        Pool pool = new Pool(4, PooledClientExecutorService.Routing.PATH);
+        pool.service.startAsync().awaitRunning();
+        String path = "/0";
+        pool.service.submit(getData(path));
+        int routed = pool.last();
+
+        // routed to the next running member
+        pool.members.get(routed).stopAsync().awaitTerminated();
+        pool.service.submit(getData(path));
+        assertEquals((routed + 1) % 4, pool.last().intValue());
+
+        for (Member member: pool.members) {
+            member.stopAsync().awaitTerminated();
+        }
+        ListenableFuture<Message.ServerResponse<?>> future = pool.service.submit(getData(path));
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        pool.service.stopAsync().awaitTerminated();
+    }
+
+    @Test
+    public void testStartUpFailure() {
+        Pool pool = new Pool(3, PooledClientExecutorService.Routing.PATH);
+        pool.members.get(1).failing = true;
+        try {
+            pool.service.startAsync().awaitRunning();
+            fail();
+        } catch (IllegalStateException e) {}
+        assertEquals(Service.State.FAILED, pool.service.state());
+
+        // members that did start are stopped
+        assertEquals(Service.State.TERMINATED, pool.members.get(0).state());
+        assertEquals(Service.State.FAILED, pool.members.get(1).state());
+        assertEquals(Service.State.TERMINATED, pool.members.get(2).state());
+    }
+
+    protected static IGetDataRequest getData(String path) {
+        return new IGetDataRequest(path, false);
+    }
+
+    /**
+     * Members that record what is routed to them.
+     */
+    protected static final class Pool {
+
+        public final List<Member> members;
+        public final List<Integer> routed;
+        public final PooledClientExecutorService<Records.Request, Message.ServerResponse<?>> service;
+
+        public Pool(int sessions, PooledClientExecutorService.Routing routing) {
+            this.members = Lists.newArrayList();
+            this.routed = Lists.newArrayList();
+            this.service = PooledClientExecutorService.newInstance(sessions, routing,
+                    new Factory<Member>() {
+                        @Override
+                        public Member get() {
+                            Member member = new Member(members.size(), routed);
+                            members.add(member);
+                            return member;
+                        }
+                    });
+        }
+
+        /**
+         * @return the index of the member that the last request was routed to
+         */
+        public Integer last() {
+            return routed.get(routed.size() - 1);
+        }
+    }
+
+    protected static final class Member extends ConnectionClientExecutorService<Records.Request, Message.ServerResponse<?>> {
+
+        public final int index;
+        public final List<Integer> routed;
+        public final List<Records.Request> submitted;
+        public boolean failing;
+
+        public Member(int index, List<Integer> routed) {
+            super(null, null);
+            this.index = index;
+            this.routed = routed;
+            this.submitted = Lists.newArrayList();
+            this.failing = false;
+        }
+
+        @Override
+        public ListenableFuture<Message.ServerResponse<?>> submit(
+                Records.Request request, Promise<Message.ServerResponse<?>> promise) {
+            submitted.add(request);
+            routed.add(Integer.valueOf(index));
+            return promise;
+        }
+
+        @Override
+        protected void startUp() throws Exception {
+            if (failing) {
+                throw new IllegalStateException();
+            }
+        }
+
+        @Override
+        protected void shutDown() throws Exception {
+        }
+    }
+}
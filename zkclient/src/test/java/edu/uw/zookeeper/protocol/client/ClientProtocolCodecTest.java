@@ -0,0 +1,96 @@
+package edu.uw.zookeeper.protocol.client;
+
+import static org.junit.Assert.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+
+import org.apache.zookeeper.data.Stat;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.uw.zookeeper.data.Operations;
+import edu.uw.zookeeper.data.ZNodePath;
+import edu.uw.zookeeper.protocol.Message;
+import edu.uw.zookeeper.protocol.ProtocolRequestMessage;
+import edu.uw.zookeeper.protocol.ProtocolResponseMessage;
+import edu.uw.zookeeper.protocol.ProtocolState;
+import edu.uw.zookeeper.protocol.proto.IExistsResponse;
+import edu.uw.zookeeper.protocol.proto.IGetDataResponse;
+import edu.uw.zookeeper.protocol.proto.ISetDataResponse;
+import edu.uw.zookeeper.protocol.proto.ISetWatchesRequest;
+import edu.uw.zookeeper.protocol.proto.ISetWatchesResponse;
+import edu.uw.zookeeper.protocol.proto.OpCode;
+import edu.uw.zookeeper.protocol.proto.OpCodeXid;
+import edu.uw.zookeeper.protocol.proto.Records;
+
+@RunWith(JUnit4.class)
+public class ClientProtocolCodecTest {
+
+    @Test
+    public void testOutOfOrder() throws IOException {
+        ClientProtocolCodec codec = ClientProtocolCodec.newInstance(ProtocolState.CONNECTED);
+        encode(codec, ProtocolRequestMessage.of(1, Operations.Requests.getData().setPath(ZNodePath.root()).build()));
+        encode(codec, ProtocolRequestMessage.of(2, Operations.Requests.setData().setPath(ZNodePath.root()).build()));
+        encode(codec, ProtocolRequestMessage.of(3, Operations.Requests.exists().setPath(ZNodePath.root()).build()));
+        assertEquals(3, codec.pending.size());
+        assertEquals(OpCode.SET_DATA, codec.pending.get(2L));
+
+        // each response is decoded as the type of its own request
+        assertTrue(decode(codec, ProtocolResponseMessage.of(3, 1L, new IExistsResponse(new Stat()))).record() instanceof IExistsResponse);
+        assertNull(codec.pending.get(3L));
+        assertTrue(decode(codec, ProtocolResponseMessage.of(1, 1L, new IGetDataResponse(new byte[0], new Stat()))).record() instanceof IGetDataResponse);
+        assertTrue(decode(codec, ProtocolResponseMessage.of(2, 2L, new ISetDataResponse(new Stat()))).record() instanceof ISetDataResponse);
+        assertTrue(codec.pending.isEmpty());
+    }
+
+    @Test
+    public void testReservedXid() throws IOException {
+        ClientProtocolCodec codec = ClientProtocolCodec.newInstance(ProtocolState.CONNECTED);
+        encode(codec, ProtocolRequestMessage.of(1, Operations.Requests.getData().setPath(ZNodePath.root()).build()));
+        ImmutableList<String> watches = ImmutableList.of();
+        encode(codec, ProtocolRequestMessage.of(OpCodeXid.SET_WATCHES.xid(), new ISetWatchesRequest(0L, watches, watches, watches)));
+        // reserved xids aren't pending
+        assertEquals(1, codec.pending.size());
+
+        assertTrue(decode(codec, ProtocolResponseMessage.of(OpCodeXid.SET_WATCHES.xid(), 1L, Records.newInstance(ISetWatchesResponse.class))).record() instanceof ISetWatchesResponse);
+        assertEquals(OpCode.GET_DATA, codec.pending.get(1L));
+        assertTrue(decode(codec, ProtocolResponseMessage.of(1, 1L, new IGetDataResponse(new byte[0], new Stat()))).record() instanceof IGetDataResponse);
+        assertTrue(codec.pending.isEmpty());
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testUnexpectedXid() throws IOException {
+        ClientProtocolCodec codec = ClientProtocolCodec.newInstance(ProtocolState.CONNECTED);
+        encode(codec, ProtocolRequestMessage.of(1, Operations.Requests.getData().setPath(ZNodePath.root()).build()));
+        decode(codec, ProtocolResponseMessage.of(2, 1L, new IGetDataResponse(new byte[0], new Stat())));
+    }
+
+    protected static void encode(ClientProtocolCodec codec, Message.ClientSession request) throws IOException {
+        ByteBuf output = Unpooled.buffer();
+        try {
+            codec.encode(request, output);
+        } finally {
+            output.release();
+        }
+    }
+
+    protected static Message.ServerResponse<?> decode(ClientProtocolCodec codec, Message.ServerResponse<?> response) throws IOException {
+        ByteBuf message = Unpooled.buffer();
+        response.encode(message);
+        ByteBuf input = Unpooled.buffer().writeInt(message.readableBytes()).writeBytes(message);
+        message.release();
+        try {
+            Message.ServerResponse<?> decoded = (Message.ServerResponse<?>) codec.decode(input).get();
+            assertEquals(response.xid(), decoded.xid());
+            assertFalse(input.isReadable());
+            return decoded;
+        } finally {
+            input.release();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package edu.uw.zookeeper.protocol.client;
+
+import static org.junit.Assert.*;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.lang.ref.SoftReference;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.zookeeper.data.Stat;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureCallback;
+
+import edu.uw.zookeeper.common.SettableFuturePromise;
+import edu.uw.zookeeper.data.Operations;
+import edu.uw.zookeeper.data.ZNodePath;
+import edu.uw.zookeeper.netty.ChannelCodecConnection;
+import edu.uw.zookeeper.protocol.Message;
+import edu.uw.zookeeper.protocol.Operation;
+import edu.uw.zookeeper.protocol.ProtocolRequestMessage;
+import edu.uw.zookeeper.protocol.ProtocolResponseMessage;
+import edu.uw.zookeeper.protocol.ProtocolState;
+import edu.uw.zookeeper.protocol.proto.IGetDataResponse;
+import edu.uw.zookeeper.protocol.proto.ISetWatchesRequest;
+import edu.uw.zookeeper.protocol.proto.ISetWatchesResponse;
+import edu.uw.zookeeper.protocol.proto.OpCodeXid;
+import edu.uw.zookeeper.protocol.proto.Records;
+
+@RunWith(JUnit4.class)
+public class PendingQueueClientExecutorTest {
+
+    @Test
+    public void testOutOfOrder() throws Exception {
+        Fixture fixture = new Fixture();
+        List<PendingQueueClientExecutor.PendingTask> tasks = fixture.send(getData(1), getData(2), getData(3));
+        assertEquals(3, fixture.pending.xids.size());
+
+        // the response completes its own task
+        fixture.respond(getDataResponse(3));
+        assertTrue(tasks.get(2).isDone());
+        assertFalse(tasks.get(0).isDone());
+        assertNull(fixture.pending.xids.get(3L));
+        assertTrue(fixture.completed.isEmpty());
+
+        // but callbacks are in submission order
+        fixture.respond(getDataResponse(1));
+        assertEquals(ImmutableList.of(1), fixture.completed);
+        fixture.respond(getDataResponse(2));
+        assertEquals(ImmutableList.of(1, 2, 3), fixture.completed);
+        for (PendingQueueClientExecutor.PendingTask task: tasks) {
+            assertEquals(task.xid(), task.get().xid());
+        }
+        assertTrue(fixture.pending.xids.isEmpty());
+        assertFalse(fixture.pending.isReady());
+    }
+
+    @Test
+    public void testReservedXid() {
+        Fixture fixture = new Fixture();
+        ImmutableList<String> watches = ImmutableList.of();
+        List<PendingQueueClientExecutor.PendingTask> tasks = fixture.send(
+                getData(1),
+                ProtocolRequestMessage.of(OpCodeXid.SET_WATCHES.xid(), new ISetWatchesRequest(0L, watches, watches, watches)));
+        // reserved xids are matched in the mailbox
+        assertEquals(1, fixture.pending.xids.size());
+
+        fixture.respond(ProtocolResponseMessage.of(OpCodeXid.SET_WATCHES.xid(), 1L, Records.newInstance(ISetWatchesResponse.class)));
+        assertTrue(tasks.get(1).isDone());
+        assertFalse(tasks.get(0).isDone());
+        assertTrue(fixture.completed.isEmpty());
+
+        fixture.respond(getDataResponse(1));
+        assertEquals(ImmutableList.of(1, OpCodeXid.SET_WATCHES.xid()), fixture.completed);
+        assertTrue(fixture.pending.xids.isEmpty());
+    }
+
+    @Test
+    public void testCancel() {
+        Fixture fixture = new Fixture();
+        List<PendingQueueClientExecutor.PendingTask> tasks = fixture.send(getData(1), getData(2), getData(3));
+
+        tasks.get(0).cancel(true);
+        fixture.channel.runPendingTasks();
+        assertEquals(ImmutableList.of(1), fixture.completed);
+        assertNull(fixture.pending.xids.get(1L));
+
+        tasks.get(1).setException(new IllegalStateException());
+        fixture.channel.runPendingTasks();
+        assertEquals(ImmutableList.of(1, 2), fixture.completed);
+        assertNull(fixture.pending.xids.get(2L));
+
+        // a late response to a cancelled request doesn't complete another
+        fixture.respond(getDataResponse(1));
+        assertFalse(tasks.get(2).isDone());
+        assertEquals(1, fixture.pending.xids.size());
+
+        // nor is a request that fails to write left behind
+        fixture.channel.close();
+        fixture.channel.runPendingTasks();
+        fixture.respond(getDataResponse(3));
+        tasks = fixture.send(getData(4));
+        assertTrue(tasks.get(0).isDone());
+        assertEquals(ImmutableList.of(1, 2, 3, 4), fixture.completed);
+        assertTrue(fixture.pending.xids.isEmpty());
+    }
+
+    protected static Message.ClientRequest<?> getData(int xid) {
+        return ProtocolRequestMessage.of(xid, Operations.Requests.getData().setPath(ZNodePath.root()).build());
+    }
+
+    protected static Message.ServerResponse<?> getDataResponse(int xid) {
+        return ProtocolResponseMessage.of(xid, 1L, new IGetDataResponse(new byte[0], new Stat()));
+    }
+
+    /**
+     * Pending requests on an embedded channel, recording the xids of callbacks.
+     */
+    protected static final class Fixture implements FutureCallback<PendingQueueClientExecutor.PendingTask> {
+
+        public final EmbeddedChannel channel;
+        public final PendingQueueClientExecutor.Pending<Operation.ProtocolResponse<?>, PendingQueueClientExecutor.PendingTask, ClientProtocolConnection<Message.ClientSession, Message.ServerSession, ClientProtocolCodec, ChannelCodecConnection<Message.ClientSession, Message.ServerSession, ClientProtocolCodec>>> pending;
+        public final List<Integer> completed;
+
+        public Fixture() {
+            // an embedded channel needs a handler to start with
+            this.channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+            this.completed = Lists.newArrayList();
+            ClientProtocolConnection<Message.ClientSession, Message.ServerSession, ClientProtocolCodec, ChannelCodecConnection<Message.ClientSession, Message.ServerSession, ClientProtocolCodec>> connection =
+                    ClientProtocolConnection.newInstance(
+                            ChannelCodecConnection.defaults(
+                                    ClientProtocolCodec.newInstance(ProtocolState.CONNECTED), channel));
+            this.pending = PendingQueueClientExecutor.Pending.create(
+                    connection, this, LogManager.getLogger(PendingQueueClientExecutorTest.class));
+        }
+
+        public List<PendingQueueClientExecutor.PendingTask> send(Message.ClientRequest<?>...requests) {
+            List<PendingQueueClientExecutor.PendingTask> tasks = Lists.newArrayListWithCapacity(requests.length);
+            for (Message.ClientRequest<?> request: requests) {
+                PendingQueueClientExecutor.PendingTask task = PendingQueueClientExecutor.PendingTask.create(
+                        new SoftReference<Message.ClientRequest<?>>(request),
+                        SettableFuturePromise.<Message.ServerResponse<?>>create());
+                assertTrue(pending.send(task));
+                tasks.add(task);
+            }
+            channel.runPendingTasks();
+            return tasks;
+        }
+
+        public void respond(Message.ServerResponse<?> response) {
+            pending.handleConnectionRead(response);
+            channel.runPendingTasks();
+        }
+
+        @Override
+        public void onSuccess(PendingQueueClientExecutor.PendingTask result) {
+            completed.add(Integer.valueOf(result.xid()));
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            throw new AssertionError(t);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package edu.uw.zookeeper.common;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Histogram of non-negative values, e.g. latencies,
+ * in the style of HdrHistogram.
+ *
+ * Buckets are log-linear: each power of two is split into
+ * a fixed number of linear sub-buckets, so recording is constant time
+ * and reported percentiles are within about 3% of the recorded values,
+ * whatever their magnitude.
+ *
+ * Recording doesn't lock, and reading isn't a snapshot.
+ *
+ * Threadsafe.
+ */
+public final class LatencyHistogram {
+
+    public static LatencyHistogram create() {
+        return new LatencyHistogram();
+    }
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = indexOf(Long.MAX_VALUE) + 1;
+
+    protected static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return largest value with this index
+     */
+    protected static long highestOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long sub = SUB_BUCKETS + (index & (SUB_BUCKETS - 1));
+        return ((sub + 1L) << shift) - 1L;
+    }
+
+    private final AtomicLongArray counts;
+    private final StripedCounter count;
+    private final StripedCounter sum;
+    private final AtomicLong min;
+    private final AtomicLong max;
+
+    private LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = StripedCounter.create();
+        this.sum = StripedCounter.create();
+        this.min = new AtomicLong(Long.MAX_VALUE);
+        this.max = new AtomicLong(0L);
+    }
+
+    public void record(long value) {
+        checkArgument(value >= 0L);
+        counts.getAndIncrement(indexOf(value));
+        count.increment();
+        sum.add(value);
+        long current;
+        while (value < (current = min.get())) {
+            if (min.compareAndSet(current, value)) {
+                break;
+            }
+        }
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return zero if empty
+     */
+    public long min() {
+        long value = min.get();
+        return (value == Long.MAX_VALUE) ? 0L : value;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @return zero if empty
+     */
+    public double mean() {
+        long n = count();
+        return (n == 0L) ? 0.0 : ((double) sum.sum() / n);
+    }
+
+    /**
+     * @param percentile in (0, 100]
+     * @return smallest value that is at least as large as
+     *         this percentile of recorded values, within the bucket precision,
+     *         or zero if empty
+     */
+    public long percentile(double percentile) {
+        checkArgument((percentile > 0.0) && (percentile <= 100.0));
+        long total = 0L;
+        long[] snapshot = new long[BUCKETS];
+        for (int i=0; i<BUCKETS; ++i) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long rank = (long) Math.ceil(total * (percentile / 100.0));
+        long seen = 0L;
+        for (int i=0; i<BUCKETS; ++i) {
+            seen += snapshot[i];
+            if ((seen > 0L) && (seen >= rank)) {
+                return Math.min(highestOf(i), max());
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * Not atomic with respect to concurrent recording.
+     */
+    public void reset() {
+        for (int i=0; i<BUCKETS; ++i) {
+            counts.set(i, 0L);
+        }
+        count.sumThenReset();
+        sum.sumThenReset();
+        min.set(Long.MAX_VALUE);
+        max.set(0L);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("count", count())
+                .add("min", min())
+                .add("mean", mean())
+                .add("max", max())
+                .toString();
+    }
+}
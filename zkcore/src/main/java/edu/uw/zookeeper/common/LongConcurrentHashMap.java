@@ -0,0 +1,442 @@
+package edu.uw.zookeeper.common;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.primitives.Ints;
+
+/**
+ * Concurrent map keyed by primitive longs, e.g. session ids,
+ * that doesn't box keys or allocate an entry per mapping.
+ *
+ * Mappings are kept in open-addressing tables with linear probing,
+ * one per segment. Writes lock their segment, and reads don't lock.
+ * A removed mapping leaves its key behind until the segment is resized,
+ * so that a probe never skips over a key that is present.
+ *
+ * Null values aren't permitted, and iterators are weakly consistent.
+ * Methods that take a boxed key are only for compatibility
+ * with the Map interface.
+ *
+ * Threadsafe.
+ */
+public final class LongConcurrentHashMap<V> extends AbstractMap<Long, V> implements ConcurrentMap<Long, V> {
+
+    public static <V> LongConcurrentHashMap<V> create() {
+        return create(MIN_CAPACITY, defaultSegments());
+    }
+
+    /**
+     * @param capacity expected number of mappings
+     * @param segments rounded up to a power of two
+     */
+    public static <V> LongConcurrentHashMap<V> create(int capacity, int segments) {
+        checkArgument(capacity >= 0);
+        checkArgument(segments > 0);
+        int n = 1;
+        while (n < segments) {
+            n <<= 1;
+        }
+        return new LongConcurrentHashMap<V>(Math.max(capacity / n, 1), n);
+    }
+
+    public static int defaultSegments() {
+        return Runtime.getRuntime().availableProcessors() * 2;
+    }
+
+    private static final int MIN_CAPACITY = 16;
+    // marks the value of a removed mapping
+    private static final Object REMOVED = new Object();
+
+    private final Segment<V>[] segments;
+    private final int segmentMask;
+
+    @SuppressWarnings("unchecked")
+    private LongConcurrentHashMap(int capacity, int segments) {
+        this.segments = (Segment<V>[]) new Segment<?>[segments];
+        for (int i=0; i<segments; ++i) {
+            this.segments[i] = new Segment<V>(capacity);
+        }
+        this.segmentMask = segments - 1;
+    }
+
+    public V get(long key) {
+        long hash = hash(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    public boolean containsKey(long key) {
+        return (get(key) != null);
+    }
+
+    public V put(long key, V value) {
+        long hash = hash(key);
+        return segmentFor(hash).put(key, hash, checkNotNull(value), false);
+    }
+
+    public V putIfAbsent(long key, V value) {
+        long hash = hash(key);
+        return segmentFor(hash).put(key, hash, checkNotNull(value), true);
+    }
+
+    public V remove(long key) {
+        long hash = hash(key);
+        return segmentFor(hash).remove(key, hash, null);
+    }
+
+    public boolean remove(long key, Object value) {
+        if (value == null) {
+            return false;
+        }
+        long hash = hash(key);
+        return (segmentFor(hash).remove(key, hash, value) != null);
+    }
+
+    public V replace(long key, V value) {
+        long hash = hash(key);
+        return segmentFor(hash).replace(key, hash, null, checkNotNull(value));
+    }
+
+    public boolean replace(long key, V oldValue, V newValue) {
+        checkNotNull(oldValue);
+        long hash = hash(key);
+        return (segmentFor(hash).replace(key, hash, oldValue, checkNotNull(newValue)) != null);
+    }
+
+    @Override
+    public int size() {
+        long size = 0L;
+        for (Segment<V> segment: segments) {
+            size += segment.size;
+        }
+        return Ints.saturatedCast(size);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Segment<V> segment: segments) {
+            if (segment.size > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public V get(Object key) {
+        return (key instanceof Long) ? get(((Long) key).longValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return (get(key) != null);
+    }
+
+    @Override
+    public V put(Long key, V value) {
+        return put(key.longValue(), value);
+    }
+
+    @Override
+    public V putIfAbsent(Long key, V value) {
+        return putIfAbsent(key.longValue(), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return (key instanceof Long) ? remove(((Long) key).longValue()) : null;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return (key instanceof Long) && remove(((Long) key).longValue(), value);
+    }
+
+    @Override
+    public V replace(Long key, V value) {
+        return replace(key.longValue(), value);
+    }
+
+    @Override
+    public boolean replace(Long key, V oldValue, V newValue) {
+        return replace(key.longValue(), oldValue, newValue);
+    }
+
+    @Override
+    public void clear() {
+        for (Segment<V> segment: segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<Long, V>> entrySet() {
+        return new EntrySet();
+    }
+
+    private Segment<V> segmentFor(long hash) {
+        return segments[(int) (hash >>> 32) & segmentMask];
+    }
+
+    private static long hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * A table always has an empty slot, which ends every probe.
+     */
+    private static final class Table {
+
+        public static Table forSize(int size) {
+            int capacity = MIN_CAPACITY;
+            while (capacity - (capacity >>> 2) <= size) {
+                capacity <<= 1;
+            }
+            return new Table(capacity);
+        }
+
+        public final AtomicLongArray keys;
+        // null if empty
+        public final AtomicReferenceArray<Object> values;
+        public final int mask;
+        // three quarters of capacity
+        public final int threshold;
+
+        private Table(int capacity) {
+            this.keys = new AtomicLongArray(capacity);
+            this.values = new AtomicReferenceArray<Object>(capacity);
+            this.mask = capacity - 1;
+            this.threshold = capacity - (capacity >>> 2);
+        }
+
+        /**
+         * @return slot of key, or the empty slot where it would be added
+         */
+        public int indexOf(long key, long hash) {
+            int i = (int) hash & mask;
+            while ((values.get(i) != null) && (keys.get(i) != key)) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+    }
+
+    private static final class Segment<V> {
+
+        private volatile Table table;
+        // live mappings
+        private volatile int size;
+        // live and removed mappings, guarded by this
+        private int used;
+
+        public Segment(int capacity) {
+            this.table = Table.forSize(capacity);
+            this.size = 0;
+            this.used = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V get(long key, long hash) {
+            Table table = this.table;
+            int mask = table.mask;
+            for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+                // the value is written after the key
+                Object value = table.values.get(i);
+                if (value == null) {
+                    return null;
+                }
+                if (table.keys.get(i) == key) {
+                    return (value == REMOVED) ? null : (V) value;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public synchronized V put(long key, long hash, V value, boolean onlyIfAbsent) {
+            Table table = this.table;
+            int i = table.indexOf(key, hash);
+            Object existing = table.values.get(i);
+            if (existing == null) {
+                if (used + 1 > table.threshold) {
+                    table = resize(size + 1);
+                    i = table.indexOf(key, hash);
+                }
+                table.keys.set(i, key);
+                table.values.set(i, value);
+                ++used;
+                ++size;
+                return null;
+            } else if (existing == REMOVED) {
+                table.values.set(i, value);
+                ++size;
+                return null;
+            } else {
+                if (! onlyIfAbsent) {
+                    table.values.set(i, value);
+                }
+                return (V) existing;
+            }
+        }
+
+        /**
+         * @param expected if not null, only removes a mapping to an equal value
+         */
+        @SuppressWarnings("unchecked")
+        public synchronized V remove(long key, long hash, Object expected) {
+            Table table = this.table;
+            int i = table.indexOf(key, hash);
+            Object existing = table.values.get(i);
+            if ((existing == null) || (existing == REMOVED)) {
+                return null;
+            }
+            if ((expected != null) && ! expected.equals(existing)) {
+                return null;
+            }
+            table.values.set(i, REMOVED);
+            --size;
+            return (V) existing;
+        }
+
+        /**
+         * @param expected if not null, only replaces a mapping to an equal value
+         */
+        @SuppressWarnings("unchecked")
+        public synchronized V replace(long key, long hash, Object expected, V value) {
+            Table table = this.table;
+            int i = table.indexOf(key, hash);
+            Object existing = table.values.get(i);
+            if ((existing == null) || (existing == REMOVED)) {
+                return null;
+            }
+            if ((expected != null) && ! expected.equals(existing)) {
+                return null;
+            }
+            table.values.set(i, value);
+            return (V) existing;
+        }
+
+        public synchronized void clear() {
+            table = Table.forSize(0);
+            used = 0;
+            size = 0;
+        }
+
+        public Table table() {
+            return table;
+        }
+
+        // drops removed mappings
+        private Table resize(int size) {
+            Table from = this.table;
+            Table to = Table.forSize(size);
+            for (int i=0; i<=from.mask; ++i) {
+                Object value = from.values.get(i);
+                if ((value != null) && (value != REMOVED)) {
+                    long key = from.keys.get(i);
+                    int j = to.indexOf(key, hash(key));
+                    to.keys.set(j, key);
+                    to.values.set(j, value);
+                }
+            }
+            this.table = to;
+            this.used = this.size;
+            return to;
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<Long, V>> {
+
+        @Override
+        public Iterator<Map.Entry<Long, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return LongConcurrentHashMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return LongConcurrentHashMap.this.isEmpty();
+        }
+
+        @Override
+        public void clear() {
+            LongConcurrentHashMap.this.clear();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<Long, V>> {
+
+        private int segment;
+        private Table table;
+        private int index;
+        private Map.Entry<Long, V> next;
+        private Map.Entry<Long, V> last;
+
+        public EntryIterator() {
+            this.segment = 0;
+            this.table = segments[0].table();
+            this.index = 0;
+            this.next = null;
+            this.last = null;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return (next != null);
+        }
+
+        @Override
+        public Map.Entry<Long, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            advance();
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            LongConcurrentHashMap.this.remove(last.getKey().longValue());
+            last = null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (next == null) {
+                if (index > table.mask) {
+                    if (++segment == segments.length) {
+                        return;
+                    }
+                    table = segments[segment].table();
+                    index = 0;
+                }
+                Object value = table.values.get(index);
+                if ((value != null) && (value != REMOVED)) {
+                    next = new AbstractMap.SimpleImmutableEntry<Long, V>(
+                            Long.valueOf(table.keys.get(index)), (V) value);
+                }
+                ++index;
+            }
+        }
+    }
+}
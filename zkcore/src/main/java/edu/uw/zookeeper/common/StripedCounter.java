@@ -0,0 +1,91 @@
+package edu.uw.zookeeper.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Counter that is updated often and read rarely.
+ *
+ * Updates are spread over cells, each on its own cache line,
+ * by the updating thread, so that threads rarely contend.
+ * Reading sums the cells, so a read that is concurrent with updates
+ * isn't a snapshot.
+ *
+ * Threadsafe.
+ */
+public final class StripedCounter {
+
+    public static StripedCounter create() {
+        return create(defaultStripes());
+    }
+
+    /**
+     * @param stripes rounded up to a power of two
+     */
+    public static StripedCounter create(int stripes) {
+        int n = 1;
+        while (n < stripes) {
+            n <<= 1;
+        }
+        return new StripedCounter(n);
+    }
+
+    public static int defaultStripes() {
+        return Runtime.getRuntime().availableProcessors() * 2;
+    }
+
+    // longs per cache line
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    private StripedCounter(int stripes) {
+        this.cells = new AtomicLongArray(stripes * PADDING);
+        this.mask = stripes - 1;
+    }
+
+    public void increment() {
+        add(1L);
+    }
+
+    public void decrement() {
+        add(-1L);
+    }
+
+    public void add(long delta) {
+        cells.getAndAdd(index(), delta);
+    }
+
+    public long sum() {
+        long sum = 0L;
+        for (int i=0; i<cells.length(); i+=PADDING) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * @return sum before it was reset
+     */
+    public long sumThenReset() {
+        long sum = 0L;
+        for (int i=0; i<cells.length(); i+=PADDING) {
+            sum += cells.getAndSet(i, 0L);
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).addValue(sum()).toString();
+    }
+
+    private int index() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32));
+        h ^= (h >>> 16);
+        return (h & mask) * PADDING;
+    }
+}
@@ -0,0 +1,271 @@
+package edu.uw.zookeeper.common;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+
+/**
+ * Hierarchical timing wheel for many long-lived timeouts,
+ * e.g. one per session, that are rescheduled often.
+ *
+ * Each timeout is a node in a doubly-linked list, so scheduling,
+ * rescheduling, and cancelling a timeout are constant time
+ * and don't allocate.
+ * Timeouts expire no earlier than requested, and at most one tick late.
+ *
+ * A single periodic task on the scheduler advances the wheel
+ * while it has timeouts, and expired timeouts are run by that task
+ * without holding any lock.
+ *
+ * Threadsafe.
+ */
+public final class TimingWheel implements Runnable {
+
+    public static final long DEFAULT_TICK_MILLIS = 10L;
+
+    /**
+     * @return timing wheel that is shared by all callers with this scheduler
+     */
+    public static TimingWheel forScheduler(ScheduledExecutorService scheduler) {
+        synchronized (SHARED) {
+            TimingWheel wheel = SHARED.get(scheduler);
+            if (wheel == null) {
+                wheel = create(scheduler, DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, Ticker.systemTicker());
+                SHARED.put(scheduler, wheel);
+            }
+            return wheel;
+        }
+    }
+
+    public static TimingWheel create(
+            ScheduledExecutorService scheduler,
+            long tick,
+            TimeUnit unit,
+            Ticker ticker) {
+        checkArgument(tick > 0L);
+        return new TimingWheel(checkNotNull(scheduler), unit.toNanos(tick), checkNotNull(ticker));
+    }
+
+    // a wheel is collected once nothing uses it
+    private static final ConcurrentMap<ScheduledExecutorService, TimingWheel> SHARED =
+            new MapMaker().weakKeys().weakValues().makeMap();
+
+    private static final int LEVEL_BITS = 6;
+    private static final int SLOTS = 1 << LEVEL_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    // farther timeouts are placed at the farthest slot and cascaded again
+    private static final long MAX_DELTA = (1L << (LEVEL_BITS * LEVELS)) - 1L;
+
+    private final ScheduledExecutorService scheduler;
+    private final Ticker ticker;
+    private final long tickNanos;
+    private final long start;
+    // sentinel of each slot
+    private final Timeout[][] slots;
+    private final List<Timeout> expired;
+    // last tick that was processed
+    private long current;
+    private int size;
+    private ScheduledFuture<?> future;
+
+    private TimingWheel(
+            ScheduledExecutorService scheduler,
+            long tickNanos,
+            Ticker ticker) {
+        this.scheduler = scheduler;
+        this.ticker = ticker;
+        this.tickNanos = tickNanos;
+        this.start = ticker.read();
+        this.slots = new Timeout[LEVELS][SLOTS];
+        for (int i=0; i<LEVELS; ++i) {
+            for (int j=0; j<SLOTS; ++j) {
+                slots[i][j] = new Timeout(this, null);
+            }
+        }
+        this.expired = Lists.newArrayList();
+        this.current = 0L;
+        this.size = 0;
+        this.future = null;
+    }
+
+    public Timeout newTimeout(Runnable task) {
+        return new Timeout(this, checkNotNull(task));
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Advances the wheel to the current time and runs expired timeouts.
+     */
+    @Override
+    public void run() {
+        List<Timeout> expired;
+        synchronized (this) {
+            long now = elapsed();
+            while (current < now) {
+                ++current;
+                int index = (int) (current & SLOT_MASK);
+                for (int level=1; (index == 0) && (level < LEVELS); ++level) {
+                    index = (int) ((current >>> (LEVEL_BITS * level)) & SLOT_MASK);
+                    cascade(slots[level][index]);
+                }
+                Timeout head = slots[0][(int) (current & SLOT_MASK)];
+                while (head.next != head) {
+                    Timeout next = head.next;
+                    unlink(next);
+                    this.expired.add(next);
+                }
+            }
+            if ((size == 0) && (future != null)) {
+                future.cancel(false);
+                future = null;
+            }
+            if (this.expired.isEmpty()) {
+                return;
+            }
+            expired = Lists.newArrayList(this.expired);
+            this.expired.clear();
+        }
+        for (Timeout timeout: expired) {
+            timeout.task.run();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("tick", TimeUnit.NANOSECONDS.toMillis(tickNanos))
+                .add("size", size()).toString();
+    }
+
+    protected synchronized void schedule(Timeout timeout, long delay, TimeUnit unit) {
+        if (timeout.next != null) {
+            unlink(timeout);
+        }
+        if (future == null) {
+            // nothing was scheduled in the meantime
+            current = elapsed();
+            future = scheduler.scheduleAtFixedRate(this, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+        }
+        long nanos = ticker.read() - start + Math.max(unit.toNanos(delay), 0L);
+        // round up
+        timeout.deadline = Math.max((nanos + tickNanos - 1L) / tickNanos, current + 1L);
+        link(timeout);
+    }
+
+    protected synchronized boolean cancel(Timeout timeout) {
+        if (timeout.next == null) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+
+    protected synchronized boolean isScheduled(Timeout timeout) {
+        return (timeout.next != null);
+    }
+
+    private long elapsed() {
+        return (ticker.read() - start) / tickNanos;
+    }
+
+    private void link(Timeout timeout) {
+        long deadline = Math.min(timeout.deadline, current + MAX_DELTA);
+        long delta = deadline - current;
+        int level = 0;
+        while ((level < LEVELS - 1) && (delta >= (1L << (LEVEL_BITS * (level + 1))))) {
+            ++level;
+        }
+        Timeout head = slots[level][(int) ((deadline >>> (LEVEL_BITS * level)) & SLOT_MASK)];
+        timeout.prev = head.prev;
+        timeout.next = head;
+        head.prev.next = timeout;
+        head.prev = timeout;
+        ++size;
+    }
+
+    private void unlink(Timeout timeout) {
+        timeout.prev.next = timeout.next;
+        timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+        --size;
+    }
+
+    private void cascade(Timeout head) {
+        while (head.next != head) {
+            Timeout next = head.next;
+            unlink(next);
+            link(next);
+        }
+    }
+
+    /**
+     * A reusable timeout.
+     */
+    public static final class Timeout {
+
+        private final TimingWheel wheel;
+        private final Runnable task;
+        // guarded by wheel
+        private Timeout prev;
+        // guarded by wheel, null if not scheduled
+        private Timeout next;
+        // guarded by wheel
+        private long deadline;
+
+        private Timeout(TimingWheel wheel, Runnable task) {
+            this.wheel = wheel;
+            this.task = task;
+            if (task == null) {
+                // sentinel
+                this.prev = this;
+                this.next = this;
+            } else {
+                this.prev = null;
+                this.next = null;
+            }
+            this.deadline = 0L;
+        }
+
+        public TimingWheel wheel() {
+            return wheel;
+        }
+
+        public boolean isScheduled() {
+            return wheel.isScheduled(this);
+        }
+
+        /**
+         * Reschedules this timeout if it is already scheduled.
+         */
+        public void schedule(long delay, TimeUnit unit) {
+            wheel.schedule(this, delay, unit);
+        }
+
+        /**
+         * @return false if this timeout wasn't scheduled
+         */
+        public boolean cancel() {
+            return wheel.cancel(this);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this).addValue(task).toString();
+        }
+    }
+}
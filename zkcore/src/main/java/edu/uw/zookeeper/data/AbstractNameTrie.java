@@ -1,7 +1,10 @@
 package edu.uw.zookeeper.data;
 
 import java.lang.ref.WeakReference;
+import java.util.AbstractCollection;
 import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -9,12 +12,14 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
+import com.google.common.base.Function;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
 import com.google.common.collect.ForwardingMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.UnmodifiableIterator;
@@ -336,6 +341,291 @@ public abstract class AbstractNameTrie<E extends NameTrie.Node<E>> implements Na
             return children;
         }
     }
+
+    /**
+     * Node with a small footprint, for tries with many nodes.
+     * 
+     * Children are kept in an array of exactly their number,
+     * which is searched linearly and replaced on every change,
+     * until there are more than MAX_ARRAY_CHILDREN of them
+     * and they are moved to a map.
+     * The parent is referenced directly, 
+     * and the path is computed on demand rather than kept.
+     * 
+     * Equality is identity.
+     */
+    public static abstract class CompactNode<E extends CompactNode<E>> implements Node<E> {
+
+        public static final int MAX_ARRAY_CHILDREN = 8;
+        
+        private static final Object[] NO_CHILDREN = new Object[0];
+        
+        private final ZNodeName name;
+        private final E parent;
+        // either an Object[] of children or a Map<ZNodeName, E>
+        private Object children;
+
+        protected CompactNode(ZNodeName name, E parent) {
+            this.name = name;
+            this.parent = parent;
+            this.children = NO_CHILDREN;
+        }
+        
+        public ZNodeName name() {
+            return name;
+        }
+        
+        public boolean remove() {
+            if (parent != null) {
+                if (this == parent.get(name)) {
+                    E child = parent.remove(name);
+                    assert(child == this);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Pointer<E> parent() {
+            return StrongPointer.from(name, parent);
+        }
+
+        @Override
+        public ZNodePath path() {
+            if (parent == null) {
+                return RootZNodePath.getInstance();
+            }
+            int length = 0;
+            for (CompactNode<E> node = this; node.parent != null; node = node.parent) {
+                length += node.name.length() + 1;
+            }
+            char[] chars = new char[length];
+            for (CompactNode<E> node = this; node.parent != null; node = node.parent) {
+                String label = node.name.toString();
+                length -= label.length();
+                label.getChars(0, label.length(), chars, length);
+                chars[--length] = ZNodeName.SLASH;
+            }
+            return AbsoluteZNodePath.fromString(new String(chars));
+        }
+        
+        @Override
+        public int size() {
+            if (children instanceof Object[]) {
+                return ((Object[]) children).length;
+            } else {
+                return map().size();
+            }
+        }
+        
+        @Override
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+        
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            return (value instanceof CompactNode) && (get(((CompactNode<?>) value).name()) == value);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public E get(Object key) {
+            ZNodeName name = SimpleNode.toName(key);
+            if (children instanceof Object[]) {
+                for (Object child: (Object[]) children) {
+                    if (((E) child).name().equals(name)) {
+                        return (E) child;
+                    }
+                }
+                return null;
+            } else {
+                return map().get(name);
+            }
+        }
+
+        /**
+         * @param value child whose name is key
+         */
+        @SuppressWarnings("unchecked")
+        @Override
+        public E put(ZNodeName key, E value) {
+            assert (value.name().equals(key));
+            if (children instanceof Object[]) {
+                Object[] array = (Object[]) children;
+                for (int i=0; i<array.length; ++i) {
+                    if (((E) array[i]).name().equals(key)) {
+                        Object[] updated = array.clone();
+                        updated[i] = value;
+                        children = updated;
+                        return (E) array[i];
+                    }
+                }
+                if (array.length < MAX_ARRAY_CHILDREN) {
+                    Object[] updated = Arrays.copyOf(array, array.length + 1);
+                    updated[array.length] = value;
+                    children = updated;
+                } else {
+                    Map<ZNodeName, E> map = Maps.newHashMapWithExpectedSize(array.length + 1);
+                    for (Object child: array) {
+                        map.put(((E) child).name(), (E) child);
+                    }
+                    map.put(key, value);
+                    children = map;
+                }
+                return null;
+            } else {
+                return map().put(key, value);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public E remove(Object key) {
+            ZNodeName name = SimpleNode.toName(key);
+            if (children instanceof Object[]) {
+                Object[] array = (Object[]) children;
+                for (int i=0; i<array.length; ++i) {
+                    if (((E) array[i]).name().equals(name)) {
+                        if (array.length == 1) {
+                            children = NO_CHILDREN;
+                        } else {
+                            Object[] updated = new Object[array.length - 1];
+                            System.arraycopy(array, 0, updated, 0, i);
+                            System.arraycopy(array, i + 1, updated, i, array.length - i - 1);
+                            children = updated;
+                        }
+                        return (E) array[i];
+                    }
+                }
+                return null;
+            } else {
+                Map<ZNodeName, E> map = map();
+                E child = map.remove(name);
+                // demote only well below the threshold, so that
+                // a node at the threshold doesn't alternate
+                if ((child != null) && (map.size() <= MAX_ARRAY_CHILDREN / 2)) {
+                    children = map.values().toArray();
+                }
+                return child;
+            }
+        }
+
+        @Override
+        public void putAll(Map<? extends ZNodeName, ? extends E> m) {
+            for (Map.Entry<? extends ZNodeName, ? extends E> e: m.entrySet()) {
+                put(e.getKey(), e.getValue());
+            }
+        }
+
+        @Override
+        public void clear() {
+            children = NO_CHILDREN;
+        }
+
+        /**
+         * @return unmodifiable view
+         */
+        @Override
+        public Set<ZNodeName> keySet() {
+            return new AbstractSet<ZNodeName>() {
+                @Override
+                public Iterator<ZNodeName> iterator() {
+                    return Iterators.transform(CompactNode.this.iterator(), new Function<E, ZNodeName>() {
+                        @Override
+                        public ZNodeName apply(E input) {
+                            return input.name();
+                        }
+                    });
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return containsKey(o);
+                }
+
+                @Override
+                public int size() {
+                    return CompactNode.this.size();
+                }
+            };
+        }
+
+        /**
+         * @return unmodifiable view
+         */
+        @Override
+        public Collection<E> values() {
+            return new AbstractCollection<E>() {
+                @Override
+                public Iterator<E> iterator() {
+                    return CompactNode.this.iterator();
+                }
+
+                @Override
+                public int size() {
+                    return CompactNode.this.size();
+                }
+            };
+        }
+
+        /**
+         * @return unmodifiable view
+         */
+        @Override
+        public Set<Map.Entry<ZNodeName, E>> entrySet() {
+            return new AbstractSet<Map.Entry<ZNodeName, E>>() {
+                @Override
+                public Iterator<Map.Entry<ZNodeName, E>> iterator() {
+                    return Iterators.transform(CompactNode.this.iterator(), new Function<E, Map.Entry<ZNodeName, E>>() {
+                        @Override
+                        public Map.Entry<ZNodeName, E> apply(E input) {
+                            return new AbstractMap.SimpleImmutableEntry<ZNodeName, E>(input.name(), input);
+                        }
+                    });
+                }
+
+                @Override
+                public int size() {
+                    return CompactNode.this.size();
+                }
+            };
+        }
+        
+        @Override
+        public String toString() {
+            return toString(MoreObjects.toStringHelper(this)).toString();
+        }
+        
+        protected MoreObjects.ToStringHelper toString(MoreObjects.ToStringHelper toString) {
+            return toString
+                    .add("path", path())
+                    .add("children", keySet());
+        }
+
+        /**
+         * Iterating over an array of children isn't affected by later changes.
+         */
+        @SuppressWarnings("unchecked")
+        protected Iterator<E> iterator() {
+            if (children instanceof Object[]) {
+                return (Iterator<E>) (Iterator<?>) Iterators.forArray((Object[]) children);
+            } else {
+                return Iterators.unmodifiableIterator(map().values().iterator());
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        private Map<ZNodeName, E> map() {
+            return (Map<ZNodeName, E>) children;
+        }
+    }
     
     private final E root;
     
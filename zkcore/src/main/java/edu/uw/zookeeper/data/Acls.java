@@ -13,6 +13,8 @@ import com.google.common.base.MoreObjects;
 import com.google.common.collect.ForwardingSet;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Sets;
 
 import edu.uw.zookeeper.common.AbstractPair;
@@ -20,6 +22,36 @@ import edu.uw.zookeeper.common.Reference;
 import edu.uw.zookeeper.protocol.proto.Records;
 
 public abstract class Acls {
+
+    /**
+     * Equal ACL lists are interned as the same immutable instance,
+     * so that the many znodes with one of a few ACLs share them,
+     * and so that comparing interned lists is comparing references.
+     * 
+     * Lists are weakly held, so a list is collected once nothing has it.
+     */
+    public static List<Acl> intern(List<Acl> acl) {
+        return INTERNED.intern(ImmutableList.copyOf(acl));
+    }
+
+    /**
+     * Lists of a single predefined ACL are found without converting them.
+     * 
+     * @return interned list
+     */
+    public static List<Acl> internRecords(List<ACL> records) {
+        if (records.size() == 1) {
+            ACL record = records.get(0);
+            for (Definition definition: Definition.values()) {
+                if (definition.asRecordList().get(0).equals(record)) {
+                    return definition.asList();
+                }
+            }
+        }
+        return intern(Acl.fromRecordList(records));
+    }
+    
+    private static final Interner<ImmutableList<Acl>> INTERNED = Interners.newWeakInterner();
     
     public static enum Permission {
         NONE(0),
@@ -218,7 +250,7 @@ public abstract class Acls {
         
         private Definition(Acl acl) {
             this.acl = acl;
-            this.asList = ImmutableList.of(acl);
+            this.asList = intern(ImmutableList.of(acl));
             this.asRecord = ImmutableList.of(acl.toRecord());
         }
         
@@ -0,0 +1,85 @@
+package edu.uw.zookeeper.data;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+
+/**
+ * SimpleLabelTrie that also indexes every node by path,
+ * so that looking up a path is a hash lookup rather than a walk from the root.
+ *
+ * To keep the index consistent, nodes must be added and removed
+ * with put() and remove() rather than through their parent.
+ *
+ * Not threadsafe.
+ */
+public class IndexedLabelTrie<E extends NameTrie.Node<E>> extends SimpleLabelTrie<E> {
+
+    /**
+     * Indexes any nodes already under root.
+     */
+    public static <E extends Node<E>> IndexedLabelTrie<E> forRoot(E root) {
+        return new IndexedLabelTrie<E>(root, Maps.<String, E>newHashMap());
+    }
+
+    protected final Map<String, E> index;
+
+    protected IndexedLabelTrie(E root, Map<String, E> index) {
+        super(root);
+        this.index = index;
+        index(root);
+    }
+
+    @Override
+    public E get(Object k) {
+        return index.get(k.toString());
+    }
+
+    @Override
+    public E put(ZNodePath k, E v) {
+        E prev = super.put(k, v);
+        if (prev != null) {
+            unindex(prev);
+        }
+        index(v);
+        return prev;
+    }
+
+    @Override
+    public E remove(Object k) {
+        E node = super.remove(k);
+        if (node != null) {
+            unindex(node);
+        }
+        return node;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        index.clear();
+        index(root());
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    protected void index(E node) {
+        Iterator<E> nodes = preOrder(node);
+        while (nodes.hasNext()) {
+            E next = nodes.next();
+            index.put(next.path().toString(), next);
+        }
+    }
+
+    protected void unindex(E node) {
+        Iterator<E> nodes = preOrder(node);
+        while (nodes.hasNext()) {
+            index.remove(nodes.next().path().toString());
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package edu.uw.zookeeper.net;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+
+/**
+ * Encoder that can write an already encoded message as is,
+ * rather than copying it into a new buffer.
+ */
+public interface SharedEncoder<I,T> extends Encoder<I,T> {
+
+    /**
+     * @return a retained buffer to write in place of input,
+     *         or null if input must be encoded
+     */
+    @Nullable ByteBuf encodeShared(I input) throws IOException;
+}
@@ -9,6 +9,7 @@ import java.net.SocketAddress;
 import java.nio.channels.ClosedChannelException;
 import java.util.Collection;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.logging.log4j.Logger;
 
@@ -22,9 +23,17 @@ import edu.uw.zookeeper.common.PromiseTask;
 import edu.uw.zookeeper.common.SettableFuturePromise;
 import edu.uw.zookeeper.net.Connection;
 
+/**
+ * Writes are flushed once per event loop tick, 
+ * after any other tasks that were queued in the meantime,
+ * or after every MAX_WRITES_PER_FLUSH writes, 
+ * so that pipelined responses share system calls.
+ */
 public abstract class AbstractChannelConnection<I,O,C extends AbstractChannelConnection<I,O,C>> 
         implements Connection<I,O,C> {
 
+    public static final int MAX_WRITES_PER_FLUSH = 64;
+
     protected final Logger logger;
     protected final EventfulHandler<? extends O> eventful;
     protected final ConnectionStateHandler state;
@@ -139,8 +148,22 @@ public abstract class AbstractChannelConnection<I,O,C extends AbstractChannelCon
 
     protected final class OutboundActor extends ExecutedQueuedActor<PromiseTask<? extends I, ? extends I>> implements ChannelFutureListener {
 
+        // confined to the event loop once the channel is registered
+        private int unflushed;
+        private boolean flushScheduled;
+        private final Runnable flushTask;
+        
         public OutboundActor() {
             super(AbstractChannelConnection.this, new ConcurrentLinkedQueue<PromiseTask<? extends I, ? extends I>>(), AbstractChannelConnection.this.logger);
+            this.unflushed = 0;
+            this.flushScheduled = false;
+            this.flushTask = new Runnable() {
+                @Override
+                public void run() {
+                    flushScheduled = false;
+                    flushNow();
+                }
+            };
             channel.closeFuture().addListener(this);
         }
 
@@ -171,6 +194,9 @@ public abstract class AbstractChannelConnection<I,O,C extends AbstractChannelCon
                         I task = input.task();
                         ChannelFutureWrapper.of(
                                 channel.write(task), task, (Promise<I>) input);
+                        if (++unflushed >= MAX_WRITES_PER_FLUSH) {
+                            flushNow();
+                        }
                         break;
                     }
                 }
@@ -180,9 +206,30 @@ public abstract class AbstractChannelConnection<I,O,C extends AbstractChannelCon
         
         @Override
         protected void runExit() {
-            channel.flush();
+            if (unflushed > 0) {
+                if (channel.isRegistered() && channel.eventLoop().inEventLoop()) {
+                    if (! flushScheduled) {
+                        flushScheduled = true;
+                        try {
+                            channel.eventLoop().execute(flushTask);
+                        } catch (RejectedExecutionException e) {
+                            flushScheduled = false;
+                            flushNow();
+                        }
+                    }
+                } else {
+                    flushNow();
+                }
+            }
             super.runExit();
         }
+        
+        private void flushNow() {
+            if (unflushed > 0) {
+                unflushed = 0;
+                channel.flush();
+            }
+        }
 
         @Override
         protected void doStop() {
@@ -11,7 +11,10 @@ import com.google.common.base.Optional;
 
 import edu.uw.zookeeper.net.Decoder;
 import edu.uw.zookeeper.net.LoggingMarker;
+import edu.uw.zookeeper.protocol.IntHeader;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPipeline;
 import io.netty.handler.codec.ByteToMessageDecoder;
@@ -44,6 +47,7 @@ public class DecoderHandler extends ByteToMessageDecoder {
         super();
         this.logger = checkNotNull(logger);
         this.decoder = checkNotNull(decoder);
+        setCumulator(FrameCumulator.getDefault());
     }
     
     @Override
@@ -66,4 +70,89 @@ public class DecoderHandler extends ByteToMessageDecoder {
             }
         }
     }
+
+    /**
+     * Most input is framed by a length prefix, so once the prefix of the next frame
+     * is readable, the cumulation grows at most once for the rest of that frame,
+     * and a frame of at least compositeThreshold bytes is cumulated
+     * as components of a composite buffer without copying.
+     * 
+     * A prefix that is out of bounds, e.g. for input that isn't framed, is ignored.
+     */
+    public static final class FrameCumulator implements Cumulator {
+        
+        public static final int DEFAULT_COMPOSITE_THRESHOLD = 256 * 1024;
+        public static final int DEFAULT_MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+        
+        public static FrameCumulator getDefault() {
+            return DEFAULT;
+        }
+        
+        public static FrameCumulator create(int compositeThreshold, int maxFrameLength) {
+            return new FrameCumulator(compositeThreshold, maxFrameLength);
+        }
+        
+        private static final FrameCumulator DEFAULT = create(DEFAULT_COMPOSITE_THRESHOLD, DEFAULT_MAX_FRAME_LENGTH);
+        
+        private final int compositeThreshold;
+        private final int maxFrameLength;
+        
+        private FrameCumulator(int compositeThreshold, int maxFrameLength) {
+            this.compositeThreshold = compositeThreshold;
+            this.maxFrameLength = maxFrameLength;
+        }
+
+        @Override
+        public ByteBuf cumulate(ByteBufAllocator alloc, ByteBuf cumulation, ByteBuf in) {
+            if (! in.isReadable()) {
+                in.release();
+                return cumulation;
+            }
+            int frameLength = frameLength(cumulation);
+            if (cumulation instanceof CompositeByteBuf) {
+                return addComponent((CompositeByteBuf) cumulation, in);
+            }
+            if (frameLength >= compositeThreshold) {
+                // uncapped, because a capped composite consolidates its components
+                CompositeByteBuf composite = alloc.compositeBuffer(Integer.MAX_VALUE);
+                addComponent(composite, cumulation);
+                return addComponent(composite, in);
+            }
+            int required = in.readableBytes();
+            if (frameLength >= 0) {
+                required = Math.max(required, IntHeader.length() + frameLength - cumulation.readableBytes());
+            }
+            ByteBuf buffer;
+            if ((cumulation.refCnt() > 1) || (cumulation.maxWritableBytes() < required)) {
+                // decoded frames may still share the old buffer
+                buffer = alloc.buffer(cumulation.readableBytes() + required);
+                buffer.writeBytes(cumulation);
+                cumulation.release();
+            } else {
+                buffer = cumulation;
+                buffer.ensureWritable(required);
+            }
+            buffer.writeBytes(in);
+            in.release();
+            return buffer;
+        }
+        
+        private static CompositeByteBuf addComponent(CompositeByteBuf composite, ByteBuf component) {
+            int length = component.readableBytes();
+            composite.addComponent(component);
+            composite.writerIndex(composite.writerIndex() + length);
+            return composite;
+        }
+        
+        /**
+         * @return length of the frame at the reader index, or -1 if unknown
+         */
+        private int frameLength(ByteBuf cumulation) {
+            if (cumulation.readableBytes() < IntHeader.length()) {
+                return -1;
+            }
+            int length = cumulation.getInt(cumulation.readerIndex());
+            return ((length >= 0) && (length <= maxFrameLength)) ? length : -1;
+        }
+    }
 }
@@ -3,19 +3,36 @@ package edu.uw.zookeeper.netty;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.apache.logging.log4j.Logger;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
 import edu.uw.zookeeper.net.Encoder;
 import edu.uw.zookeeper.net.LoggingMarker;
+import edu.uw.zookeeper.net.SharedEncoder;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.util.ReferenceCountUtil;
 
+/**
+ * Consecutive messages are encoded into one pooled buffer 
+ * until the next flush, or until the buffer holds MAX_PENDING_BYTES,
+ * so that many small messages are written as one buffer.
+ */
 public class EncoderHandler<I> extends MessageToByteEncoder<I> {
     
+    public static final int MAX_PENDING_BYTES = 16 * 1024;
+    
     public static ChannelPipeline toPipeline(
             EncoderHandler<?> handler,
             ChannelPipeline pipeline) {
@@ -33,12 +50,17 @@ public class EncoderHandler<I> extends MessageToByteEncoder<I> {
 
     private final Logger logger;
     private final Encoder<? super I, ?> encoder;
+    // encoded messages that haven't been written
+    private ByteBuf pending;
+    private final List<ChannelPromise> pendingPromises;
 
     protected EncoderHandler(
             Class<? extends I> type, Encoder<? super I, ?> encoder, Logger logger) {
         super(type, true);
         this.logger = checkNotNull(logger);
         this.encoder = checkNotNull(encoder);
+        this.pending = null;
+        this.pendingPromises = Lists.newArrayListWithCapacity(AbstractChannelConnection.MAX_WRITES_PER_FLUSH);
     }
 
     @Override
@@ -60,6 +82,79 @@ public class EncoderHandler<I> extends MessageToByteEncoder<I> {
         super.read(ctx);
     }
     
+    /**
+     * Writes already encoded messages without copying them.
+     */
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (! acceptOutboundMessage(msg)) {
+            writePending(ctx);
+            ctx.write(msg, promise);
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        I message = (I) msg;
+        if (encoder instanceof SharedEncoder) {
+            ByteBuf shared;
+            try {
+                shared = ((SharedEncoder<? super I, ?>) encoder).encodeShared(message);
+            } catch (IOException e) {
+                throw new EncoderException(e);
+            }
+            if (shared != null) {
+                if (logger.isTraceEnabled()) {
+                    logger.trace(LoggingMarker.NET_MARKER.get(), "ENCODED {} ({})", message, ctx.channel());
+                }
+                writePending(ctx);
+                ctx.write(shared, promise);
+                return;
+            }
+        }
+        if (pending == null) {
+            pending = ctx.alloc().ioBuffer();
+        }
+        int writerIndex = pending.writerIndex();
+        try {
+            encode(ctx, message, pending);
+        } catch (Exception e) {
+            // drop what was partially encoded
+            pending.writerIndex(writerIndex);
+            throw (e instanceof EncoderException) ? e : new EncoderException(e);
+        } finally {
+            ReferenceCountUtil.release(msg);
+        }
+        pendingPromises.add(promise);
+        if (pending.readableBytes() >= MAX_PENDING_BYTES) {
+            writePending(ctx);
+        }
+    }
+    
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        writePending(ctx);
+        ctx.flush();
+    }
+    
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        writePending(ctx);
+        ctx.close(promise);
+    }
+    
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        if (pending != null) {
+            pending.release();
+            pending = null;
+            EncoderException e = new EncoderException("handler removed");
+            for (ChannelPromise promise: pendingPromises) {
+                promise.tryFailure(e);
+            }
+            pendingPromises.clear();
+        }
+        super.handlerRemoved(ctx);
+    }
+    
     @Override
     protected void encode(ChannelHandlerContext ctx, I message, ByteBuf output) throws IOException {
         if (logger.isTraceEnabled()) {
@@ -67,4 +162,42 @@ public class EncoderHandler<I> extends MessageToByteEncoder<I> {
         }
         encoder.encode(message, output);
     }
+    
+    protected void writePending(ChannelHandlerContext ctx) {
+        if (pending == null) {
+            return;
+        }
+        ByteBuf buffer = pending;
+        pending = null;
+        if (pendingPromises.isEmpty()) {
+            buffer.release();
+        } else if (pendingPromises.size() == 1) {
+            ctx.write(buffer, pendingPromises.get(0));
+        } else {
+            ctx.write(buffer).addListener(new PendingPromises(ImmutableList.copyOf(pendingPromises)));
+        }
+        pendingPromises.clear();
+    }
+    
+    protected static final class PendingPromises implements ChannelFutureListener {
+
+        private final ImmutableList<ChannelPromise> promises;
+        
+        public PendingPromises(ImmutableList<ChannelPromise> promises) {
+            this.promises = promises;
+        }
+        
+        @Override
+        public void operationComplete(ChannelFuture future) {
+            if (future.isSuccess()) {
+                for (ChannelPromise promise: promises) {
+                    promise.trySuccess();
+                }
+            } else {
+                for (ChannelPromise promise: promises) {
+                    promise.tryFailure(future.cause());
+                }
+            }
+        }
+    }
 }
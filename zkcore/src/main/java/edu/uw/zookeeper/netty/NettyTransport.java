@@ -0,0 +1,197 @@
+package edu.uw.zookeeper.netty;
+
+import java.util.concurrent.ThreadFactory;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import com.typesafe.config.ConfigValueType;
+
+import edu.uw.zookeeper.common.Configurable;
+import edu.uw.zookeeper.common.Configuration;
+import edu.uw.zookeeper.common.DefaultsFactory;
+
+/**
+ * Channel and event loop implementations that are used together.
+ *
+ * The native epoll transport is edge-triggered and makes fewer system calls
+ * than NIO, but is only available on Linux.
+ */
+public enum NettyTransport {
+
+    NIO {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public Class<? extends ServerSocketChannel> serverChannelType() {
+            return NioServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends SocketChannel> channelType() {
+            return NioSocketChannel.class;
+        }
+
+        @Override
+        public DefaultsFactory<ThreadFactory, EventLoopGroup> eventLoopGroupFactory(final int nthreads) {
+            if (nthreads == 0) {
+                return NioEventLoopGroupFactory.DEFAULT;
+            }
+            return new DefaultsFactory<ThreadFactory, EventLoopGroup>() {
+                @Override
+                public EventLoopGroup get() {
+                    NioEventLoopGroup instance = new NioEventLoopGroup(nthreads);
+                    instance.setIoRatio(NioEventLoopGroupFactory.IO_RATIO);
+                    return instance;
+                }
+
+                @Override
+                public EventLoopGroup get(ThreadFactory value) {
+                    NioEventLoopGroup instance = new NioEventLoopGroup(nthreads, value);
+                    instance.setIoRatio(NioEventLoopGroupFactory.IO_RATIO);
+                    return instance;
+                }
+            };
+        }
+    },
+
+    EPOLL {
+        @Override
+        public boolean isAvailable() {
+            try {
+                return Epoll.isAvailable();
+            } catch (LinkageError e) {
+                return false;
+            }
+        }
+
+        @Override
+        public Class<? extends ServerSocketChannel> serverChannelType() {
+            return EpollServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends SocketChannel> channelType() {
+            return EpollSocketChannel.class;
+        }
+
+        @Override
+        public DefaultsFactory<ThreadFactory, EventLoopGroup> eventLoopGroupFactory(final int nthreads) {
+            return new DefaultsFactory<ThreadFactory, EventLoopGroup>() {
+                @Override
+                public EventLoopGroup get() {
+                    return new EpollEventLoopGroup(nthreads);
+                }
+
+                @Override
+                public EventLoopGroup get(ThreadFactory value) {
+                    return new EpollEventLoopGroup(nthreads, value);
+                }
+            };
+        }
+    };
+
+    /**
+     * @return the native transport if it is available, otherwise NIO
+     */
+    public static NettyTransport defaults() {
+        return EPOLL.isAvailable() ? EPOLL : NIO;
+    }
+
+    @Configurable(path="netty", arg="transport", value="auto", help="auto|epoll|nio")
+    public static abstract class TransportConfiguration {
+
+        public static Configurable getConfigurable() {
+            return TransportConfiguration.class.getAnnotation(Configurable.class);
+        }
+
+        /**
+         * @return the configured transport, or the default transport if auto
+         * @throws IllegalArgumentException if the configured transport isn't available
+         */
+        public static NettyTransport get(Configuration configuration) {
+            Configurable configurable = getConfigurable();
+            String value = configuration.withConfigurable(configurable)
+                    .getConfigOrEmpty(configurable.path())
+                        .getString(configurable.arg());
+            if (value.equalsIgnoreCase("auto")) {
+                return defaults();
+            }
+            NettyTransport transport = NettyTransport.valueOf(value.toUpperCase());
+            if (! transport.isAvailable()) {
+                throw new IllegalArgumentException(String.format("%s transport is not available", transport));
+            }
+            return transport;
+        }
+
+        protected TransportConfiguration() {}
+    }
+
+    @Configurable(path="netty", arg="bossThreads", value="0", type=ConfigValueType.NUMBER)
+    public static abstract class BossThreadsConfiguration {
+
+        public static Configurable getConfigurable() {
+            return BossThreadsConfiguration.class.getAnnotation(Configurable.class);
+        }
+
+        /**
+         * @return number of threads that accept connections, 
+         *  or zero to accept connections on the worker threads
+         */
+        public static int get(Configuration configuration) {
+            Configurable configurable = getConfigurable();
+            return configuration.withConfigurable(configurable)
+                    .getConfigOrEmpty(configurable.path())
+                        .getInt(configurable.arg());
+        }
+
+        protected BossThreadsConfiguration() {}
+    }
+
+    @Configurable(path="netty", arg="workerThreads", value="0", type=ConfigValueType.NUMBER)
+    public static abstract class WorkerThreadsConfiguration {
+
+        public static Configurable getConfigurable() {
+            return WorkerThreadsConfiguration.class.getAnnotation(Configurable.class);
+        }
+
+        /**
+         * @return number of threads that handle connections, 
+         *  or zero for the Netty default
+         */
+        public static int get(Configuration configuration) {
+            Configurable configurable = getConfigurable();
+            return configuration.withConfigurable(configurable)
+                    .getConfigOrEmpty(configurable.path())
+                        .getInt(configurable.arg());
+        }
+
+        protected WorkerThreadsConfiguration() {}
+    }
+
+    public abstract boolean isAvailable();
+
+    public abstract Class<? extends ServerSocketChannel> serverChannelType();
+
+    public abstract Class<? extends SocketChannel> channelType();
+
+    public DefaultsFactory<ThreadFactory, EventLoopGroup> eventLoopGroupFactory() {
+        return eventLoopGroupFactory(0);
+    }
+
+    /**
+     * @param nthreads zero for the Netty default
+     */
+    public abstract DefaultsFactory<ThreadFactory, EventLoopGroup> eventLoopGroupFactory(int nthreads);
+}
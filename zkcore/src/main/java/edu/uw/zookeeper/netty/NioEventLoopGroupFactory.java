@@ -11,8 +11,9 @@ public enum NioEventLoopGroupFactory implements DefaultsFactory<ThreadFactory, E
     DEFAULT(0),
     AVAILABLE_PROCESSORS(Math.max(1, Runtime.getRuntime().availableProcessors()));
     
+    public static final int IO_RATIO = 75;
+    
     private final int nthreads;
-    private final int ioRatio = 75;
     
     private NioEventLoopGroupFactory(int nthreads) {
         this.nthreads = nthreads;
@@ -21,14 +22,14 @@ public enum NioEventLoopGroupFactory implements DefaultsFactory<ThreadFactory, E
     @Override
     public NioEventLoopGroup get() {
         NioEventLoopGroup instance = new NioEventLoopGroup(nthreads);
-        instance.setIoRatio(ioRatio);
+        instance.setIoRatio(IO_RATIO);
         return instance;
     }
 
     @Override
     public NioEventLoopGroup get(ThreadFactory value) {
         NioEventLoopGroup instance =  new NioEventLoopGroup(nthreads, value);
-        instance.setIoRatio(ioRatio);
+        instance.setIoRatio(IO_RATIO);
         return instance;
     }
 }
@@ -0,0 +1,46 @@
+package edu.uw.zookeeper.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+
+import edu.uw.zookeeper.protocol.proto.IReplyHeader;
+import edu.uw.zookeeper.protocol.proto.Records;
+
+/**
+ * Response that is framed and serialized once,
+ * e.g. a notification sent to many sessions.
+ *
+ * The frame is read-only and not pooled,
+ * so it is never released while this message is reachable.
+ */
+public final class EncodedResponseMessage<T extends Records.Response> extends ProtocolResponseMessage<T> {
+
+    public static <T extends Records.Response> EncodedResponseMessage<T> encode(
+            ProtocolResponseMessage<T> message) throws IOException {
+        ByteBuf buffer = Unpooled.buffer();
+        Frame.FramedEncoder.create(EncodableEncoder.getInstance()).encode(message, buffer);
+        return new EncodedResponseMessage<T>(message.header(), message.record(), Unpooled.unmodifiableBuffer(buffer));
+    }
+
+    private final ByteBuf frame;
+
+    protected EncodedResponseMessage(IReplyHeader header, T response, ByteBuf frame) {
+        super(header, response);
+        this.frame = frame;
+    }
+
+    /**
+     * @return retained duplicate of the frame, to be released by the caller
+     */
+    public ByteBuf frame() {
+        return frame.duplicate().retain();
+    }
+
+    @Override
+    public void encode(ByteBuf output) throws IOException {
+        int headerLength = IntHeader.length();
+        output.writeBytes(frame, frame.readerIndex() + headerLength, frame.readableBytes() - headerLength);
+    }
+}
@@ -53,6 +53,7 @@ public abstract class FourLetterWords {
             ZK_AVG_LATENCY(Long.class),
             ZK_MAX_LATENCY(Long.class),
             ZK_MIN_LATENCY(Long.class),
+            ZK_P99_LATENCY(Long.class),
             ZK_PACKETS_RECEIVED(Long.class),
             ZK_PACKETS_SENT(Long.class),
             ZK_NUM_ALIVE_CONNECTIONS(Integer.class),
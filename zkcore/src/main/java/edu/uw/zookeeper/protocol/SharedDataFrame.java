@@ -0,0 +1,75 @@
+package edu.uw.zookeeper.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+
+import org.apache.zookeeper.KeeperException;
+
+import com.google.common.base.Throwables;
+
+import edu.uw.zookeeper.protocol.proto.ByteBufOutputArchive;
+import edu.uw.zookeeper.protocol.proto.IGetDataResponse;
+import edu.uw.zookeeper.protocol.proto.Records;
+
+/**
+ * Frames a getData response around its payload rather than copying it,
+ * so that a large off-heap payload is written to a channel as is.
+ */
+public final class SharedDataFrame {
+
+    // smaller payloads are cheaper to copy than to compose
+    public static final int MIN_SHARED_LENGTH = 4096;
+
+    /**
+     * A heap payload is copied to a direct buffer by the transport anyway,
+     * so only direct payloads are shared.
+     * 
+     * @return composite frame holding a retained duplicate of the payload,
+     *         or null if input doesn't have a large enough direct payload
+     */
+    public static @Nullable ByteBuf frame(Object input, ByteBufAllocator alloc) throws IOException {
+        if (! (input instanceof Operation.ProtocolResponse)) {
+            return null;
+        }
+        Operation.ProtocolResponse<?> message = (Operation.ProtocolResponse<?>) input;
+        if (! (message.record() instanceof IGetDataResponse)) {
+            return null;
+        }
+        IGetDataResponse record = (IGetDataResponse) message.record();
+        ByteBuf payload = record.buffer();
+        if ((payload == null) || ! payload.isDirect() || (payload.readableBytes() < MIN_SHARED_LENGTH)) {
+            return null;
+        }
+        
+        ByteBuf header = alloc.directBuffer();
+        ByteBuf trailer = alloc.directBuffer();
+        try {
+            header.writeInt(0);
+            Records.Responses.Headers.serialize(
+                    message.xid(), message.zxid(), KeeperException.Code.OK, 
+                    new ByteBufOutputArchive(header));
+            header.writeInt(payload.readableBytes());
+            record.getStat().serialize(new ByteBufOutputArchive(trailer), "stat");
+        } catch (Exception e) {
+            header.release();
+            trailer.release();
+            Throwables.propagateIfInstanceOf(e, IOException.class);
+            throw Throwables.propagate(e);
+        }
+        int length = header.readableBytes() + payload.readableBytes() + trailer.readableBytes();
+        header.setInt(0, length - IntHeader.length());
+        CompositeByteBuf frame = alloc.compositeDirectBuffer(3);
+        frame.addComponent(header);
+        frame.addComponent(payload.retain());
+        frame.addComponent(trailer);
+        frame.writerIndex(length);
+        return frame;
+    }
+    
+    private SharedDataFrame() {}
+}
@@ -7,14 +7,12 @@ import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.logging.log4j.Logger;
 
 import com.google.common.base.MoreObjects;
-import com.google.common.base.Optional;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -25,7 +23,13 @@ import edu.uw.zookeeper.common.LoggingFutureListener;
 import edu.uw.zookeeper.common.Pair;
 import edu.uw.zookeeper.common.Promise;
 import edu.uw.zookeeper.common.SettableFuturePromise;
+import edu.uw.zookeeper.common.TimingWheel;
 
+/**
+ * Timeouts are kept in the TimingWheel shared by all actors with the same scheduler,
+ * so that touching an actor only records the time,
+ * and an actor is rescheduled at most once per time out.
+ */
 public class TimeOutActor<T,V> extends AbstractActor<T> implements ListenableFuture<V> {
 
     public static <T,V> TimeOutActor<T,V> create(
@@ -48,7 +52,7 @@ public class TimeOutActor<T,V> extends AbstractActor<T> implements ListenableFut
     protected final TimeOutParameters parameters;
     protected final Promise<V> promise;
     protected final Set<Pair<Runnable,Executor>> listeners;
-    protected Optional<? extends ScheduledFuture<?>> scheduled;
+    protected final TimingWheel.Timeout timeout;
     
     protected TimeOutActor(
             TimeOutParameters parameters,
@@ -61,7 +65,7 @@ public class TimeOutActor<T,V> extends AbstractActor<T> implements ListenableFut
         this.scheduler = scheduler;
         this.promise = promise;
         this.listeners = listeners;
-        this.scheduled = Optional.absent();
+        this.timeout = TimingWheel.forScheduler(scheduler).newTimeout(this);
         
         promise.addListener(this, MoreExecutors.directExecutor());
     }
@@ -122,11 +126,11 @@ public class TimeOutActor<T,V> extends AbstractActor<T> implements ListenableFut
             stop();
         } else if (parameters.getTimeOut() == NO_TIMEOUT) {
             state.compareAndSet(State.SCHEDULED, State.WAITING);
-        } else if (!scheduled.isPresent()) {
+        } else if (!timeout.isScheduled()) {
             long tick = nextTick();
             TimeUnit unit = parameters.getUnit();
             logger.trace("Scheduling for {} {} ({})", tick, unit, this);
-            scheduled = Optional.of(scheduler.schedule(this, tick, unit));
+            timeout.schedule(tick, unit);
         }
     }
 
@@ -140,9 +144,6 @@ public class TimeOutActor<T,V> extends AbstractActor<T> implements ListenableFut
     @Override
     protected synchronized void runExit() {
         if (state.compareAndSet(State.RUNNING, State.WAITING)) {
-            if (scheduled.isPresent()) {
-                scheduled = Optional.absent();
-            }
             schedule();
         }
     }
@@ -150,10 +151,7 @@ public class TimeOutActor<T,V> extends AbstractActor<T> implements ListenableFut
     @Override
     protected synchronized void doStop() {
         cancel(true);
-        if (scheduled.isPresent()) {
-            scheduled.get().cancel(false);
-            scheduled = Optional.absent();
-        }
+        timeout.cancel();
         Iterator<Pair<Runnable,Executor>> itr = Iterators.consumingIterator(listeners.iterator());
         while (itr.hasNext()) {
             Pair<Runnable,Executor> listener = itr.next();
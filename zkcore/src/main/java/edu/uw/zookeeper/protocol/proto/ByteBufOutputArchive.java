@@ -69,6 +69,15 @@ public class ByteBufOutputArchive extends ByteBufArchive implements OutputArchiv
         buffer.writeBytes(bytes);
     }
 
+    /**
+     * Writes the readable bytes of input without an intermediate array.
+     */
+    public void writeBuffer(ByteBuf bytes, String tag) throws IOException {
+        int length = bytes.readableBytes();
+        buffer.writeInt(length);
+        buffer.writeBytes(bytes, bytes.readerIndex(), length);
+    }
+
     @Override
     public void writeRecord(Record r, String tag) throws IOException {
         r.serialize(this, tag);
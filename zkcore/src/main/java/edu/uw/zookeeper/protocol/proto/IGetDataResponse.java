@@ -1,11 +1,21 @@
 package edu.uw.zookeeper.protocol.proto;
 
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+
+import org.apache.jute.OutputArchive;
 import org.apache.zookeeper.data.Stat;
 import org.apache.zookeeper.proto.GetDataResponse;
 
 @Operational(value=OpCode.GET_DATA)
 public class IGetDataResponse extends IOperationalRecord<GetDataResponse> implements Records.Response, Records.DataGetter, Records.StatGetter {
     
+    // payload that is shared rather than copied, if any
+    private final ByteBuf buffer;
+    
     public IGetDataResponse() {
         this(new GetDataResponse());
     }
@@ -14,8 +24,27 @@ public class IGetDataResponse extends IOperationalRecord<GetDataResponse> implem
         this(new GetDataResponse(data, stat));
     }
 
+    /**
+     * @param data not modified, and only copied if {@link #getData()} is called
+     */
+    public IGetDataResponse(ByteBuf data, Stat stat) {
+        this(new GetDataResponse(null, stat), data);
+    }
+
     public IGetDataResponse(GetDataResponse record) {
+        this(record, null);
+    }
+
+    protected IGetDataResponse(GetDataResponse record, @Nullable ByteBuf buffer) {
         super(record);
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return unretained duplicate of the shared payload, or null
+     */
+    public @Nullable ByteBuf buffer() {
+        return (buffer == null) ? null : buffer.duplicate();
     }
 
     @Override
@@ -25,6 +54,24 @@ public class IGetDataResponse extends IOperationalRecord<GetDataResponse> implem
 
     @Override
     public byte[] getData() {
+        if ((buffer != null) && (record.getData() == null)) {
+            byte[] data = new byte[buffer.readableBytes()];
+            buffer.getBytes(buffer.readerIndex(), data);
+            record.setData(data);
+        }
         return record.getData();
     }
-}
\ No newline at end of file
+
+    @Override
+    public void serialize(OutputArchive archive, String tag) throws IOException {
+        if ((buffer != null) && (record.getData() == null) && (archive instanceof ByteBufOutputArchive)) {
+            archive.startRecord(record, tag);
+            ((ByteBufOutputArchive) archive).writeBuffer(buffer, "data");
+            archive.writeRecord(record.getStat(), "stat");
+            archive.endRecord(record, tag);
+        } else {
+            getData();
+            super.serialize(archive, tag);
+        }
+    }
+}
@@ -101,4 +101,22 @@ public enum OpCode {
     public int intValue() {
         return code;
     }
+
+    /**
+     * @return true if a request with this opcode never modifies the data tree
+     */
+    public boolean isReadOnly() {
+        switch (this) {
+        case EXISTS:
+        case GET_DATA:
+        case GET_ACL:
+        case GET_CHILDREN:
+        case GET_CHILDREN2:
+        case SYNC:
+        case PING:
+            return true;
+        default:
+            return false;
+        }
+    }
 }
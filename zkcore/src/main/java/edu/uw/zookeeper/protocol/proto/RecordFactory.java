@@ -0,0 +1,384 @@
+package edu.uw.zookeeper.protocol.proto;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.jute.Record;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Constructs each protocol record type without reflection.
+ *
+ * Add a constant here for any new record type,
+ * otherwise Records.newInstance falls back to reflection.
+ */
+public enum RecordFactory implements Supplier<Record> {
+
+    AUTH_REQUEST(IAuthRequest.class) {
+        @Override
+        public IAuthRequest get() {
+            return new IAuthRequest();
+        }
+    },
+
+    AUTH_RESPONSE(IAuthResponse.class) {
+        @Override
+        public IAuthResponse get() {
+            return new IAuthResponse();
+        }
+    },
+
+    CHECK_VERSION_REQUEST(ICheckVersionRequest.class) {
+        @Override
+        public ICheckVersionRequest get() {
+            return new ICheckVersionRequest();
+        }
+    },
+
+    CHECK_VERSION_RESPONSE(ICheckVersionResponse.class) {
+        @Override
+        public ICheckVersionResponse get() {
+            return new ICheckVersionResponse();
+        }
+    },
+
+    CONNECT_REQUEST(IConnectRequest.class) {
+        @Override
+        public IConnectRequest get() {
+            return new IConnectRequest();
+        }
+    },
+
+    CONNECT_RESPONSE(IConnectResponse.class) {
+        @Override
+        public IConnectResponse get() {
+            return new IConnectResponse();
+        }
+    },
+
+    CREATE_REQUEST(ICreateRequest.class) {
+        @Override
+        public ICreateRequest get() {
+            return new ICreateRequest();
+        }
+    },
+
+    CREATE_RESPONSE(ICreateResponse.class) {
+        @Override
+        public ICreateResponse get() {
+            return new ICreateResponse();
+        }
+    },
+
+    CREATE2_REQUEST(ICreate2Request.class) {
+        @Override
+        public ICreate2Request get() {
+            return new ICreate2Request();
+        }
+    },
+
+    CREATE2_RESPONSE(ICreate2Response.class) {
+        @Override
+        public ICreate2Response get() {
+            return new ICreate2Response();
+        }
+    },
+
+    DELETE_REQUEST(IDeleteRequest.class) {
+        @Override
+        public IDeleteRequest get() {
+            return new IDeleteRequest();
+        }
+    },
+
+    DELETE_RESPONSE(IDeleteResponse.class) {
+        @Override
+        public IDeleteResponse get() {
+            return new IDeleteResponse();
+        }
+    },
+
+    DISCONNECT_REQUEST(IDisconnectRequest.class) {
+        @Override
+        public IDisconnectRequest get() {
+            return new IDisconnectRequest();
+        }
+    },
+
+    DISCONNECT_RESPONSE(IDisconnectResponse.class) {
+        @Override
+        public IDisconnectResponse get() {
+            return new IDisconnectResponse();
+        }
+    },
+
+    ERROR_RESPONSE(IErrorResponse.class) {
+        @Override
+        public IErrorResponse get() {
+            return new IErrorResponse();
+        }
+    },
+
+    EXISTS_REQUEST(IExistsRequest.class) {
+        @Override
+        public IExistsRequest get() {
+            return new IExistsRequest();
+        }
+    },
+
+    EXISTS_RESPONSE(IExistsResponse.class) {
+        @Override
+        public IExistsResponse get() {
+            return new IExistsResponse();
+        }
+    },
+
+    GET_ACL_REQUEST(IGetACLRequest.class) {
+        @Override
+        public IGetACLRequest get() {
+            return new IGetACLRequest();
+        }
+    },
+
+    GET_ACL_RESPONSE(IGetACLResponse.class) {
+        @Override
+        public IGetACLResponse get() {
+            return new IGetACLResponse();
+        }
+    },
+
+    GET_CHILDREN_REQUEST(IGetChildrenRequest.class) {
+        @Override
+        public IGetChildrenRequest get() {
+            return new IGetChildrenRequest();
+        }
+    },
+
+    GET_CHILDREN_RESPONSE(IGetChildrenResponse.class) {
+        @Override
+        public IGetChildrenResponse get() {
+            return new IGetChildrenResponse();
+        }
+    },
+
+    GET_CHILDREN2_REQUEST(IGetChildren2Request.class) {
+        @Override
+        public IGetChildren2Request get() {
+            return new IGetChildren2Request();
+        }
+    },
+
+    GET_CHILDREN2_RESPONSE(IGetChildren2Response.class) {
+        @Override
+        public IGetChildren2Response get() {
+            return new IGetChildren2Response();
+        }
+    },
+
+    GET_DATA_REQUEST(IGetDataRequest.class) {
+        @Override
+        public IGetDataRequest get() {
+            return new IGetDataRequest();
+        }
+    },
+
+    GET_DATA_RESPONSE(IGetDataResponse.class) {
+        @Override
+        public IGetDataResponse get() {
+            return new IGetDataResponse();
+        }
+    },
+
+    MULTI_HEADER(IMultiHeader.class) {
+        @Override
+        public IMultiHeader get() {
+            return new IMultiHeader();
+        }
+    },
+
+    MULTI_REQUEST(IMultiRequest.class) {
+        @Override
+        public IMultiRequest get() {
+            return new IMultiRequest();
+        }
+    },
+
+    MULTI_RESPONSE(IMultiResponse.class) {
+        @Override
+        public IMultiResponse get() {
+            return new IMultiResponse();
+        }
+    },
+
+    PING_REQUEST(IPingRequest.class) {
+        @Override
+        public IPingRequest get() {
+            return new IPingRequest();
+        }
+    },
+
+    PING_RESPONSE(IPingResponse.class) {
+        @Override
+        public IPingResponse get() {
+            return new IPingResponse();
+        }
+    },
+
+    RECONFIG_REQUEST(IReconfigRequest.class) {
+        @Override
+        public IReconfigRequest get() {
+            return new IReconfigRequest();
+        }
+    },
+
+    REMOVE_WATCHES_REQUEST(IRemoveWatchesRequest.class) {
+        @Override
+        public IRemoveWatchesRequest get() {
+            return new IRemoveWatchesRequest();
+        }
+    },
+
+    REMOVE_WATCHES_RESPONSE(IRemoveWatchesResponse.class) {
+        @Override
+        public IRemoveWatchesResponse get() {
+            return new IRemoveWatchesResponse();
+        }
+    },
+
+    REPLY_HEADER(IReplyHeader.class) {
+        @Override
+        public IReplyHeader get() {
+            return new IReplyHeader();
+        }
+    },
+
+    REQUEST_HEADER(IRequestHeader.class) {
+        @Override
+        public IRequestHeader get() {
+            return new IRequestHeader();
+        }
+    },
+
+    SET_ACL_REQUEST(ISetACLRequest.class) {
+        @Override
+        public ISetACLRequest get() {
+            return new ISetACLRequest();
+        }
+    },
+
+    SET_ACL_RESPONSE(ISetACLResponse.class) {
+        @Override
+        public ISetACLResponse get() {
+            return new ISetACLResponse();
+        }
+    },
+
+    SET_DATA_REQUEST(ISetDataRequest.class) {
+        @Override
+        public ISetDataRequest get() {
+            return new ISetDataRequest();
+        }
+    },
+
+    SET_DATA_RESPONSE(ISetDataResponse.class) {
+        @Override
+        public ISetDataResponse get() {
+            return new ISetDataResponse();
+        }
+    },
+
+    SET_WATCHES_REQUEST(ISetWatchesRequest.class) {
+        @Override
+        public ISetWatchesRequest get() {
+            return new ISetWatchesRequest();
+        }
+    },
+
+    SET_WATCHES_RESPONSE(ISetWatchesResponse.class) {
+        @Override
+        public ISetWatchesResponse get() {
+            return new ISetWatchesResponse();
+        }
+    },
+
+    STAT(IStat.class) {
+        @Override
+        public IStat get() {
+            return new IStat();
+        }
+    },
+
+    STAT_PERSISTED(IStatPersisted.class) {
+        @Override
+        public IStatPersisted get() {
+            return new IStatPersisted();
+        }
+    },
+
+    SYNC_REQUEST(ISyncRequest.class) {
+        @Override
+        public ISyncRequest get() {
+            return new ISyncRequest();
+        }
+    },
+
+    SYNC_RESPONSE(ISyncResponse.class) {
+        @Override
+        public ISyncResponse get() {
+            return new ISyncResponse();
+        }
+    },
+
+    WATCHER_EVENT(IWatcherEvent.class) {
+        @Override
+        public IWatcherEvent get() {
+            return new IWatcherEvent();
+        }
+    };
+
+    /**
+     * @return null if type isn't a protocol record
+     */
+    public static RecordFactory forType(Class<?> type) {
+        return BY_TYPE.get(type);
+    }
+
+    private static final ImmutableMap<Class<?>, RecordFactory> BY_TYPE;
+    private static final EnumMap<RecordFactory, Record> SHARED;
+    static {
+        Map<Class<?>, RecordFactory> byType = Maps.newHashMapWithExpectedSize(values().length);
+        SHARED = Maps.newEnumMap(RecordFactory.class);
+        for (RecordFactory factory: values()) {
+            byType.put(factory.type(), factory);
+            if (factory.type().getAnnotation(Shared.class) != null) {
+                SHARED.put(factory, factory.get());
+            }
+        }
+        BY_TYPE = ImmutableMap.copyOf(byType);
+    }
+
+    private final Class<? extends Record> type;
+
+    private RecordFactory(Class<? extends Record> type) {
+        this.type = type;
+    }
+
+    public Class<? extends Record> type() {
+        return type;
+    }
+
+    public boolean isShared() {
+        return SHARED.containsKey(this);
+    }
+
+    /**
+     * @return the shared instance if this type is shared, otherwise a new instance
+     */
+    public Record newInstance() {
+        Record shared = SHARED.get(this);
+        return (shared != null) ? shared : get();
+    }
+}
@@ -7,8 +7,10 @@ import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
 import java.io.IOException;
 import java.lang.reflect.Array;
+import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -223,7 +225,12 @@ public abstract class Records {
         }
     }
 
+    @SuppressWarnings("unchecked")
     public static <T extends Record> T newInstance(Class<T> type) {
+        RecordFactory factory = RecordFactory.forType(type);
+        if (factory != null) {
+            return (T) factory.newInstance();
+        }
         T instance;
         if (type.getAnnotation(Shared.class) != null) {
             return getShared(type);
@@ -239,6 +246,10 @@ public abstract class Records {
     
     @SuppressWarnings("unchecked")
     public static <T extends Record> T getShared(Class<T> type) {
+        RecordFactory factory = RecordFactory.forType(type);
+        if ((factory != null) && factory.isShared()) {
+            return (T) factory.newInstance();
+        }
         T instance = (T) sharedInstances.get(type);
         if (instance == null) {
             if (type.getAnnotation(Shared.class) == null) {
@@ -321,6 +332,18 @@ public abstract class Records {
     private static final ConcurrentMap<Class<? extends Record>, Record> sharedInstances = 
             new ConcurrentHashMap<Class<? extends Record>, Record>();
 
+    private static EnumMap<OpCode, RecordFactory> factoriesOf(Map<OpCode, ? extends Class<?>> types) {
+        EnumMap<OpCode, RecordFactory> factories = Maps.newEnumMap(OpCode.class);
+        for (Map.Entry<OpCode, ? extends Class<?>> e: types.entrySet()) {
+            RecordFactory factory = RecordFactory.forType(e.getValue());
+            if (factory == null) {
+                throw new AssertionError(e.getValue());
+            }
+            factories.put(e.getKey(), factory);
+        }
+        return factories;
+    }
+
     public static abstract class Headers {
 
         private Headers() {}
@@ -367,6 +390,9 @@ public abstract class Records {
                                    }
                                 })));
 
+        // indexed by opcode, so that decoding doesn't use reflection
+        private static final EnumMap<OpCode, RecordFactory> requestFactories = factoriesOf(requestTypes);
+
         public static String tagOf(OpCode op) {
             String tag;
             switch (op) {
@@ -400,12 +426,12 @@ public abstract class Records {
         
         @Override
         public Records.Request get(OpCode opcode) {
-            Class<? extends Records.Request> type = typeOf(opcode);
-            if (type == null) {
+            RecordFactory factory = requestFactories.get(opcode);
+            if (factory == null) {
                 throw new IllegalArgumentException(
                         String.format("No type for %s", opcode));
             }
-            Records.Request record = Records.newInstance(type);
+            Records.Request record = (Records.Request) factory.newInstance();
             return record;
         }
 
@@ -479,6 +505,8 @@ public abstract class Records {
                                     }
                                  })));
         
+        private static final EnumMap<OpCode, RecordFactory> responseFactories = factoriesOf(responseTypes);
+        
         public static String tagOf(OpCode op) {
             String tag;
             switch (op) {
@@ -516,12 +544,12 @@ public abstract class Records {
         
         @Override
         public Records.Response get(OpCode opcode) {
-            Class<? extends Records.Response> type = typeOf(opcode);
-            if (type == null) {
+            RecordFactory factory = responseFactories.get(opcode);
+            if (factory == null) {
                 throw new IllegalArgumentException(
                         String.format("No type for %s", opcode));
             } else {
-                Records.Response record = Records.newInstance(type);
+                Records.Response record = (Records.Response) factory.newInstance();
                 return record;
             }
         }
@@ -0,0 +1,82 @@
+package edu.uw.zookeeper.common;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = LatencyHistogram.create();
+        assertEquals(0L, histogram.percentile(99.0));
+        assertEquals(0L, histogram.min());
+
+        Random random = new Random(1L);
+        long[] values = new long[10000];
+        long sum = 0L;
+        for (int i=0; i<values.length; ++i) {
+            // spans several orders of magnitude
+            values[i] = (long) Math.exp(random.nextDouble() * 20.0);
+            histogram.record(values[i]);
+            sum += values[i];
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, histogram.count());
+        assertEquals(values[0], histogram.min());
+        assertEquals(values[values.length - 1], histogram.max());
+        assertEquals((double) sum / values.length, histogram.mean(), 1.0e-6);
+        for (double p: new double[] {1.0, 50.0, 90.0, 99.0, 99.9, 100.0}) {
+            long expected = values[(int) Math.ceil(values.length * (p / 100.0)) - 1];
+            long actual = histogram.percentile(p);
+            assertTrue(p + ": " + actual, actual >= expected);
+            assertTrue(p + ": " + actual, actual <= expected + (expected / 16L) + 1L);
+        }
+
+        histogram.reset();
+        assertEquals(0L, histogram.count());
+        assertEquals(0L, histogram.max());
+        assertEquals(0L, histogram.percentile(50.0));
+    }
+
+    @Test
+    public void testBuckets() {
+        for (long value: new long[] {0L, 1L, 31L, 32L, 63L, 64L, 65L, 1000L, 1L << 40, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.highestOf(index) >= value);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.highestOf(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void testStripedCounter() throws InterruptedException {
+        final StripedCounter counter = StripedCounter.create(3);
+        Thread[] threads = new Thread[4];
+        for (int i=0; i<threads.length; ++i) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j=0; j<10000; ++j) {
+                        counter.increment();
+                    }
+                    counter.decrement();
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        assertEquals(threads.length * 9999L, counter.sum());
+        assertEquals(threads.length * 9999L, counter.sumThenReset());
+        assertEquals(0L, counter.sum());
+    }
+}
@@ -0,0 +1,74 @@
+package edu.uw.zookeeper.common;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.Maps;
+
+@RunWith(JUnit4.class)
+public class LongConcurrentHashMapTest {
+
+    @Test
+    public void testOperations() {
+        LongConcurrentHashMap<String> map = LongConcurrentHashMap.create(0, 4);
+        assertTrue(map.isEmpty());
+        assertNull(map.put(0L, "0"));
+        assertEquals("0", map.put(0L, "zero"));
+        assertEquals("zero", map.putIfAbsent(0L, "0"));
+        assertEquals("zero", map.get(Long.valueOf(0L)));
+        assertNull(map.get("0"));
+        assertFalse(map.remove(0L, "0"));
+        assertTrue(map.replace(0L, "zero", "0"));
+        assertEquals("0", map.replace(0L, "zero"));
+        assertTrue(map.remove(0L, "zero"));
+        assertFalse(map.containsKey(0L));
+        assertNull(map.remove(0L));
+        assertNull(map.replace(0L, "0"));
+        assertNull(map.putIfAbsent(-1L, "-1"));
+        assertEquals(1, map.size());
+        assertEquals(Long.valueOf(-1L), map.keySet().iterator().next());
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testRandom() {
+        LongConcurrentHashMap<Long> map = LongConcurrentHashMap.create();
+        Map<Long, Long> expected = Maps.newHashMap();
+        Random random = new Random(1L);
+        for (int i=0; i<100000; ++i) {
+            // few enough keys that removed keys are added again
+            long key = random.nextInt(1000) * 0x100000001L;
+            Long value = Long.valueOf(random.nextLong());
+            switch (random.nextInt(3)) {
+            case 0:
+                assertEquals(expected.put(key, value), map.put(key, value));
+                break;
+            case 1:
+                assertEquals(expected.remove(key), map.remove(key));
+                break;
+            default:
+                assertEquals(expected.get(key), map.get(key));
+                break;
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, map);
+        assertEquals(expected, Maps.newHashMap(map));
+
+        // removing through an iterator
+        for (Map.Entry<Long, Long> e: map.entrySet()) {
+            if (e.getKey().longValue() % 2L == 0L) {
+                expected.remove(e.getKey());
+            }
+        }
+        map.keySet().retainAll(expected.keySet());
+        assertEquals(expected, map);
+    }
+}
@@ -0,0 +1,95 @@
+package edu.uw.zookeeper.common;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+
+@RunWith(JUnit4.class)
+public class TimingWheelTest {
+
+    @Test
+    public void testExpire() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        try {
+            ManualTicker ticker = new ManualTicker();
+            TimingWheel wheel = TimingWheel.create(scheduler, 1L, TimeUnit.MILLISECONDS, ticker);
+            Random random = new Random(1L);
+            List<Task> tasks = Lists.newArrayList();
+            for (int i=0; i<1000; ++i) {
+                Task task = new Task(ticker);
+                task.timeout = wheel.newTimeout(task);
+                // some beyond the range of the wheel
+                task.deadline = (i % 100 == 0) ? 20000000L + random.nextInt(1000) : random.nextInt(300000);
+                task.timeout.schedule(task.deadline, TimeUnit.MILLISECONDS);
+                tasks.add(task);
+            }
+            // rescheduling moves a timeout
+            Task moved = tasks.get(1);
+            moved.deadline = 5L;
+            moved.timeout.schedule(moved.deadline, TimeUnit.MILLISECONDS);
+            Task cancelled = tasks.get(2);
+            assertTrue(cancelled.timeout.cancel());
+            assertFalse(cancelled.timeout.cancel());
+            assertEquals(tasks.size() - 1, wheel.size());
+
+            while (wheel.size() > 0) {
+                ticker.nanos += TimeUnit.MILLISECONDS.toNanos(1L + random.nextInt(1000));
+                wheel.run();
+            }
+            for (Task task: tasks) {
+                if (task == cancelled) {
+                    assertEquals(-1L, task.expired);
+                } else {
+                    assertTrue(task.toString(), task.expired >= task.deadline);
+                    // at most one tick late, or as late as the last advance
+                    assertTrue(task.toString(), task.expired <= task.deadline + 1001L);
+                }
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    protected static final class ManualTicker extends Ticker {
+
+        public long nanos = 0L;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+    }
+
+    protected static final class Task implements Runnable {
+
+        public final ManualTicker ticker;
+        public TimingWheel.Timeout timeout;
+        public long deadline = 0L;
+        public long expired = -1L;
+
+        public Task(ManualTicker ticker) {
+            this.ticker = ticker;
+        }
+
+        @Override
+        public void run() {
+            assertEquals(-1L, expired);
+            expired = TimeUnit.NANOSECONDS.toMillis(ticker.read());
+        }
+
+        @Override
+        public String toString() {
+            return deadline + " " + expired;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package edu.uw.zookeeper.data;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.apache.zookeeper.data.ACL;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+@RunWith(JUnit4.class)
+public class AclsTest {
+
+    @Test
+    public void testIntern() {
+        // predefined lists are found without converting
+        List<ACL> records = Lists.newArrayList(Acls.Definition.ANYONE_ALL.asRecordList());
+        assertSame(Acls.Definition.ANYONE_ALL.asList(), Acls.internRecords(records));
+        assertSame(Acls.Definition.ANYONE_ALL.asList(), 
+                Acls.intern(Lists.newArrayList(Acls.Definition.ANYONE_ALL.get())));
+
+        List<ACL> custom = ImmutableList.of(
+                new ACL(Acls.Permission.READ.intValue(), Acls.Scheme.DIGEST.idOf("user:password")),
+                Acls.Definition.ANYONE_READ.get().toRecord());
+        List<Acls.Acl> interned = Acls.internRecords(custom);
+        assertEquals(Acls.Acl.fromRecordList(custom), interned);
+        assertSame(interned, Acls.internRecords(Lists.newArrayList(custom)));
+        assertSame(interned, Acls.intern(Acls.Acl.fromRecordList(custom)));
+        try {
+            interned.clear();
+            fail();
+        } catch (UnsupportedOperationException e) {}
+    }
+}
@@ -0,0 +1,80 @@
+package edu.uw.zookeeper.data;
+
+import static org.junit.Assert.*;
+
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+@RunWith(JUnit4.class)
+public class CompactNodeTest {
+
+    @Test
+    public void testChildren() {
+        SimpleLabelTrie<Node> trie = SimpleLabelTrie.forRoot(Node.root());
+        Node parent = Node.child(ZNodeLabel.fromString("a"), trie.root());
+        trie.put(parent.path(), parent);
+        assertEquals("/a", parent.path().toString());
+        assertSame(trie.root(), parent.parent().get());
+
+        // enough children to move them to a map and back
+        int count = Node.MAX_ARRAY_CHILDREN * 2;
+        Set<ZNodeName> names = Sets.newHashSet();
+        for (int i=0; i<count; ++i) {
+            ZNodeLabel name = ZNodeLabel.fromString(String.valueOf(i));
+            Node child = Node.child(name, parent);
+            assertNull(trie.put(child.path(), child));
+            assertSame(child, trie.get(ZNodePath.fromString("/a/" + i)));
+            assertEquals("/a/" + i, child.path().toString());
+            names.add(name);
+            assertEquals(names, parent.keySet());
+            assertEquals(names.size(), parent.size());
+        }
+        for (int i=count-1; i>=0; --i) {
+            ZNodeLabel name = ZNodeLabel.fromString(String.valueOf(i));
+            Node child = parent.get(name);
+            assertNotNull(child);
+            assertTrue(parent.containsValue(child));
+            assertSame(child, trie.remove(child.path()));
+            assertFalse(parent.containsKey(name));
+            names.remove(name);
+            assertEquals(names, ImmutableSet.copyOf(parent.keySet()));
+            assertEquals(names.size(), parent.values().size());
+        }
+        assertTrue(parent.isEmpty());
+        assertTrue(parent.remove());
+        assertTrue(trie.root().isEmpty());
+    }
+
+    @Test
+    public void testReplace() {
+        Node root = Node.root();
+        ZNodeLabel name = ZNodeLabel.fromString("a");
+        Node first = Node.child(name, root);
+        Node second = Node.child(name, root);
+        assertNull(root.put(name, first));
+        assertSame(first, root.put(name, second));
+        assertSame(second, root.get("a"));
+        assertEquals(1, root.size());
+    }
+
+    public static final class Node extends AbstractNameTrie.CompactNode<Node> {
+
+        public static Node root() {
+            return new Node(EmptyZNodeLabel.getInstance(), null);
+        }
+
+        public static Node child(ZNodeName name, Node parent) {
+            return new Node(name, parent);
+        }
+
+        protected Node(ZNodeName name, Node parent) {
+            super(name, parent);
+        }
+    }
+}
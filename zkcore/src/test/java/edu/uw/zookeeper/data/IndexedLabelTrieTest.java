@@ -0,0 +1,54 @@
+package edu.uw.zookeeper.data;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class IndexedLabelTrieTest {
+
+    @Test
+    public void testPutRemove() {
+        IndexedLabelTrie<Node> trie = IndexedLabelTrie.forRoot(Node.root());
+        ZNodePath a = ZNodePath.fromString("/a");
+        ZNodePath b = ZNodePath.fromString("/a/b");
+        assertSame(trie.root(), trie.get(ZNodePath.root()));
+        assertNull(trie.get(a));
+
+        Node nodeA = Node.child(ZNodeLabel.fromString("a"), trie.root());
+        trie.put(a, nodeA);
+        Node nodeB = Node.child(ZNodeLabel.fromString("b"), nodeA);
+        trie.put(b, nodeB);
+        assertSame(nodeA, trie.get(a));
+        assertSame(nodeB, trie.get(b.toString()));
+        assertSame(nodeB, nodeA.get(ZNodeLabel.fromString("b")));
+        assertEquals(3, trie.size());
+
+        // removing a node removes its subtree
+        assertSame(nodeA, trie.remove(a));
+        assertNull(trie.get(a));
+        assertNull(trie.get(b));
+        assertEquals(1, trie.size());
+
+        // nodes added before the trie are indexed
+        trie.put(a, nodeA);
+        assertSame(nodeB, IndexedLabelTrie.forRoot(trie.root()).get(b));
+    }
+
+    public static final class Node extends AbstractNameTrie.SimpleNode<Node> {
+
+        public static Node root() {
+            return new Node(AbstractNameTrie.<Node>rootPointer());
+        }
+
+        public static Node child(ZNodeName name, Node parent) {
+            return new Node(SimpleLabelTrie.weakPointer(name, parent));
+        }
+
+        protected Node(NameTrie.Pointer<? extends Node> parent) {
+            super(parent);
+        }
+    }
+}
@@ -3,11 +3,15 @@ package edu.uw.zookeeper.netty;
 import static org.junit.Assert.*;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.channel.local.*;
 
 import org.junit.Test;
@@ -16,7 +20,10 @@ import org.junit.runners.JUnit4;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+
 import edu.uw.zookeeper.net.Connection;
 import edu.uw.zookeeper.net.ConnectionTestAdapter;
 import edu.uw.zookeeper.net.QueueingConnectionListener;
@@ -87,6 +94,52 @@ public class ChannelConnectionTest extends ConnectionTestAdapter {
         }
     }
     
+    @Test
+    public void testFlush() throws Exception {
+        final FlushCounter flushes = new FlushCounter();
+        EmbeddedChannel channel = new EmbeddedChannel(flushes);
+        ChannelConnection<String,String> connection = ChannelConnection.defaults(String.class, channel);
+
+        // written and flushed once from the event loop,
+        // after tasks that were queued in the meantime
+        List<ListenableFuture<String>> futures = write(connection, 3);
+        final List<Integer> queued = Lists.newArrayList();
+        channel.eventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                queued.add(Integer.valueOf(flushes.count));
+            }
+        });
+        assertTrue(channel.outboundMessages().isEmpty());
+        channel.runPendingTasks();
+        assertEquals(ImmutableList.of(0), queued);
+        assertEquals(1, flushes.count);
+        for (int i=0; i<futures.size(); ++i) {
+            assertEquals(String.valueOf(i), futures.get(i).get());
+            assertEquals(String.valueOf(i), channel.readOutbound());
+        }
+        assertNull(channel.readOutbound());
+
+        // and after every MAX_WRITES_PER_FLUSH writes
+        futures = write(connection, AbstractChannelConnection.MAX_WRITES_PER_FLUSH + 1);
+        channel.runPendingTasks();
+        assertEquals(3, flushes.count);
+        for (int i=0; i<futures.size(); ++i) {
+            assertEquals(String.valueOf(i), futures.get(i).get());
+            assertEquals(String.valueOf(i), channel.readOutbound());
+        }
+        assertNull(channel.readOutbound());
+        channel.finish();
+    }
+
+    protected static List<ListenableFuture<String>> write(ChannelConnection<String,String> connection, int count) {
+        List<ListenableFuture<String>> futures = Lists.newArrayListWithCapacity(count);
+        for (int i=0; i<count; ++i) {
+            futures.add(connection.write(String.valueOf(i)));
+        }
+        return futures;
+    }
+
     protected QueuedConnection<String,String,? extends AbstractChannelConnection<String,String,?>> newConnection(Channel channel) {
         QueueingConnectionListener<String> listener = QueueingConnectionListener.linkedQueues();
         ChannelConnection<String,String> connection = 
@@ -94,4 +147,15 @@ public class ChannelConnectionTest extends ConnectionTestAdapter {
                         String.class, channel, ImmutableList.of(listener));
         return QueuedConnection.create(connection, listener);
     }
+
+    protected static final class FlushCounter extends ChannelOutboundHandlerAdapter {
+
+        public int count = 0;
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            ++count;
+            super.flush(ctx);
+        }
+    }
 }
@@ -0,0 +1,147 @@
+package edu.uw.zookeeper.netty;
+
+import static org.junit.Assert.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.EncoderException;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+
+import edu.uw.zookeeper.net.SharedEncoder;
+
+@RunWith(JUnit4.class)
+public class EncoderHandlerTest {
+
+    @Test
+    public void testFlush() {
+        EmbeddedChannel channel = new EmbeddedChannel(newHandler());
+        List<ChannelFuture> futures = write(channel, "a", "b", "c");
+        assertTrue(channel.outboundMessages().isEmpty());
+        for (ChannelFuture future: futures) {
+            assertFalse(future.isDone());
+        }
+
+        // one buffer for the flush
+        channel.flush();
+        assertEquals("abc", readOutbound(channel));
+        assertNull(channel.readOutbound());
+        for (ChannelFuture future: futures) {
+            assertTrue(future.isSuccess());
+        }
+
+        futures = write(channel, "d");
+        channel.flush();
+        assertEquals("d", readOutbound(channel));
+        assertTrue(futures.get(0).isSuccess());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testMaxPending() {
+        EmbeddedChannel channel = new EmbeddedChannel(newHandler());
+        int length = EncoderHandler.MAX_PENDING_BYTES / 4;
+        String message = Strings.repeat("a", length);
+        List<ChannelFuture> futures = write(channel, message, message, message, message, "b");
+        // the first four are written when they reach the cutoff, but not flushed
+        assertTrue(channel.outboundMessages().isEmpty());
+
+        channel.flush();
+        assertEquals(Strings.repeat(message, 4), readOutbound(channel));
+        assertEquals("b", readOutbound(channel));
+        assertNull(channel.readOutbound());
+        for (ChannelFuture future: futures) {
+            assertTrue(future.isSuccess());
+        }
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testShared() {
+        EmbeddedChannel channel = new EmbeddedChannel(newHandler());
+        List<ChannelFuture> futures = write(channel, "a", "b", "!c", "d");
+        channel.flush();
+        // pending bytes are written before the shared frame
+        assertEquals("ab", readOutbound(channel));
+        assertEquals("!c", readOutbound(channel));
+        assertEquals("d", readOutbound(channel));
+        assertNull(channel.readOutbound());
+        for (ChannelFuture future: futures) {
+            assertTrue(future.isSuccess());
+        }
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testRemoved() {
+        EncoderHandler<String> handler = newHandler();
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        List<ChannelFuture> futures = write(channel, "a", "b");
+        channel.pipeline().remove(handler);
+        for (ChannelFuture future: futures) {
+            assertTrue(future.isDone());
+            assertTrue(future.cause() instanceof EncoderException);
+        }
+        channel.flush();
+        assertNull(channel.readOutbound());
+        assertFalse(channel.finish());
+    }
+
+    protected static EncoderHandler<String> newHandler() {
+        return EncoderHandler.withEncoder(new StringEncoder(), LogManager.getLogger(EncoderHandlerTest.class));
+    }
+
+    protected static List<ChannelFuture> write(EmbeddedChannel channel, String...messages) {
+        List<ChannelFuture> futures = Lists.newArrayListWithCapacity(messages.length);
+        for (String message: messages) {
+            futures.add(channel.write(message));
+        }
+        return futures;
+    }
+
+    protected static String readOutbound(EmbeddedChannel channel) {
+        ByteBuf buffer = (ByteBuf) channel.readOutbound();
+        assertNotNull(buffer);
+        try {
+            return buffer.toString(Charsets.UTF_8);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Messages starting with '!' are treated as already encoded.
+     */
+    protected static final class StringEncoder implements SharedEncoder<String, String> {
+
+        @Override
+        public Class<? extends String> encodeType() {
+            return String.class;
+        }
+
+        @Override
+        public void encode(String input, ByteBuf output) throws IOException {
+            output.writeBytes(input.getBytes(Charsets.UTF_8));
+        }
+
+        @Override
+        public ByteBuf encodeShared(String input) throws IOException {
+            if (input.startsWith("!")) {
+                return Unpooled.copiedBuffer(input, Charsets.UTF_8);
+            } else {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package edu.uw.zookeeper.netty;
+
+import static org.junit.Assert.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.collect.Lists;
+
+@RunWith(JUnit4.class)
+public class FrameCumulatorTest {
+
+    @Test
+    public void testSmallFrame() {
+        ByteBuf frame = frame(1000);
+        List<ByteBuf> components = Lists.newArrayList();
+        ByteBuf cumulation = cumulate(DecoderHandler.FrameCumulator.getDefault(), frame.duplicate(), 100, components);
+        assertFalse(cumulation instanceof CompositeByteBuf);
+        assertTrue(components.isEmpty());
+        assertEquals(frame, cumulation);
+        cumulation.release();
+    }
+
+    @Test
+    public void testLargeFrame() {
+        DecoderHandler.FrameCumulator cumulator = DecoderHandler.FrameCumulator.create(4096, 1 << 20);
+        ByteBuf frame = frame(1 << 16);
+        List<ByteBuf> components = Lists.newArrayList();
+        ByteBuf cumulation = cumulate(cumulator, frame.duplicate(), 1000, components);
+        assertTrue(cumulation instanceof CompositeByteBuf);
+        // more segments than a default composite holds before it consolidates
+        assertTrue(components.size() > 16);
+        assertEquals(components.size() + 1, ((CompositeByteBuf) cumulation).numComponents());
+        for (ByteBuf component: components) {
+            assertEquals(1, component.refCnt());
+        }
+        assertEquals(frame, cumulation);
+        cumulation.release();
+        for (ByteBuf component: components) {
+            assertEquals(0, component.refCnt());
+        }
+    }
+
+    @Test
+    public void testUnframed() {
+        // a four letter word isn't a plausible length prefix
+        ByteBuf input = Unpooled.copiedBuffer("ruokruokruok".getBytes());
+        List<ByteBuf> components = Lists.newArrayList();
+        ByteBuf cumulation = cumulate(DecoderHandler.FrameCumulator.getDefault(), input.duplicate(), 4, components);
+        assertFalse(cumulation instanceof CompositeByteBuf);
+        assertTrue(components.isEmpty());
+        assertEquals(input, cumulation);
+        cumulation.release();
+    }
+
+    protected static ByteBuf frame(int length) {
+        byte[] bytes = new byte[length];
+        new Random(1L).nextBytes(bytes);
+        return Unpooled.buffer().writeInt(length).writeBytes(bytes);
+    }
+
+    /**
+     * @param components collects the segments that the cumulation kept instead of copying
+     */
+    protected static ByteBuf cumulate(DecoderHandler.FrameCumulator cumulator, ByteBuf input, int segment, List<ByteBuf> components) {
+        ByteBufAllocator alloc = UnpooledByteBufAllocator.DEFAULT;
+        ByteBuf cumulation = alloc.buffer().writeBytes(input, Math.min(segment, input.readableBytes()));
+        while (input.isReadable()) {
+            ByteBuf in = alloc.buffer().writeBytes(input, Math.min(segment, input.readableBytes()));
+            cumulation = cumulator.cumulate(alloc, cumulation, in);
+            if (cumulation instanceof CompositeByteBuf) {
+                // owned by the cumulation until it is released, not copied
+                assertEquals(1, in.refCnt());
+                components.add(in);
+            } else {
+                // copied
+                assertEquals(0, in.refCnt());
+            }
+        }
+        return cumulation;
+    }
+}
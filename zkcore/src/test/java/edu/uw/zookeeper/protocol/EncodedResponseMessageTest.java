@@ -0,0 +1,50 @@
+package edu.uw.zookeeper.protocol;
+
+import static org.junit.Assert.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import edu.uw.zookeeper.protocol.proto.IWatcherEvent;
+import edu.uw.zookeeper.protocol.proto.OpCodeXid;
+
+
+@RunWith(JUnit4.class)
+public class EncodedResponseMessageTest {
+
+    @Test
+    public void testEncode() throws IOException {
+        ProtocolResponseMessage<IWatcherEvent> message = ProtocolResponseMessage.of(
+                OpCodeXid.NOTIFICATION.xid(),
+                OpCodeXid.NOTIFICATION_ZXID,
+                new IWatcherEvent(1, 3, "/a"));
+        EncodedResponseMessage<IWatcherEvent> encoded = EncodedResponseMessage.encode(message);
+
+        ByteBuf expected = Unpooled.buffer();
+        Frame.FramedEncoder.create(EncodableEncoder.getInstance()).encode(message, expected);
+
+        // each frame is an independent view of the same bytes
+        ByteBuf frame = encoded.frame();
+        assertEquals(expected, frame);
+        frame.skipBytes(frame.readableBytes());
+        assertFalse(frame.release());
+        frame = encoded.frame();
+        assertEquals(expected, frame);
+        assertFalse(frame.release());
+
+        ByteBuf output = Unpooled.buffer();
+        encoded.encode(output);
+        expected.skipBytes(IntHeader.length());
+        assertEquals(expected, output);
+
+        ProtocolResponseMessage<?> decoded = ProtocolResponseMessage.decode(
+                OpCodeXid.NOTIFICATION.opcode(), output);
+        assertEquals(message.header(), decoded.header());
+        assertEquals("/a", ((IWatcherEvent) decoded.record()).getPath());
+    }
+}
@@ -0,0 +1,57 @@
+package edu.uw.zookeeper.protocol;
+
+import static org.junit.Assert.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import edu.uw.zookeeper.protocol.proto.IGetDataResponse;
+import edu.uw.zookeeper.protocol.proto.OpCode;
+import edu.uw.zookeeper.protocol.proto.Stats;
+
+@RunWith(JUnit4.class)
+public class SharedDataFrameTest {
+
+    @Test
+    public void testFrame() throws IOException {
+        byte[] bytes = new byte[SharedDataFrame.MIN_SHARED_LENGTH];
+        Arrays.fill(bytes, (byte) 1);
+        ByteBuf payload = Unpooled.directBuffer(bytes.length).writeBytes(bytes);
+        ProtocolResponseMessage<IGetDataResponse> shared = ProtocolResponseMessage.of(
+                1, 2L, new IGetDataResponse(payload, Stats.ImmutableStat.uninitialized()));
+        ProtocolResponseMessage<IGetDataResponse> copied = ProtocolResponseMessage.of(
+                1, 2L, new IGetDataResponse(bytes, Stats.ImmutableStat.uninitialized()));
+
+        ByteBuf expected = Unpooled.buffer();
+        Frame.FramedEncoder.create(EncodableEncoder.getInstance()).encode(copied, expected);
+        
+        ByteBuf output = Unpooled.buffer();
+        Frame.FramedEncoder.create(EncodableEncoder.getInstance()).encode(shared, output);
+        assertEquals(expected, output);
+
+        ByteBuf frame = SharedDataFrame.frame(shared, UnpooledByteBufAllocator.DEFAULT);
+        assertNotNull(frame);
+        assertEquals(2, payload.refCnt());
+        assertEquals(expected, frame);
+        assertTrue(frame.release());
+        assertEquals(1, payload.refCnt());
+        
+        // clients decode the frame as usual
+        ProtocolResponseMessage<?> decoded = ProtocolResponseMessage.decode(
+                OpCode.GET_DATA, expected.skipBytes(IntHeader.length()));
+        assertArrayEquals(bytes, ((IGetDataResponse) decoded.record()).getData());
+        
+        // small payloads are copied
+        payload = Unpooled.directBuffer(1).writeByte(1);
+        assertNull(SharedDataFrame.frame(ProtocolResponseMessage.of(
+                1, 2L, new IGetDataResponse(payload, Stats.ImmutableStat.uninitialized())),
+                UnpooledByteBufAllocator.DEFAULT));
+    }
+}
@@ -0,0 +1,38 @@
+package edu.uw.zookeeper.protocol.proto;
+
+import static org.junit.Assert.*;
+
+import org.apache.jute.Record;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RecordFactoryTest {
+
+    @Test
+    public void testFactories() {
+        for (RecordFactory factory: RecordFactory.values()) {
+            Record record = factory.newInstance();
+            assertSame(factory.type(), record.getClass());
+            assertSame(factory, RecordFactory.forType(factory.type()));
+            boolean shared = (factory.type().getAnnotation(Shared.class) != null);
+            assertEquals(shared, factory.isShared());
+            assertEquals(shared, (record == factory.newInstance()));
+        }
+    }
+
+    @Test
+    public void testOpcodes() {
+        for (OpCode opcode: OpCode.values()) {
+            Class<?> type = Records.Requests.typeOf(opcode);
+            if (type != null) {
+                assertSame(type, Records.Requests.getInstance().get(opcode).getClass());
+            }
+            type = Records.Responses.typeOf(opcode);
+            if (type != null) {
+                assertSame(type, Records.Responses.getInstance().get(opcode).getClass());
+            }
+        }
+    }
+}
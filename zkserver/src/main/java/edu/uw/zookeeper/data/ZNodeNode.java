@@ -1,15 +1,19 @@
 package edu.uw.zookeeper.data;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 
-import java.lang.reflect.Constructor;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.zookeeper.KeeperException;
 
+import com.google.common.base.Function;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -25,31 +29,37 @@ import edu.uw.zookeeper.protocol.SessionRequest;
 import edu.uw.zookeeper.protocol.proto.*;
 import edu.uw.zookeeper.server.ByOpcodeTxnRequestProcessor;
 
-public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
+/**
+ * Znode of the server data tree.
+ * 
+ * There may be millions of znodes, so each is kept small:
+ * a node with few children, and a state with the stat inline.
+ */
+public class ZNodeNode extends AbstractNameTrie.CompactNode<ZNodeNode> {
 
     public static ZNodeNode root() {
         return root(ZNodeState.defaults());
     }
     
     public static ZNodeNode root(ZNodeState state) {
-        NameTrie.Pointer<ZNodeNode> pointer = SimpleLabelTrie.strongPointer(EmptyZNodeLabel.getInstance(), null);
         return new ZNodeNode(
-                pointer, 
+                EmptyZNodeLabel.getInstance(), 
+                null,
                 state);
     }
     
     public static ZNodeNode child(ZNodeLabel label, ZNodeNode parent, ZNodeState state) {
-        NameTrie.Pointer<ZNodeNode> pointer = SimpleLabelTrie.weakPointer(label, parent);
         return new ZNodeNode(
-                pointer, 
+                label,
+                checkNotNull(parent), 
                 state);
     }
 
     private final ZNodeState state;
     
-    protected ZNodeNode(NameTrie.Pointer<? extends ZNodeNode> parent, ZNodeState state) {
-        super(SimpleLabelTrie.pathOf(parent), parent, Maps.<ZNodeName, ZNodeNode>newHashMap());
-        this.state = state;
+    protected ZNodeNode(ZNodeName name, ZNodeNode parent, ZNodeState state) {
+        super(name, parent);
+        this.state = checkNotNull(state);
     }
 
     public ZNodeState state() {
@@ -57,10 +67,11 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
     }
     
     public Stats.ImmutableStat asStat() {
-        int dataLength = state.getData().getDataLength();
-        int numChildren = size();
-        return Stats.ImmutableStat.copyOf(Stats.CompositeStatGetter.of(
-                state.asStatPersisted(), dataLength, numChildren));
+        return Stats.ImmutableStat.of(
+                state.getCzxid(), state.getMzxid(), state.getCtime(),
+                state.getMtime(), state.getVersion(), state.getCversion(),
+                state.getAversion(), state.getEphemeralOwner(), state.getDataLength(),
+                size(), state.getPzxid());
     }
 
     @Override
@@ -93,6 +104,19 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
             return node;
         }
         
+        /**
+         * Only indexed paths are valid, so a path found in the index is not validated.
+         */
+        public static ZNodeNode getNode(NameTrie<ZNodeNode> trie, Records.PathGetter record) throws KeeperException {
+            if (trie instanceof IndexedLabelTrie) {
+                ZNodeNode node = trie.get(record.getPath());
+                if (node != null) {
+                    return node;
+                }
+            }
+            return getNode(trie, getPath(record));
+        }
+        
         protected final NameTrie<ZNodeNode> trie;
         
         protected AbstractProcessor(NameTrie<ZNodeNode> trie) {
@@ -124,7 +148,7 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
             }
             ZNodeName parentPath = ((AbsoluteZNodePath) path).parent();
             ZNodeNode parent = getNode(get(), parentPath);
-            if (parent.state().getCreate().isEphemeral()) {
+            if (parent.state().isEphemeral()) {
                 throw new KeeperException.NoChildrenForEphemeralsException(parentPath.toString());
             }
             
@@ -150,15 +174,15 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
         public V apply(TxnOperation.Request<?> request)
                 throws KeeperException {
             IDeleteRequest record = (IDeleteRequest) request.record();
-            ZNodePath path = getPath(record);
+            ZNodeNode node = getNode(get(), record);
+            ZNodePath path = node.path();
             if (path.isRoot()) {
                 throw new KeeperException.BadArgumentsException(path.toString());
             }
-            ZNodeNode node = getNode(get(), path);
             if (node.size() > 0) {
                 throw new KeeperException.NotEmptyException(path.toString());
             }
-            if (! node.state().getData().getStat().compareVersion(record.getVersion())) {
+            if (! node.state().compareVersion(record.getVersion())) {
                 throw new KeeperException.BadVersionException(path.toString());
             }
             ZNodeNode parent = getNode(get(), ((AbsoluteZNodePath) path).parent());
@@ -185,9 +209,9 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
         public V apply(TxnOperation.Request<?> request)
                 throws KeeperException {
             ISetDataRequest record = (ISetDataRequest) request.record();
-            ZNodeLabelVector path = getPath(record);
-            ZNodeNode node = getNode(get(), path);
-            if (! node.state().getData().getStat().compareVersion(record.getVersion())) {
+            ZNodeNode node = getNode(get(), record);
+            ZNodeLabelVector path = node.path();
+            if (! node.state().compareVersion(record.getVersion())) {
                 throw new KeeperException.BadVersionException(path.toString());
             }
             
@@ -201,6 +225,81 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
                 ZNodeNode node);
     }
 
+    /**
+     * Totals over a data tree, kept up to date by the operators that change it,
+     * so that they can be read without the tree lock.
+     *
+     * The data size counts the path and the payload of each znode.
+     */
+    public static final class Counts {
+
+        public static Counts create() {
+            return new Counts();
+        }
+
+        /**
+         * Counts in one pass, for a tree that wasn't built by the operators.
+         */
+        public static Counts of(Iterable<ZNodeNode> nodes) {
+            Counts counts = create();
+            for (ZNodeNode node: nodes) {
+                counts.add(node.path(), node.state());
+            }
+            return counts;
+        }
+
+        private final AtomicInteger znodes;
+        private final AtomicInteger ephemerals;
+        private final AtomicLong dataSize;
+
+        private Counts() {
+            this.znodes = new AtomicInteger(0);
+            this.ephemerals = new AtomicInteger(0);
+            this.dataSize = new AtomicLong(0L);
+        }
+
+        public int znodes() {
+            return znodes.get();
+        }
+
+        public int ephemerals() {
+            return ephemerals.get();
+        }
+
+        public long dataSize() {
+            return dataSize.get();
+        }
+
+        public void add(ZNodeName path, ZNodeState state) {
+            znodes.incrementAndGet();
+            if (state.isEphemeral()) {
+                ephemerals.incrementAndGet();
+            }
+            dataSize.addAndGet(path.length() + state.getDataLength());
+        }
+
+        public void remove(ZNodeName path, ZNodeState state) {
+            znodes.decrementAndGet();
+            if (state.isEphemeral()) {
+                ephemerals.decrementAndGet();
+            }
+            dataSize.addAndGet(- (path.length() + state.getDataLength()));
+        }
+
+        public void resize(int fromLength, int toLength) {
+            dataSize.addAndGet(toLength - fromLength);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("znodes", znodes())
+                    .add("ephemerals", ephemerals())
+                    .add("dataSize", dataSize())
+                    .toString();
+        }
+    }
+
     public static abstract class Operators {
         
         private Operators() {}
@@ -210,27 +309,27 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
         }
         
         public static Map<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException>> of(NameTrie<ZNodeNode> trie, Map<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException>> operators) {
-            for (Class<?> cls: Operators.class.getDeclaredClasses()) {
-                Operational annotation = cls.getAnnotation(Operational.class);
-                if (annotation == null) {
-                    continue;
-                }
-                if (! Operator.class.isAssignableFrom(cls)) {
-                    continue;
-                }
-                Operator<?> operator = null;
-                for (Constructor<?> ctor: cls.getConstructors()) {
-                    if (ctor.getParameterTypes().length == 1) {
-                        try {
-                            operator = (Operator<?>) ctor.newInstance(trie);
-                        } catch (Exception e) {
-                            throw new AssertionError(e);
-                        }
-                        break;
-                    }
-                }
-                assert (operator != null);
-                for (OpCode opcode: annotation.value()) {
+            return of(trie, DataStorage.HEAP, operators);
+        }
+        
+        public static Map<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException>> of(NameTrie<ZNodeNode> trie, DataStorage storage, Map<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException>> operators) {
+            return of(trie, storage, Counts.create(), operators);
+        }
+        
+        public static Map<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException>> of(NameTrie<ZNodeNode> trie, DataStorage storage, Counts counts, Map<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException>> operators) {
+            List<Operator<?>> instances = ImmutableList.<Operator<?>>of(
+                    new CheckOperator(trie),
+                    new CreateOperator(trie, storage, counts),
+                    new DeleteOperator(trie, counts),
+                    new ExistsOperator(trie),
+                    new GetDataOperator(trie),
+                    new SetDataOperator(trie, storage, counts),
+                    new GetAclOperator(trie),
+                    new SetAclOperator(trie),
+                    new GetChildrenOperator(trie),
+                    new SyncOperator(trie));
+            for (Operator<?> operator: instances) {
+                for (OpCode opcode: operator.getClass().getAnnotation(Operational.class).value()) {
                     operators.put(opcode, operator);
                 }
             }
@@ -248,10 +347,9 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
             public ICheckVersionResponse apply(TxnOperation.Request<?> request)
                     throws KeeperException {
                 ICheckVersionRequest record = (ICheckVersionRequest) request.record();
-                ZNodeLabelVector path = getPath(record);
-                ZNodeNode node = getNode(get(), path);
-                if (! node.state().getData().getStat().compareVersion(record.getVersion())) {
-                    throw new KeeperException.BadVersionException(path.toString());
+                ZNodeNode node = getNode(get(), record);
+                if (! node.state().compareVersion(record.getVersion())) {
+                    throw new KeeperException.BadVersionException(node.path().toString());
                 }
                 return Operations.Responses.check().setStat(node.asStat()).build();      
             }
@@ -260,8 +358,21 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
         @Operational({OpCode.CREATE, OpCode.CREATE2})
         public static class CreateOperator extends AbstractCreate<Records.Response> implements Operator<Records.Response> {
     
+            protected final DataStorage storage;
+            protected final Counts counts;
+            
             public CreateOperator(NameTrie<ZNodeNode> trie) {
+                this(trie, DataStorage.HEAP);
+            }
+            
+            public CreateOperator(NameTrie<ZNodeNode> trie, DataStorage storage) {
+                this(trie, storage, Counts.create());
+            }
+            
+            public CreateOperator(NameTrie<ZNodeNode> trie, DataStorage storage, Counts counts) {
                 super(trie);
+                this.storage = checkNotNull(storage);
+                this.counts = checkNotNull(counts);
             }
     
             @Override
@@ -271,22 +382,24 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
                     CreateMode mode,
                     ZNodeNode parent,
                     AbsoluteZNodePath path) {
-                int cversion = parent.state().getChildren().getAndIncrement(request.zxid());
+                int cversion = parent.state().getAndIncrementCversion(request.zxid());
                 if (mode.contains(CreateFlag.SEQUENTIAL)) {
                     path = AbsoluteZNodePath.fromString(Sequential.fromInt(path, cversion).toString());
                 }
                 
                 long ephemeralOwner = mode.contains(CreateFlag.EPHEMERAL) ? request.getSessionId() : Stats.CreateStat.ephemeralOwnerNone();
-                Stats.CreateStat createStat = Stats.CreateStat.of(request.zxid(), request.getTime(), ephemeralOwner);
                 byte[] bytes = record.getData();
                 bytes = (bytes == null) ? ZNodeData.emptyBytes() : bytes;
-                ZNodeData data = ZNodeData.of(Stats.DataStat.initialVersion(request.zxid(), request.getTime()), bytes);
-                ZNodeAcl acl = ZNodeAcl.initialVersion(Acls.Acl.fromRecordList(record.getAcl()));
-                Stats.ChildrenStat childrenStat = Stats.ChildrenStat.initialVersion(request.zxid());
-                ZNodeState state = ZNodeState.of(createStat, data, acl, childrenStat);
+                ZNodeState state = ZNodeState.initialVersion(
+                        request.zxid(), 
+                        request.getTime(), 
+                        ephemeralOwner, 
+                        Acls.internRecords(record.getAcl()), 
+                        storage.apply(bytes));
                 ZNodeLabel label = path.label();
                 ZNodeNode node = ZNodeNode.child(label, parent, state);
-                parent.put(label, node);
+                get().put(path, node);
+                counts.add(path, state);
                 Operations.Responses.Create builder = 
                         Operations.Responses.create().setPath(path);
                 if (OpCode.CREATE2 == request.record().opcode()) {
@@ -299,8 +412,15 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
         @Operational(OpCode.DELETE)
         public static class DeleteOperator extends AbstractDelete<IDeleteResponse> implements Operator<IDeleteResponse> {
     
+            protected final Counts counts;
+    
             public DeleteOperator(NameTrie<ZNodeNode> trie) {
+                this(trie, Counts.create());
+            }
+    
+            public DeleteOperator(NameTrie<ZNodeNode> trie, Counts counts) {
                 super(trie);
+                this.counts = checkNotNull(counts);
             }
     
             @Override
@@ -311,7 +431,8 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
                     ZNodeNode node,
                     ZNodeNode parent) {
                 get().remove(path);
-                parent.state().getChildren().getAndIncrement(request.zxid());
+                counts.remove(path, node.state());
+                parent.state().getAndIncrementCversion(request.zxid());
                 return Operations.Responses.delete().build();
             }
         }
@@ -327,8 +448,7 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
             public IExistsResponse apply(TxnOperation.Request<?> request)
                     throws KeeperException {
                 IExistsRequest record = (IExistsRequest) request.record();
-                ZNodeLabelVector path = getPath(record);
-                ZNodeNode node = getNode(get(), path);
+                ZNodeNode node = getNode(get(), record);
                 return Operations.Responses.exists().setStat(node.asStat()).build();
             }
         }
@@ -344,17 +464,30 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
             public IGetDataResponse apply(TxnOperation.Request<?> request)
                     throws KeeperException {
                 IGetDataRequest record = (IGetDataRequest) request.record();
-                ZNodeLabelVector path = getPath(record);
-                ZNodeNode node = getNode(get(), path);
-                return Operations.Responses.getData().setData(node.state().getData().getData()).setStat(node.asStat()).build();
+                ZNodeNode node = getNode(get(), record);
+                // the payload is immutable, so it is shared with the response
+                return new IGetDataResponse(node.state().getBuffer(), node.asStat());
             }
         }
 
         @Operational(OpCode.SET_DATA)
         public static class SetDataOperator extends AbstractSetData<ISetDataResponse> implements Operator<ISetDataResponse> {
     
+            protected final DataStorage storage;
+            protected final Counts counts;
+            
             public SetDataOperator(NameTrie<ZNodeNode> trie) {
+                this(trie, DataStorage.HEAP);
+            }
+            
+            public SetDataOperator(NameTrie<ZNodeNode> trie, DataStorage storage) {
+                this(trie, storage, Counts.create());
+            }
+            
+            public SetDataOperator(NameTrie<ZNodeNode> trie, DataStorage storage, Counts counts) {
                 super(trie);
+                this.storage = checkNotNull(storage);
+                this.counts = checkNotNull(counts);
             }
     
             @Override
@@ -363,10 +496,12 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
                     ISetDataRequest record,
                     ZNodeLabelVector path,
                     ZNodeNode node) {
-                node.state().getData().getStat().getAndIncrement(request.zxid(), request.getTime());
+                node.state().getAndIncrementVersion(request.zxid(), request.getTime());
                 byte[] bytes = record.getData();
                 bytes = (bytes == null) ? ZNodeData.emptyBytes() : bytes;
-                node.state().getData().setData(bytes);
+                int length = node.state().getDataLength();
+                node.state().setData(storage.apply(bytes));
+                counts.resize(length, node.state().getDataLength());
                 return Operations.Responses.setData().setStat(node.asStat()).build();
             }
         }
@@ -382,9 +517,8 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
             public IGetACLResponse apply(TxnOperation.Request<?> request)
                     throws KeeperException {
                 IGetACLRequest record = (IGetACLRequest) request.record();
-                ZNodeLabelVector path = getPath(record);
-                ZNodeNode node = getNode(get(), path);
-                return Operations.Responses.getAcl().setAcl(node.state().getAcl().getAcl()).setStat(node.asStat()).build();
+                ZNodeNode node = getNode(get(), record);
+                return Operations.Responses.getAcl().setAcl(node.state().getAcl()).setStat(node.asStat()).build();
             }
         }
 
@@ -399,13 +533,12 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
             public ISetACLResponse apply(TxnOperation.Request<?> request)
                     throws KeeperException {
                 ISetACLRequest record = (ISetACLRequest) request.record();
-                ZNodeLabelVector path = getPath(record);
-                ZNodeNode node = getNode(get(), path);
-                if (! node.state().getAcl().compareVersion(record.getVersion())) {
-                    throw new KeeperException.BadVersionException(path.toString());
+                ZNodeNode node = getNode(get(), record);
+                if (! node.state().compareAversion(record.getVersion())) {
+                    throw new KeeperException.BadVersionException(node.path().toString());
                 }
-                node.state().getAcl().getAndIncrement();
-                node.state().getAcl().setAcl(Acls.Acl.fromRecordList(record.getAcl()));
+                node.state().getAndIncrementAversion();
+                node.state().setAcl(Acls.internRecords(record.getAcl()));
                 return Operations.Responses.setAcl().setStat(node.asStat()).build();        
             }
         }
@@ -421,8 +554,7 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
             @Override
             public Records.Response apply(TxnOperation.Request<?> request)
                     throws KeeperException {
-                ZNodeLabelVector path = getPath((Records.PathGetter) request.record());
-                ZNodeNode node = getNode(get(), path);
+                ZNodeNode node = getNode(get(), (Records.PathGetter) request.record());
                 Operations.Responses.GetChildren builder = Operations.Responses.getChildren();
                 builder.setChildren(ImmutableList.<ZNodeLabel>copyOf((Set) node.keySet()));
                 if (OpCode.GET_CHILDREN2 == request.record().opcode()) {
@@ -454,12 +586,15 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
 
         protected final TxnOperation.Request<?> request;
         protected final NameTrie<ZNodeNode> trie;
+        protected final Counts counts;
         
         protected AbstractUndo(
                 TxnOperation.Request<?> request,
-                NameTrie<ZNodeNode> trie) {
+                NameTrie<ZNodeNode> trie,
+                Counts counts) {
             this.request = request;
             this.trie = trie;
+            this.counts = counts;
         }
     }
     
@@ -471,8 +606,9 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
         public CreateUndo(
                 Stats.ChildrenStat parentStat,
                 TxnOperation.Request<?> request,
-                NameTrie<ZNodeNode> trie) {
-            super(request, trie);
+                NameTrie<ZNodeNode> trie,
+                Counts counts) {
+            super(request, trie, counts);
             this.parentStat = parentStat;
         }
         
@@ -480,7 +616,9 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
         public Void apply(Records.Response result) {
             ZNodeNode node = trie.get(((Records.PathGetter) result).getPath());
             ZNodeNode parent = node.parent().get();
-            node.remove();
+            ZNodePath path = node.path();
+            trie.remove(path);
+            counts.remove(path, node.state());
             parent.state().setChildren(parentStat);
             return null;
         }
@@ -496,8 +634,9 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
                 Stats.ChildrenStat parentStat,
                 ZNodeState state,
                 TxnOperation.Request<?> request,
-                NameTrie<ZNodeNode> trie) {
-            super(request, trie);
+                NameTrie<ZNodeNode> trie,
+                Counts counts) {
+            super(request, trie, counts);
             this.parentStat = parentStat;
             this.state = state;
         }
@@ -508,7 +647,8 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
             ZNodeNode parent = trie.get(path.parent());
             ZNodeLabel label = path.label();
             ZNodeNode node = ZNodeNode.child(label, parent, state);
-            parent.put(label, node);
+            trie.put(path, node);
+            counts.add(path, state);
             return null;
         }
     }
@@ -521,15 +661,18 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
         public SetDataUndo(
                 ZNodeData data,
                 TxnOperation.Request<?> request,
-                NameTrie<ZNodeNode> trie) {
-            super(request, trie);
+                NameTrie<ZNodeNode> trie,
+                Counts counts) {
+            super(request, trie, counts);
             this.data = data;
         }
 
         @Override
         public Void apply(Records.Response result) {
             ZNodeNode node = trie.get(((Records.PathGetter) request.record()).getPath());
-            node.state().getData().set(data);
+            int length = node.state().getDataLength();
+            node.state().setData(data);
+            counts.resize(length, node.state().getDataLength());
             return null;
         }
     }
@@ -537,8 +680,11 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
     @Operational({OpCode.CREATE, OpCode.CREATE2})
     public static class CreateCopyState extends AbstractCreate<CreateUndo> {
 
-        public CreateCopyState(NameTrie<ZNodeNode> trie) {
+        protected final Counts counts;
+
+        public CreateCopyState(NameTrie<ZNodeNode> trie, Counts counts) {
             super(trie);
+            this.counts = checkNotNull(counts);
         }
 
         @Override
@@ -549,17 +695,21 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
                 ZNodeNode parent,
                 AbsoluteZNodePath path) {
             return new CreateUndo(
-                    Stats.ChildrenStat.copyOf(parent.state().getChildren()),
+                    parent.state().getChildren(),
                     request,
-                    get());
+                    get(),
+                    counts);
         }
     }
 
     @Operational(OpCode.DELETE)
     public static class DeleteCopyState extends AbstractDelete<DeleteUndo> {
 
-        public DeleteCopyState(NameTrie<ZNodeNode> trie) {
+        protected final Counts counts;
+
+        public DeleteCopyState(NameTrie<ZNodeNode> trie, Counts counts) {
             super(trie);
+            this.counts = checkNotNull(counts);
         }
 
         @Override
@@ -570,18 +720,22 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
                 ZNodeNode node,
                 ZNodeNode parent) {
             return new DeleteUndo(
-                    Stats.ChildrenStat.copyOf(parent.state().getChildren()),
+                    parent.state().getChildren(),
                     ZNodeState.copyOf(node.state()),
                     request,
-                    get());
+                    get(),
+                    counts);
         }
     }
 
     @Operational(OpCode.SET_DATA)
     public static class SetDataCopyState extends AbstractSetData<SetDataUndo> {
 
-        public SetDataCopyState(NameTrie<ZNodeNode> trie) {
+        protected final Counts counts;
+
+        public SetDataCopyState(NameTrie<ZNodeNode> trie, Counts counts) {
             super(trie);
+            this.counts = checkNotNull(counts);
         }
 
         @Override
@@ -591,9 +745,10 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
                 ZNodeLabelVector path,
                 ZNodeNode node) {
             return new SetDataUndo(
-                    ZNodeData.copyOf(node.state().getData()),
+                    node.state().getData(),
                     request,
-                    get());
+                    get(),
+                    counts);
         }
     }
 
@@ -605,7 +760,14 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
         }
         
         public static MultiOperator of(NameTrie<ZNodeNode> trie, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException> delegate) {
-            return new MultiOperator(trie, delegate);
+            return of(trie, Counts.create(), delegate);
+        }
+        
+        /**
+         * @param counts updated by the delegate, and here when an operation is undone
+         */
+        public static MultiOperator of(NameTrie<ZNodeNode> trie, Counts counts, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException> delegate) {
+            return new MultiOperator(trie, counts, delegate);
         }
         
         protected final Map<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends AbstractUndo, KeeperException>> copiers;
@@ -613,14 +775,15 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
         
         protected MultiOperator(
                 NameTrie<ZNodeNode> trie,
+                Counts counts,
                 Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException> delegate) {
             super(trie);
             this.delegate = delegate;
             List<Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends AbstractUndo, KeeperException>> copiers = 
                     ImmutableList.<Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends AbstractUndo, KeeperException>>of(
-                            new CreateCopyState(trie),
-                            new DeleteCopyState(trie),
-                            new SetDataCopyState(trie));
+                            new CreateCopyState(trie, counts),
+                            new DeleteCopyState(trie, counts),
+                            new SetDataCopyState(trie, counts));
             ImmutableMap.Builder<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends AbstractUndo, KeeperException>> builder = ImmutableMap.builder();
             for (Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends AbstractUndo, KeeperException> copier: copiers) {
                 for (OpCode code: copier.getClass().getAnnotation(Operational.class).value()) {
@@ -690,6 +853,35 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
         }
     }
     
+    /**
+     * Where znode payloads are kept.
+     * 
+     * Payloads aren't released by the data tree,
+     * so they are unpooled and reclaimed by the garbage collector.
+     */
+    public static enum DataStorage implements Function<byte[], ByteBuf> {
+        HEAP {
+            @Override
+            public ByteBuf apply(byte[] input) {
+                return Unpooled.wrappedBuffer(input);
+            }
+        },
+        // copied once, so that large payloads don't burden the heap
+        // and can be written to a channel without another copy
+        DIRECT {
+            @Override
+            public ByteBuf apply(byte[] input) {
+                if (input.length == 0) {
+                    return Unpooled.EMPTY_BUFFER;
+                }
+                ByteBuffer buffer = ByteBuffer.allocateDirect(input.length);
+                buffer.put(input);
+                buffer.flip();
+                return Unpooled.wrappedBuffer(buffer);
+            }
+        };
+    }
+    
     public static class ZNodeData {
 
         public static byte[] emptyBytes() {
@@ -701,29 +893,54 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
         }
         
         public static ZNodeData of(Stats.DataStat stat, byte[] data) {
+            return of(stat, DataStorage.HEAP.apply(data));
+        }
+        
+        public static ZNodeData of(Stats.DataStat stat, ByteBuf data) {
             return new ZNodeData(stat, data);
         }
         
+        /**
+         * Payloads are immutable, so the copy shares the payload.
+         */
         public static ZNodeData copyOf(ZNodeData value) {
-            return of(Stats.DataStat.copyOf(value.getStat()),
-                    (value.getData() == null) ? null 
-                            : Arrays.copyOf(value.getData(), 
-                                    value.getData().length));
+            return of(Stats.DataStat.copyOf(value.getStat()), value.data);
         }
 
         protected final Stats.DataStat stat;
-        protected byte[] data;
+        // not modified, so that it can be shared
+        protected ByteBuf data;
         
-        public ZNodeData(Stats.DataStat stat, byte[] data) {
+        public ZNodeData(Stats.DataStat stat, ByteBuf data) {
             this.stat = stat;
-            this.data = data;
+            this.data = checkNotNull(data);
         }
 
+        /**
+         * @return payload, which is only copied if it isn't a heap array
+         */
         public byte[] getData() {
-            return data;
+            int length = data.readableBytes();
+            if (data.hasArray() && (data.arrayOffset() + data.readerIndex() == 0) && (data.array().length == length)) {
+                return data.array();
+            }
+            byte[] bytes = new byte[length];
+            data.getBytes(data.readerIndex(), bytes);
+            return bytes;
+        }
+        
+        /**
+         * @return unretained duplicate of the payload
+         */
+        public ByteBuf getBuffer() {
+            return data.duplicate();
         }
         
         public void setData(byte[] data) {
+            setData(DataStorage.HEAP.apply(checkNotNull(data)));
+        }
+        
+        public void setData(ByteBuf data) {
             this.data = checkNotNull(data);
         }
         
@@ -732,11 +949,11 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
         }
         
         public int getDataLength() {
-            return data.length;
+            return data.readableBytes();
         }
         
         public void set(ZNodeData value) {
-            setData(value.getData());
+            setData(value.data);
             stat.set(value.getStat());
         }
         
@@ -763,10 +980,11 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
             return new ZNodeAcl(acl, aversion);
         }
 
+        /**
+         * ACL lists are interned and immutable, so the copy shares the list.
+         */
         public static ZNodeAcl copyOf(ZNodeAcl value) {
-            return of((value.getAcl() == null) ? null 
-                    : Lists.newArrayList(value.getAcl()), 
-                    value.getAversion());
+            return of(value.getAcl(), value.getAversion());
         }
         
         protected int aversion;
@@ -814,79 +1032,267 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
         }
     }
 
-    public static class ZNodeState {
+    /**
+     * All of the state of a znode, with the stat fields inline.
+     * 
+     * Payloads and ACL lists are replaced rather than modified,
+     * so they are shared with copies.
+     * ACL lists are expected to be interned (see Acls.intern()),
+     * so the list is a handle shared by every znode with that ACL.
+     */
+    public static class ZNodeState implements Records.StatPersistedGetter, Records.DataStatSetter, Records.AclStatSetter, Records.ChildrenStatSetter {
         
         public static ZNodeState defaults() {
             return defaults(0);
         }
 
         public static ZNodeState defaults(long zxid) {
-            long time = Stats.getTime();
-            return of(
-                    Stats.CreateStat.nonEphemeral(zxid, time),
-                    ZNodeData.empty(Stats.DataStat.initialVersion(zxid, time)),
-                    ZNodeAcl.anyoneAll(),
-                    Stats.ChildrenStat.initialVersion(zxid));
+            return initialVersion(
+                    zxid, 
+                    Stats.getTime(), 
+                    Stats.CreateStat.ephemeralOwnerNone(), 
+                    Acls.Definition.ANYONE_ALL.asList(), 
+                    Unpooled.EMPTY_BUFFER);
+        }
+        
+        public static ZNodeState initialVersion(
+                long zxid,
+                long time,
+                long ephemeralOwner,
+                List<Acls.Acl> acl,
+                ByteBuf data) {
+            return new ZNodeState(
+                    zxid, time, ephemeralOwner, 
+                    zxid, time, Stats.initialVersion(), 
+                    zxid, Stats.initialVersion(), 
+                    Stats.initialVersion(), acl, data);
         }
 
         public static ZNodeState copyOf(ZNodeState value) {
-            return of(Stats.CreateStat.copyOf(value.getCreate()),
-                    ZNodeData.copyOf(value.getData()),
-                    ZNodeAcl.copyOf(value.getAcl()),
-                    Stats.ChildrenStat.copyOf(value.getChildren()));
+            return new ZNodeState(
+                    value.czxid, value.ctime, value.ephemeralOwner, 
+                    value.mzxid, value.mtime, value.version, 
+                    value.pzxid, value.cversion, 
+                    value.aversion, value.acl, value.data);
         }
                 
         public static ZNodeState of(
-                Stats.CreateStat createStat,
+                Records.CreateStatGetter createStat,
                 ZNodeData data,
                 ZNodeAcl acl,
-                Stats.ChildrenStat childrenStat) {
-            return new ZNodeState(createStat, data, acl, childrenStat);
+                Records.ChildrenStatGetter childrenStat) {
+            Stats.DataStat dataStat = data.getStat();
+            return new ZNodeState(
+                    createStat.getCzxid(), createStat.getCtime(), createStat.getEphemeralOwner(), 
+                    dataStat.getMzxid(), dataStat.getMtime(), dataStat.getVersion(), 
+                    childrenStat.getPzxid(), childrenStat.getCversion(), 
+                    acl.getAversion(), acl.getAcl(), data.data);
         }
 
-        protected final Stats.CreateStat create;
-        protected final ZNodeData data;
-        protected final ZNodeAcl acl;
-        protected final Stats.ChildrenStat children;
+        protected final long czxid;
+        protected final long ctime;
+        protected final long ephemeralOwner;
+        protected long mzxid;
+        protected long mtime;
+        protected long pzxid;
+        protected int version;
+        protected int cversion;
+        protected int aversion;
+        protected List<Acls.Acl> acl;
+        protected ByteBuf data;
         
         public ZNodeState(
-                Stats.CreateStat create,
-                ZNodeData data,
-                ZNodeAcl acl,
-                Stats.ChildrenStat children) {
-            this.create = create;
-            this.data = data;
-            this.acl = acl;
-            this.children = children;
+                long czxid,
+                long ctime,
+                long ephemeralOwner,
+                long mzxid,
+                long mtime,
+                int version,
+                long pzxid,
+                int cversion,
+                int aversion,
+                List<Acls.Acl> acl,
+                ByteBuf data) {
+            this.czxid = czxid;
+            this.ctime = ctime;
+            this.ephemeralOwner = ephemeralOwner;
+            this.mzxid = mzxid;
+            this.mtime = mtime;
+            this.version = version;
+            this.pzxid = pzxid;
+            this.cversion = cversion;
+            this.aversion = aversion;
+            this.acl = checkNotNull(acl);
+            this.data = checkNotNull(data);
+        }
+
+        @Override
+        public long getCzxid() {
+            return czxid;
+        }
+
+        @Override
+        public long getCtime() {
+            return ctime;
+        }
+
+        @Override
+        public long getEphemeralOwner() {
+            return ephemeralOwner;
         }
         
-        public ZNodeData getData() {
-            return data;
+        public boolean isEphemeral() {
+            return Stats.CreateStat.ephemeralOwnerNone() != ephemeralOwner;
+        }
+
+        @Override
+        public long getMzxid() {
+            return mzxid;
+        }
+
+        @Override
+        public void setMzxid(long mzxid) {
+            this.mzxid = mzxid;
+        }
+
+        @Override
+        public long getMtime() {
+            return mtime;
+        }
+
+        @Override
+        public void setMtime(long mtime) {
+            this.mtime = mtime;
+        }
+
+        @Override
+        public int getVersion() {
+            return version;
+        }
+
+        @Override
+        public void setVersion(int version) {
+            this.version = version;
         }
         
-        public void setData(ZNodeData data) {
-            this.data.set(data);
+        public boolean compareVersion(int version) {
+            return Stats.compareVersion(version, this.version);
+        }
+
+        public int getAndIncrementVersion(long mzxid, long mtime) {
+            int prev = this.version;
+            this.version = prev + 1;
+            this.mtime = mtime;
+            this.mzxid = mzxid;
+            return prev;
+        }
+
+        @Override
+        public long getPzxid() {
+            return pzxid;
+        }
+
+        @Override
+        public void setPzxid(long pzxid) {
+            this.pzxid = pzxid;
+        }
+
+        @Override
+        public int getCversion() {
+            return cversion;
+        }
+
+        @Override
+        public void setCversion(int cversion) {
+            this.cversion = cversion;
+        }
+
+        public int getAndIncrementCversion(long pzxid) {
+            int prev = this.cversion;
+            this.cversion = prev + 1;
+            this.pzxid = pzxid;
+            return prev;
+        }
+
+        @Override
+        public int getAversion() {
+            return aversion;
+        }
+
+        @Override
+        public void setAversion(int aversion) {
+            this.aversion = aversion;
         }
         
-        public Stats.CreateStat getCreate() {
-            return create;
+        public boolean compareAversion(int aversion) {
+            return Stats.compareVersion(aversion, this.aversion);
+        }
+
+        public int getAndIncrementAversion() {
+            int prev = this.aversion;
+            this.aversion = prev + 1;
+            return prev;
         }
         
-        public ZNodeAcl getAcl() {
+        public List<Acls.Acl> getAcl() {
             return acl;
         }
         
+        public void setAcl(List<Acls.Acl> acl) {
+            this.acl = checkNotNull(acl);
+        }
+        
+        /**
+         * @return unretained duplicate of the payload
+         */
+        public ByteBuf getBuffer() {
+            return data.duplicate();
+        }
+        
+        public int getDataLength() {
+            return data.readableBytes();
+        }
+        
+        public void setData(ByteBuf data) {
+            this.data = checkNotNull(data);
+        }
+        
+        /**
+         * @return copy of the payload and data stat
+         */
+        public ZNodeData getData() {
+            return ZNodeData.of(Stats.DataStat.of(mzxid, mtime, version), data);
+        }
+        
+        public void setData(ZNodeData data) {
+            Stats.DataStat stat = data.getStat();
+            setMzxid(stat.getMzxid());
+            setMtime(stat.getMtime());
+            setVersion(stat.getVersion());
+            setData(data.data);
+        }
+        
+        /**
+         * @return copy of the create stat
+         */
+        public Stats.CreateStat getCreate() {
+            return Stats.CreateStat.of(czxid, ctime, ephemeralOwner);
+        }
+        
+        /**
+         * @return copy of the children stat
+         */
         public Stats.ChildrenStat getChildren() {
-            return children;
+            return Stats.ChildrenStat.of(pzxid, cversion);
         }
         
-        public void setChildren(Stats.ChildrenStat children) {
-            this.children.set(children);
+        public void setChildren(Records.ChildrenStatGetter children) {
+            setPzxid(children.getPzxid());
+            setCversion(children.getCversion());
         }
         
-        public Stats.CompositeStatPersistedGetter asStatPersisted() {
-            return Stats.CompositeStatPersistedGetter.of(
-                    getCreate(), getData().getStat(), getAcl(), getChildren());
+        public Records.StatPersistedGetter asStatPersisted() {
+            return this;
         }
         
         @Override
@@ -895,7 +1301,8 @@ public class ZNodeNode extends AbstractNameTrie.SimpleNode<ZNodeNode> {
                     .add("create", getCreate())
                     .add("children", getChildren())
                     .add("data", getData())
-                    .add("acl", getData())
+                    .add("acl", getAcl())
+                    .add("aversion", getAversion())
                     .toString();
         }
     }
@@ -14,6 +14,7 @@ import edu.uw.zookeeper.net.NetServerModule;
 import edu.uw.zookeeper.net.ServerConnectionFactory;
 import edu.uw.zookeeper.netty.ChannelCodecConnection;
 import edu.uw.zookeeper.netty.ChannelServerConnectionFactory;
+import edu.uw.zookeeper.netty.NettyTransport;
 
 public class NettyServerModule implements NetServerModule {
 
@@ -21,7 +22,12 @@ public class NettyServerModule implements NetServerModule {
             RuntimeModule runtime) {
         ParameterizedFactory<SocketAddress, ServerBootstrap> bootstrapFactory = 
                 NioServerBootstrapFactory.ParameterizedDecorator.newInstance(
-                        NioServerBootstrapFactory.newInstance(runtime.getThreadFactory(), runtime.getServiceMonitor()));
+                        NioServerBootstrapFactory.newInstance(
+                                NettyTransport.TransportConfiguration.get(runtime.getConfiguration()),
+                                NettyTransport.BossThreadsConfiguration.get(runtime.getConfiguration()),
+                                NettyTransport.WorkerThreadsConfiguration.get(runtime.getConfiguration()),
+                                runtime.getThreadFactory(), 
+                                runtime.getServiceMonitor()));
         return newInstance(bootstrapFactory);
     }
 
@@ -5,15 +5,14 @@ import java.util.concurrent.ThreadFactory;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.ServerChannel;
 import edu.uw.zookeeper.common.DefaultsFactory;
 import edu.uw.zookeeper.common.Factory;
-import edu.uw.zookeeper.common.ParameterizedFactory;
 import edu.uw.zookeeper.common.Reference;
 import edu.uw.zookeeper.common.ServiceMonitor;
 import edu.uw.zookeeper.netty.DaemonThreadFactory;
 import edu.uw.zookeeper.netty.EventLoopGroupService;
-import edu.uw.zookeeper.netty.NioEventLoopGroupFactory;
+import edu.uw.zookeeper.netty.NettyTransport;
 
 public class NioServerBootstrapFactory implements Factory<ServerBootstrap> {
 
@@ -42,32 +41,73 @@ public class NioServerBootstrapFactory implements Factory<ServerBootstrap> {
     public static NioServerBootstrapFactory newInstance(
             Factory<ThreadFactory> threadFactory,
             ServiceMonitor serviceMonitor) {
+        return newInstance(NettyTransport.NIO, threadFactory, serviceMonitor);
+    }
+
+    public static NioServerBootstrapFactory newInstance(
+            NettyTransport transport,
+            Factory<ThreadFactory> threadFactory,
+            ServiceMonitor serviceMonitor) {
+        return newInstance(transport, 0, 0, threadFactory, serviceMonitor);
+    }
+
+    /**
+     * @param bossThreads threads that accept connections, or zero to share the worker threads
+     * @param workerThreads threads that handle connections, or zero for the Netty default
+     */
+    public static NioServerBootstrapFactory newInstance(
+            NettyTransport transport,
+            int bossThreads,
+            int workerThreads,
+            Factory<ThreadFactory> threadFactory,
+            ServiceMonitor serviceMonitor) {
         ThreadFactory threads = DaemonThreadFactory.getInstance().get(threadFactory.get());
         Reference<? extends EventLoopGroup> groupFactory = EventLoopGroupService.factory(
-                NioEventLoopGroupFactory.DEFAULT,
+                transport.eventLoopGroupFactory(workerThreads),
                 serviceMonitor).get(threads);
-        return newInstance(groupFactory);
+        Reference<? extends EventLoopGroup> bossGroupFactory = (bossThreads > 0) ?
+                EventLoopGroupService.factory(
+                        transport.eventLoopGroupFactory(bossThreads),
+                        serviceMonitor).get(threads) :
+                groupFactory;
+        return newInstance(transport.serverChannelType(), bossGroupFactory, groupFactory);
+    }
+
+    public static NioServerBootstrapFactory newInstance(
+            Factory<? extends EventLoopGroup> groupFactory) {
+        return newInstance(NettyTransport.NIO.serverChannelType(), groupFactory, groupFactory);
     }
 
+    /**
+     * @param serverChannelType must be compatible with the event loops of both groups
+     * @param bossGroupFactory accepts connections
+     * @param groupFactory handles accepted connections
+     */
     public static NioServerBootstrapFactory newInstance(
+            Class<? extends ServerChannel> serverChannelType,
+            Factory<? extends EventLoopGroup> bossGroupFactory,
             Factory<? extends EventLoopGroup> groupFactory) {
-        return new NioServerBootstrapFactory(groupFactory);
+        return new NioServerBootstrapFactory(serverChannelType, bossGroupFactory, groupFactory);
     }
     
+    protected final Factory<? extends EventLoopGroup> bossGroupFactory;
     protected final Factory<? extends EventLoopGroup> groupFactory;
-    protected final ParameterizedFactory<Factory<? extends EventLoopGroup>, ServerBootstrap> bootstrapFactory;
+    protected final SimpleServerBootstrapFactory bootstrapFactory;
     
     protected NioServerBootstrapFactory(
+            Class<? extends ServerChannel> serverChannelType,
+            Factory<? extends EventLoopGroup> bossGroupFactory,
             Factory<? extends EventLoopGroup> groupFactory) {
+        this.bossGroupFactory = bossGroupFactory;
         this.groupFactory = groupFactory;
         this.bootstrapFactory = SimpleServerBootstrapFactory.newInstance(
-                NioServerSocketChannel.class,
+                serverChannelType,
                 ServerTcpChannelOptionsFactory.getClient(),
                 ServerTcpChannelOptionsFactory.getServer());
     }
 
     @Override
     public ServerBootstrap get() {
-        return bootstrapFactory.get(groupFactory);
+        return bootstrapFactory.get(bossGroupFactory, groupFactory);
     }
 }
@@ -45,9 +45,15 @@ public class SimpleServerBootstrapFactory implements ParameterizedFactory<Factor
     
     @Override
     public ServerBootstrap get(Factory<? extends EventLoopGroup> eventLoopGroupFactory) {
+        return get(eventLoopGroupFactory, eventLoopGroupFactory);
+    }
+    
+    public ServerBootstrap get(
+            Factory<? extends EventLoopGroup> parentGroupFactory,
+            Factory<? extends EventLoopGroup> childGroupFactory) {
         ServerBootstrap bootstrap = new ServerBootstrap()
             .channel(serverChannelType)
-            .group(eventLoopGroupFactory.get(), eventLoopGroupFactory.get());
+            .group(parentGroupFactory.get(), childGroupFactory.get());
 
         for (Entry<ChannelOption<?>, ? extends Object> entry : serverChannelOptions.entrySet()) {
             option(bootstrap, entry.getKey(), entry.getValue());
@@ -151,7 +151,8 @@ public class ServerConnectionsHandler<C extends ServerProtocolConnection<?,?>> e
             final ServerConnectionsHandler<ServerProtocolConnection<?,?>> handler = ServerConnectionsHandler.create(
                     getServerExecutor(),
                     getRuntimeModule().getExecutors().get(ScheduledExecutorService.class),
-                    getTimeOut());
+                    getTimeOut(),
+                    ServerMetrics.forRuntime(getRuntimeModule()));
             handler.addListener(
                     new Service.Listener() {
                         @Override
@@ -183,27 +184,38 @@ public class ServerConnectionsHandler<C extends ServerProtocolConnection<?,?>> e
             ServerExecutor<?> server, 
             ScheduledExecutorService scheduler, 
             TimeValue timeOut) {
+        return create(server, scheduler, timeOut, ServerMetrics.create());
+    }
+    
+    public static <C extends ServerProtocolConnection<?,?>> ServerConnectionsHandler<C> create(
+            ServerExecutor<?> server, 
+            ScheduledExecutorService scheduler, 
+            TimeValue timeOut,
+            ServerMetrics metrics) {
         // Assume Connection stores weak references to listeners
         // so store strong references to handlers in map
         ConcurrentMap<C, ServerConnectionsHandler<C>.ConnectionHandler<?>> handlers = new MapMaker().makeMap();
-        return new ServerConnectionsHandler<C>(server, scheduler, timeOut, handlers);
+        return new ServerConnectionsHandler<C>(server, scheduler, timeOut, metrics, handlers);
     }
 
     protected final Logger logger;
     protected final TimeValue timeOut;
     protected final ScheduledExecutorService scheduler;
     protected final ServerExecutor<?> server;
+    protected final ServerMetrics metrics;
     protected final ConcurrentMap<C, ConnectionHandler<?>> handlers;
     
     protected ServerConnectionsHandler(
             ServerExecutor<?> server, 
             ScheduledExecutorService scheduler, 
             TimeValue timeOut,
+            ServerMetrics metrics,
             ConcurrentMap<C, ConnectionHandler<?>> handlers) {
         this.logger = LogManager.getLogger(this);
         this.server = server;
         this.scheduler = scheduler;
         this.timeOut = timeOut;
+        this.metrics = metrics;
         this.handlers = handlers;
     }
     
@@ -246,7 +258,10 @@ public class ServerConnectionsHandler<C extends ServerProtocolConnection<?,?>> e
             super(logger);
             this.connection = connection;
             
-            handlers.put(connection, this);
+            // a connection is counted until its last handler stops
+            if (handlers.put(connection, this) == null) {
+                metrics.connectionOpened();
+            }
             connection.subscribe(this);
             
             if (connection.state() == Connection.State.CONNECTION_CLOSED) {
@@ -281,7 +296,9 @@ public class ServerConnectionsHandler<C extends ServerProtocolConnection<?,?>> e
         @Override
         protected void doStop() {
             connection.unsubscribe(this);
-            handlers.remove(connection, this);
+            if (handlers.remove(connection, this)) {
+                metrics.connectionClosed();
+            }
         }
     }
     
@@ -300,6 +317,7 @@ public class ServerConnectionsHandler<C extends ServerProtocolConnection<?,?>> e
 
         @Override
         public void handleConnectionRead(Message.Client message) {
+            metrics.received();
             send(message);
         }
         
@@ -312,6 +330,7 @@ public class ServerConnectionsHandler<C extends ServerProtocolConnection<?,?>> e
                     // the session connects
                     // in which case, we need to just drop it
                     if (handlers.get(connection) == this) {
+                        metrics.sent();
                         connection.write((FourLetterResponse) result);
                     }
                 } else if (result instanceof ConnectMessage.Response) {
@@ -331,6 +350,7 @@ public class ServerConnectionsHandler<C extends ServerProtocolConnection<?,?>> e
                     stop();
                     
                     // this write will trigger reading messages again
+                    metrics.sent();
                     connection.write(response);
                 } else {
                     throw new AssertionError(String.valueOf(result));
@@ -384,7 +404,11 @@ public class ServerConnectionsHandler<C extends ServerProtocolConnection<?,?>> e
         }
     }
 
-    protected class SessionConnectionHandler extends ConnectionHandler<Message.ClientRequest<?>> implements SessionListener {
+    /**
+     * Executes on the connection, so that a session can deliver
+     * notifications and responses from the event loop that writes them.
+     */
+    protected class SessionConnectionHandler extends ConnectionHandler<Message.ClientRequest<?>> implements SessionListener, Executor {
         
         protected final SessionExecutor session;
         
@@ -398,6 +422,7 @@ public class ServerConnectionsHandler<C extends ServerProtocolConnection<?,?>> e
 
         @Override
         public void handleConnectionRead(Message.Client message) {
+            metrics.received();
             send((Message.ClientRequest<?>) message);
         }
 
@@ -414,6 +439,11 @@ public class ServerConnectionsHandler<C extends ServerProtocolConnection<?,?>> e
             onSuccess(notification);
         }
 
+        @Override
+        public void execute(Runnable command) {
+            connection.execute(command);
+        }
+
         @Override
         public String toString() {
             return MoreObjects.toStringHelper(this)
@@ -427,6 +457,7 @@ public class ServerConnectionsHandler<C extends ServerProtocolConnection<?,?>> e
         public void onSuccess(Object result) {
             if ((result != null) && (result instanceof Message.Server)) {
                 logger.debug("Sending {} ({})", result, this);
+                metrics.sent();
                 connection.write((Message.Server) result);
             }
         }
@@ -0,0 +1,139 @@
+package edu.uw.zookeeper.protocol.server;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.MapMaker;
+
+import edu.uw.zookeeper.common.LatencyHistogram;
+import edu.uw.zookeeper.common.RuntimeModule;
+import edu.uw.zookeeper.common.StripedCounter;
+
+/**
+ * Server statistics, e.g. for the mntr and stat four letter words.
+ * 
+ * Counters are striped and latencies are kept in a log-linear histogram,
+ * so that recording is cheap and doesn't contend.
+ * 
+ * Threadsafe.
+ */
+public final class ServerMetrics {
+
+    /**
+     * @return metrics that are shared by all server components with this runtime
+     */
+    public static ServerMetrics forRuntime(RuntimeModule runtime) {
+        synchronized (SHARED) {
+            ServerMetrics metrics = SHARED.get(runtime);
+            if (metrics == null) {
+                metrics = create();
+                SHARED.put(runtime, metrics);
+            }
+            return metrics;
+        }
+    }
+    
+    public static ServerMetrics create() {
+        return new ServerMetrics();
+    }
+
+    private static final ConcurrentMap<RuntimeModule, ServerMetrics> SHARED =
+            new MapMaker().weakKeys().makeMap();
+    
+    private final StripedCounter received;
+    private final StripedCounter sent;
+    private final StripedCounter outstanding;
+    private final StripedCounter connections;
+    // nanoseconds
+    private final LatencyHistogram latency;
+    
+    private ServerMetrics() {
+        this.received = StripedCounter.create();
+        this.sent = StripedCounter.create();
+        this.outstanding = StripedCounter.create();
+        this.connections = StripedCounter.create();
+        this.latency = LatencyHistogram.create();
+    }
+    
+    public void received() {
+        received.increment();
+    }
+    
+    public void sent() {
+        sent.increment();
+    }
+    
+    public void connectionOpened() {
+        connections.increment();
+    }
+    
+    public void connectionClosed() {
+        connections.decrement();
+    }
+
+    /**
+     * @return start time to pass to {@link #completed(long)}
+     */
+    public long submitted() {
+        outstanding.increment();
+        return System.nanoTime();
+    }
+    
+    public void completed(long started) {
+        outstanding.decrement();
+        latency.record(Math.max(System.nanoTime() - started, 0L));
+    }
+    
+    public long packetsReceived() {
+        return received.sum();
+    }
+    
+    public long packetsSent() {
+        return sent.sum();
+    }
+    
+    public long outstandingRequests() {
+        return outstanding.sum();
+    }
+    
+    public int aliveConnections() {
+        return (int) connections.sum();
+    }
+    
+    public long minLatency(TimeUnit unit) {
+        return unit.convert(latency.min(), TimeUnit.NANOSECONDS);
+    }
+
+    public long avgLatency(TimeUnit unit) {
+        return unit.convert((long) latency.mean(), TimeUnit.NANOSECONDS);
+    }
+
+    public long maxLatency(TimeUnit unit) {
+        return unit.convert(latency.max(), TimeUnit.NANOSECONDS);
+    }
+
+    public long percentileLatency(double percentile, TimeUnit unit) {
+        return unit.convert(latency.percentile(percentile), TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Resets packet counts and latencies, but not gauges.
+     */
+    public void reset() {
+        received.sumThenReset();
+        sent.sumThenReset();
+        latency.reset();
+    }
+    
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("received", packetsReceived())
+                .add("sent", packetsSent())
+                .add("outstanding", outstandingRequests())
+                .add("connections", aliveConnections())
+                .add("latency", latency)
+                .toString();
+    }
+}
@@ -1,6 +1,7 @@
 package edu.uw.zookeeper.protocol.server;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 
 import java.io.IOException;
 
@@ -17,19 +18,22 @@ import edu.uw.zookeeper.common.Automatons.AutomatonListener;
 import edu.uw.zookeeper.common.Stateful;
 import edu.uw.zookeeper.net.Decoder;
 import edu.uw.zookeeper.net.Encoder;
+import edu.uw.zookeeper.net.SharedEncoder;
 import edu.uw.zookeeper.protocol.ProtocolMessageAutomaton;
 import edu.uw.zookeeper.protocol.ConnectMessage;
 import edu.uw.zookeeper.protocol.Encodable;
 import edu.uw.zookeeper.protocol.EncodableEncoder;
+import edu.uw.zookeeper.protocol.EncodedResponseMessage;
 import edu.uw.zookeeper.protocol.FourLetterRequest;
 import edu.uw.zookeeper.protocol.Frame;
 import edu.uw.zookeeper.protocol.Message;
 import edu.uw.zookeeper.protocol.ProtocolCodec;
 import edu.uw.zookeeper.protocol.ProtocolState;
 import edu.uw.zookeeper.protocol.ProtocolRequestMessage;
+import edu.uw.zookeeper.protocol.SharedDataFrame;
 import edu.uw.zookeeper.protocol.TelnetCloseRequest;
 
-public class ServerProtocolCodec implements ProtocolCodec<Message.Server, Message.Client, Message.Server, Message.Client> {
+public class ServerProtocolCodec implements ProtocolCodec<Message.Server, Message.Client, Message.Server, Message.Client>, SharedEncoder<Message.Server, Message.Server> {
     
     public static ServerProtocolCodec defaults() {
         return newInstance(ProtocolState.ANONYMOUS);
@@ -46,12 +50,12 @@ public class ServerProtocolCodec implements ProtocolCodec<Message.Server, Messag
     }
 
     protected final Automatons.EventfulAutomaton<ProtocolState, Object> automaton;
-    protected final Encoder<? super Message.Server, ?> encoder;
+    protected final SharedEncoder<? super Message.Server, ?> encoder;
     protected final Decoder<Optional<Message.Client>, ?> decoder;
     
     protected ServerProtocolCodec(
             Automatons.EventfulAutomaton<ProtocolState, Object> automaton,
-            Encoder<? super Message.Server, ?> encoder,
+            SharedEncoder<? super Message.Server, ?> encoder,
             Decoder<Optional<Message.Client>, ?> decoder) {
         this.automaton = automaton;
         this.encoder = encoder;
@@ -67,6 +71,18 @@ public class ServerProtocolCodec implements ProtocolCodec<Message.Server, Messag
         automaton.apply(input);
     }
 
+    /**
+     * Don't call concurrently!
+     */
+    @Override
+    public ByteBuf encodeShared(Message.Server input) throws IOException {
+        ByteBuf output = encoder.encodeShared(input);
+        if (output != null) {
+            automaton.apply(input);
+        }
+        return output;
+    }
+
     /**
      * Don't call concurrently!
      */
@@ -118,7 +134,7 @@ public class ServerProtocolCodec implements ProtocolCodec<Message.Server, Messag
 
     public static class ServerProtocolEncoder implements 
             Stateful<ProtocolState>,
-            Encoder<Message.Server, Message.Server> {
+            SharedEncoder<Message.Server, Message.Server> {
 
         public static ServerProtocolEncoder create(
                 Stateful<ProtocolState> stateful) {
@@ -168,6 +184,30 @@ public class ServerProtocolCodec implements ProtocolCodec<Message.Server, Messag
                 }
             }
         }
+
+        /**
+         * Only session messages that are already framed,
+         * or that have a large shared payload, are shared.
+         */
+        @Override
+        public ByteBuf encodeShared(Message.Server input) throws IOException {
+            if (! (input instanceof Message.ServerSession)) {
+                return null;
+            }
+            ProtocolState state = state();
+            switch (state) {
+            case CONNECTING:
+            case CONNECTED:
+            case DISCONNECTING:
+                if (input instanceof EncodedResponseMessage) {
+                    return ((EncodedResponseMessage<?>) input).frame();
+                } else {
+                    return SharedDataFrame.frame(input, PooledByteBufAllocator.DEFAULT);
+                }
+            default:
+                return null;
+            }
+        }
     }
 
     public static class ServerProtocolDecoder implements 
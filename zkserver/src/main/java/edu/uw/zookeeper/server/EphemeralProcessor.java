@@ -43,6 +43,23 @@ public class EphemeralProcessor extends ForwardingProcessor<TxnOperation.Request
         this.byPath = new MapMaker().makeMap();
     }
     
+    /**
+     * @return sessions that currently own ephemeral znodes
+     */
+    public ImmutableSet<Long> sessions() {
+        synchronized (bySession) {
+            return ImmutableSet.copyOf(bySession.keySet());
+        }
+    }
+    
+    /**
+     * Registers an ephemeral znode that already exists, e.g. after a restore.
+     */
+    public void put(Long session, String path) {
+        bySession.put(session, path);
+        byPath.put(path, session);
+    }
+    
     @Override
     public Records.Response apply(TxnOperation.Request<?> input) {
         Records.Request request = input.record();
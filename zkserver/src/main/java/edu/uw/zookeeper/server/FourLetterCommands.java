@@ -3,11 +3,14 @@ package edu.uw.zookeeper.server;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.google.common.base.CaseFormat;
@@ -15,15 +18,20 @@ import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Primitives;
+import com.sun.management.UnixOperatingSystemMXBean;
 
 import edu.uw.zookeeper.common.ParameterizedFactory;
 import edu.uw.zookeeper.common.Processor;
+import edu.uw.zookeeper.data.ZNodeNode;
 import edu.uw.zookeeper.protocol.FourLetterRequest;
 import edu.uw.zookeeper.protocol.FourLetterWord;
 import edu.uw.zookeeper.protocol.FourLetterResponse;
 import edu.uw.zookeeper.protocol.FourLetterWords;
 import edu.uw.zookeeper.protocol.FourLetterWords.Mntr.MntrServerState;
 import edu.uw.zookeeper.protocol.FourLetterWords.Wchs;
+import edu.uw.zookeeper.protocol.server.ServerMetrics;
 
 /**
  * TODO
@@ -41,7 +49,7 @@ public abstract class FourLetterCommands {
         } else {
             Constructor<?>[] ctors = type.getConstructors();
             for (Constructor<?> ctor: ctors) {
-                if (ctor.getParameterTypes().length == args.length) {
+                if (isApplicable(ctor.getParameterTypes(), args)) {
                     return (Processor<FourLetterRequest, FourLetterResponse>) ctor.newInstance(args);
                 }
             }
@@ -54,6 +62,18 @@ public abstract class FourLetterCommands {
         }
     }
     
+    protected static boolean isApplicable(Class<?>[] types, Object[] args) {
+        if (types.length != args.length) {
+            return false;
+        }
+        for (int i=0; i<types.length; ++i) {
+            if ((args[i] != null) && ! Primitives.wrap(types[i]).isInstance(args[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     protected static enum Types implements ParameterizedFactory<FourLetterWord, Class<? extends Processor<FourLetterRequest, FourLetterResponse>>> {
         TYPES(FourLetterCommands.class);
         
@@ -245,8 +265,24 @@ public abstract class FourLetterCommands {
 
         protected static final FourLetterResponse RESPONSE = FourLetterResponse.fromString(RESULT);
         
+        protected final ServerMetrics metrics;
+        
+        public SrstCommand() {
+            this(ServerMetrics.create());
+        }
+
+        public SrstCommand(
+                SimpleServer.Builder<?> server) {
+            this(ServerMetrics.forRuntime(server.getRuntimeModule()));
+        }
+        
+        protected SrstCommand(ServerMetrics metrics) {
+            this.metrics = metrics;
+        }
+        
         @Override
         public FourLetterResponse apply(FourLetterRequest input) {
+            metrics.reset();
             return RESPONSE;
         }
     }
@@ -286,11 +322,43 @@ public abstract class FourLetterCommands {
         
         public static final String STAT_FORMAT = "Clients:%n%s%n";
         
+        public static final String SERVER_STATS_FORMAT = "Latency min/avg/max: %d/%d/%d%nReceived: %d%nSent: %d%nConnections: %d%nOutstanding: %d%nZxid: 0x%x%nMode: %s%n";
+        
+        protected final SimpleServer.Builder<?> server;
+        
+        public SrvrCommand() {
+            this(null);
+        }
+
+        public SrvrCommand(
+                SimpleServer.Builder<?> server) {
+            this.server = server;
+        }
+        
         @Override
         public FourLetterResponse apply(FourLetterRequest input) {
-            return FourLetterResponse.fromString(
-                    String.format(
-                            FORMAT, ZOOKEEPER_VERSION, "", "", "", 0));
+            return FourLetterResponse.fromString(format(""));
+        }
+        
+        protected String format(String clients) {
+            if (server == null) {
+                return String.format(
+                        FORMAT, ZOOKEEPER_VERSION, "", clients, "", 0);
+            }
+            ServerMetrics metrics = ServerMetrics.forRuntime(server.getRuntimeModule());
+            String stats = String.format(SERVER_STATS_FORMAT, 
+                    metrics.minLatency(TimeUnit.MILLISECONDS),
+                    metrics.avgLatency(TimeUnit.MILLISECONDS),
+                    metrics.maxLatency(TimeUnit.MILLISECONDS),
+                    metrics.packetsReceived(),
+                    metrics.packetsSent(),
+                    metrics.aliveConnections(),
+                    metrics.outstandingRequests(),
+                    server.getZxids().get(),
+                    MntrServerState.STANDALONE);
+            return String.format(
+                    FORMAT, ZOOKEEPER_VERSION, "", clients, stats, 
+                    server.getDataCounts().znodes());
         }
     }
 
@@ -299,12 +367,18 @@ public abstract class FourLetterCommands {
 
         public static final String STAT_FORMAT = "Clients:%n%s%n";
         
+        public StatCommand() {
+            super();
+        }
+
+        public StatCommand(
+                SimpleServer.Builder<?> server) {
+            super(server);
+        }
+        
         @Override
         public FourLetterResponse apply(FourLetterRequest input) {
-            return FourLetterResponse.fromString(
-                    String.format(
-                            FORMAT, ZOOKEEPER_VERSION, "",
-                            String.format(STAT_FORMAT, ""), "", 0));
+            return FourLetterResponse.fromString(format(String.format(STAT_FORMAT, "")));
         }
     }
 
@@ -405,22 +479,36 @@ public abstract class FourLetterCommands {
         @Override
         protected String apply() {
             return FourLetterWords.Wchs.toString(
-                    new Wchs(dataWatches.bySession().keySet().size(), 
-                            dataWatches.byPath().keySet().size(), 
-                            dataWatches.bySession().size()));
+                    new Wchs(dataWatches.sessionCount(), 
+                            dataWatches.pathCount(), 
+                            dataWatches.watchCount()));
         }
     }
 
     @FourLetterCommand(FourLetterWord.MNTR)
     public static class MntrCommand implements Processor<FourLetterRequest, FourLetterResponse> {
         
+        protected final SimpleServer.Builder<?> server;
+        
+        public MntrCommand() {
+            this(null);
+        }
+
+        public MntrCommand(
+                SimpleServer.Builder<?> server) {
+            this.server = server;
+        }
+        
         @Override
         public FourLetterResponse apply(FourLetterRequest input) {
+            Map<FourLetterWords.Mntr.MntrKey, Object> known = getValues();
             ImmutableSortedMap.Builder<FourLetterWords.Mntr.MntrKey, String> properties = ImmutableSortedMap.naturalOrder();
             for (FourLetterWords.Mntr.MntrKey k: FourLetterWords.Mntr.MntrKey.values()) {
                 Class<?> type = k.type();
                 String v;
-                if (type == String.class) {
+                if (known.containsKey(k)) {
+                    v = String.valueOf(known.get(k));
+                } else if (type == String.class) {
                     v = "";
                 } else if (type == Integer.class) {
                     v = String.valueOf(0);
@@ -440,6 +528,35 @@ public abstract class FourLetterCommands {
             }
             return FourLetterResponse.fromString(builder.toString());
         }
+        
+        protected Map<FourLetterWords.Mntr.MntrKey, Object> getValues() {
+            Map<FourLetterWords.Mntr.MntrKey, Object> values = Maps.newEnumMap(FourLetterWords.Mntr.MntrKey.class);
+            values.put(FourLetterWords.Mntr.MntrKey.ZK_VERSION, ZOOKEEPER_VERSION);
+            OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+            if (os instanceof UnixOperatingSystemMXBean) {
+                values.put(FourLetterWords.Mntr.MntrKey.ZK_OPEN_FILE_DESCRIPTOR_COUNT, ((UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount());
+                values.put(FourLetterWords.Mntr.MntrKey.ZK_MAX_FILE_DESCRIPTOR_COUNT, ((UnixOperatingSystemMXBean) os).getMaxFileDescriptorCount());
+            }
+            if (server == null) {
+                return values;
+            }
+            ServerMetrics metrics = ServerMetrics.forRuntime(server.getRuntimeModule());
+            values.put(FourLetterWords.Mntr.MntrKey.ZK_AVG_LATENCY, metrics.avgLatency(TimeUnit.MILLISECONDS));
+            values.put(FourLetterWords.Mntr.MntrKey.ZK_MAX_LATENCY, metrics.maxLatency(TimeUnit.MILLISECONDS));
+            values.put(FourLetterWords.Mntr.MntrKey.ZK_MIN_LATENCY, metrics.minLatency(TimeUnit.MILLISECONDS));
+            values.put(FourLetterWords.Mntr.MntrKey.ZK_P99_LATENCY, metrics.percentileLatency(99.0, TimeUnit.MILLISECONDS));
+            values.put(FourLetterWords.Mntr.MntrKey.ZK_PACKETS_RECEIVED, metrics.packetsReceived());
+            values.put(FourLetterWords.Mntr.MntrKey.ZK_PACKETS_SENT, metrics.packetsSent());
+            values.put(FourLetterWords.Mntr.MntrKey.ZK_NUM_ALIVE_CONNECTIONS, metrics.aliveConnections());
+            values.put(FourLetterWords.Mntr.MntrKey.ZK_OUTSTANDING_REQUESTS, metrics.outstandingRequests());
+            values.put(FourLetterWords.Mntr.MntrKey.ZK_WATCH_COUNT, 
+                    server.getDataWatches().watchCount() + server.getChildWatches().watchCount());
+            ZNodeNode.Counts counts = server.getDataCounts();
+            values.put(FourLetterWords.Mntr.MntrKey.ZK_ZNODE_COUNT, counts.znodes());
+            values.put(FourLetterWords.Mntr.MntrKey.ZK_EPHEMERALS_COUNT, counts.ephemerals());
+            values.put(FourLetterWords.Mntr.MntrKey.ZK_APPROXIMATE_DATA_SIZE, counts.dataSize());
+            return values;
+        }
     }
 
     @FourLetterCommand(FourLetterWord.ISRO)
@@ -0,0 +1,218 @@
+package edu.uw.zookeeper.server;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import edu.uw.zookeeper.common.Actors;
+import edu.uw.zookeeper.common.PromiseTask;
+import edu.uw.zookeeper.common.TaskExecutor;
+import edu.uw.zookeeper.protocol.Message;
+import edu.uw.zookeeper.protocol.SessionOperation;
+
+/**
+ * Preserves the request order of one session in front of a server that
+ * executes read-only requests concurrently with each other.
+ *
+ * Requests are dispatched in submission order, except that a read-only
+ * request is held back until all earlier mutating requests have completed,
+ * and a mutating request is held back until all earlier read-only requests
+ * have completed. Results are completed in submission order.
+ *
+ * Results are completed from the given executor, so that a session
+ * that delivers notifications through a serial executor
+ * completes a result only after notifications queued before it.
+ */
+public class SessionOrderingExecutor extends Actors.PeekingQueuedActor<SessionOrderingExecutor.OrderedTask> implements TaskExecutor<SessionOperation.Request<?>, Message.ServerResponse<?>> {
+
+    public static SessionOrderingExecutor create(
+            TaskExecutor<? super SessionOperation.Request<?>, Message.ServerResponse<?>> server) {
+        return create(server, MoreExecutors.directExecutor());
+    }
+
+    public static SessionOrderingExecutor create(
+            TaskExecutor<? super SessionOperation.Request<?>, Message.ServerResponse<?>> server,
+            Executor executor) {
+        return new SessionOrderingExecutor(
+                server,
+                executor,
+                Queues.<OrderedTask>newConcurrentLinkedQueue(),
+                Queues.<OrderedTask>newArrayDeque(),
+                LogManager.getLogger(SessionOrderingExecutor.class));
+    }
+
+    protected final TaskExecutor<? super SessionOperation.Request<?>, Message.ServerResponse<?>> server;
+    protected final Executor executor;
+    // guarded by this
+    protected final Queue<OrderedTask> waiting;
+    // guarded by this
+    protected int running;
+    // guarded by this
+    protected boolean readOnly;
+
+    protected SessionOrderingExecutor(
+            TaskExecutor<? super SessionOperation.Request<?>, Message.ServerResponse<?>> server,
+            Executor executor,
+            Queue<OrderedTask> mailbox,
+            Queue<OrderedTask> waiting,
+            Logger logger) {
+        super(mailbox, logger);
+        this.server = checkNotNull(server);
+        this.executor = checkNotNull(executor);
+        this.waiting = waiting;
+        this.running = 0;
+        this.readOnly = false;
+    }
+
+    @Override
+    public ListenableFuture<Message.ServerResponse<?>> submit(
+            SessionOperation.Request<?> request) {
+        OrderedTask task = new OrderedTask(request);
+        if (! send(task)) {
+            task.cancel(true);
+        }
+        return task;
+    }
+
+    @Override
+    public boolean isReady() {
+        OrderedTask next = mailbox.peek();
+        return ((next != null) && next.isDispatchDone());
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).addValue(server).toString();
+    }
+
+    @Override
+    protected boolean doSend(OrderedTask message) {
+        synchronized (this) {
+            // mailbox order is response order
+            if (! mailbox.offer(message)) {
+                return false;
+            }
+            waiting.add(message);
+            dispatch();
+        }
+        if (state() == State.TERMINATED) {
+            doStop();
+        }
+        return true;
+    }
+
+    /**
+     * Dispatches waiting tasks in order until the next task
+     * conflicts with running tasks.
+     */
+    protected synchronized void dispatch() {
+        OrderedTask next;
+        while ((next = waiting.peek()) != null) {
+            if ((running > 0) && (next.isReadOnly() != readOnly)) {
+                break;
+            }
+            waiting.remove();
+            running++;
+            readOnly = next.isReadOnly();
+            next.dispatch();
+        }
+    }
+
+    protected void handleDispatchDone(OrderedTask task) {
+        synchronized (this) {
+            running--;
+            dispatch();
+        }
+        run();
+    }
+
+    @Override
+    protected boolean apply(OrderedTask input) {
+        if (input.isDispatchDone()) {
+            if (mailbox.remove(input)) {
+                input.complete();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void doStop() {
+        OrderedTask task;
+        synchronized (this) {
+            while ((task = waiting.poll()) != null) {
+                task.cancel(true);
+            }
+        }
+        while ((task = mailbox.poll()) != null) {
+            task.cancel(true);
+        }
+    }
+
+    protected class OrderedTask extends PromiseTask<SessionOperation.Request<?>, Message.ServerResponse<?>> implements Runnable {
+
+        protected final boolean readOnly;
+        protected volatile ListenableFuture<Message.ServerResponse<?>> future;
+        // set from the executor, so that a result isn't completed
+        // ahead of anything queued on the executor before it
+        protected volatile boolean dispatchDone;
+
+        public OrderedTask(SessionOperation.Request<?> task) {
+            super(task, PromiseTask.<Message.ServerResponse<?>>newPromise());
+            this.readOnly = task.record().opcode().isReadOnly();
+            this.future = null;
+            this.dispatchDone = false;
+        }
+
+        public boolean isReadOnly() {
+            return readOnly;
+        }
+
+        public boolean isDispatchDone() {
+            return dispatchDone;
+        }
+
+        public void dispatch() {
+            ListenableFuture<Message.ServerResponse<?>> future;
+            try {
+                future = server.submit(task());
+            } catch (Exception e) {
+                future = Futures.immediateFailedFuture(e);
+            }
+            this.future = future;
+            future.addListener(this, executor);
+        }
+
+        public void complete() {
+            if (future.isCancelled()) {
+                cancel(false);
+            } else {
+                try {
+                    set(future.get());
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                } catch (ExecutionException e) {
+                    setException(e.getCause());
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            dispatchDone = true;
+            handleDispatchDone(this);
+        }
+    }
+}
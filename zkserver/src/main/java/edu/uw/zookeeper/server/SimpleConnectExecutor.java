@@ -1,11 +1,10 @@
 package edu.uw.zookeeper.server;
 
-import java.util.Map;
-
 import com.google.common.base.Function;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
+import edu.uw.zookeeper.common.LongConcurrentHashMap;
 import edu.uw.zookeeper.common.TaskExecutor;
 import edu.uw.zookeeper.protocol.ConnectMessage;
 import edu.uw.zookeeper.protocol.ZxidReference;
@@ -13,7 +12,7 @@ import edu.uw.zookeeper.protocol.ZxidReference;
 public class SimpleConnectExecutor<T extends AbstractSessionExecutor> implements TaskExecutor<ConnectMessage.Request, ConnectMessage.Response> {
     
     public static <T extends AbstractSessionExecutor> SimpleConnectExecutor<T> defaults(
-            Map<Long, T> executors,
+            LongConcurrentHashMap<T> executors,
             SessionManager sessions,
             ZxidReference lastZxid) {
         ConnectMessageProcessor processor = ConnectMessageProcessor.defaults(sessions, lastZxid);
@@ -21,16 +20,16 @@ public class SimpleConnectExecutor<T extends AbstractSessionExecutor> implements
     }
     
     public static <T extends AbstractSessionExecutor> SimpleConnectExecutor<T> create(
-            Map<Long, T> executors,
+            LongConcurrentHashMap<T> executors,
             Function<ConnectMessage.Request, ConnectMessage.Response> processor) {
         return new SimpleConnectExecutor<T>(executors, processor);
     }
     
-    protected final Map<Long, T> executors;
+    protected final LongConcurrentHashMap<T> executors;
     protected final Function<ConnectMessage.Request, ConnectMessage.Response> processor;
     
     protected SimpleConnectExecutor(
-            Map<Long, T> executors,
+            LongConcurrentHashMap<T> executors,
             Function<ConnectMessage.Request, ConnectMessage.Response> processor) {
         this.executors = executors;
         this.processor = processor;
@@ -39,7 +38,7 @@ public class SimpleConnectExecutor<T extends AbstractSessionExecutor> implements
     @Override
     public ListenableFuture<ConnectMessage.Response> submit(ConnectMessage.Request request) {
         if (request instanceof ConnectMessage.Request.RenewRequest) {
-            T executor = executors.get(Long.valueOf(request.getSessionId()));
+            T executor = executors.get(request.getSessionId());
             if (executor != null) {
                 executor.timer().send(request);
             }
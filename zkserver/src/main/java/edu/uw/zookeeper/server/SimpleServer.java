@@ -2,11 +2,16 @@ package edu.uw.zookeeper.server;
 
 import static com.google.common.base.Preconditions.checkState;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.logging.log4j.LogManager;
@@ -14,32 +19,51 @@ import org.apache.logging.log4j.Logger;
 import org.apache.zookeeper.KeeperException;
 
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
+import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.typesafe.config.ConfigValueType;
 
+import edu.uw.zookeeper.ConfigurableTimeout;
 import edu.uw.zookeeper.ZooKeeperApplication;
 import edu.uw.zookeeper.common.Actors.ExecutedQueuedActor;
+import edu.uw.zookeeper.common.Configurable;
+import edu.uw.zookeeper.common.Configuration;
 import edu.uw.zookeeper.common.Processor;
 import edu.uw.zookeeper.common.Processors;
 import edu.uw.zookeeper.common.PromiseTask;
 import edu.uw.zookeeper.common.RuntimeModule;
 import edu.uw.zookeeper.common.TaskExecutor;
+import edu.uw.zookeeper.common.TimeValue;
+import edu.uw.zookeeper.data.IndexedLabelTrie;
 import edu.uw.zookeeper.data.NameTrie;
+import edu.uw.zookeeper.data.Operations;
 import edu.uw.zookeeper.data.ZNodeNode;
 import edu.uw.zookeeper.data.SimpleLabelTrie;
 import edu.uw.zookeeper.data.TxnOperation;
+import edu.uw.zookeeper.data.TxnRequest;
 import edu.uw.zookeeper.protocol.Message;
 import edu.uw.zookeeper.protocol.NotificationListener;
 import edu.uw.zookeeper.protocol.Operation;
+import edu.uw.zookeeper.protocol.ProtocolRequestMessage;
 import edu.uw.zookeeper.protocol.SessionOperation;
+import edu.uw.zookeeper.protocol.SessionRequest;
 import edu.uw.zookeeper.protocol.proto.IDisconnectResponse;
 import edu.uw.zookeeper.protocol.proto.IPingResponse;
 import edu.uw.zookeeper.protocol.proto.IWatcherEvent;
 import edu.uw.zookeeper.protocol.proto.OpCode;
 import edu.uw.zookeeper.protocol.proto.Records;
 import edu.uw.zookeeper.protocol.server.AssignZxidProcessor;
+import edu.uw.zookeeper.protocol.server.ServerMetrics;
 import edu.uw.zookeeper.protocol.server.ZxidEpochIncrementer;
 import edu.uw.zookeeper.protocol.server.ZxidGenerator;
 
@@ -50,6 +74,8 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
         protected final RuntimeModule runtime;
         protected final ZxidGenerator zxids;
         protected final NameTrie<ZNodeNode> data;
+        protected final ZNodeNode.Counts counts;
+        protected final Optional<TxnLog> log;
         protected final SessionManager sessions;
         protected final ReentrantReadWriteLock lock;
         protected final Watches dataWatches;
@@ -59,6 +85,8 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
         protected Builder(
                 ZxidGenerator zxids,
                 NameTrie<ZNodeNode> data,
+                ZNodeNode.Counts counts,
+                Optional<TxnLog> log,
                 SessionManager sessions,
                 ReentrantReadWriteLock lock,
                 Watches dataWatches,
@@ -67,6 +95,8 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
                 RuntimeModule runtime) {
             this.zxids = zxids;
             this.data = data;
+            this.counts = counts;
+            this.log = log;
             this.sessions = sessions;
             this.dataWatches = dataWatches;
             this.childWatches = childWatches;
@@ -82,7 +112,7 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
 
         @Override
         public C setRuntimeModule(RuntimeModule runtime) {
-            return newInstance(zxids, data, sessions, lock, dataWatches, childWatches, listeners, runtime);
+            return newInstance(zxids, data, counts, log, sessions, lock, dataWatches, childWatches, listeners, runtime);
         }
         
         public ReentrantReadWriteLock getLock() {
@@ -90,7 +120,7 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
         }
         
         public C setLock(ReentrantReadWriteLock lock) {
-            return newInstance(zxids, data, sessions, lock, dataWatches, childWatches, listeners, runtime);
+            return newInstance(zxids, data, counts, log, sessions, lock, dataWatches, childWatches, listeners, runtime);
         }
         
         public Watches getDataWatches() {
@@ -98,7 +128,7 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
         }
         
         public C setDataWatches(Watches dataWatches) {
-            return newInstance(zxids, data, sessions, lock, dataWatches, childWatches, listeners, runtime);
+            return newInstance(zxids, data, counts, log, sessions, lock, dataWatches, childWatches, listeners, runtime);
         }
         
         public Watches getChildWatches() {
@@ -106,7 +136,7 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
         }
         
         public C setChildWatches(Watches childWatches) {
-            return newInstance(zxids, data, sessions, lock, dataWatches, childWatches, listeners, runtime);
+            return newInstance(zxids, data, counts, log, sessions, lock, dataWatches, childWatches, listeners, runtime);
         }
         
         public ZxidGenerator getZxids() {
@@ -114,23 +144,88 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
         }
         
         public C setZxids(ZxidGenerator zxids) {
-            return newInstance(zxids, data, sessions, lock, dataWatches, childWatches, listeners, runtime);
+            return newInstance(zxids, data, counts, log, sessions, lock, dataWatches, childWatches, listeners, runtime);
         }
         
         public ZxidGenerator getDefaultZxids() {
+            if (getLog().isPresent()) {
+                // each run has an epoch of its own, so the log can tell runs apart
+                return ZxidEpochIncrementer.fromEpoch(ZxidEpochIncrementer.epochOf(getLog().get().lastZxid()) + 1L);
+            }
             return ZxidEpochIncrementer.fromZero();
         }
         
+        public Optional<TxnLog> getLog() {
+            return log;
+        }
+
+        public C setLog(Optional<TxnLog> log) {
+            return newInstance(zxids, data, counts, log, sessions, lock, dataWatches, childWatches, listeners, runtime);
+        }
+        
+        public Optional<TxnLog> getDefaultLog() {
+            Optional<File> directory = TxnLog.DirectoryConfiguration.get(getRuntimeModule().getConfiguration());
+            if (directory.isPresent()) {
+                return Optional.of(TxnLog.forDirectory(
+                        directory.get(), 
+                        getRuntimeModule().getExecutors().get(ExecutorService.class)));
+            }
+            return Optional.absent();
+        }
+        
         public NameTrie<ZNodeNode> getData() {
             return data;
         }
 
         public C setData(NameTrie<ZNodeNode> data) {
-            return newInstance(zxids, data, sessions, lock, dataWatches, childWatches, listeners, runtime);
+            // counts of the previous data don't apply
+            return newInstance(zxids, data, null, log, sessions, lock, dataWatches, childWatches, listeners, runtime);
+        }
+        
+        /**
+         * Totals over the data, shared with the operators that change it.
+         */
+        public ZNodeNode.Counts getDataCounts() {
+            return counts;
+        }
+
+        public C setDataCounts(ZNodeNode.Counts counts) {
+            return newInstance(zxids, data, counts, log, sessions, lock, dataWatches, childWatches, listeners, runtime);
         }
         
+        public ZNodeNode.Counts getDefaultDataCounts() {
+            return ZNodeNode.Counts.of(getData());
+        }
+        
+        /**
+         * Restores the latest snapshot, if any,
+         * and replays the log, if any, on top of it.
+         */
         public NameTrie<ZNodeNode> getDefaultData() {
-            return SimpleLabelTrie.forRoot(ZNodeNode.root());
+            if (! getLog().isPresent()) {
+                return newData(ZNodeNode.root());
+            }
+            Optional<Snapshot.Restored> snapshot = Snapshot.restoreLatest(
+                    getLog().get().directory(), 
+                    getRuntimeModule().getExecutors().get(ExecutorService.class));
+            NameTrie<ZNodeNode> data;
+            long zxid;
+            SetMultimap<Long, String> ephemerals;
+            if (snapshot.isPresent()) {
+                data = newData(snapshot.get().root());
+                zxid = snapshot.get().zxid();
+                ephemerals = snapshot.get().ephemerals();
+            } else {
+                data = newData(ZNodeNode.root());
+                zxid = 0L;
+                ephemerals = ImmutableSetMultimap.of();
+            }
+            try {
+                replay(getLog().get(), zxid, ephemerals, data);
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+            return data;
         }
 
         public SessionManager getSessions() {
@@ -138,7 +233,7 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
         }
 
         public C setSessions(SessionManager sessions) {
-            return newInstance(zxids, data, sessions, lock, dataWatches, childWatches, listeners, runtime);
+            return newInstance(zxids, data, counts, log, sessions, lock, dataWatches, childWatches, listeners, runtime);
         }
 
         public Function<Long, ? extends NotificationListener<Operation.ProtocolResponse<IWatcherEvent>>> getListeners() {
@@ -146,7 +241,7 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
         }
 
         public C setListeners(Function<Long, ? extends NotificationListener<Operation.ProtocolResponse<IWatcherEvent>>> listeners) {
-            return newInstance(zxids, data, sessions, lock, dataWatches, childWatches, listeners, runtime);
+            return newInstance(zxids, data, counts, log, sessions, lock, dataWatches, childWatches, listeners, runtime);
         }
         
         @SuppressWarnings("unchecked")
@@ -156,12 +251,18 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
             if (getLock() == null) {
                 return setLock(getDefaultLock()).setDefaults();
             }
-            if (getZxids() == null) {
-                return setZxids(getDefaultZxids()).setDefaults();
+            if (getLog() == null) {
+                return setLog(getDefaultLog()).setDefaults();
             }
             if (getData() == null) {
                 return setData(getDefaultData()).setDefaults();
             }
+            if (getDataCounts() == null) {
+                return setDataCounts(getDefaultDataCounts()).setDefaults();
+            }
+            if (getZxids() == null) {
+                return setZxids(getDefaultZxids()).setDefaults();
+            }
             if (getSessions() == null) {
                 return setSessions(getDefaultSessions()).setDefaults();
             }
@@ -185,6 +286,8 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
         protected abstract C newInstance(
                 ZxidGenerator zxids,
                 NameTrie<ZNodeNode> data,
+                ZNodeNode.Counts counts,
+                Optional<TxnLog> log,
                 SessionManager sessions,
                 ReentrantReadWriteLock lock,
                 Watches dataWatches,
@@ -196,7 +299,19 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
             return SimpleServer.newInstance(
                     getLock(),
                     getDefaultProcessor(), 
-                    getRuntimeModule().getExecutors().get(ExecutorService.class));
+                    getRuntimeModule().getExecutors().get(ExecutorService.class),
+                    getDefaultReadExecutor(),
+                    getLog(),
+                    ServerMetrics.forRuntime(getRuntimeModule()),
+                    WriteBatchConfiguration.get(getRuntimeModule().getConfiguration()),
+                    WriteBatchTimeConfiguration.get(getRuntimeModule().getConfiguration()));
+        }
+        
+        protected Executor getDefaultReadExecutor() {
+            if (InEventLoopConfiguration.get(getRuntimeModule().getConfiguration())) {
+                return MoreExecutors.directExecutor();
+            }
+            return getRuntimeModule().getExecutors().get(ExecutorService.class);
         }
 
         protected abstract Function<Long, ? extends NotificationListener<Operation.ProtocolResponse<IWatcherEvent>>> getDefaultListeners();
@@ -207,6 +322,14 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
             return new ReentrantReadWriteLock();
         }
         
+        protected NameTrie<ZNodeNode> newData(ZNodeNode root) {
+            if (PathIndexConfiguration.get(getRuntimeModule().getConfiguration())) {
+                return IndexedLabelTrie.forRoot(root);
+            } else {
+                return SimpleLabelTrie.forRoot(root);
+            }
+        }
+        
         protected Watches getDefaultWatches() {
             return Watches.create(getListeners());
         }
@@ -222,12 +345,7 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
         }
         
         protected Processors.UncheckedProcessor<TxnOperation.Request<?>, Records.Response> getDefaultTxnProcessor() {
-            Map<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException>> processors = Maps.newEnumMap(OpCode.class);
-            processors = ZNodeNode.Operators.of(getData(), processors);
-            processors.put(OpCode.MULTI, 
-                    ZNodeNode.MultiOperator.of(
-                            getData(), 
-                            ByOpcodeTxnRequestProcessor.create(ImmutableMap.copyOf(processors))));
+            Map<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException>> processors = getOperators(getData(), getDataCounts());
             processors.put(OpCode.CLOSE_SESSION, 
                     new Processors.CheckedProcessor<TxnOperation.Request<?>, IDisconnectResponse, KeeperException>() {
                         @Override
@@ -249,12 +367,181 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
                     return Records.newInstance(IPingResponse.class);
                 }
             });
-            return EphemeralProcessor.create(
+            Processors.UncheckedProcessor<TxnOperation.Request<?>, Records.Response> processor = 
                     RequestErrorProcessor.<TxnOperation.Request<?>>create(
-                            WatcherEventProcessor.create(
-                                            ByOpcodeTxnRequestProcessor.create(
-                                                    ImmutableMap.copyOf(processors)),
-                                            getDataWatches(), getChildWatches())));
+                        WatcherEventProcessor.create(
+                                        ByOpcodeTxnRequestProcessor.create(
+                                                ImmutableMap.copyOf(processors)),
+                                        getDataWatches(), getChildWatches()));
+            int snapshotCount = Snapshot.CountConfiguration.get(getRuntimeModule().getConfiguration());
+            if (getLog().isPresent() && (snapshotCount > 0)) {
+                // below EphemeralProcessor to see the deletes of a closed session
+                processor = SnapshotProcessor.create(
+                        snapshotCount, 
+                        Snapshot.RetainConfiguration.get(getRuntimeModule().getConfiguration()),
+                        getLog().get(), 
+                        getData(), 
+                        getLock(), 
+                        getRuntimeModule().getExecutors().get(ExecutorService.class), 
+                        processor);
+            }
+            processor = EphemeralProcessor.create(processor);
+            if (getLog().isPresent()) {
+                processor = TxnLogProcessor.create(getLog().get(), processor);
+            }
+            return processor;
+        }
+        
+        protected Map<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException>> getOperators(NameTrie<ZNodeNode> data, ZNodeNode.Counts counts) {
+            Map<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException>> processors = Maps.newEnumMap(OpCode.class);
+            processors = ZNodeNode.Operators.of(data, DataStorageConfiguration.get(getRuntimeModule().getConfiguration()), counts, processors);
+            processors.put(OpCode.MULTI, 
+                    ZNodeNode.MultiOperator.of(
+                            data, 
+                            counts,
+                            ByOpcodeTxnRequestProcessor.create(ImmutableMap.copyOf(processors))));
+            return processors;
+        }
+        
+        /**
+         * Sessions don't survive a restart, so any session that still owns
+         * ephemeral znodes at the end of a run is closed.
+         * 
+         * @param fromZxid zxid of the snapshot that data was restored from, if any
+         * @param ephemerals ephemeral znodes in data by owner
+         */
+        protected void replay(TxnLog log, long fromZxid, SetMultimap<Long, String> ephemerals, NameTrie<ZNodeNode> data) throws IOException {
+            Map<OpCode, Processors.CheckedProcessor<TxnOperation.Request<?>, ? extends Records.Response, KeeperException>> processors = getOperators(data, ZNodeNode.Counts.create());
+            processors.put(OpCode.CLOSE_SESSION, 
+                    new Processors.CheckedProcessor<TxnOperation.Request<?>, IDisconnectResponse, KeeperException>() {
+                        @Override
+                        public IDisconnectResponse apply(
+                                TxnOperation.Request<?> request)
+                                throws KeeperException {
+                            return Records.newInstance(IDisconnectResponse.class);
+                        }
+            });
+            final EphemeralProcessor processor = 
+                    EphemeralProcessor.create(
+                        RequestErrorProcessor.<TxnOperation.Request<?>>create(
+                                ByOpcodeTxnRequestProcessor.create(
+                                        ImmutableMap.copyOf(processors))));
+            for (Map.Entry<Long, String> e: ephemerals.entries()) {
+                processor.put(e.getKey(), e.getValue());
+            }
+            log.replay(fromZxid, processor, 
+                    new Processor<Long, Void>() {
+                        @Override
+                        public Void apply(Long zxid) {
+                            for (Long session: processor.sessions()) {
+                                processor.apply(TxnRequest.of(
+                                        0L, 
+                                        zxid.longValue(), 
+                                        SessionRequest.of(
+                                                session.longValue(), 
+                                                ProtocolRequestMessage.of(
+                                                        0, 
+                                                        Operations.Requests.disconnect().build()))));
+                            }
+                            return null;
+                        }
+            });
+        }
+    }
+    
+    @Configurable(path="server", arg="pathIndex", value="false", type=ConfigValueType.BOOLEAN)
+    public static abstract class PathIndexConfiguration {
+
+        public static Configurable getConfigurable() {
+            return PathIndexConfiguration.class.getAnnotation(Configurable.class);
+        }
+
+        /**
+         * @return true if the data tree indexes znodes by path
+         */
+        public static boolean get(Configuration configuration) {
+            Configurable configurable = getConfigurable();
+            return configuration.withConfigurable(configurable)
+                    .getConfigOrEmpty(configurable.path())
+                        .getBoolean(configurable.arg());
+        }
+
+        protected PathIndexConfiguration() {}
+    }
+    
+    @Configurable(path="server", arg="dataStorage", value="heap", help="heap|direct")
+    public static abstract class DataStorageConfiguration {
+
+        public static Configurable getConfigurable() {
+            return DataStorageConfiguration.class.getAnnotation(Configurable.class);
+        }
+
+        /**
+         * @return where new znode payloads are kept
+         */
+        public static ZNodeNode.DataStorage get(Configuration configuration) {
+            Configurable configurable = getConfigurable();
+            String value = configuration.withConfigurable(configurable)
+                    .getConfigOrEmpty(configurable.path())
+                        .getString(configurable.arg());
+            return ZNodeNode.DataStorage.valueOf(value.toUpperCase());
+        }
+
+        protected DataStorageConfiguration() {}
+    }
+    
+    @Configurable(path="server", arg="inEventLoop", value="false", type=ConfigValueType.BOOLEAN)
+    public static abstract class InEventLoopConfiguration {
+
+        public static Configurable getConfigurable() {
+            return InEventLoopConfiguration.class.getAnnotation(Configurable.class);
+        }
+
+        /**
+         * Read-only requests then don't leave the event loop of their connection,
+         * but that event loop waits while a write holds the write lock.
+         * 
+         * @return true if read-only requests are executed, and responses completed,
+         *  on the thread that submitted the request
+         */
+        public static boolean get(Configuration configuration) {
+            Configurable configurable = getConfigurable();
+            return configuration.withConfigurable(configurable)
+                    .getConfigOrEmpty(configurable.path())
+                        .getBoolean(configurable.arg());
+        }
+
+        protected InEventLoopConfiguration() {}
+    }
+    
+    @Configurable(path="server", arg="writeBatch", value="1", type=ConfigValueType.NUMBER, help="requests")
+    public static abstract class WriteBatchConfiguration {
+
+        public static Configurable getConfigurable() {
+            return WriteBatchConfiguration.class.getAnnotation(Configurable.class);
+        }
+
+        /**
+         * @return maximum number of queued writes applied under one acquisition of the write lock
+         */
+        public static int get(Configuration configuration) {
+            Configurable configurable = getConfigurable();
+            return configuration.withConfigurable(configurable)
+                    .getConfigOrEmpty(configurable.path())
+                        .getInt(configurable.arg());
+        }
+
+        protected WriteBatchConfiguration() {}
+    }
+
+    @Configurable(path="server", arg="writeBatchTime", value="1 ms", help="time")
+    public static class WriteBatchTimeConfiguration extends ConfigurableTimeout {
+
+        /**
+         * @return time after which a batch of writes stops taking more writes
+         */
+        public static TimeValue get(Configuration configuration) {
+            return new WriteBatchTimeConfiguration().apply(configuration);
         }
     }
     
@@ -262,32 +549,122 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
             ReentrantReadWriteLock lock,
             Processor<? super SessionOperation.Request<?>, ? extends Message.ServerResponse<?>> processor,
             Executor executor) {
+        return newInstance(lock, processor, executor, executor);
+    }
+
+    /**
+     * @param executor executes mutating requests one at a time under the write lock
+     * @param readExecutor executes read-only requests concurrently under the read lock
+     */
+    public static SimpleServer newInstance(
+            ReentrantReadWriteLock lock,
+            Processor<? super SessionOperation.Request<?>, ? extends Message.ServerResponse<?>> processor,
+            Executor executor,
+            Executor readExecutor) {
+        return newInstance(lock, processor, executor, readExecutor, Optional.<TxnLog>absent());
+    }
+
+    /**
+     * @param log if present, mutating requests complete once they are durable
+     */
+    public static SimpleServer newInstance(
+            ReentrantReadWriteLock lock,
+            Processor<? super SessionOperation.Request<?>, ? extends Message.ServerResponse<?>> processor,
+            Executor executor,
+            Executor readExecutor,
+            Optional<TxnLog> log) {
+        return newInstance(lock, processor, executor, readExecutor, log, ServerMetrics.create());
+    }
+
+    /**
+     * @param metrics records outstanding requests and their latencies
+     */
+    public static SimpleServer newInstance(
+            ReentrantReadWriteLock lock,
+            Processor<? super SessionOperation.Request<?>, ? extends Message.ServerResponse<?>> processor,
+            Executor executor,
+            Executor readExecutor,
+            Optional<TxnLog> log,
+            ServerMetrics metrics) {
+        return newInstance(lock, processor, executor, readExecutor, log, metrics, 1, TimeValue.milliseconds(0L));
+    }
+
+    /**
+     * @param batchSize maximum number of queued writes applied under one acquisition of the write lock
+     * @param batchTime time after which a batch stops taking more queued writes
+     */
+    public static SimpleServer newInstance(
+            ReentrantReadWriteLock lock,
+            Processor<? super SessionOperation.Request<?>, ? extends Message.ServerResponse<?>> processor,
+            Executor executor,
+            Executor readExecutor,
+            Optional<TxnLog> log,
+            ServerMetrics metrics,
+            int batchSize,
+            TimeValue batchTime) {
         return new SimpleServer(
                 lock,
                 processor,
                 executor,
+                readExecutor,
+                log,
+                metrics,
+                batchSize,
+                batchTime.value(TimeUnit.NANOSECONDS),
                 Queues.<PromiseTask<SessionOperation.Request<?>, Message.ServerResponse<?>>>newConcurrentLinkedQueue(),
                 LogManager.getLogger(SimpleServer.class));
     }
 
     protected final ReentrantReadWriteLock lock;
     protected final Processor<? super SessionOperation.Request<?>, ? extends Message.ServerResponse<?>> processor;
+    protected final Executor readExecutor;
+    protected final Optional<TxnLog> log;
+    protected final ServerMetrics metrics;
+    protected final int batchSize;
+    protected final long batchNanos;
     
     protected SimpleServer(
             ReentrantReadWriteLock lock,
             Processor<? super SessionOperation.Request<?>, ? extends Message.ServerResponse<?>> processor,
             Executor executor,
+            Executor readExecutor,
+            Optional<TxnLog> log,
+            ServerMetrics metrics,
+            int batchSize,
+            long batchNanos,
             Queue<PromiseTask<SessionOperation.Request<?>, Message.ServerResponse<?>>> mailbox,
             Logger logger) {
         super(executor, mailbox, logger);
         this.lock = lock;
         this.processor = processor;
+        this.readExecutor = readExecutor;
+        this.log = log;
+        this.metrics = metrics;
+        this.batchSize = Math.max(batchSize, 1);
+        this.batchNanos = batchNanos;
     }
     
+    public ServerMetrics metrics() {
+        return metrics;
+    }
+    
+    /**
+     * Read-only requests bypass the mailbox, so callers are responsible for
+     * ordering a session's reads with respect to its writes.
+     * 
+     * @see SessionOrderingExecutor
+     */
     @Override
     public ListenableFuture<Message.ServerResponse<?>> submit(SessionOperation.Request<?> request) {
         PromiseTask<SessionOperation.Request<?>, Message.ServerResponse<?>> task = PromiseTask.<SessionOperation.Request<?>, Message.ServerResponse<?>>of(request);
-        if (! send(task)) { 
+        task.addListener(new Completed(metrics), MoreExecutors.directExecutor());
+        boolean submitted;
+        if (request.record().opcode().isReadOnly()) {
+            submitted = read(task);
+        } else {
+            submitted = send(task);
+        }
+        if (! submitted) { 
             task.cancel(true);
         }
         return task;
@@ -295,27 +672,199 @@ public class SimpleServer extends ExecutedQueuedActor<PromiseTask<SessionOperati
 
     @Override
     protected boolean apply(PromiseTask<SessionOperation.Request<?>, Message.ServerResponse<?>> input) {
+        Message.ServerResponse<?> response;
         lock.writeLock().lock();
         try {
-            if (! input.isDone()) {
+            if (input.isDone()) {
+                return true;
+            }
+            try {
+                response = processor.apply(input.task());
+            } catch (Exception e) {
+                input.setException(e);
+                return true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (log.isPresent()) {
+            // don't wait for the sync, so that later writes join the next batch
+            Futures.addCallback(log.get().sync(), new DurableResponse(input, response));
+        } else {
+            input.set(response);
+        }
+        return true;
+    }
+    
+    @Override
+    protected void doRun() throws Exception {
+        if (batchSize == 1) {
+            super.doRun();
+            return;
+        }
+        PromiseTask<SessionOperation.Request<?>, Message.ServerResponse<?>> next;
+        while ((next = next()) != null) {
+            applyBatch(next);
+            if (state() == State.TERMINATED) {
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Applies queued writes in order under one acquisition of the write lock,
+     * until the batch is full, the time budget is spent, or the mailbox is empty,
+     * and then completes them together.
+     */
+    protected void applyBatch(PromiseTask<SessionOperation.Request<?>, Message.ServerResponse<?>> first) {
+        List<PromiseTask<SessionOperation.Request<?>, Message.ServerResponse<?>>> tasks = Lists.newArrayListWithCapacity(Math.min(batchSize, 64));
+        List<Message.ServerResponse<?>> responses = Lists.newArrayListWithCapacity(Math.min(batchSize, 64));
+        lock.writeLock().lock();
+        try {
+            long deadline = System.nanoTime() + batchNanos;
+            int count = 0;
+            PromiseTask<SessionOperation.Request<?>, Message.ServerResponse<?>> next = first;
+            do {
+                ++count;
+                if (next.isDone()) {
+                    continue;
+                }
+                Message.ServerResponse<?> response;
                 try {
-                    Message.ServerResponse<?> response = processor.apply(input.task());
-                    input.set(response);
+                    response = processor.apply(next.task());
                 } catch (Exception e) {
-                    input.setException(e);
+                    next.setException(e);
+                    continue;
                 }
-            }
+                tasks.add(next);
+                responses.add(response);
+            } while ((count < batchSize) 
+                    && (System.nanoTime() - deadline < 0L) 
+                    && (state() != State.TERMINATED) 
+                    && ((next = next()) != null));
         } finally {
             lock.writeLock().unlock();
         }
+        if (tasks.isEmpty()) {
+            return;
+        }
+        if (log.isPresent()) {
+            // one sync covers the whole batch
+            Futures.addCallback(log.get().sync(), new DurableResponses(tasks, responses));
+        } else {
+            for (int i=0; i<tasks.size(); ++i) {
+                tasks.get(i).set(responses.get(i));
+            }
+        }
+    }
+    
+    protected boolean read(final PromiseTask<SessionOperation.Request<?>, Message.ServerResponse<?>> input) {
+        if (state() == State.TERMINATED) {
+            return false;
+        }
+        try {
+            readExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    lock.readLock().lock();
+                    try {
+                        process(input);
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
         return true;
     }
     
+    protected void process(PromiseTask<SessionOperation.Request<?>, Message.ServerResponse<?>> input) {
+        if (! input.isDone()) {
+            try {
+                Message.ServerResponse<?> response = processor.apply(input.task());
+                input.set(response);
+            } catch (Exception e) {
+                input.setException(e);
+            }
+        }
+    }
+    
     @Override
     protected void doStop() {
         Future<?> task;
         while ((task = mailbox.poll()) != null) {
             task.cancel(true);
         }
+        if (log.isPresent()) {
+            log.get().stop();
+        }
+    }
+    
+    protected static final class Completed implements Runnable {
+
+        private final ServerMetrics metrics;
+        private final long started;
+        
+        public Completed(ServerMetrics metrics) {
+            this.metrics = metrics;
+            this.started = metrics.submitted();
+        }
+        
+        @Override
+        public void run() {
+            metrics.completed(started);
+        }
+    }
+    
+    protected static final class DurableResponse implements FutureCallback<Object> {
+
+        private final PromiseTask<SessionOperation.Request<?>, Message.ServerResponse<?>> task;
+        private final Message.ServerResponse<?> response;
+        
+        public DurableResponse(
+                PromiseTask<SessionOperation.Request<?>, Message.ServerResponse<?>> task,
+                Message.ServerResponse<?> response) {
+            this.task = task;
+            this.response = response;
+        }
+        
+        @Override
+        public void onSuccess(Object result) {
+            task.set(response);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            task.setException(t);
+        }
+    }
+    
+    protected static final class DurableResponses implements FutureCallback<Object> {
+
+        private final List<PromiseTask<SessionOperation.Request<?>, Message.ServerResponse<?>>> tasks;
+        private final List<Message.ServerResponse<?>> responses;
+        
+        public DurableResponses(
+                List<PromiseTask<SessionOperation.Request<?>, Message.ServerResponse<?>>> tasks,
+                List<Message.ServerResponse<?>> responses) {
+            this.tasks = tasks;
+            this.responses = responses;
+        }
+        
+        @Override
+        public void onSuccess(Object result) {
+            for (int i=0; i<tasks.size(); ++i) {
+                tasks.get(i).set(responses.get(i));
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            for (PromiseTask<SessionOperation.Request<?>, Message.ServerResponse<?>> task: tasks) {
+                task.setException(t);
+            }
+        }
     }
 }
@@ -3,18 +3,19 @@ package edu.uw.zookeeper.server;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Iterator;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
+import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
-import com.google.common.collect.MapMaker;
 import com.google.common.hash.Hashing;
 
 import edu.uw.zookeeper.ServerInetAddressView;
 import edu.uw.zookeeper.ZooKeeperApplication;
+import edu.uw.zookeeper.common.LongConcurrentHashMap;
 import edu.uw.zookeeper.common.ParameterizedFactory;
 import edu.uw.zookeeper.common.RuntimeModule;
 import edu.uw.zookeeper.common.TaskExecutor;
@@ -105,7 +106,7 @@ public class SimpleServerExecutor<T extends SessionExecutor> implements ServerEx
     public static class ServerBuilder extends SimpleServer.Builder<ServerBuilder> {
 
         public static ServerBuilder defaults(ServerConnectionFactoryBuilder connections) {
-            return new ServerBuilder(connections, new SimpleServerSupplier(null), null, null, null, null, null, null, null, null, null);
+            return new ServerBuilder(connections, new SimpleServerSupplier(null), null, null, null, null, null, null, null, null, null, null, null);
         }
         
         protected static class SimpleServerSupplier implements Supplier<SimpleServer> {
@@ -128,33 +129,35 @@ public class SimpleServerExecutor<T extends SessionExecutor> implements ServerEx
         }
         
         protected final ServerConnectionFactoryBuilder connections;
-        protected final ConcurrentMap<Long, SimpleSessionExecutor> sessionExecutors;
+        protected final LongConcurrentHashMap<SimpleSessionExecutor> sessionExecutors;
         protected final SimpleServerSupplier server;
         
         protected ServerBuilder(
                 ServerConnectionFactoryBuilder connections,
                 SimpleServerSupplier server,
-                ConcurrentMap<Long, SimpleSessionExecutor> sessionExecutors,
+                LongConcurrentHashMap<SimpleSessionExecutor> sessionExecutors,
                 ZxidGenerator zxids,
                 NameTrie<ZNodeNode> data,
+                ZNodeNode.Counts counts,
+                Optional<TxnLog> log,
                 SessionManager sessions,
                 ReentrantReadWriteLock lock,
                 Watches dataWatches,
                 Watches childWatches,
                 Function<Long, ? extends NotificationListener<Operation.ProtocolResponse<IWatcherEvent>>> listeners,
                 RuntimeModule runtime) {
-            super(zxids, data, sessions, lock, dataWatches, childWatches, listeners, runtime);
+            super(zxids, data, counts, log, sessions, lock, dataWatches, childWatches, listeners, runtime);
             this.connections = checkNotNull(connections);
             this.server = checkNotNull(server);
             this.sessionExecutors = sessionExecutors;
         }
 
-        public ConcurrentMap<Long, SimpleSessionExecutor> getSessionExecutors() {
+        public LongConcurrentHashMap<SimpleSessionExecutor> getSessionExecutors() {
             return sessionExecutors;
         }
 
-        public ServerBuilder setSessionExecutors(ConcurrentMap<Long, SimpleSessionExecutor> sessionExecutors) {
-            return newInstance(connections, server, sessionExecutors, zxids, data, sessions, lock, dataWatches, childWatches, listeners, runtime);
+        public ServerBuilder setSessionExecutors(LongConcurrentHashMap<SimpleSessionExecutor> sessionExecutors) {
+            return newInstance(connections, server, sessionExecutors, zxids, data, counts, log, sessions, lock, dataWatches, childWatches, listeners, runtime);
         }
 
         @Override
@@ -169,28 +172,32 @@ public class SimpleServerExecutor<T extends SessionExecutor> implements ServerEx
         protected ServerBuilder newInstance(
                 ZxidGenerator zxids,
                 NameTrie<ZNodeNode> data,
+                ZNodeNode.Counts counts,
+                Optional<TxnLog> log,
                 SessionManager sessions,
                 ReentrantReadWriteLock lock,
                 Watches dataWatches,
                 Watches childWatches,
                 Function<Long, ? extends NotificationListener<Operation.ProtocolResponse<IWatcherEvent>>> listeners,
                 RuntimeModule runtime) {
-            return newInstance(connections, server, sessionExecutors, zxids, data, sessions, lock, dataWatches, childWatches, listeners, runtime);
+            return newInstance(connections, server, sessionExecutors, zxids, data, counts, log, sessions, lock, dataWatches, childWatches, listeners, runtime);
         }
 
         protected ServerBuilder newInstance(
                 ServerConnectionFactoryBuilder connections,
                 SimpleServerSupplier server,
-                ConcurrentMap<Long, SimpleSessionExecutor> sessionExecutors,
+                LongConcurrentHashMap<SimpleSessionExecutor> sessionExecutors,
                 ZxidGenerator zxids,
                 NameTrie<ZNodeNode> data,
+                ZNodeNode.Counts counts,
+                Optional<TxnLog> log,
                 SessionManager sessions,
                 ReentrantReadWriteLock lock,
                 Watches dataWatches,
                 Watches childWatches,
                 Function<Long, ? extends NotificationListener<Operation.ProtocolResponse<IWatcherEvent>>> listeners,
                 RuntimeModule runtime) {
-            return new ServerBuilder(connections, server, sessionExecutors, zxids, data, sessions, lock, dataWatches, childWatches, listeners, runtime);
+            return new ServerBuilder(connections, server, sessionExecutors, zxids, data, counts, log, sessions, lock, dataWatches, childWatches, listeners, runtime);
         }
 
         @Override
@@ -217,13 +224,16 @@ public class SimpleServerExecutor<T extends SessionExecutor> implements ServerEx
                     getRuntimeModule().getConfiguration());
         }
         
-        protected ConcurrentMap<Long, SimpleSessionExecutor> getDefaultSessionExecutors() {
-            return new MapMaker().makeMap();
+        protected LongConcurrentHashMap<SimpleSessionExecutor> getDefaultSessionExecutors() {
+            return LongConcurrentHashMap.create();
         }
 
         protected ParameterizedFactory<Session, SimpleSessionExecutor> getDefaultSessionFactory() {
+            // a connected session delivers from its connection's event loop instead,
+            // so a read that completes on the event loop doesn't leave it
             return SimpleSessionExecutor.factory(
                     getRuntimeModule().getExecutors().get(ScheduledExecutorService.class), 
+                    getRuntimeModule().getExecutors().get(ExecutorService.class),
                     server);
         }
         
@@ -235,10 +245,10 @@ public class SimpleServerExecutor<T extends SessionExecutor> implements ServerEx
 
     protected final TaskExecutor<? super FourLetterRequest, ? extends FourLetterResponse> anonymousExecutor;
     protected final TaskExecutor<ConnectMessage.Request, ? extends ConnectMessage.Response> connectExecutor;
-    protected final ConcurrentMap<Long, T> sessionExecutors;
+    protected final LongConcurrentHashMap<T> sessionExecutors;
     
     public SimpleServerExecutor(
-            ConcurrentMap<Long, T> sessionExecutors,
+            LongConcurrentHashMap<T> sessionExecutors,
             TaskExecutor<ConnectMessage.Request, ? extends ConnectMessage.Response> connectExecutor,
             TaskExecutor<? super FourLetterRequest, ? extends FourLetterResponse> anonymousExecutor) {
         this.anonymousExecutor = anonymousExecutor;
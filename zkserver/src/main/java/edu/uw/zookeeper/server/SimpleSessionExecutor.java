@@ -2,7 +2,9 @@ package edu.uw.zookeeper.server;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.logging.log4j.LogManager;
 
@@ -11,24 +13,52 @@ import net.engio.mbassy.common.StrongConcurrentSet;
 
 import com.google.common.base.Supplier;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
+import edu.uw.zookeeper.common.Actors;
+import edu.uw.zookeeper.common.Automaton;
 import edu.uw.zookeeper.common.Automatons;
 import edu.uw.zookeeper.common.ParameterizedFactory;
 import edu.uw.zookeeper.common.TaskExecutor;
 import edu.uw.zookeeper.protocol.Message;
+import edu.uw.zookeeper.protocol.Operation;
 import edu.uw.zookeeper.protocol.ProtocolState;
 import edu.uw.zookeeper.protocol.ProtocolMessageAutomaton;
 import edu.uw.zookeeper.protocol.Session;
 import edu.uw.zookeeper.protocol.SessionListener;
 import edu.uw.zookeeper.protocol.SessionOperation;
 import edu.uw.zookeeper.protocol.SessionRequest;
+import edu.uw.zookeeper.protocol.proto.IWatcherEvent;
 
+/**
+ * Notifications are delivered to listeners from a serial executor,
+ * so that the server doesn't wait on listeners while it holds the write lock,
+ * and responses are completed from the same executor,
+ * so that a notification is seen before any later response.
+ * 
+ * The serial executor runs on a subscribed listener that is also an executor,
+ * i.e. the event loop of the session's connection, if any,
+ * and otherwise on the shared executor.
+ * 
+ * Once the session is closed, requests that are still queued are cancelled.
+ */
 public final class SimpleSessionExecutor extends AbstractSessionExecutor {
 
     public static ParameterizedFactory<Session, SimpleSessionExecutor> factory(
             final ScheduledExecutorService scheduler,
             final Supplier<? extends TaskExecutor<? super SessionOperation.Request<?>, Message.ServerResponse<?>>> server) {
+        return factory(scheduler, MoreExecutors.directExecutor(), server);
+    }
+
+    /**
+     * @param executor delivers notifications while a session has no connection, shared by all sessions
+     */
+    public static ParameterizedFactory<Session, SimpleSessionExecutor> factory(
+            final ScheduledExecutorService scheduler,
+            final Executor executor,
+            final Supplier<? extends TaskExecutor<? super SessionOperation.Request<?>, Message.ServerResponse<?>>> server) {
         checkNotNull(scheduler);
+        checkNotNull(executor);
         checkNotNull(server);
         return new ParameterizedFactory<Session, SimpleSessionExecutor>() {
             @Override
@@ -45,12 +75,16 @@ public final class SimpleSessionExecutor extends AbstractSessionExecutor {
                         automaton,
                         new StrongConcurrentSet<SessionListener>(), 
                         scheduler, 
+                        executor,
                         server.get());
             }
         };
     }
 
     protected final TaskExecutor<? super SessionOperation.Request<?>, Message.ServerResponse<?>> server;
+    protected final AtomicReference<Executor> connection;
+    protected final Actors.ActorExecutor notifications;
+    protected final SessionOrderingExecutor ordering;
     
     public SimpleSessionExecutor(
             Session session,
@@ -58,12 +92,68 @@ public final class SimpleSessionExecutor extends AbstractSessionExecutor {
             IConcurrentSet<SessionListener> listeners,
             ScheduledExecutorService scheduler,
             TaskExecutor<? super SessionOperation.Request<?>, Message.ServerResponse<?>> server) {
+        this(session, state, listeners, scheduler, MoreExecutors.directExecutor(), server);
+    }
+    
+    public SimpleSessionExecutor(
+            Session session,
+            Automatons.EventfulAutomaton<ProtocolState,Object> state,
+            IConcurrentSet<SessionListener> listeners,
+            ScheduledExecutorService scheduler,
+            final Executor executor,
+            TaskExecutor<? super SessionOperation.Request<?>, Message.ServerResponse<?>> server) {
         super(session, state, listeners, scheduler);
+        checkNotNull(executor);
         this.server = checkNotNull(server);
+        this.connection = new AtomicReference<Executor>(null);
+        this.notifications = Actors.ActorExecutor.newInstance(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                Executor next = connection.get();
+                (next != null ? next : executor).execute(command);
+            }
+        });
+        this.ordering = SessionOrderingExecutor.create(server, notifications);
+    }
+
+    @Override
+    public void subscribe(SessionListener listener) {
+        super.subscribe(listener);
+        if (listener instanceof Executor) {
+            connection.set((Executor) listener);
+        }
+    }
+
+    @Override
+    public boolean unsubscribe(SessionListener listener) {
+        if (listener instanceof Executor) {
+            connection.compareAndSet((Executor) listener, null);
+        }
+        return super.unsubscribe(listener);
+    }
+
+    @Override
+    public void handleAutomatonTransition(Automaton.Transition<ProtocolState> transition) {
+        super.handleAutomatonTransition(transition);
+        if (transition.to() == ProtocolState.DISCONNECTED) {
+            ordering.stop();
+            notifications.stop();
+        }
+    }
+
+    @Override
+    public void handleNotification(
+            final Operation.ProtocolResponse<IWatcherEvent> notification) {
+        notifications.execute(new Runnable() {
+            @Override
+            public void run() {
+                SimpleSessionExecutor.super.handleNotification(notification);
+            }
+        });
     }
     
     @Override
     protected ListenableFuture<Message.ServerResponse<?>> doSubmit(Message.ClientRequest<?> request) {
-        return server.submit(SessionRequest.of(session.id(), request));
+        return ordering.submit(SessionRequest.of(session.id(), request));
     }
 }
\ No newline at end of file
@@ -0,0 +1,814 @@
+package edu.uw.zookeeper.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Id;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.typesafe.config.ConfigValueType;
+
+import edu.uw.zookeeper.common.Configurable;
+import edu.uw.zookeeper.common.Configuration;
+import edu.uw.zookeeper.data.AbsoluteZNodePath;
+import edu.uw.zookeeper.data.Acls;
+import edu.uw.zookeeper.data.NameTrie;
+import edu.uw.zookeeper.data.ZNodeLabel;
+import edu.uw.zookeeper.data.ZNodeName;
+import edu.uw.zookeeper.data.ZNodeNode;
+import edu.uw.zookeeper.data.ZNodePath;
+import edu.uw.zookeeper.protocol.proto.IMultiRequest;
+import edu.uw.zookeeper.protocol.proto.Records;
+import edu.uw.zookeeper.protocol.proto.Stats;
+
+/**
+ * Fuzzy snapshot of the data tree as of one zxid.
+ *
+ * The tree is walked in pre-order with children in label order,
+ * holding the read lock for at most one slice of nodes at a time,
+ * so writes proceed between slices.
+ * Before a write modifies a znode that the walk has not reached yet,
+ * the znode's state is copied with capture(),
+ * and the walk uses the copy, so the snapshot is consistent with the
+ * tree as of its zxid and the log can be replayed on top of it.
+ *
+ * A snapshot file is a sequence of sections,
+ * each a length, an Adler32 checksum, a count,
+ * and that many znodes in pre-order.
+ * Every znode in a section has its parent either in the same section
+ * or on the path to the first znode of the section,
+ * so sections are restored in parallel.
+ * The file is written under a temporary name and renamed when complete.
+ */
+public class Snapshot implements Runnable {
+
+    /**
+     * @param zxid zxid of the last transaction applied to the data tree
+     */
+    public static Snapshot forZxid(
+            long zxid,
+            File directory,
+            NameTrie<ZNodeNode> trie,
+            ReentrantReadWriteLock lock) {
+        checkArgument(directory.isDirectory(), directory);
+        return new Snapshot(
+                zxid,
+                directory,
+                trie,
+                lock,
+                Maps.<String, Image>newConcurrentMap(),
+                LogManager.getLogger(Snapshot.class));
+    }
+
+    public static final String PREFIX = "snapshot";
+    public static final String TMP_SUFFIX = ".tmp";
+
+    public static String fileName(long zxid) {
+        return String.format("%s.%016x", PREFIX, zxid);
+    }
+
+    public static long zxidOf(File file) {
+        return Long.parseLong(file.getName().substring(PREFIX.length() + 1), 16);
+    }
+
+    /**
+     * @return complete snapshot files in this directory in zxid order
+     */
+    public static List<File> files(File directory) {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(PREFIX + '.') && ! name.endsWith(TMP_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return Lists.newArrayListWithCapacity(0);
+        }
+        // fixed-width hex names sort by zxid
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * Tries each snapshot in this directory, newest first.
+     */
+    public static Optional<Restored> restoreLatest(File directory, Executor executor) {
+        for (File file: Lists.reverse(files(directory))) {
+            try {
+                return Optional.of(restore(file, executor));
+            } catch (IOException e) {
+                LOGGER.warn("Skipping snapshot {}", file, e);
+            }
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * Restores a snapshot in two parallel passes:
+     * the first decodes sections, and the second links the znodes
+     * of each section into the trie.
+     * Between the passes, the znodes on the path to the first znode of
+     * each section are linked by the caller, so that each section only
+     * adds children to znodes that are its own or already linked.
+     */
+    public static Restored restore(File file, Executor executor) throws IOException {
+        LOGGER.info("Restoring {}", file);
+        long zxid = zxidOf(file);
+        final List<ByteBuf> sections = read(file);
+        if (sections.isEmpty()) {
+            throw new IOException(String.format("%s is empty", file));
+        }
+        final Set<String> spine = Sets.newHashSet();
+        spine.add(ZNodePath.root().toString());
+        for (ByteBuf section: sections) {
+            String path = firstPath(section);
+            int index;
+            while ((index = path.lastIndexOf(ZNodeName.SLASH)) > 0) {
+                path = path.substring(0, index);
+                spine.add(path);
+            }
+        }
+
+        List<ListenableFuture<List<Entry>>> decoding = Lists.newArrayListWithCapacity(sections.size());
+        for (final ByteBuf section: sections) {
+            decoding.add(submit(executor, new Callable<List<Entry>>() {
+                @Override
+                public List<Entry> call() throws IOException {
+                    return decode(section, spine);
+                }
+            }));
+        }
+        final List<List<Entry>> entries = get(Futures.allAsList(decoding));
+
+        Iterator<Entry> first = entries.get(0).iterator();
+        if (! first.hasNext() || ! first.next().path().equals(ZNodePath.root().toString())) {
+            throw new IOException(String.format("%s does not start with the root", file));
+        }
+        final Map<String, ZNodeNode> linked = Maps.newHashMapWithExpectedSize(spine.size());
+        ZNodeNode root = ZNodeNode.root(entries.get(0).get(0).state());
+        linked.put(root.path().toString(), root);
+        for (List<Entry> section: entries) {
+            for (Entry entry: section) {
+                if (entry.isSpine() && ! linked.containsKey(entry.path())) {
+                    ZNodeNode parent = linked.get(entry.parent());
+                    if (parent == null) {
+                        throw new IOException(String.format("%s has no parent in %s", entry.path(), file));
+                    }
+                    linked.put(entry.path(), entry.link(parent));
+                }
+            }
+        }
+
+        List<ListenableFuture<List<Entry>>> linking = Lists.newArrayListWithCapacity(entries.size());
+        for (final List<Entry> section: entries) {
+            linking.add(submit(executor, new Callable<List<Entry>>() {
+                @Override
+                public List<Entry> call() throws IOException {
+                    return link(section, linked);
+                }
+            }));
+        }
+        ImmutableSetMultimap.Builder<Long, String> ephemerals = ImmutableSetMultimap.builder();
+        for (List<Entry> section: get(Futures.allAsList(linking))) {
+            for (Entry entry: section) {
+                ephemerals.put(Long.valueOf(entry.state().getEphemeralOwner()), entry.path());
+            }
+        }
+        return new Restored(zxid, root, ephemerals.build());
+    }
+
+    public static final class Restored {
+
+        private final long zxid;
+        private final ZNodeNode root;
+        private final ImmutableSetMultimap<Long, String> ephemerals;
+
+        public Restored(
+                long zxid,
+                ZNodeNode root,
+                ImmutableSetMultimap<Long, String> ephemerals) {
+            this.zxid = zxid;
+            this.root = root;
+            this.ephemerals = ephemerals;
+        }
+
+        /**
+         * @return zxid of the last transaction in the snapshot
+         */
+        public long zxid() {
+            return zxid;
+        }
+
+        public ZNodeNode root() {
+            return root;
+        }
+
+        /**
+         * @return ephemeral znode paths by owner
+         */
+        public ImmutableSetMultimap<Long, String> ephemerals() {
+            return ephemerals;
+        }
+    }
+
+    @Configurable(path="server", arg="snapshotCount", value="100000", type=ConfigValueType.NUMBER, help="transactions")
+    public static abstract class CountConfiguration {
+
+        public static Configurable getConfigurable() {
+            return CountConfiguration.class.getAnnotation(Configurable.class);
+        }
+
+        /**
+         * @return number of transactions between snapshots, or zero if disabled
+         */
+        public static int get(Configuration configuration) {
+            Configurable configurable = getConfigurable();
+            return configuration.withConfigurable(configurable)
+                    .getConfigOrEmpty(configurable.path())
+                        .getInt(configurable.arg());
+        }
+
+        protected CountConfiguration() {}
+    }
+
+    @Configurable(path="server", arg="snapshotRetainCount", value="3", type=ConfigValueType.NUMBER, help="snapshots")
+    public static abstract class RetainConfiguration {
+
+        public static Configurable getConfigurable() {
+            return RetainConfiguration.class.getAnnotation(Configurable.class);
+        }
+
+        /**
+         * @return number of snapshots kept, with the logs needed to replay on top of them, or zero to keep all
+         */
+        public static int get(Configuration configuration) {
+            Configurable configurable = getConfigurable();
+            return configuration.withConfigurable(configurable)
+                    .getConfigOrEmpty(configurable.path())
+                        .getInt(configurable.arg());
+        }
+
+        protected RetainConfiguration() {}
+    }
+
+    /**
+     * Deletes all but the newest retain snapshots in this directory,
+     * and the log files that only hold transactions up to the oldest of those.
+     */
+    public static void purge(File directory, int retain) {
+        checkArgument(retain > 0);
+        List<File> snapshots = files(directory);
+        if (snapshots.size() <= retain) {
+            return;
+        }
+        long oldest = zxidOf(snapshots.get(snapshots.size() - retain));
+        for (File file: snapshots.subList(0, snapshots.size() - retain)) {
+            delete(file);
+        }
+        List<File> logs = TxnLog.files(directory);
+        for (int i=0; i+1<logs.size(); ++i) {
+            if (TxnLog.zxidOf(logs.get(i + 1)) <= oldest) {
+                delete(logs.get(i));
+            }
+        }
+    }
+
+    public static void encode(Image image, ByteBuf output) {
+        ZNodeNode.ZNodeState state = image.state();
+        writeString(image.path().toString(), output);
+        output.writeLong(state.getCzxid());
+        output.writeLong(state.getCtime());
+        output.writeLong(state.getEphemeralOwner());
+        output.writeLong(state.getMzxid());
+        output.writeLong(state.getMtime());
+        output.writeInt(state.getVersion());
+        output.writeLong(state.getPzxid());
+        output.writeInt(state.getCversion());
+        output.writeInt(state.getAversion());
+        output.writeInt(state.getAcl().size());
+        for (Acls.Acl acl: state.getAcl()) {
+            output.writeInt(acl.permissions().intValue());
+            writeString(acl.id().getScheme(), output);
+            writeString(acl.id().getId(), output);
+        }
+        ByteBuf data = state.getBuffer();
+        output.writeInt(data.readableBytes());
+        output.writeBytes(data);
+    }
+
+    public static Entry decode(ByteBuf input) {
+        String path = readString(input);
+        Stats.CreateStat create = Stats.CreateStat.of(input.readLong(), input.readLong(), input.readLong());
+        Stats.DataStat dataStat = Stats.DataStat.of(input.readLong(), input.readLong(), input.readInt());
+        Stats.ChildrenStat children = Stats.ChildrenStat.of(input.readLong(), input.readInt());
+        int aversion = input.readInt();
+        int size = input.readInt();
+        List<Acls.Acl> acl = Lists.newArrayListWithCapacity(size);
+        for (int i=0; i<size; ++i) {
+            int perms = input.readInt();
+            acl.add(Acls.Acl.fromRecord(new ACL(perms, new Id(readString(input), readString(input)))));
+        }
+        byte[] data = new byte[input.readInt()];
+        input.readBytes(data);
+        return new Entry(path, ZNodeNode.ZNodeState.of(
+                create,
+                ZNodeNode.ZNodeData.of(dataStat, data),
+                ZNodeNode.ZNodeAcl.of(Acls.intern(acl), aversion),
+                children));
+    }
+
+    /**
+     * Znode state that is not modified after it is copied,
+     * because data and ACL lists are replaced rather than modified.
+     */
+    public static final class Image {
+
+        public static Image of(ZNodeNode node) {
+            ZNodeNode.ZNodeState state = node.state();
+            List<String> children = Lists.newArrayListWithCapacity(node.size());
+            for (ZNodeName child: node.keySet()) {
+                children.add(child.toString());
+            }
+            Collections.sort(children);
+            return new Image(
+                    node.path(),
+                    ZNodeNode.ZNodeState.copyOf(state),
+                    children);
+        }
+
+        private final ZNodePath path;
+        private final ZNodeNode.ZNodeState state;
+        private final List<String> children;
+
+        protected Image(
+                ZNodePath path,
+                ZNodeNode.ZNodeState state,
+                List<String> children) {
+            this.path = path;
+            this.state = state;
+            this.children = children;
+        }
+
+        public ZNodePath path() {
+            return path;
+        }
+
+        public ZNodeNode.ZNodeState state() {
+            return state;
+        }
+
+        /**
+         * @return child labels in order
+         */
+        public List<String> children() {
+            return children;
+        }
+    }
+
+    public static final class Entry {
+
+        private final String path;
+        private final ZNodeNode.ZNodeState state;
+        private boolean spine;
+
+        public Entry(String path, ZNodeNode.ZNodeState state) {
+            this.path = path;
+            this.state = state;
+            this.spine = false;
+        }
+
+        public String path() {
+            return path;
+        }
+
+        public String parent() {
+            int index = path.lastIndexOf(ZNodeName.SLASH);
+            return (index > 0) ? path.substring(0, index) : ZNodePath.root().toString();
+        }
+
+        public ZNodeLabel label() {
+            return ZNodeLabel.fromString(path.substring(path.lastIndexOf(ZNodeName.SLASH) + 1));
+        }
+
+        public ZNodeNode.ZNodeState state() {
+            return state;
+        }
+
+        /**
+         * @return true if this znode is linked before its section
+         */
+        public boolean isSpine() {
+            return spine;
+        }
+
+        public ZNodeNode link(ZNodeNode parent) {
+            ZNodeLabel label = label();
+            ZNodeNode node = ZNodeNode.child(label, parent, state);
+            parent.put(label, node);
+            return node;
+        }
+    }
+
+    protected static final Logger LOGGER = LogManager.getLogger(Snapshot.class);
+
+    // number of znodes copied per hold of the read lock
+    protected static final int SLICE_SIZE = 1024;
+    // number of znodes per section
+    protected static final int SECTION_SIZE = 8192;
+
+    protected static final Comparator<ZNodePath> PREORDER = new Comparator<ZNodePath>() {
+        @Override
+        public int compare(ZNodePath a, ZNodePath b) {
+            Iterator<ZNodeLabel> i = a.iterator();
+            Iterator<ZNodeLabel> j = b.iterator();
+            while (i.hasNext() && j.hasNext()) {
+                int result = i.next().toString().compareTo(j.next().toString());
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return i.hasNext() ? 1 : (j.hasNext() ? -1 : 0);
+        }
+    };
+
+    protected static void delete(File file) {
+        LOGGER.info("Deleting {}", file);
+        if (! file.delete()) {
+            LOGGER.warn("Unable to delete {}", file);
+        }
+    }
+
+    protected static List<ByteBuf> read(File file) throws IOException {
+        List<ByteBuf> sections = Lists.newArrayList();
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                int length;
+                try {
+                    length = input.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                long checksum = input.readLong();
+                if (length <= 4) {
+                    throw new IOException(String.format("Invalid section length %d in %s", length, file));
+                }
+                byte[] bytes = new byte[length];
+                input.readFully(bytes);
+                ByteBuf section = Unpooled.wrappedBuffer(bytes);
+                if (TxnLog.checksum(section, 0, length) != checksum) {
+                    throw new IOException(String.format("Invalid section checksum in %s", file));
+                }
+                sections.add(section);
+            }
+        } finally {
+            input.close();
+        }
+        return sections;
+    }
+
+    protected static String firstPath(ByteBuf section) {
+        ByteBuf input = section.duplicate();
+        input.skipBytes(4);
+        return readString(input);
+    }
+
+    protected static List<Entry> decode(ByteBuf section, Set<String> spine) {
+        ByteBuf input = section.duplicate();
+        int count = input.readInt();
+        List<Entry> entries = Lists.newArrayListWithCapacity(count);
+        for (int i=0; i<count; ++i) {
+            Entry entry = decode(input);
+            entry.spine = spine.contains(entry.path());
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Spine znodes are shared with other sections,
+     * so children are added to them while holding their monitor.
+     *
+     * @return ephemeral znodes of this section
+     */
+    protected static List<Entry> link(List<Entry> section, Map<String, ZNodeNode> linked) throws IOException {
+        List<Entry> ephemerals = Lists.newArrayListWithCapacity(0);
+        // ancestors of the current znode that only this section links
+        Deque<ZNodeNode> ancestors = Queues.newArrayDeque();
+        // paths of ancestors, which znodes compute rather than keep
+        Deque<String> ancestorPaths = Queues.newArrayDeque();
+        for (Entry entry: section) {
+            if (entry.state().isEphemeral()) {
+                ephemerals.add(entry);
+            }
+            if (entry.isSpine()) {
+                ancestors.clear();
+                ancestorPaths.clear();
+                continue;
+            }
+            String parentPath = entry.parent();
+            while (! ancestors.isEmpty() && ! ancestorPaths.peek().equals(parentPath)) {
+                ancestors.pop();
+                ancestorPaths.pop();
+            }
+            ZNodeNode node;
+            if (! ancestors.isEmpty()) {
+                node = entry.link(ancestors.peek());
+            } else {
+                ZNodeNode parent = linked.get(parentPath);
+                if (parent == null) {
+                    throw new IOException(String.format("%s has no parent", entry.path()));
+                }
+                synchronized (parent) {
+                    node = entry.link(parent);
+                }
+            }
+            ancestors.push(node);
+            ancestorPaths.push(entry.path());
+        }
+        return ephemerals;
+    }
+
+    protected static <V> ListenableFuture<V> submit(Executor executor, Callable<V> callable) {
+        ListenableFutureTask<V> task = ListenableFutureTask.create(callable);
+        executor.execute(task);
+        return task;
+    }
+
+    protected static <V> V get(ListenableFuture<V> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw Throwables.propagate(e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    protected static void writeString(String value, ByteBuf output) {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.writeBytes(bytes);
+    }
+
+    protected static String readString(ByteBuf input) {
+        byte[] bytes = new byte[input.readInt()];
+        input.readBytes(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    protected final long zxid;
+    protected final File directory;
+    protected final NameTrie<ZNodeNode> trie;
+    protected final ReentrantReadWriteLock lock;
+    // copies of znodes modified before the walk reached them
+    protected final ConcurrentMap<String, Image> images;
+    protected final Logger logger;
+    // guarded by lock
+    protected ZNodePath cursor;
+    protected volatile boolean done;
+
+    protected Snapshot(
+            long zxid,
+            File directory,
+            NameTrie<ZNodeNode> trie,
+            ReentrantReadWriteLock lock,
+            ConcurrentMap<String, Image> images,
+            Logger logger) {
+        this.zxid = zxid;
+        this.directory = directory;
+        this.trie = trie;
+        this.lock = lock;
+        this.images = images;
+        this.logger = logger;
+        this.cursor = null;
+        this.done = false;
+    }
+
+    public long zxid() {
+        return zxid;
+    }
+
+    public File file() {
+        return new File(directory, fileName(zxid));
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Must be called with the write lock held, before the request is applied.
+     */
+    public void capture(Records.Request request) {
+        if (done) {
+            return;
+        }
+        switch (request.opcode()) {
+        case CREATE:
+        case CREATE2:
+            captureParent(((Records.PathGetter) request).getPath());
+            break;
+        case DELETE:
+            capture(((Records.PathGetter) request).getPath());
+            captureParent(((Records.PathGetter) request).getPath());
+            break;
+        case SET_DATA:
+        case SET_ACL:
+            capture(((Records.PathGetter) request).getPath());
+            break;
+        case MULTI:
+            for (Records.MultiOpRequest op: (IMultiRequest) request) {
+                capture(op);
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    @Override
+    public void run() {
+        File tmp = new File(directory, fileName(zxid) + TMP_SUFFIX);
+        logger.info("Creating snapshot {}", tmp);
+        try {
+            FileChannel channel = new FileOutputStream(tmp).getChannel();
+            try {
+                write(channel);
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+            File file = file();
+            if (! tmp.renameTo(file)) {
+                throw new IOException(String.format("Unable to rename %s to %s", tmp, file));
+            }
+            logger.info("Created snapshot {}", file);
+        } catch (Exception e) {
+            logger.warn("Error creating snapshot ({})", this, e);
+            tmp.delete();
+        } finally {
+            done = true;
+            images.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).addValue(file()).toString();
+    }
+
+    protected void write(FileChannel channel) throws IOException {
+        Deque<ZNodePath> pending = Queues.newArrayDeque();
+        pending.push(ZNodePath.root());
+        List<Image> slice = Lists.newArrayListWithCapacity(SLICE_SIZE);
+        ByteBuf buffer = Unpooled.buffer();
+        try {
+            int start = 0;
+            int count = 0;
+            while (! pending.isEmpty()) {
+                slice.clear();
+                slice(pending, slice);
+                for (Image image: slice) {
+                    if (count == 0) {
+                        start = buffer.writerIndex();
+                        buffer.writerIndex(start + TxnLog.HEADER_LENGTH + 4);
+                    }
+                    encode(image, buffer);
+                    if (++count == SECTION_SIZE) {
+                        finishSection(buffer, start, count);
+                        write(buffer, channel);
+                        count = 0;
+                    }
+                }
+            }
+            if (count > 0) {
+                finishSection(buffer, start, count);
+                write(buffer, channel);
+            }
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Copies the next slice of znodes in pre-order under the read lock.
+     */
+    protected void slice(Deque<ZNodePath> pending, List<Image> slice) throws IOException {
+        lock.readLock().lock();
+        try {
+            while (! pending.isEmpty() && slice.size() < SLICE_SIZE) {
+                ZNodePath path = pending.pop();
+                Image image = images.remove(path.toString());
+                if (image == null) {
+                    ZNodeNode node = trie.get(path);
+                    if (node == null) {
+                        throw new IOException(String.format("%s was removed before it was copied", path));
+                    }
+                    image = Image.of(node);
+                }
+                cursor = path;
+                slice.add(image);
+                List<String> children = image.children();
+                for (int i=children.size()-1; i>=0; --i) {
+                    pending.push(path.join(ZNodeLabel.fromString(children.get(i))));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    protected void capture(String path) {
+        ZNodePath validated;
+        try {
+            validated = ZNodePath.validated(path);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        capture(validated);
+    }
+
+    protected void captureParent(String path) {
+        ZNodePath validated;
+        try {
+            validated = ZNodePath.validated(path);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        if (! validated.isRoot()) {
+            capture(((AbsoluteZNodePath) validated).parent());
+        }
+    }
+
+    protected void capture(ZNodePath path) {
+        if ((cursor != null) && (PREORDER.compare(path, cursor) <= 0)) {
+            // already copied
+            return;
+        }
+        String key = path.toString();
+        if (images.containsKey(key)) {
+            return;
+        }
+        ZNodeNode node = trie.get(path);
+        if ((node == null) || (node.state().getCzxid() > zxid)) {
+            // not in the snapshot
+            return;
+        }
+        images.put(key, Image.of(node));
+    }
+
+    protected static void finishSection(ByteBuf buffer, int start, int count) {
+        int length = buffer.writerIndex() - start - TxnLog.HEADER_LENGTH;
+        buffer.setInt(start + TxnLog.HEADER_LENGTH, count);
+        buffer.setInt(start, length);
+        buffer.setLong(start + 4, TxnLog.checksum(buffer, start + TxnLog.HEADER_LENGTH, length));
+    }
+
+    protected static void write(ByteBuf buffer, FileChannel channel) throws IOException {
+        while (buffer.isReadable()) {
+            buffer.readBytes(channel, buffer.readableBytes());
+        }
+        buffer.clear();
+    }
+}
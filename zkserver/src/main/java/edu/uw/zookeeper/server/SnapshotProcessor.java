@@ -0,0 +1,126 @@
+package edu.uw.zookeeper.server;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import edu.uw.zookeeper.common.Processors;
+import edu.uw.zookeeper.common.Processors.ForwardingProcessor;
+import edu.uw.zookeeper.data.NameTrie;
+import edu.uw.zookeeper.data.TxnOperation;
+import edu.uw.zookeeper.data.ZNodeNode;
+import edu.uw.zookeeper.protocol.Operation;
+import edu.uw.zookeeper.protocol.proto.Records;
+
+/**
+ * Starts a snapshot after every count transactions that modify the data tree,
+ * and copies znodes for the snapshot in progress before they are modified.
+ *
+ * The log is rolled at each snapshot, and once a snapshot is complete,
+ * snapshots and log files that are no longer needed are purged.
+ *
+ * A snapshot is started before the first transaction with a new zxid,
+ * so that requests applied as part of a previous transaction
+ * (e.g. deleting the ephemeral znodes of a closed session)
+ * are in the snapshot.
+ *
+ * Not threadsafe: transactions must be applied in zxid order
+ * under the write lock.
+ */
+public class SnapshotProcessor extends ForwardingProcessor<TxnOperation.Request<?>, Records.Response> implements Processors.UncheckedProcessor<TxnOperation.Request<?>, Records.Response> {
+
+    /**
+     * @param retain number of snapshots to keep, or zero to keep all
+     */
+    public static SnapshotProcessor create(
+            int count,
+            int retain,
+            TxnLog log,
+            NameTrie<ZNodeNode> data,
+            ReentrantReadWriteLock lock,
+            Executor executor,
+            Processors.UncheckedProcessor<TxnOperation.Request<?>, Records.Response> delegate) {
+        return new SnapshotProcessor(count, retain, log, data, lock, executor, delegate);
+    }
+
+    protected final int count;
+    protected final int retain;
+    protected final TxnLog log;
+    protected final NameTrie<ZNodeNode> data;
+    protected final ReentrantReadWriteLock lock;
+    protected final Executor executor;
+    protected final Processors.UncheckedProcessor<TxnOperation.Request<?>, Records.Response> delegate;
+    protected int txns;
+    protected long lastZxid;
+    protected Snapshot snapshot;
+
+    public SnapshotProcessor(
+            int count,
+            int retain,
+            TxnLog log,
+            NameTrie<ZNodeNode> data,
+            ReentrantReadWriteLock lock,
+            Executor executor,
+            Processors.UncheckedProcessor<TxnOperation.Request<?>, Records.Response> delegate) {
+        this.count = count;
+        this.retain = retain;
+        this.log = log;
+        this.data = data;
+        this.lock = lock;
+        this.executor = executor;
+        this.delegate = delegate;
+        this.txns = 0;
+        this.lastZxid = 0L;
+        this.snapshot = null;
+    }
+
+    @Override
+    public Records.Response apply(TxnOperation.Request<?> input) {
+        boolean logged = TxnLog.isLogged(input.record().opcode());
+        if (logged) {
+            if ((snapshot != null) && snapshot.isDone()) {
+                snapshot = null;
+            }
+            if ((input.zxid() != lastZxid) && (snapshot == null) && (txns >= count)) {
+                txns = 0;
+                snapshot = Snapshot.forZxid(lastZxid, log.directory(), data, lock);
+                log.roll(lastZxid);
+                executor.execute(new Purging(snapshot, retain));
+            }
+            if (snapshot != null) {
+                snapshot.capture(input.record());
+            }
+        }
+        Records.Response response = delegate().apply(input);
+        if (logged && ! (response instanceof Operation.Error)) {
+            if (input.zxid() != lastZxid) {
+                ++txns;
+                lastZxid = input.zxid();
+            }
+        }
+        return response;
+    }
+
+    @Override
+    protected Processors.UncheckedProcessor<TxnOperation.Request<?>, Records.Response> delegate() {
+        return delegate;
+    }
+
+    protected static final class Purging implements Runnable {
+
+        private final Snapshot snapshot;
+        private final int retain;
+
+        public Purging(Snapshot snapshot, int retain) {
+            this.snapshot = snapshot;
+            this.retain = retain;
+        }
+
+        @Override
+        public void run() {
+            snapshot.run();
+            if ((retain > 0) && snapshot.file().exists()) {
+                Snapshot.purge(snapshot.file().getParentFile(), retain);
+            }
+        }
+    }
+}
@@ -0,0 +1,493 @@
+package edu.uw.zookeeper.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Adler32;
+
+import org.apache.jute.BinaryInputArchive;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.typesafe.config.Config;
+
+import edu.uw.zookeeper.common.Actors;
+import edu.uw.zookeeper.common.Configurable;
+import edu.uw.zookeeper.common.Configuration;
+import edu.uw.zookeeper.common.Processor;
+import edu.uw.zookeeper.common.PromiseTask;
+import edu.uw.zookeeper.data.TxnOperation;
+import edu.uw.zookeeper.data.TxnRequest;
+import edu.uw.zookeeper.protocol.ProtocolRequestMessage;
+import edu.uw.zookeeper.protocol.SessionRequest;
+import edu.uw.zookeeper.protocol.proto.ByteBufInputArchive;
+import edu.uw.zookeeper.protocol.proto.ByteBufOutputArchive;
+import edu.uw.zookeeper.protocol.proto.OpCode;
+import edu.uw.zookeeper.protocol.server.ZxidEpochIncrementer;
+
+/**
+ * Append-only log of transactions that modify the data tree.
+ *
+ * Appended transactions are buffered in the mailbox and
+ * written and synced to disk in batches (group commit), so the cost of
+ * a sync is shared by all transactions appended while the previous sync
+ * was in progress.
+ *
+ * Each log file is named by a zxid that is no greater than any of its
+ * transactions and no less than any transaction of the previous file:
+ * the zxid of its first transaction, or the zxid of the snapshot
+ * that it was rolled at.
+ * Each server run has a zxid epoch of its own, so a run may span
+ * several files, but a file holds transactions of only one run.
+ *
+ * Each entry is a length, an Adler32 checksum,
+ * and the transaction time, zxid, session, and request.
+ * A truncated or corrupt entry ends the file.
+ */
+public class TxnLog extends Actors.ExecutedQueuedActor<PromiseTask<TxnOperation.Request<?>, Long>> {
+
+    public static TxnLog forDirectory(File directory, Executor executor) {
+        checkArgument(directory.isDirectory() || directory.mkdirs(), directory);
+        return new TxnLog(
+                directory,
+                executor,
+                Queues.<PromiseTask<TxnOperation.Request<?>, Long>>newConcurrentLinkedQueue(),
+                LogManager.getLogger(TxnLog.class));
+    }
+
+    public static final String PREFIX = "log";
+
+    /**
+     * @return true if this transaction modifies the data tree
+     */
+    public static boolean isLogged(OpCode opcode) {
+        switch (opcode) {
+        case CREATE:
+        case CREATE2:
+        case DELETE:
+        case SET_DATA:
+        case SET_ACL:
+        case MULTI:
+        case CLOSE_SESSION:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    public static String fileName(long zxid) {
+        return String.format("%s.%016x", PREFIX, zxid);
+    }
+
+    public static long zxidOf(File file) {
+        return Long.parseLong(file.getName().substring(PREFIX.length() + 1), 16);
+    }
+
+    /**
+     * @return log files in this directory in zxid order
+     */
+    public static List<File> files(File directory) {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(PREFIX + '.');
+            }
+        });
+        if (files == null) {
+            return Lists.newArrayListWithCapacity(0);
+        }
+        // fixed-width hex names sort by zxid
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    public static void encode(TxnOperation.Request<?> txn, ByteBuf output) throws IOException {
+        int start = output.writerIndex();
+        output.writerIndex(start + HEADER_LENGTH);
+        output.writeLong(txn.getTime());
+        output.writeLong(txn.zxid());
+        output.writeLong(txn.getSessionId());
+        ProtocolRequestMessage.serialize(txn, new ByteBufOutputArchive(output));
+        int length = output.writerIndex() - start - HEADER_LENGTH;
+        output.setInt(start, length);
+        output.setLong(start + 4, checksum(output, start + HEADER_LENGTH, length));
+    }
+
+    public static TxnOperation.Request<?> decode(ByteBuf input) throws IOException {
+        long time = input.readLong();
+        long zxid = input.readLong();
+        long session = input.readLong();
+        ProtocolRequestMessage<?> request = ProtocolRequestMessage.deserialize(new ByteBufInputArchive(input));
+        return TxnRequest.of(time, zxid, SessionRequest.of(session, request));
+    }
+
+    /**
+     * Applies every logged transaction in this file after fromZxid in order.
+     *
+     * @return zxid of the last transaction applied, or fromZxid if none
+     */
+    public static long replay(
+            File file,
+            long fromZxid,
+            Processor<? super TxnOperation.Request<?>, ?> processor) throws IOException {
+        long lastZxid = fromZxid;
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            Optional<TxnOperation.Request<?>> next;
+            while ((next = read(input)).isPresent()) {
+                TxnOperation.Request<?> txn = next.get();
+                if (txn.zxid() <= lastZxid) {
+                    continue;
+                }
+                try {
+                    processor.apply(txn);
+                } catch (Exception e) {
+                    throw new IOException(String.valueOf(txn), e);
+                }
+                lastZxid = txn.zxid();
+            }
+        } finally {
+            input.close();
+        }
+        return lastZxid;
+    }
+
+    protected static Optional<TxnOperation.Request<?>> read(DataInputStream input) throws IOException {
+        int length;
+        long checksum;
+        byte[] bytes;
+        try {
+            length = input.readInt();
+            checksum = input.readLong();
+            if ((length <= 0) || (length > MAX_ENTRY_LENGTH)) {
+                // torn or corrupt, like a checksum mismatch
+                return Optional.absent();
+            }
+            bytes = new byte[length];
+            input.readFully(bytes);
+        } catch (EOFException e) {
+            return Optional.absent();
+        }
+        ByteBuf buffer = Unpooled.wrappedBuffer(bytes);
+        if (checksum(buffer, 0, length) != checksum) {
+            return Optional.absent();
+        }
+        return Optional.<TxnOperation.Request<?>>of(decode(buffer));
+    }
+
+    protected static long checksum(ByteBuf buffer, int index, int length) {
+        Adler32 checksum = new Adler32();
+        if (buffer.hasArray()) {
+            checksum.update(buffer.array(), buffer.arrayOffset() + index, length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.getBytes(index, bytes);
+            checksum.update(bytes, 0, length);
+        }
+        return checksum.getValue();
+    }
+
+    @Configurable(path="server", arg="dataLogDir", value="", help="path")
+    public static abstract class DirectoryConfiguration {
+
+        public static Configurable getConfigurable() {
+            return DirectoryConfiguration.class.getAnnotation(Configurable.class);
+        }
+
+        public static Optional<File> get(Configuration configuration) {
+            Configurable configurable = getConfigurable();
+            Config config = configuration.withConfigurable(configurable)
+                    .getConfigOrEmpty(configurable.path());
+            String value = config.hasPath(configurable.arg()) ? config.getString(configurable.arg()) : "";
+            return value.isEmpty() ? Optional.<File>absent() : Optional.of(new File(value));
+        }
+
+        protected DirectoryConfiguration() {}
+    }
+
+    protected static final int HEADER_LENGTH = 4 + 8;
+    // time, zxid, and session, followed by a request of at most one frame
+    protected static final int MAX_ENTRY_LENGTH = 8 + 8 + 8 + BinaryInputArchive.maxBuffer;
+    // a larger buffer is shrunk after it is written
+    protected static final int MAX_RETAINED_BUFFER = 1 << 20;
+
+    protected final File directory;
+    // transactions after this zxid start a new file
+    protected final AtomicLong rollZxid;
+    // guarded by this
+    protected FileChannel channel;
+    // name of the open file, or of the next file if it was rolled, otherwise negative
+    protected long fileZxid;
+    // transactions encoded but not yet written in this run, guarded by this
+    protected final List<PromiseTask<TxnOperation.Request<?>, Long>> batch;
+    protected final ByteBuf buffer;
+    protected volatile ListenableFuture<Long> last;
+    protected volatile long lastZxid;
+
+    protected TxnLog(
+            File directory,
+            Executor executor,
+            Queue<PromiseTask<TxnOperation.Request<?>, Long>> mailbox,
+            Logger logger) {
+        super(executor, mailbox, logger);
+        this.directory = directory;
+        this.rollZxid = new AtomicLong(Long.MAX_VALUE);
+        this.channel = null;
+        this.fileZxid = -1L;
+        this.batch = Lists.newArrayList();
+        this.buffer = Unpooled.buffer();
+        this.last = Futures.immediateFuture(Long.valueOf(0L));
+        this.lastZxid = 0L;
+    }
+
+    public File directory() {
+        return directory;
+    }
+
+    /**
+     * @return zxid of the last transaction replayed or appended
+     */
+    public long lastZxid() {
+        return lastZxid;
+    }
+
+    /**
+     * Applies every logged transaction in zxid order.
+     *
+     * endOfRun is applied to the last zxid of each server run,
+     * for example to close sessions that did not survive the restart.
+     *
+     * @return zxid of the last transaction applied
+     */
+    public long replay(
+            Processor<? super TxnOperation.Request<?>, ?> processor,
+            Processor<? super Long, ?> endOfRun) throws IOException {
+        return replay(lastZxid, processor, endOfRun);
+    }
+
+    /**
+     * Applies every logged transaction after fromZxid in zxid order,
+     * for example on top of a snapshot as of fromZxid.
+     *
+     * Files that only hold transactions up to fromZxid are skipped,
+     * because the end of their run is already reflected in the snapshot.
+     *
+     * @return zxid of the last transaction applied, or fromZxid if none
+     */
+    public long replay(
+            long fromZxid,
+            Processor<? super TxnOperation.Request<?>, ?> processor,
+            Processor<? super Long, ?> endOfRun) throws IOException {
+        long zxid = fromZxid;
+        List<File> files = files(directory);
+        for (int i=0; i<files.size(); ++i) {
+            File file = files.get(i);
+            if ((i + 1 < files.size()) && (zxidOf(files.get(i + 1)) <= fromZxid)) {
+                continue;
+            }
+            logger.info("Replaying {}", file);
+            zxid = replay(file, zxid, processor);
+            if ((i + 1 == files.size()) 
+                    || (ZxidEpochIncrementer.epochOf(zxidOf(files.get(i + 1))) != ZxidEpochIncrementer.epochOf(zxidOf(file)))) {
+                try {
+                    endOfRun.apply(Long.valueOf(zxid));
+                } catch (Exception e) {
+                    throw new IOException(String.valueOf(file), e);
+                }
+            }
+        }
+        lastZxid = zxid;
+        return zxid;
+    }
+
+    /**
+     * Not threadsafe: transactions must be appended in zxid order.
+     *
+     * @return future zxid of the transaction, set once it is durable
+     */
+    public ListenableFuture<Long> append(TxnOperation.Request<?> txn) {
+        PromiseTask<TxnOperation.Request<?>, Long> task = PromiseTask.<TxnOperation.Request<?>, Long>of(txn);
+        if (! send(task)) {
+            task.cancel(true);
+        }
+        last = task;
+        lastZxid = txn.zxid();
+        return task;
+    }
+
+    /**
+     * @return future that is set once every transaction appended so far is durable
+     */
+    public ListenableFuture<Long> sync() {
+        return last;
+    }
+
+    /**
+     * Transactions appended after this call with a zxid greater than
+     * this one are written to a new file named by this zxid,
+     * so that replaying on top of a snapshot as of this zxid
+     * skips the earlier files.
+     *
+     * Not threadsafe: must be called by the thread that appends.
+     */
+    public void roll(long zxid) {
+        rollZxid.set(zxid);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).addValue(directory).toString();
+    }
+
+    /**
+     * Encodes every transaction in the mailbox,
+     * then writes and syncs them together.
+     */
+    @Override
+    protected synchronized void doRun() throws Exception {
+        super.doRun();
+        flush();
+    }
+
+    /**
+     * Encodes one transaction, which is written by the next flush.
+     */
+    @Override
+    protected synchronized boolean apply(PromiseTask<TxnOperation.Request<?>, Long> input) {
+        if (input.isDone()) {
+            return true;
+        }
+        if (buffer.refCnt() == 0) {
+            // stopped
+            input.cancel(true);
+            return false;
+        }
+        long rolled;
+        while (input.task().zxid() > (rolled = rollZxid.get())) {
+            if (rollZxid.compareAndSet(rolled, Long.MAX_VALUE)) {
+                doRoll(rolled);
+                break;
+            }
+        }
+        int start = buffer.writerIndex();
+        try {
+            encode(input.task(), buffer);
+        } catch (IOException e) {
+            buffer.writerIndex(start);
+            input.setException(e);
+            return true;
+        }
+        batch.add(input);
+        return true;
+    }
+
+    protected synchronized void flush() throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<PromiseTask<TxnOperation.Request<?>, Long>> written = Lists.newArrayList(batch);
+        batch.clear();
+        try {
+            logger.trace("Writing {} transactions ({})", written.size(), this);
+            if (channel == null) {
+                if (fileZxid < 0L) {
+                    fileZxid = written.get(0).task().zxid();
+                }
+                open(fileZxid);
+            }
+            while (buffer.isReadable()) {
+                buffer.readBytes(channel, buffer.readableBytes());
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            for (PromiseTask<TxnOperation.Request<?>, Long> task: written) {
+                task.setException(e);
+            }
+            throw e;
+        } finally {
+            buffer.clear();
+            if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+                buffer.capacity(MAX_RETAINED_BUFFER);
+            }
+        }
+        for (PromiseTask<TxnOperation.Request<?>, Long> task: written) {
+            task.set(Long.valueOf(task.task().zxid()));
+        }
+    }
+
+    @Override
+    protected synchronized void doStop() {
+        // doRun stops applying once we're terminated, so drain the mailbox here
+        PromiseTask<TxnOperation.Request<?>, Long> task;
+        while ((task = mailbox.poll()) != null) {
+            apply(task);
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            logger.warn("Error flushing log ({})", this, e);
+        }
+        buffer.release();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Error closing log ({})", this, e);
+            }
+        }
+    }
+
+    /**
+     * Writes transactions up to rolled to the open file, and closes it
+     * unless it is already named by rolled.
+     */
+    protected synchronized void doRoll(long rolled) {
+        try {
+            flush();
+        } catch (IOException e) {
+            // the transactions in the batch have failed
+            logger.warn("Error flushing log ({})", this, e);
+        }
+        if ((channel != null) && (fileZxid < rolled)) {
+            logger.info("Rolling log at {} ({})", fileName(rolled), this);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Error closing log ({})", this, e);
+            }
+            channel = null;
+            fileZxid = rolled;
+        }
+    }
+
+    protected void open(long zxid) throws IOException {
+        File file = new File(directory, fileName(zxid));
+        if (file.exists()) {
+            throw new IOException(String.format("%s already exists", file));
+        }
+        logger.info("Creating log {}", file);
+        channel = new FileOutputStream(file).getChannel();
+    }
+}
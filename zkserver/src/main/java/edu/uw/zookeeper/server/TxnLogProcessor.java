@@ -0,0 +1,49 @@
+package edu.uw.zookeeper.server;
+
+import edu.uw.zookeeper.common.Processors;
+import edu.uw.zookeeper.common.Processors.ForwardingProcessor;
+import edu.uw.zookeeper.data.TxnOperation;
+import edu.uw.zookeeper.protocol.Operation;
+import edu.uw.zookeeper.protocol.proto.Records;
+
+/**
+ * Appends successful transactions that modify the data tree to a log.
+ *
+ * Not threadsafe: transactions must be applied in zxid order.
+ */
+public class TxnLogProcessor extends ForwardingProcessor<TxnOperation.Request<?>, Records.Response> implements Processors.UncheckedProcessor<TxnOperation.Request<?>, Records.Response> {
+
+    public static TxnLogProcessor create(
+            TxnLog log,
+            Processors.UncheckedProcessor<TxnOperation.Request<?>, Records.Response> delegate) {
+        return new TxnLogProcessor(log, delegate);
+    }
+
+    protected final TxnLog log;
+    protected final Processors.UncheckedProcessor<TxnOperation.Request<?>, Records.Response> delegate;
+
+    public TxnLogProcessor(
+            TxnLog log,
+            Processors.UncheckedProcessor<TxnOperation.Request<?>, Records.Response> delegate) {
+        this.log = log;
+        this.delegate = delegate;
+    }
+
+    public TxnLog log() {
+        return log;
+    }
+
+    @Override
+    public Records.Response apply(TxnOperation.Request<?> input) {
+        Records.Response response = delegate().apply(input);
+        if (TxnLog.isLogged(input.record().opcode()) && ! (response instanceof Operation.Error)) {
+            log.append(input);
+        }
+        return response;
+    }
+
+    @Override
+    protected Processors.UncheckedProcessor<TxnOperation.Request<?>, Records.Response> delegate() {
+        return delegate;
+    }
+}
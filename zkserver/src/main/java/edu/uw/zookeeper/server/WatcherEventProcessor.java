@@ -158,7 +158,7 @@ public class WatcherEventProcessor extends ForwardingProcessor<TxnOperation.Requ
             }
             boolean removed = false;
             for (Watches watches: types) {
-                if (watches.byPath().remove(path, session)) {
+                if (watches.remove(session, path)) {
                     if (!removed) {
                         removed = true;
                     }
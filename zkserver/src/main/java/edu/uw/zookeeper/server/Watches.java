@@ -1,5 +1,7 @@
 package edu.uw.zookeeper.server;
 
+import java.io.IOException;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
@@ -7,10 +9,15 @@ import org.apache.logging.log4j.Logger;
 
 import com.google.common.base.Function;
 import com.google.common.base.MoreObjects;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.SetMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Sets;
 
+import edu.uw.zookeeper.common.LongConcurrentHashMap;
 import edu.uw.zookeeper.data.WatchEvent;
+import edu.uw.zookeeper.protocol.EncodedResponseMessage;
 import edu.uw.zookeeper.protocol.NotificationListener;
 import edu.uw.zookeeper.protocol.Operation;
 import edu.uw.zookeeper.protocol.ProtocolResponseMessage;
@@ -18,78 +25,430 @@ import edu.uw.zookeeper.protocol.proto.IWatcherEvent;
 import edu.uw.zookeeper.protocol.proto.OpCodeXid;
 
 /**
- * Not thread safe.
+ * Threadsafe registry of one-time watches.
+ *
+ * Watches are sharded by path and, separately, by session,
+ * and each shard has its own lock, so watches on different paths
+ * are registered and fired concurrently.
+ * Sessions are stored and looked up as primitive longs,
+ * and paths are interned, so a path watched by many sessions
+ * is stored once.
+ *
+ * Lock order is path shard, then session shard.
  */
 public final class Watches {
 
     public static Watches create(
             Function<Long, ? extends NotificationListener<Operation.ProtocolResponse<IWatcherEvent>>> listeners) {
-        return create(listeners, HashMultimap.<String, Long>create(), HashMultimap.<Long, String>create());
+        return create(listeners, defaultShards());
     }
-    
+
     public static Watches create(
             Function<Long, ? extends NotificationListener<Operation.ProtocolResponse<IWatcherEvent>>> listeners,
-            SetMultimap<String, Long> byPath,
-            SetMultimap<Long, String> bySession) {
-        return new Watches(listeners, byPath, bySession);
+            int shards) {
+        return new Watches(listeners, shards, PATHS);
+    }
+
+    /**
+     * @return a power of two at least four times the number of processors
+     */
+    public static int defaultShards() {
+        return Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 8 - 1);
     }
 
-    private final SetMultimap<String, Long> byPath;
-    private final SetMultimap<Long, String> bySession;
+    // shared by data and child watches
+    private static final Interner<String> PATHS = Interners.newWeakInterner();
+
+    private final PathShard[] byPath;
+    private final SessionShard[] bySession;
+    private final int mask;
+    private final Interner<String> paths;
     private final Function<Long, ? extends NotificationListener<Operation.ProtocolResponse<IWatcherEvent>>> listeners;
     private final Logger logger;
-    
+
     protected Watches(
             Function<Long, ? extends NotificationListener<Operation.ProtocolResponse<IWatcherEvent>>> listeners,
-            SetMultimap<String, Long> byPath,
-            SetMultimap<Long, String> bySession) {
+            int shards,
+            Interner<String> paths) {
+        if (Integer.bitCount(shards) != 1) {
+            throw new IllegalArgumentException(String.valueOf(shards));
+        }
         this.logger = LogManager.getLogger(this);
-        this.byPath = byPath;
-        this.bySession = bySession;
+        this.byPath = new PathShard[shards];
+        this.bySession = new SessionShard[shards];
+        for (int i=0; i<shards; ++i) {
+            byPath[i] = new PathShard();
+            bySession[i] = new SessionShard();
+        }
+        this.mask = shards - 1;
+        this.paths = paths;
         this.listeners = listeners;
     }
-    
-    public SetMultimap<String,Long> byPath() {
-        return byPath;
+
+    /**
+     * @return copy of the sessions watching each path
+     */
+    public ImmutableSetMultimap<String, Long> byPath() {
+        ImmutableSetMultimap.Builder<String, Long> builder = ImmutableSetMultimap.builder();
+        for (PathShard shard: byPath) {
+            synchronized (shard) {
+                for (Map.Entry<String, LongHashSet> entry: shard.entrySet()) {
+                    LongHashSet.Iterator sessions = entry.getValue().iterator();
+                    while (sessions.hasNext()) {
+                        builder.put(entry.getKey(), Long.valueOf(sessions.next()));
+                    }
+                }
+            }
+        }
+        return builder.build();
     }
-    
-    public SetMultimap<Long, String> bySession() {
-        return bySession;
+
+    /**
+     * @return copy of the paths watched by each session
+     */
+    public ImmutableSetMultimap<Long, String> bySession() {
+        ImmutableSetMultimap.Builder<Long, String> builder = ImmutableSetMultimap.builder();
+        for (SessionShard shard: bySession) {
+            synchronized (shard) {
+                for (Map.Entry<Long, Set<String>> entry: shard.sessions.entrySet()) {
+                    builder.putAll(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return builder.build();
     }
-    
+
+    public int sessionCount() {
+        int count = 0;
+        for (SessionShard shard: bySession) {
+            count += shard.sessions.size();
+        }
+        return count;
+    }
+
+    public int pathCount() {
+        int count = 0;
+        for (PathShard shard: byPath) {
+            synchronized (shard) {
+                count += shard.size();
+            }
+        }
+        return count;
+    }
+
+    public int watchCount() {
+        int count = 0;
+        for (PathShard shard: byPath) {
+            synchronized (shard) {
+                count += shard.watches;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Listeners are notified after the watches are removed,
+     * without holding any lock.
+     */
     public void post(final IWatcherEvent event) {
         if (logger.isDebugEnabled()) {
             logger.debug("{}", WatchEvent.fromRecord(event));
         }
-        final ProtocolResponseMessage<IWatcherEvent> message = ProtocolResponseMessage.of(
-                OpCodeXid.NOTIFICATION.xid(), 
+        String path = event.getPath();
+        LongHashSet sessions;
+        PathShard shard = pathShard(path);
+        synchronized (shard) {
+            sessions = shard.remove(path);
+            if (sessions == null) {
+                return;
+            }
+            shard.watches -= sessions.size();
+            LongHashSet.Iterator itr = sessions.iterator();
+            while (itr.hasNext()) {
+                long session = itr.next();
+                SessionShard sessionShard = sessionShard(session);
+                synchronized (sessionShard) {
+                    sessionShard.remove(session, path);
+                }
+            }
+        }
+        ProtocolResponseMessage<IWatcherEvent> message = ProtocolResponseMessage.of(
+                OpCodeXid.NOTIFICATION.xid(),
                 OpCodeXid.NOTIFICATION_ZXID,
                 event);
-        String path = event.getPath();
-        for (Long session: byPath.removeAll(path)) {
-            bySession.remove(session, path);
-            NotificationListener<Operation.ProtocolResponse<IWatcherEvent>> listener = listeners.apply(session);
+        // encoded once for all sessions
+        try {
+            message = EncodedResponseMessage.encode(message);
+        } catch (IOException e) {
+            logger.warn("Encoding {}", message, e);
+        }
+        LongHashSet.Iterator itr = sessions.iterator();
+        while (itr.hasNext()) {
+            NotificationListener<Operation.ProtocolResponse<IWatcherEvent>> listener = listeners.apply(Long.valueOf(itr.next()));
             if (listener != null) {
                 listener.handleNotification(message);
             }
         }
     }
-    
+
     public void put(Long session, String path) {
-        byPath.put(path, session);
-        bySession.put(session, path);
+        long id = session.longValue();
+        path = paths.intern(path);
+        PathShard shard = pathShard(path);
+        synchronized (shard) {
+            LongHashSet sessions = shard.get(path);
+            if (sessions == null) {
+                sessions = new LongHashSet();
+                shard.put(path, sessions);
+            }
+            if (sessions.add(id)) {
+                shard.watches += 1;
+                SessionShard sessionShard = sessionShard(id);
+                synchronized (sessionShard) {
+                    sessionShard.put(id, path);
+                }
+            }
+        }
     }
-    
+
+    /**
+     * Removes every watch of a session, e.g. when it is closed.
+     *
+     * @return paths watched by this session
+     */
     public Set<String> remove(Long session) {
-        Set<String> paths = bySession.removeAll(session);
-        for (String path: paths) {
-            byPath.remove(path, session);
+        long id = session.longValue();
+        Set<String> watched;
+        SessionShard sessionShard = sessionShard(id);
+        synchronized (sessionShard) {
+            watched = sessionShard.sessions.remove(id);
         }
-        return paths;
+        if (watched == null) {
+            return ImmutableSet.of();
+        }
+        for (String path: watched) {
+            PathShard shard = pathShard(path);
+            synchronized (shard) {
+                shard.remove(path, id);
+            }
+        }
+        return watched;
     }
-    
+
+    public boolean remove(Long session, String path) {
+        long id = session.longValue();
+        PathShard shard = pathShard(path);
+        synchronized (shard) {
+            if (shard.remove(path, id)) {
+                SessionShard sessionShard = sessionShard(id);
+                synchronized (sessionShard) {
+                    sessionShard.remove(id, path);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public String toString() {
-        return MoreObjects.toStringHelper(this).toString();
+        return MoreObjects.toStringHelper(this).add("shards", byPath.length).toString();
+    }
+
+    protected PathShard pathShard(String path) {
+        return byPath[spread(path.hashCode()) & mask];
+    }
+
+    protected SessionShard sessionShard(long session) {
+        return bySession[spread((int) (session ^ (session >>> 32))) & mask];
+    }
+
+    protected static int spread(int h) {
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h;
+    }
+
+    /**
+     * Guarded by its own monitor.
+     */
+    protected static final class PathShard extends java.util.HashMap<String, LongHashSet> {
+
+        private static final long serialVersionUID = 1L;
+
+        protected int watches = 0;
+
+        public boolean remove(String path, long session) {
+            LongHashSet sessions = get(path);
+            if ((sessions == null) || ! sessions.remove(session)) {
+                return false;
+            }
+            watches -= 1;
+            if (sessions.isEmpty()) {
+                remove(path);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Writes are guarded by its own monitor.
+     */
+    protected static final class SessionShard {
+
+        // paths watched by each session
+        protected final LongConcurrentHashMap<Set<String>> sessions = LongConcurrentHashMap.create(0, 1);
+
+        public void put(long session, String path) {
+            Set<String> paths = sessions.get(session);
+            if (paths == null) {
+                paths = Sets.newHashSetWithExpectedSize(4);
+                sessions.put(session, paths);
+            }
+            paths.add(path);
+        }
+
+        public void remove(long session, String path) {
+            Set<String> paths = sessions.get(session);
+            if ((paths != null) && paths.remove(path) && paths.isEmpty()) {
+                sessions.remove(session);
+            }
+        }
+    }
+
+    /**
+     * Open addressing set of longs, so that sessions aren't boxed.
+     *
+     * Not threadsafe.
+     */
+    protected static final class LongHashSet {
+
+        private static final long FREE = 0L;
+        private static final int MIN_CAPACITY = 4;
+
+        // FREE is not stored in the table
+        private boolean containsFree;
+        private long[] table;
+        private int size;
+
+        public LongHashSet() {
+            this.containsFree = false;
+            this.table = new long[MIN_CAPACITY];
+            this.size = 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public boolean add(long value) {
+            if (value == FREE) {
+                if (containsFree) {
+                    return false;
+                }
+                containsFree = true;
+                ++size;
+                return true;
+            }
+            int index = indexOf(table, value);
+            if (table[index] == value) {
+                return false;
+            }
+            table[index] = value;
+            ++size;
+            if (size * 2 > table.length) {
+                resize(table.length * 2);
+            }
+            return true;
+        }
+
+        public boolean remove(long value) {
+            if (value == FREE) {
+                if (! containsFree) {
+                    return false;
+                }
+                containsFree = false;
+                --size;
+                return true;
+            }
+            int index = indexOf(table, value);
+            if (table[index] != value) {
+                return false;
+            }
+            table[index] = FREE;
+            --size;
+            // re-insert the rest of the cluster
+            int mask = table.length - 1;
+            for (int i = (index + 1) & mask; table[i] != FREE; i = (i + 1) & mask) {
+                long next = table[i];
+                table[i] = FREE;
+                table[indexOf(table, next)] = next;
+            }
+            return true;
+        }
+
+        public Iterator iterator() {
+            return new Iterator();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder().append('[');
+            Iterator itr = iterator();
+            while (itr.hasNext()) {
+                builder.append(itr.next());
+                if (itr.hasNext()) {
+                    builder.append(", ");
+                }
+            }
+            return builder.append(']').toString();
+        }
+
+        protected void resize(int capacity) {
+            long[] prev = table;
+            table = new long[capacity];
+            for (long value: prev) {
+                if (value != FREE) {
+                    table[indexOf(table, value)] = value;
+                }
+            }
+        }
+
+        protected static int indexOf(long[] table, long value) {
+            int mask = table.length - 1;
+            int index = spread((int) (value ^ (value >>> 32))) & mask;
+            while ((table[index] != FREE) && (table[index] != value)) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        public final class Iterator {
+
+            private int index = containsFree ? -1 : next(0);
+
+            public boolean hasNext() {
+                return index < table.length;
+            }
+
+            public long next() {
+                long value = (index < 0) ? FREE : table[index];
+                index = next(index + 1);
+                return value;
+            }
+
+            private int next(int from) {
+                int i = from;
+                while ((i < table.length) && (table[i] == FREE)) {
+                    ++i;
+                }
+                return i;
+            }
+        }
     }
-}
\ No newline at end of file
+}